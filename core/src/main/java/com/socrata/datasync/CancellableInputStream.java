@@ -0,0 +1,56 @@
+package com.socrata.datasync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * An input stream that stops being readable once the thread reading it is interrupted, so that a job
+ * reading, diffing or uploading a large file can be cancelled part way through (file reads themselves
+ * ignore interrupts). The interrupt is left set for the caller to see.
+ */
+public class CancellableInputStream extends InputStream {
+    private final InputStream underlying;
+
+    public CancellableInputStream(InputStream underlying) {
+        this.underlying = underlying;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkInterrupted();
+        return underlying.read();
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        checkInterrupted();
+        return underlying.read(buf, off, len);
+    }
+
+    @Override
+    public int read(byte[] buf) throws IOException {
+        return read(buf, 0, buf.length);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkInterrupted();
+        return underlying.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        return underlying.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        underlying.close();
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted())
+            throw new InterruptedIOException("Cancelled");
+    }
+}
@@ -1,6 +1,9 @@
 package com.socrata.datasync;
 
 import au.com.bytecode.opencsv.CSVReader;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.model.importer.Column;
 import com.socrata.model.importer.Dataset;
@@ -67,25 +70,41 @@ public class DatasetUtils {
             .setPath("/api/views/" + viewId)
             .build();
 
-        ResponseHandler<T> handler = new ResponseHandler<T>() {
+        MetadataCache.Entry view = MetadataCache.getDefault().get(userPrefs, true, absolutePath, MetadataCache.ResourceType.SCHEMA);
+        // parse a fresh copy each time, since callers are free to modify what they get back
+        return mapper.readValue(view.body, typ);
+    }
+
+    /**
+     * Starts fetching the dataset's metadata on the asynchronous HTTP client, so that several
+     * datasets can be fetched at once without a thread apiece.
+     * @return a future holding the dataset (without system or computed columns)
+     */
+    public static ListenableFuture<Dataset> getDatasetInfoAsync(UserPreferences userPrefs, String viewId) throws URISyntaxException {
+        String justDomain = getDomainWithoutScheme(userPrefs);
+        URI absolutePath = new URIBuilder()
+            .setScheme("https")
+            .setHost(justDomain)
+            .setPath("/api/views/" + viewId)
+            .build();
+
+        HttpUtility util = new HttpUtility(userPrefs, true);
+        return Futures.transform(util.getAsync(absolutePath, "application/json"), new AsyncFunction<HttpResponse, Dataset>() {
             @Override
-            public T handleResponse(
-                final HttpResponse response) throws ClientProtocolException, IOException {
+            public ListenableFuture<Dataset> apply(HttpResponse response) throws Exception {
                 StatusLine statusLine = response.getStatusLine();
                 int status = statusLine.getStatusCode();
-                if (status >= 200 && status < 300) {
-                    HttpEntity entity = response.getEntity();
-                    return entity != null ? mapper.readValue(entity.getContent(), typ) : null;
-                } else {
+                HttpEntity entity = response.getEntity();
+                if (status < 200 || status >= 300) {
+                    EntityUtils.consumeQuietly(entity);
                     throw new ClientProtocolException(statusLine.toString());
                 }
+                Dataset ds = entity != null ? mapper.readValue(entity.getContent(), Dataset.class) : null;
+                if (ds != null)
+                    removeSystemAndComputedColumns(ds);
+                return Futures.immediateFuture(ds);
             }
-        };
-
-        HttpUtility util = new HttpUtility(userPrefs, true);
-        T datasetInfo = util.get(absolutePath, "application/json", handler);
-        util.close();
-        return datasetInfo;
+        });
     }
 
     public static List<List<String>> getDatasetSample(UserPreferences userPrefs, Dataset dataset, int rowsToSample) throws URISyntaxException, IOException, HttpException {
@@ -0,0 +1,255 @@
+package com.socrata.datasync;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.http.conn.ssl.SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+
+/**
+ * Holds the HTTP clients shared by every HttpUtility in the process: a blocking client, and an
+ * asynchronous client whose requests all share a small number of I/O threads.
+ *
+ * Both clients are backed by pooled connection managers, so connections (and TLS sessions) are reused
+ * across requests, jobs and call sites. Anything that differs between callers (credentials, proxy)
+ * is supplied per request by HttpUtility, never baked into the clients.
+ */
+public final class HttpClientRegistry {
+
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 50;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+    private static final long KEEP_ALIVE_MS = 30 * 1000;
+    private static final long IDLE_CONNECTION_TIMEOUT_MS = 60 * 1000;
+    private static final long IDLE_EVICTION_INTERVAL_MS = 15 * 1000;
+    private static final int ASYNC_IO_THREADS = 2;
+    private static final String[] TLS_PROTOCOLS = new String[] { "TLSv1.1", "TLSv1.2" };
+
+    private static PoolingHttpClientConnectionManager connectionManager = null;
+    private static CloseableHttpClient sharedClient = null;
+    private static Thread idleConnectionEvictor = null;
+    private static PoolingNHttpClientConnectionManager asyncConnectionManager = null;
+    private static CloseableHttpAsyncClient sharedAsyncClient = null;
+    private static ScheduledExecutorService retryScheduler = null;
+    private static int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+    private static int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    private HttpClientRegistry() {}
+
+    /**
+     * @return the process-wide client, creating it on first use
+     */
+    public static synchronized CloseableHttpClient getSharedClient() {
+        if (sharedClient == null) {
+            connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry());
+            connectionManager.setMaxTotal(maxTotalConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+            sharedClient = HttpClients.custom().
+                setConnectionManager(connectionManager).
+                disableAutomaticRetries(). // HttpUtility retries according to RetryPolicy
+                disableContentCompression(). // HttpUtility negotiates gzip itself (see HttpCompression)
+                setKeepAliveStrategy(datasyncDefaultKeepAliveStrategy).
+                setDefaultRequestConfig(HttpUtility.defaultRequestConfig()).
+                build();
+
+            startIdleConnectionEvictor();
+        }
+        return sharedClient;
+    }
+
+    /**
+     * @return the process-wide asynchronous client, creating and starting it on first use
+     */
+    public static synchronized CloseableHttpAsyncClient getSharedAsyncClient() {
+        if (sharedAsyncClient == null) {
+            try {
+                ConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(
+                    IOReactorConfig.custom().setIoThreadCount(ASYNC_IO_THREADS).build());
+                asyncConnectionManager = new PoolingNHttpClientConnectionManager(ioReactor,
+                    RegistryBuilder.<SchemeIOSessionStrategy>create().
+                        register("http", NoopIOSessionStrategy.INSTANCE).
+                        register("https", new SSLIOSessionStrategy(sslContext(), TLS_PROTOCOLS, null,
+                            BROWSER_COMPATIBLE_HOSTNAME_VERIFIER)).
+                        build());
+            } catch (IOReactorException e) {
+                // there’s no way for the client to recover,
+                // so a checked exception is not necessary
+                throw new RuntimeException(e);
+            }
+            asyncConnectionManager.setMaxTotal(maxTotalConnections);
+            asyncConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+            sharedAsyncClient = HttpAsyncClients.custom().
+                setConnectionManager(asyncConnectionManager).
+                setKeepAliveStrategy(datasyncDefaultKeepAliveStrategy).
+                setDefaultRequestConfig(HttpUtility.defaultRequestConfig()).
+                build();
+            sharedAsyncClient.start();
+            startIdleConnectionEvictor();
+        }
+        return sharedAsyncClient;
+    }
+
+    /**
+     * @return a single daemon thread used to resubmit asynchronous requests after a retry delay,
+     * so that waiting to retry never ties up a thread per request
+     */
+    public static synchronized ScheduledExecutorService getRetryScheduler() {
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "datasync-http-retry");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return retryScheduler;
+    }
+
+    /**
+     * Sets the pool limits; applies immediately if the shared client already exists.
+     * @param maxTotal the maximum number of open connections across all hosts
+     * @param maxPerRoute the maximum number of open connections to any one host
+     */
+    public static synchronized void setPoolLimits(int maxTotal, int maxPerRoute) {
+        if (maxTotal < 1 || maxPerRoute < 1 || maxPerRoute > maxTotal)
+            throw new IllegalArgumentException("Invalid connection pool limits: maxTotal=" + maxTotal +
+                ", maxPerRoute=" + maxPerRoute);
+        maxTotalConnections = maxTotal;
+        maxConnectionsPerRoute = maxPerRoute;
+        if (connectionManager != null) {
+            connectionManager.setMaxTotal(maxTotal);
+            connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        }
+        if (asyncConnectionManager != null) {
+            asyncConnectionManager.setMaxTotal(maxTotal);
+            asyncConnectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        }
+    }
+
+    public static synchronized int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    public static synchronized int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Closes the shared clients and their pooled connections; the next call to
+     * getSharedClient or getSharedAsyncClient creates a fresh one.
+     */
+    public static synchronized void shutdown() throws IOException {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.interrupt();
+            idleConnectionEvictor = null;
+        }
+        if (sharedClient != null) {
+            sharedClient.close();
+            sharedClient = null;
+            connectionManager = null;
+        }
+        if (sharedAsyncClient != null) {
+            sharedAsyncClient.close();
+            sharedAsyncClient = null;
+            asyncConnectionManager = null;
+        }
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+            retryScheduler = null;
+        }
+    }
+
+    private static SSLContext sslContext() {
+        try {
+            return SSLContexts.custom().useTLS().build();
+        } catch (NoSuchAlgorithmException|KeyManagementException e) {
+            // there’s no way for the client to recover,
+            // so a checked exception is not necessary
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Registry<ConnectionSocketFactory> socketFactoryRegistry() {
+        SSLConnectionSocketFactory factory = new SSLConnectionSocketFactory(
+            sslContext(),
+            TLS_PROTOCOLS,
+            null,
+            BROWSER_COMPATIBLE_HOSTNAME_VERIFIER
+        );
+
+        return RegistryBuilder.<ConnectionSocketFactory>create().
+            register("http", PlainConnectionSocketFactory.getSocketFactory()).
+            register("https", factory).
+            build();
+    }
+
+    private static void startIdleConnectionEvictor() {
+        if (idleConnectionEvictor != null)
+            return;
+        idleConnectionEvictor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        Thread.sleep(IDLE_EVICTION_INTERVAL_MS);
+                        evictIdleConnections();
+                    }
+                } catch (InterruptedException e) {
+                    // shutting down
+                }
+            }
+        }, "datasync-idle-connection-evictor");
+        idleConnectionEvictor.setDaemon(true);
+        idleConnectionEvictor.start();
+    }
+
+    private static synchronized void evictIdleConnections() {
+        if (connectionManager != null) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        if (asyncConnectionManager != null) {
+            asyncConnectionManager.closeExpiredConnections();
+            asyncConnectionManager.closeIdleConnections(IDLE_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final ConnectionKeepAliveStrategy datasyncDefaultKeepAliveStrategy = new ConnectionKeepAliveStrategy() {
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            return KEEP_ALIVE_MS;
+        }
+    };
+}
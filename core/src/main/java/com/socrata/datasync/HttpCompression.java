@@ -0,0 +1,186 @@
+package com.socrata.datasync;
+
+import com.google.common.io.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip negotiation for HttpUtility: responses are requested gzipped and decoded as they are read,
+ * and large textual request bodies can be sent gzipped to endpoints that accept them.
+ *
+ * Run with -Ddatasync.debug=true to print the compression ratio of every compressed body.
+ */
+public class HttpCompression {
+
+    public static final String GZIP = "gzip";
+    public static final String ACCEPT_ENCODING = "gzip";
+    /** Request bodies smaller than this are not worth compressing */
+    public static final int DEFAULT_REQUEST_THRESHOLD_BYTES = 8 * 1024;
+    /** Request bodies are compressed in memory, so very large ones are sent as they are */
+    public static final long MAX_COMPRESSIBLE_REQUEST_BYTES = 64L * 1024 * 1024;
+
+    private static final boolean DEBUG = Boolean.getBoolean("datasync.debug");
+
+    // bodies that gzip would barely shrink: archives, and delta-importer-2's binary signatures
+    private static final Set<String> COMPRESSED_TYPES = new HashSet<>(Arrays.asList(
+        "application/octet-stream", "application/zip", "application/gzip", "application/x-gzip",
+        "application/x-xz", "application/x-bzip2", "application/x-7z-compressed", "application/x-rar-compressed",
+        "application/x-socrata-ssig"));
+
+    // endpoints that have rejected a gzipped body (with 415 Unsupported Media Type)
+    private static final Set<String> rejectingEndpoints =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private HttpCompression() {
+        throw new AssertionError("Never instantiate utility classes!");
+    }
+
+    /**
+     * If the response body is gzipped, replaces it with one that is decoded while it is read.
+     */
+    public static void decodeResponse(HttpResponse response, URI uri) {
+        HttpEntity entity = response.getEntity();
+        if (entity == null || entity.getContentLength() == 0)
+            return;
+        Header encoding = entity.getContentEncoding();
+        if (encoding == null)
+            encoding = response.getFirstHeader("Content-Encoding");
+        if (encoding == null)
+            return;
+        String value = encoding.getValue().trim().toLowerCase();
+        if (value.equals(GZIP) || value.equals("x-gzip")) {
+            response.setEntity(new GzipDecodingEntity(entity, uri));
+            response.removeHeaders("Content-Encoding");
+            response.removeHeaders("Content-Length");
+        }
+    }
+
+    /**
+     * Gzips the given request body if it is large, textual and going to an endpoint that has not
+     * rejected compressed bodies before.
+     * @return the compressed body, or null if the original should be sent as it is
+     */
+    public static HttpEntity compressRequest(HttpEntity entity, URI uri, int thresholdBytes) throws IOException {
+        if (entity == null || !entity.isRepeatable() || entity.getContentEncoding() != null)
+            return null;
+        long length = entity.getContentLength();
+        if (length < thresholdBytes || length > MAX_COMPRESSIBLE_REQUEST_BYTES)
+            return null;
+        Header contentType = entity.getContentType();
+        if (contentType == null || isAlreadyCompressed(contentType.getValue()))
+            return null;
+        if (rejectingEndpoints.contains(endpoint(uri)))
+            return null;
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) (length / 4));
+        try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+            entity.writeTo(gzip);
+        }
+        if (compressed.size() >= length)
+            return null;
+        report("request to", uri, compressed.size(), length);
+
+        ByteArrayEntity result = new ByteArrayEntity(compressed.toByteArray());
+        result.setContentType(contentType);
+        result.setContentEncoding(GZIP);
+        return result;
+    }
+
+    /**
+     * Remembers that the endpoint does not accept gzipped bodies, so later requests are sent uncompressed.
+     */
+    public static void markRejected(URI uri) {
+        rejectingEndpoints.add(endpoint(uri));
+    }
+
+    private static boolean isAlreadyCompressed(String contentType) {
+        String type = contentType.toLowerCase();
+        int parameters = type.indexOf(';');
+        if (parameters >= 0)
+            type = type.substring(0, parameters);
+        type = type.trim();
+        return COMPRESSED_TYPES.contains(type) || type.startsWith("image/") || type.startsWith("multipart/");
+    }
+
+    private static String endpoint(URI uri) {
+        return uri.getHost() + uri.getPath();
+    }
+
+    private static void report(String direction, URI uri, long compressedBytes, long bytes) {
+        if (!DEBUG || compressedBytes <= 0)
+            return;
+        System.out.println(String.format("gzip %s %s: %d bytes on the wire for %d bytes (%.1fx)",
+            direction, uri, compressedBytes, bytes, (double) bytes / compressedBytes));
+    }
+
+    /**
+     * Decodes a gzipped entity as it is streamed, counting bytes on both sides for the debug report.
+     */
+    private static class GzipDecodingEntity extends HttpEntityWrapper {
+        private final URI uri;
+        private InputStream content = null;
+
+        GzipDecodingEntity(HttpEntity wrapped, URI uri) {
+            super(wrapped);
+            this.uri = uri;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (content == null) {
+                final CountingInputStream raw = new CountingInputStream(wrappedEntity.getContent());
+                final CountingInputStream decoded = new CountingInputStream(new GZIPInputStream(raw));
+                content = new FilterInputStream(decoded) {
+                    private boolean reported = false;
+
+                    @Override
+                    public void close() throws IOException {
+                        if (!reported) {
+                            reported = true;
+                            report("response from", uri, raw.getCount(), decoded.getCount());
+                        }
+                        super.close();
+                    }
+                };
+            }
+            return content;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = getContent()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1)
+                    out.write(buffer, 0, n);
+            }
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.socrata.datasync;
+
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.socrata.datasync.config.userpreferences.UserPreferences;
+import org.apache.commons.net.util.Base64;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+public class HttpUtility {
+
+    private CloseableHttpClient httpClient = null;
+    private RequestConfig proxyConfig = null;
+    private CredentialsProvider proxyCredentials = null;
+    private String authHeader;
+    private String appToken;
+    private boolean authRequired = false;
+    private final int maxRetries;
+    private final double retryDelayFactor;
+    private int requestCompressionThreshold = -1;
+
+    private static final String datasyncVersionHeader = "X-Socrata-DataSync-Version";
+    private static final String appHeader = "X-App-Token";
+    private static String userAgent = "datasync";
+
+    private static final RetryPolicy retryPolicy = RetryPolicy.getDefault();
+
+    // the request each thread made last, whose response it may still be reading; see abortRequestOf
+    private static final Map<Thread, HttpRequestBase> latestRequests =
+            Collections.synchronizedMap(new WeakHashMap<Thread, HttpRequestBase>());
+
+
+    public HttpUtility() { this(null, false); }
+
+
+    public HttpUtility(UserPreferences userPrefs, boolean useAuth) {
+        this(userPrefs, useAuth, 5, 3.5);
+    }
+
+    public HttpUtility(UserPreferences userPrefs, boolean useAuth, String usrAgent) {
+        this(userPrefs, useAuth);
+        userAgent = usrAgent;
+    }
+
+    /**
+     * @param maxRetries the most times a failed idempotent request is retried
+     * @param retryDelayFactor the shortest wait before a retry, in seconds; later waits are randomized
+     *                         and grow (see RetryPolicy)
+     */
+    public HttpUtility(UserPreferences userPrefs, boolean useAuth, int maxRetries, double retryDelayFactor) {
+        this.maxRetries = maxRetries;
+        this.retryDelayFactor = retryDelayFactor;
+
+        if (useAuth) {
+            authHeader = getAuthHeader(userPrefs.getUsername(), userPrefs.getPassword());
+            appToken = userPrefs.getConnectionInfo().getToken();
+        }
+        authRequired = useAuth;
+        if(userPrefs != null) {
+            String proxyHost = userPrefs.getProxyHost();
+            String proxyPort = userPrefs.getProxyPort();
+            if (canUse(proxyHost) && canUse(proxyPort)) {
+                HttpHost proxy = new HttpHost(proxyHost, Integer.valueOf(proxyPort));
+                proxyConfig = RequestConfig.copy(defaultRequestConfig()).setProxy(proxy).build();
+                if (canUse(userPrefs.getProxyUsername()) && canUse(userPrefs.getProxyPassword())) {
+                    proxyCredentials = new BasicCredentialsProvider();
+                    proxyCredentials.setCredentials(
+                        new AuthScope(proxyHost, Integer.valueOf(proxyPort)),
+                        new UsernamePasswordCredentials(userPrefs.getProxyUsername(), userPrefs.getProxyPassword()));
+                }
+            }
+        }
+
+        httpClient = HttpClientRegistry.getSharedClient();
+    }
+
+    static RequestConfig defaultRequestConfig() {
+        return RequestConfig.custom().
+            setConnectTimeout(15000). // 15s
+            setSocketTimeout(60000). // 1m
+            build();
+    }
+
+    /**
+     * Conducts a basic get, passing the auth information in the header.
+     * @param uri the uri from which the get will be made
+     * @param contentType the expected contentType of the return value
+     * @return the unproccessed query results
+     */
+    public CloseableHttpResponse get(URI uri, String contentType) throws IOException {
+        HttpGet httpGet = buildHttpGet(uri,contentType);
+        return execute(httpGet, true);
+    }
+
+    public <T> T get(URI uri, String contentType, ResponseHandler<T> handler) throws IOException {
+        HttpGet httpGet = buildHttpGet(uri,contentType);
+        try (CloseableHttpResponse response = execute(httpGet, true)) {
+            return handler.handleResponse(response);
+        }
+    }
+
+    /**
+     * Conducts a get that gives up quickly: both connecting and each read wait at most the given time.
+     * @param uri the uri from which the get will be made
+     * @param contentType the expected contentType of the return value
+     * @param timeoutMs the connect and socket timeout for this request, in milliseconds
+     * @return the unproccessed query results
+     */
+    public CloseableHttpResponse get(URI uri, String contentType, int timeoutMs) throws IOException {
+        HttpGet httpGet = buildHttpGet(uri,contentType);
+        RequestConfig baseConfig = proxyConfig != null ? proxyConfig : defaultRequestConfig();
+        httpGet.setConfig(RequestConfig.copy(baseConfig).
+            setConnectTimeout(timeoutMs).
+            setConnectionRequestTimeout(timeoutMs).
+            setSocketTimeout(timeoutMs).
+            build());
+        return execute(httpGet, true);
+    }
+
+    /**
+     * Conducts a get with additional request headers (e.g. the validators of a conditional get).
+     * @param uri the uri from which the get will be made
+     * @param contentType the expected contentType of the return value
+     * @param headers extra headers to send
+     * @return the unproccessed query results
+     */
+    public CloseableHttpResponse get(URI uri, String contentType, Map<String, String> headers) throws IOException {
+        HttpGet httpGet = buildHttpGet(uri,contentType);
+        for (Map.Entry<String, String> header : headers.entrySet())
+            httpGet.setHeader(header.getKey(), header.getValue());
+        return execute(httpGet, true);
+    }
+
+    private HttpGet buildHttpGet(URI uri, String contentType){
+        HttpGet httpGet = new HttpGet(uri);
+        httpGet.setHeader(HttpHeaders.USER_AGENT, userAgent);
+        httpGet.addHeader(HttpHeaders.ACCEPT, contentType);
+        httpGet.addHeader(HttpHeaders.ACCEPT_ENCODING, HttpCompression.ACCEPT_ENCODING);
+        httpGet.addHeader(datasyncVersionHeader, VersionProvider.getThisVersion());
+        if (proxyConfig != null)
+            httpGet.setConfig(proxyConfig);
+        if (authRequired) {
+            httpGet.setHeader(appHeader, appToken);
+            httpGet.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
+        }
+        return httpGet;
+    }
+
+    /**
+     * Conducts a basic post of the given entity; auth information is passed in the header.
+     * The post is treated as not idempotent, so it is never retried.
+     * @param uri  the uri to which the entity will be posted
+     * @param entity an entity to post
+     * @return the unprocessed results of the post
+     */
+    public CloseableHttpResponse post(URI uri, HttpEntity entity) throws IOException {
+        return post(uri, entity, false);
+    }
+
+    /**
+     * Conducts a basic post of the given entity; auth information is passed in the header.
+     * @param uri  the uri to which the entity will be posted
+     * @param entity an entity to post
+     * @param idempotent whether the post may safely be sent again if it fails
+     * @return the unprocessed results of the post
+     */
+    public CloseableHttpResponse post(URI uri, HttpEntity entity, boolean idempotent) throws IOException {
+        return execute(buildHttpPost(uri, entity), idempotent);
+    }
+
+    /**
+     * Conducts a post of the given entity, waiting up to the given socket timeout (rather than the
+     * default one minute) between packets; useful for large uploads that the server processes
+     * before responding.
+     * @param uri  the uri to which the entity will be posted
+     * @param entity an entity to post
+     * @param idempotent whether the post may safely be sent again if it fails
+     * @param socketTimeoutMs the socket timeout for this request, in milliseconds
+     * @return the unprocessed results of the post
+     */
+    public CloseableHttpResponse post(URI uri, HttpEntity entity, boolean idempotent, int socketTimeoutMs) throws IOException {
+        HttpPost httpPost = buildHttpPost(uri, entity);
+        RequestConfig baseConfig = proxyConfig != null ? proxyConfig : defaultRequestConfig();
+        httpPost.setConfig(RequestConfig.copy(baseConfig).
+            setSocketTimeout(socketTimeoutMs).
+            build());
+        return execute(httpPost, idempotent);
+    }
+
+    private HttpPost buildHttpPost(URI uri, HttpEntity entity) {
+        HttpPost httpPost = new HttpPost(uri);
+        httpPost.setHeader(HttpHeaders.USER_AGENT, userAgent);
+        httpPost.setHeader(entity.getContentType());
+        httpPost.addHeader(HttpHeaders.ACCEPT_ENCODING, HttpCompression.ACCEPT_ENCODING);
+        httpPost.addHeader(datasyncVersionHeader, VersionProvider.getThisVersion());
+        httpPost.setEntity(entity);
+        if (proxyConfig != null)
+            httpPost.setConfig(proxyConfig);
+        if (authRequired) {
+            httpPost.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
+            httpPost.setHeader(appHeader, appToken);
+        }
+        return httpPost;
+    }
+
+    /**
+     * Gzips (textual) request bodies of at least the given size; endpoints that answer a gzipped
+     * body with 415 Unsupported Media Type are sent it again uncompressed, and are remembered.
+     * Off by default, since not every endpoint accepts compressed bodies.
+     * @param thresholdBytes the smallest body to compress, or a negative number to never compress
+     */
+    public void setRequestCompressionThreshold(int thresholdBytes) {
+        requestCompressionThreshold = thresholdBytes;
+    }
+
+    /**
+     * The underlying client is shared by the whole process (see HttpClientRegistry), so this does
+     * not close any connections; it is kept so callers can keep treating HttpUtility as a resource.
+     */
+    public void close() throws IOException {
+    }
+
+    /**
+     * Aborts the request the given thread is making, or whose response it is reading, so that a job blocked
+     * on the network can be cancelled (blocking sockets ignore interrupts). The thread sees an IOException;
+     * interrupt it first so that the request isn't retried.
+     */
+    public static void abortRequestOf(Thread thread) {
+        HttpRequestBase request = latestRequests.get(thread);
+        if (request != null)
+            request.abort();
+    }
+
+    /**
+     * Executes the request, retrying failures of idempotent requests as the shared RetryPolicy
+     * allows. Waits between attempts happen on the calling thread; the policy's circuit breakers
+     * and retry budget bound how long a thread can spend waiting on a failing host.
+     */
+    private CloseableHttpResponse execute(HttpRequestBase request, boolean idempotent) throws IOException {
+        String host = request.getURI().getHost();
+        boolean retriable = idempotent && isRepeatable(request);
+        // Do not retry calls to the github api
+        if (host != null && host.contains("github"))
+            retriable = false;
+
+        HttpEntity uncompressed = null;
+        if (requestCompressionThreshold >= 0 && request instanceof HttpEntityEnclosingRequest) {
+            HttpEntityEnclosingRequest withBody = (HttpEntityEnclosingRequest) request;
+            HttpEntity compressed = HttpCompression.compressRequest(withBody.getEntity(), request.getURI(), requestCompressionThreshold);
+            if (compressed != null) {
+                uncompressed = withBody.getEntity();
+                withBody.setEntity(compressed);
+            }
+        }
+
+        long baseDelayMs = Math.max(1L, Math.round(retryDelayFactor * 1000));
+        long delayMs = baseDelayMs;
+        int attempt = 0;
+        while (true) {
+            // published before checking for an interrupt, so that a cancel coming after the check aborts it
+            latestRequests.put(Thread.currentThread(), request);
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException("Cancelled before requesting " + request.getURI());
+            retryPolicy.beforeRequest(host);
+            boolean outcomeRecorded = false;
+            try {
+                CloseableHttpResponse response = httpClient.execute(request, newContext());
+                retryPolicy.onSuccess(host);
+                outcomeRecorded = true;
+                if (uncompressed != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+                    // the endpoint does not take gzipped bodies; nothing was processed, so send it plainly
+                    response.close();
+                    HttpCompression.markRejected(request.getURI());
+                    ((HttpEntityEnclosingRequest) request).setEntity(uncompressed);
+                    uncompressed = null;
+                    request.reset();
+                    continue;
+                }
+                HttpCompression.decodeResponse(response, request.getURI());
+                return response;
+            } catch (ClientProtocolException e) {
+                // the server answered; this is not a transient transport failure
+                retryPolicy.onSuccess(host);
+                outcomeRecorded = true;
+                throw e;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted())
+                    throw e; // cancelled, rather than a failure of the host
+                retryPolicy.onFailure(host);
+                outcomeRecorded = true;
+                if (!retriable || attempt >= maxRetries || !retryPolicy.tryAcquireRetry())
+                    throw e;
+                attempt++;
+                delayMs = retryPolicy.nextDelayMs(baseDelayMs, delayMs);
+                System.err.println("Request failed. Retrying request in " + Math.round(delayMs / 1000.0) + " seconds");
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to retry " + request.getURI());
+                }
+                retryPolicy.recordBackoff(delayMs);
+                request.reset();
+            } finally {
+                if (!outcomeRecorded)
+                    retryPolicy.onAbandoned(host);
+            }
+        }
+    }
+
+    /**
+     * Starts a get on the shared asynchronous client; the calling thread is not blocked.
+     * The response body is buffered in memory, so this is meant for small (e.g. JSON) responses.
+     * @param uri the uri from which the get will be made
+     * @param contentType the expected contentType of the return value
+     * @return a future holding the response
+     */
+    public ListenableFuture<HttpResponse> getAsync(URI uri, String contentType) {
+        return executeAsync(buildHttpGet(uri, contentType), true);
+    }
+
+    /**
+     * Starts a post on the shared asynchronous client; the calling thread is not blocked.
+     * @param uri  the uri to which the entity will be posted
+     * @param entity an entity to post
+     * @param idempotent whether the post may safely be sent again if it fails
+     * @return a future holding the response
+     */
+    public ListenableFuture<HttpResponse> postAsync(URI uri, HttpEntity entity, boolean idempotent) {
+        return executeAsync(buildHttpPost(uri, entity), idempotent);
+    }
+
+    /**
+     * The asynchronous counterpart of execute: retries follow the same RetryPolicy, but the wait
+     * before a retry is scheduled rather than slept, so no thread is held while waiting.
+     */
+    private ListenableFuture<HttpResponse> executeAsync(final HttpRequestBase request, boolean idempotent) {
+        final SettableFuture<HttpResponse> result = SettableFuture.create();
+        final String host = request.getURI().getHost();
+        final boolean retriable = idempotent && isRepeatable(request) && !(host != null && host.contains("github"));
+        final long baseDelayMs = Math.max(1L, Math.round(retryDelayFactor * 1000));
+
+        new Runnable() {
+            int attempt = 0;
+            long delayMs = baseDelayMs;
+
+            @Override
+            public void run() {
+                if (result.isCancelled())
+                    return;
+                try {
+                    retryPolicy.beforeRequest(host);
+                } catch (RetryPolicy.CircuitOpenException e) {
+                    result.setException(e);
+                    return;
+                }
+                final Runnable self = this;
+                request.reset();
+                final Future<HttpResponse> sent = HttpClientRegistry.getSharedAsyncClient().execute(request, newContext(),
+                        new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(HttpResponse response) {
+                        retryPolicy.onSuccess(host);
+                        HttpCompression.decodeResponse(response, request.getURI());
+                        result.set(response);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        if (e instanceof ClientProtocolException) {
+                            // as in execute, the server answered; this is not a transient transport failure
+                            retryPolicy.onSuccess(host);
+                            result.setException(e);
+                            return;
+                        }
+                        retryPolicy.onFailure(host);
+                        if (!(e instanceof IOException) || !retriable || attempt >= maxRetries || !retryPolicy.tryAcquireRetry()) {
+                            result.setException(e);
+                            return;
+                        }
+                        attempt++;
+                        delayMs = retryPolicy.nextDelayMs(baseDelayMs, delayMs);
+                        System.err.println("Request failed. Retrying request in " + Math.round(delayMs / 1000.0) + " seconds");
+                        retryPolicy.recordBackoff(delayMs);
+                        HttpClientRegistry.getRetryScheduler().schedule(self, delayMs, TimeUnit.MILLISECONDS);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        retryPolicy.onAbandoned(host);
+                        result.cancel(false);
+                    }
+                });
+                // cancelling the result stops the attempt under way
+                result.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (result.isCancelled())
+                            sent.cancel(true);
+                    }
+                }, MoreExecutors.sameThreadExecutor());
+            }
+        }.run();
+        return result;
+    }
+
+    private static boolean isRepeatable(HttpRequestBase request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+
+    private HttpClientContext newContext() {
+        HttpClientContext context = HttpClientContext.create();
+        if (proxyCredentials != null)
+            context.setCredentialsProvider(proxyCredentials);
+        return context;
+    }
+
+    private String getAuthHeader(String username, String password) {
+        String auth = username + ":" + password;
+        byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(Charset.forName("US-ASCII")));
+        return "Basic " + new String(encodedAuth);
+    }
+
+    private boolean canUse(String option) {
+        return option != null && !option.isEmpty();
+    }
+}
@@ -0,0 +1,397 @@
+package com.socrata.datasync;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.config.userpreferences.UserPreferences;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes job results to a log dataset in the background, so that a job does not wait on the log
+ * dataset before it finishes.
+ *
+ * Rows are queued and upserted in batches by a background thread, either every couple of seconds
+ * or as soon as a full batch is waiting. Rows that cannot be written because the log dataset is
+ * unreachable (or answers with a server error) are spooled to local disk, one JSON row per line,
+ * and sent ahead of new rows on a later flush, by this or any later DataSync process. While the log
+ * dataset stays unreachable, the wait between flushes doubles after each failed flush, up to five
+ * minutes, and goes back to the usual interval once a flush succeeds. A batch the dataset rejects outright is split up until the rows it objects to are found; those are reported
+ * and dropped, since sending them again would not help, and the rest are written.
+ *
+ * The shared sinks are flushed when the JVM exits.
+ */
+public class LogDatasetSink implements Closeable {
+
+    public static final int DEFAULT_MAX_BATCH_ROWS = 500;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 2000;
+
+    private static final File DEFAULT_SPOOL_DIRECTORY =
+        new File(System.getProperty("user.home"), ".datasync" + File.separator + "log-spool");
+    private static final String SPOOL_EXTENSION = ".jsonl";
+    private static final String SENDING_EXTENSION = ".sending";
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+    // spool files claimed longer ago than this were left by a process that died while sending them
+    private static final long STALE_CLAIM_MS = 10 * 60 * 1000;
+    private static final long MAX_FLUSH_INTERVAL_MS = 5 * 60 * 1000;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ConcurrentMap<String, LogDatasetSink> sharedSinks = new ConcurrentHashMap<>();
+    private static final AtomicBoolean shutdownHookInstalled = new AtomicBoolean(false);
+
+    private final HttpUtility http;
+    private final URI resourceUri;
+    private final File spoolDirectory;
+    private final String spoolPrefix;
+    private final int maxBatchRows;
+    private final long flushIntervalMs;
+    private final ConcurrentLinkedQueue<Map<String, Object>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final ScheduledThreadPoolExecutor flusher;
+    private volatile boolean closed = false;
+    // the wait before the next background flush; longer than flushIntervalMs while the log dataset is unreachable
+    private volatile long flushDelayMs;
+
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsSpooled = new AtomicLong();
+    private final AtomicLong rowsDropped = new AtomicLong();
+
+    /**
+     * @return the sink shared by every job in this JVM that logs to the log dataset of the given preferences
+     */
+    public static LogDatasetSink forPreferences(UserPreferences userPrefs) {
+        String domain = userPrefs.getConnectionInfo().getUrl();
+        String logDatasetID = userPrefs.getLogDatasetID();
+        String key = domain + "/" + logDatasetID;
+        LogDatasetSink sink = sharedSinks.get(key);
+        if (sink == null) {
+            URI resourceUri;
+            try {
+                resourceUri = new URI(domain + "/resource/" + logDatasetID + ".json");
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid log dataset " + key, e);
+            }
+            LogDatasetSink created = new LogDatasetSink(new HttpUtility(userPrefs, true, 2, 1.0), resourceUri,
+                DEFAULT_SPOOL_DIRECTORY, DEFAULT_MAX_BATCH_ROWS, DEFAULT_FLUSH_INTERVAL_MS);
+            sink = sharedSinks.putIfAbsent(key, created);
+            if (sink == null) {
+                sink = created;
+                installShutdownHook();
+            } else {
+                created.close();
+            }
+        }
+        return sink;
+    }
+
+    /**
+     * Flushes and closes every shared sink.
+     */
+    public static void closeAll() {
+        for (String key : new ArrayList<>(sharedSinks.keySet())) {
+            LogDatasetSink sink = sharedSinks.remove(key);
+            if (sink != null)
+                sink.close();
+        }
+    }
+
+    private static void installShutdownHook() {
+        if (shutdownHookInstalled.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    closeAll();
+                }
+            }, "datasync-log-sink-shutdown"));
+        }
+    }
+
+    /**
+     * @param http the client to upsert rows with
+     * @param resourceUri the log dataset's resource endpoint, e.g. https://example.com/resource/abcd-1234.json
+     * @param spoolDirectory where to keep rows that could not be written
+     * @param maxBatchRows the most rows to send in one upsert
+     * @param flushIntervalMs how often to send queued rows while the log dataset is reachable
+     */
+    public LogDatasetSink(HttpUtility http, URI resourceUri, File spoolDirectory, int maxBatchRows, long flushIntervalMs) {
+        this.http = http;
+        this.resourceUri = resourceUri;
+        this.spoolDirectory = spoolDirectory;
+        this.spoolPrefix = (resourceUri.getHost() + resourceUri.getPath()).replaceAll("[^A-Za-z0-9.-]", "_") + "-";
+        this.maxBatchRows = maxBatchRows;
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushDelayMs = flushIntervalMs;
+        releaseStaleClaims();
+        this.flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "datasync-log-sink");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // close() sends what is left itself, rather than waiting out the next flush
+        flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        try {
+            flusher.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushQuietly();
+                    scheduleFlush();
+                }
+            }, flushDelayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Queues a row for the log dataset; returns immediately.
+     */
+    public void add(Map<String, Object> row) {
+        queue.add(row);
+        int waiting = queued.incrementAndGet();
+        if (closed) {
+            // too late for the background thread; send it (or keep it for the next run) now
+            flushQuietly();
+            return;
+        }
+        // a full batch is sent straight away, unless the log dataset is unreachable and the flushes are backing off
+        if (waiting >= maxBatchRows && flushDelayMs == flushIntervalMs && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushQuietly();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                flushQuietly();
+            }
+        }
+    }
+
+    /**
+     * Sends any spooled and queued rows now.
+     * @return true if nothing is left waiting for the log dataset to become reachable
+     */
+    public synchronized boolean flush() {
+        flushRequested.set(false);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<File> claimed = claimSpoolFiles(rows);
+        Map<String, Object> row;
+        while ((row = queue.poll()) != null) {
+            queued.decrementAndGet();
+            rows.add(row);
+        }
+        if (rows.isEmpty())
+            return true;
+
+        int sent = 0;
+        while (sent < rows.size()) {
+            List<Map<String, Object>> batch = rows.subList(sent, Math.min(rows.size(), sent + maxBatchRows));
+            int handled = send(batch);
+            sent += handled;
+            if (handled < batch.size())
+                break;
+        }
+        boolean allSent = sent == rows.size();
+        if (!allSent)
+            spool(rows.subList(sent, rows.size()));
+        flushDelayMs = allSent ? flushIntervalMs : Math.min(flushDelayMs * 2, Math.max(flushIntervalMs, MAX_FLUSH_INTERVAL_MS));
+        for (File file : claimed)
+            file.delete();
+        return allSent;
+    }
+
+    /**
+     * Stops the background thread and sends (or spools) whatever is still queued.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public long getRowsSpooled() {
+        return rowsSpooled.get();
+    }
+
+    public long getRowsDropped() {
+        return rowsDropped.get();
+    }
+
+    /**
+     * @return how long the background thread waits before its next flush
+     */
+    public long getFlushDelayMs() {
+        return flushDelayMs;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Error writing to the log dataset " + resourceUri + ": " + e);
+        }
+    }
+
+    /**
+     * Sends the batch, splitting it up if the dataset rejects it so that one bad row doesn't cost the rest.
+     * @return how many rows from the start of the batch were written or rejected; the rows after those
+     * should be kept and sent again later
+     */
+    private int send(List<Map<String, Object>> batch) {
+        try {
+            StringEntity entity = new StringEntity(mapper.writeValueAsString(batch), ContentType.APPLICATION_JSON);
+            // re-sending may duplicate a log row, which is preferable to losing it
+            try (CloseableHttpResponse response = http.post(resourceUri, entity, true)) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == HttpStatus.SC_OK) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    rowsWritten.addAndGet(batch.size());
+                    return batch.size();
+                }
+                String message = response.getStatusLine() + ": " + EntityUtils.toString(response.getEntity());
+                if (statusCode >= 500 || statusCode == HttpStatus.SC_REQUEST_TIMEOUT || statusCode == 429) {
+                    System.err.println("Log dataset " + resourceUri + " is unavailable (" + message + ")");
+                    return 0;
+                }
+                if (batch.size() == 1) {
+                    System.err.println("Log dataset " + resourceUri + " rejected the row " +
+                        mapper.writeValueAsString(batch.get(0)) + ": " + message);
+                    rowsDropped.incrementAndGet();
+                    return 1;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not reach log dataset " + resourceUri + ": " + e.getMessage());
+            return 0;
+        }
+        int half = batch.size() / 2;
+        int handled = send(batch.subList(0, half));
+        if (handled < half)
+            return handled;
+        return half + send(batch.subList(half, batch.size()));
+    }
+
+    /**
+     * Takes over the spool files left for this log dataset (by this or another process) by renaming
+     * them, so two processes never send the same spooled rows, and reads their rows.
+     */
+    private List<File> claimSpoolFiles(List<Map<String, Object>> rows) {
+        List<File> claimed = new ArrayList<>();
+        File[] spooled = spoolDirectory.listFiles();
+        if (spooled == null)
+            return claimed;
+        for (File file : spooled) {
+            String name = file.getName();
+            if (!name.startsWith(spoolPrefix) || !name.endsWith(SPOOL_EXTENSION))
+                continue;
+            File claim = new File(spoolDirectory, name + SENDING_EXTENSION);
+            try {
+                Files.move(file.toPath(), claim.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                continue; // someone else got it first
+            }
+            claim.setLastModified(System.currentTimeMillis()); // see releaseStaleClaims
+            try (BufferedReader reader = Files.newBufferedReader(claim.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty())
+                        rows.add(mapper.<Map<String, Object>>readValue(line, new TypeReference<Map<String, Object>>() {}));
+                }
+                claimed.add(claim);
+            } catch (IOException e) {
+                System.err.println("Could not read spooled log rows from " + claim + ": " + e.getMessage());
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Puts back the spool files for this log dataset that a process claimed and then never sent or
+     * deleted (it died part way through a flush), so that their rows are sent by a later flush.
+     */
+    private void releaseStaleClaims() {
+        File[] spooled = spoolDirectory.listFiles();
+        if (spooled == null)
+            return;
+        long staleBefore = System.currentTimeMillis() - STALE_CLAIM_MS;
+        for (File file : spooled) {
+            String name = file.getName();
+            if (!name.startsWith(spoolPrefix) || !name.endsWith(SPOOL_EXTENSION + SENDING_EXTENSION) ||
+                    file.lastModified() >= staleBefore)
+                continue;
+            File unclaimed = new File(spoolDirectory, name.substring(0, name.length() - SENDING_EXTENSION.length()));
+            try {
+                Files.move(file.toPath(), unclaimed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // another process put it back (or is sending it) already
+            }
+        }
+    }
+
+    private void spool(List<Map<String, Object>> rows) {
+        spoolDirectory.mkdirs();
+        File file = new File(spoolDirectory, spoolPrefix + UUID.randomUUID() + SPOOL_EXTENSION);
+        File temp = new File(spoolDirectory, file.getName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map<String, Object> row : rows) {
+                    writer.write(mapper.writeValueAsString(row));
+                    writer.newLine();
+                }
+            }
+            // rename into place so a concurrent flush never reads a half-written spool file
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            rowsSpooled.addAndGet(rows.size());
+            System.err.println("Saved " + rows.size() + " log rows to " + file + "; they will be sent on a later run");
+        } catch (IOException e) {
+            temp.delete();
+            System.err.println("Lost " + rows.size() + " log rows for " + resourceUri + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.socrata.datasync;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.config.userpreferences.UserPreferences;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Caches remote metadata (dataset schemas, the supported charsets, a domain's region) so that
+ * repeated jobs against the same domain make few metadata requests.
+ *
+ * Responses are held in an in-memory LRU and written through to a directory on disk. Once an
+ * entry is older than the TTL of its resource type it is revalidated with a conditional GET
+ * (If-None-Match / If-Modified-Since), so an unchanged resource costs a 304 rather than a download.
+ * Should the server be unreachable or fail with a server error while revalidating, the stale entry is
+ * used; any other answer, such as a 404, is an error.
+ */
+public class MetadataCache {
+
+    public enum ResourceType {
+        SCHEMA(5 * 60 * 1000L),
+        CHARSETS(24 * 60 * 60 * 1000L),
+        REGION(24 * 60 * 60 * 1000L);
+
+        public final long ttlMs;
+
+        ResourceType(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final File DEFAULT_DIRECTORY =
+        new File(System.getProperty("user.home"), ".datasync" + File.separator + "metadata-cache");
+    private static final MetadataCache defaultCache = new MetadataCache(DEFAULT_DIRECTORY, DEFAULT_MAX_ENTRIES);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final File directory;
+    private final Map<String, Entry> entries;
+    private final Map<String, Loaded> loadedObjects;
+
+    private long hits = 0;
+    private long revalidations = 0;
+    private long downloads = 0;
+    private long staleHits = 0;
+
+    /**
+     * @param directory where entries are persisted between runs, or null to keep them in memory only
+     * @param maxEntries how many entries to keep in memory
+     */
+    public MetadataCache(File directory, int maxEntries) {
+        this.directory = directory;
+        this.entries = lruMap(maxEntries);
+        this.loadedObjects = lruMap(maxEntries);
+    }
+
+    /**
+     * @return the cache shared by the whole process, persisted under ~/.datasync/metadata-cache
+     */
+    public static MetadataCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Returns the resource at the given uri, from the cache if it is fresh, otherwise from the server.
+     * @param userPrefs the preferences used for credentials and proxy settings
+     * @param useAuth whether to send credentials with the request
+     * @param uri the resource to fetch
+     * @param type the kind of resource, which determines how long it is trusted without revalidating
+     * @throws IOException if the resource could not be fetched and there is no cached copy to fall back on
+     */
+    public Entry get(UserPreferences userPrefs, boolean useAuth, URI uri, ResourceType type) throws IOException {
+        String key = cacheKey(userPrefs, useAuth, uri.toString());
+        Entry cached = lookup(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.fetchedAt < type.ttlMs) {
+            synchronized (this) { hits++; }
+            return cached;
+        }
+
+        Map<String, String> conditionalHeaders = new HashMap<>();
+        if (cached != null && cached.etag != null)
+            conditionalHeaders.put(HttpHeaders.IF_NONE_MATCH, cached.etag);
+        if (cached != null && cached.lastModified != null)
+            conditionalHeaders.put(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified);
+
+        HttpUtility http = new HttpUtility(userPrefs, useAuth);
+        CloseableHttpResponse response;
+        try {
+            response = http.get(uri, "application/json", conditionalHeaders);
+        } catch (IOException e) {
+            http.close();
+            if (cached == null)
+                throw e;
+            return stale(cached, uri, e.getMessage());
+        }
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity body = response.getEntity();
+            if (status >= 500 && cached != null) {
+                EntityUtils.consumeQuietly(body);
+                return stale(cached, uri, response.getStatusLine().toString());
+            }
+            if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                EntityUtils.consumeQuietly(body);
+                cached.fetchedAt = now;
+                store(key, cached);
+                synchronized (this) { revalidations++; }
+                return cached;
+            }
+            if (status < 200 || status >= 300) {
+                EntityUtils.consumeQuietly(body);
+                throw new IOException("Could not fetch " + uri + ": " + response.getStatusLine());
+            }
+
+            Entry fresh = new Entry();
+            fresh.url = uri.toString();
+            fresh.body = body == null ? "" : EntityUtils.toString(body, StandardCharsets.UTF_8);
+            fresh.etag = headerValue(response.getFirstHeader(HttpHeaders.ETAG));
+            fresh.lastModified = headerValue(response.getFirstHeader(HttpHeaders.LAST_MODIFIED));
+            fresh.fetchedAt = now;
+            for (Header h : response.getAllHeaders()) {
+                if (h.getName().toLowerCase().startsWith("x-socrata-"))
+                    fresh.headers.put(h.getName().toLowerCase(), h.getValue());
+            }
+            store(key, fresh);
+            synchronized (this) { downloads++; }
+            return fresh;
+        } finally {
+            response.close();
+            http.close();
+        }
+    }
+
+    private Entry stale(Entry cached, URI uri, String problem) {
+        System.err.println("Could not revalidate " + uri + " (" + problem + "); using the copy cached " +
+            new Date(cached.fetchedAt));
+        synchronized (this) { staleHits++; }
+        return cached;
+    }
+
+    /**
+     * Memoizes an object that can only be loaded through another client (e.g. soda-java), keeping
+     * it in memory for the TTL of its resource type. Such objects are not written to disk, since
+     * they cannot be revalidated.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoad(String key, ResourceType type, Callable<T> loader) throws Exception {
+        long now = System.currentTimeMillis();
+        synchronized (loadedObjects) {
+            Loaded loaded = loadedObjects.get(key);
+            if (loaded != null && now - loaded.loadedAt < type.ttlMs) {
+                synchronized (this) { hits++; }
+                return (T) loaded.value;
+            }
+        }
+        T value = loader.call();
+        synchronized (loadedObjects) {
+            loadedObjects.put(key, new Loaded(value, now));
+        }
+        synchronized (this) { downloads++; }
+        return value;
+    }
+
+    /**
+     * Forgets everything held in memory; entries on disk are kept and revalidated on next use.
+     */
+    public void clearMemory() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        synchronized (loadedObjects) {
+            loadedObjects.clear();
+        }
+    }
+
+    public synchronized long getHitCount() { return hits; }
+
+    public synchronized long getRevalidationCount() { return revalidations; }
+
+    public synchronized long getDownloadCount() { return downloads; }
+
+    public synchronized long getStaleHitCount() { return staleHits; }
+
+    private Entry lookup(String key) {
+        synchronized (entries) {
+            Entry e = entries.get(key);
+            if (e != null)
+                return e;
+        }
+        Entry fromDisk = readFromDisk(key);
+        if (fromDisk != null) {
+            synchronized (entries) {
+                entries.put(key, fromDisk);
+            }
+        }
+        return fromDisk;
+    }
+
+    private void store(String key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        if (directory == null)
+            return;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                return;
+            File target = fileFor(key);
+            File temp = new File(directory, target.getName() + ".tmp");
+            mapper.writeValue(temp, entry);
+            if (!temp.renameTo(target)) {
+                target.delete();
+                temp.renameTo(target);
+            }
+        } catch (IOException e) {
+            // the disk copy is only an optimization; the in-memory entry is still good
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        if (directory == null)
+            return null;
+        File file = fileFor(key);
+        if (!file.isFile())
+            return null;
+        try {
+            return mapper.readValue(file, Entry.class);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, sha1(key) + ".json");
+    }
+
+    private static String cacheKey(UserPreferences userPrefs, boolean useAuth, String url) {
+        // cache per user, since what a user may see of a dataset depends on who they are
+        String user = (useAuth && userPrefs != null && userPrefs.getUsername() != null) ? userPrefs.getUsername() : "";
+        return user + " " + url;
+    }
+
+    private static String headerValue(Header header) {
+        return header == null ? null : header.getValue();
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest)
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static <V> Map<String, V> lruMap(final int maxEntries) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static class Loaded {
+        final Object value;
+        final long loadedAt;
+
+        Loaded(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * A cached response: its body, validators and any X-Socrata-* headers.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Entry {
+        public String url;
+        public String body;
+        public String etag;
+        public String lastModified;
+        public long fetchedAt;
+        public Map<String, String> headers = new HashMap<>();
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+    }
+}
@@ -162,35 +162,42 @@ public class PortUtility {
         final File tempFile = File.createTempFile("replacement_dataset", ".json");
         tempFile.createNewFile();
         tempFile.deleteOnExit();
-        try (FileWriter tempOut = new FileWriter(tempFile, true)) {
-
-            tempOut.write("[\n");
-            do {
-                myQuery = new SoqlQueryBuilder().setOffset(offset).build();
-                response = streamExporter.query(sourceSetID, HttpLowLevel.JSON_TYPE, myQuery);
-                rowSet = mapper.readValue(response.readEntity(InputStream.class),
-                                          new TypeReference<List<Map<String, Object>>>() {
-                                          }
-                                          );
-                if (batchesRead > 0 && rowSet.size() > 0)
-                    tempOut.write(",\n");
-                for (int i = 0; i < rowSet.size(); i++) {
-                    mapper.writeValue(tempOut, rowSet.get(i));
-                    if (i != rowSet.size() - 1)
+        try {
+            try (FileWriter tempOut = new FileWriter(tempFile, true)) {
+                tempOut.write("[\n");
+                do {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedException("Cancelled while gathering rows for replacement");
+                    myQuery = new SoqlQueryBuilder().setOffset(offset).build();
+                    response = streamExporter.query(sourceSetID, HttpLowLevel.JSON_TYPE, myQuery);
+                    rowSet = mapper.readValue(response.readEntity(InputStream.class),
+                                              new TypeReference<List<Map<String, Object>>>() {
+                                              }
+                                              );
+                    if (batchesRead > 0 && rowSet.size() > 0)
                         tempOut.write(",\n");
-                }
-                offset += rowSet.size();
-                batchesRead += 1;
-                System.out.println("\tGathered " + Utils.ordinal(batchesRead) + " batch of 1000 rows for replacement");
-                response.close();
-            } while (rowSet.size() > 0);
-            tempOut.write("\n]");
-        }
+                    for (int i = 0; i < rowSet.size(); i++) {
+                        mapper.writeValue(tempOut, rowSet.get(i));
+                        if (i != rowSet.size() - 1)
+                            tempOut.write(",\n");
+                    }
+                    offset += rowSet.size();
+                    batchesRead += 1;
+                    System.out.println("\tGathered " + Utils.ordinal(batchesRead) + " batch of 1000 rows for replacement");
+                    response.close();
+                } while (rowSet.size() > 0);
+                tempOut.write("\n]");
+            }
 
-        System.out.print("\tReplacing data . . .");
-        FileInputStream replacementFile = new FileInputStream(tempFile);
-        streamUpserter.replaceStream(sinkSetID, HttpLowLevel.JSON_TYPE, replacementFile);
-        System.out.println();
+            System.out.print("\tReplacing data . . .");
+            try (FileInputStream replacementFile = new FileInputStream(tempFile)) {
+                streamUpserter.replaceStream(sinkSetID, HttpLowLevel.JSON_TYPE, replacementFile);
+            }
+            System.out.println();
+        } finally {
+            // don't leave it until exit; a cancelled port may be followed by many more in the same session
+            tempFile.delete();
+        }
     }
 
     public static JobStatus assertSchemasAreAlike(SodaDdl sourceChecker, SodaDdl sinkChecker, String sourceSetID, String sinkSetID)
@@ -0,0 +1,25 @@
+package com.socrata.datasync;
+
+/**
+ * Receives progress updates from long-running publishers, so that they can report progress
+ * without depending on the GUI (and without loading Swing when run from the command line).
+ */
+public interface ProgressListener {
+
+    /**
+     * @param loadingLabel a short description of the current step
+     * @param progressPercent how far through the step the publisher is, if showProgress is true
+     * @param showProgress whether progressPercent is meaningful for this step
+     * @param message any further detail, shown when there is no progress percentage
+     */
+    void updateStatus(String loadingLabel, int progressPercent, boolean showProgress, String message);
+
+    /**
+     * Ignores all updates; the default when nobody is listening.
+     */
+    ProgressListener NONE = new ProgressListener() {
+        @Override
+        public void updateStatus(String loadingLabel, int progressPercent, boolean showProgress, String message) {
+        }
+    };
+}
@@ -0,0 +1,206 @@
+package com.socrata.datasync;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether and when failed HTTP requests are retried.
+ *
+ * <ul>
+ *   <li>Delays between attempts use decorrelated jitter: each delay is drawn uniformly from
+ *   [base, 3 * previous delay] and capped, so clients that failed together do not retry together.</li>
+ *   <li>A process-wide retry budget (a token bucket refilled by successful requests) stops retries
+ *   from multiplying load when most requests are failing.</li>
+ *   <li>Each host has a circuit breaker: after several consecutive failures requests to that host
+ *   fail immediately until a cool-down has passed, after which a single trial request is let through.</li>
+ * </ul>
+ *
+ * The policy itself never sleeps; callers ask it for the next delay and wait however suits them.
+ */
+public class RetryPolicy {
+
+    public static final long DEFAULT_MAX_DELAY_MS = 30 * 1000;
+    public static final int DEFAULT_FAILURES_TO_OPEN_CIRCUIT = 5;
+    public static final long DEFAULT_CIRCUIT_OPEN_MS = 30 * 1000;
+    public static final double DEFAULT_RETRY_BUDGET = 20.0;
+    public static final double DEFAULT_BUDGET_REFILL_PER_SUCCESS = 0.1;
+
+    private static final RetryPolicy defaultPolicy = new RetryPolicy(DEFAULT_MAX_DELAY_MS,
+        DEFAULT_FAILURES_TO_OPEN_CIRCUIT, DEFAULT_CIRCUIT_OPEN_MS, DEFAULT_RETRY_BUDGET, DEFAULT_BUDGET_REFILL_PER_SUCCESS);
+
+    private final long maxDelayMs;
+    private final int failuresToOpenCircuit;
+    private final long circuitOpenMs;
+    private final double maxBudget;
+    private final double budgetRefillPerSuccess;
+
+    private final Random random = new Random();
+    private final ConcurrentMap<String, CircuitBreaker> circuits = new ConcurrentHashMap<>();
+    private double budget;
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesDeniedByBudget = new AtomicLong();
+    private final AtomicLong fastFailures = new AtomicLong();
+    private final AtomicLong totalBackoffMs = new AtomicLong();
+
+    public RetryPolicy(long maxDelayMs, int failuresToOpenCircuit, long circuitOpenMs,
+                       double retryBudget, double budgetRefillPerSuccess) {
+        this.maxDelayMs = maxDelayMs;
+        this.failuresToOpenCircuit = failuresToOpenCircuit;
+        this.circuitOpenMs = circuitOpenMs;
+        this.maxBudget = retryBudget;
+        this.budgetRefillPerSuccess = budgetRefillPerSuccess;
+        this.budget = retryBudget;
+    }
+
+    /**
+     * @return the policy shared by every HttpUtility in the process
+     */
+    public static RetryPolicy getDefault() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Fails fast if the circuit for the given host is open.
+     * @throws CircuitOpenException if requests to the host should not be attempted right now
+     */
+    public void beforeRequest(String host) throws CircuitOpenException {
+        if (!circuitFor(host).allowRequest(System.currentTimeMillis())) {
+            fastFailures.incrementAndGet();
+            throw new CircuitOpenException(host);
+        }
+    }
+
+    public void onSuccess(String host) {
+        circuitFor(host).recordSuccess();
+        synchronized (this) {
+            budget = Math.min(maxBudget, budget + budgetRefillPerSuccess);
+        }
+    }
+
+    public void onFailure(String host) {
+        circuitFor(host).recordFailure(System.currentTimeMillis());
+    }
+
+    /**
+     * Records that a request let through by beforeRequest ended without a verdict on the host (it was
+     * cancelled, or failed locally), so that a trial request it was doesn't hold the circuit open.
+     */
+    public void onAbandoned(String host) {
+        circuitFor(host).releaseTrial();
+    }
+
+    /**
+     * Takes one retry from the global budget.
+     * @return false if the budget is exhausted and the request should not be retried
+     */
+    public boolean tryAcquireRetry() {
+        synchronized (this) {
+            if (budget >= 1.0) {
+                budget -= 1.0;
+                retries.incrementAndGet();
+                return true;
+            }
+        }
+        retriesDeniedByBudget.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @param baseDelayMs the smallest delay to use
+     * @param previousDelayMs the delay used before the previous attempt (baseDelayMs for the first retry)
+     * @return the delay to wait before the next attempt
+     */
+    public long nextDelayMs(long baseDelayMs, long previousDelayMs) {
+        long upper = Math.max(baseDelayMs, previousDelayMs * 3);
+        long delay;
+        synchronized (random) {
+            delay = baseDelayMs + (long) (random.nextDouble() * (upper - baseDelayMs));
+        }
+        return Math.min(maxDelayMs, delay);
+    }
+
+    /**
+     * Records time spent waiting before a retry, for the metrics below.
+     */
+    public void recordBackoff(long delayMs) {
+        totalBackoffMs.addAndGet(delayMs);
+    }
+
+    public long getRetryCount() { return retries.get(); }
+
+    public long getRetriesDeniedByBudget() { return retriesDeniedByBudget.get(); }
+
+    public long getFastFailureCount() { return fastFailures.get(); }
+
+    public long getTotalBackoffMs() { return totalBackoffMs.get(); }
+
+    public synchronized double getRemainingBudget() { return budget; }
+
+    public boolean isCircuitOpen(String host) {
+        return !circuitFor(host).isClosed(System.currentTimeMillis());
+    }
+
+    public String metricsSummary() {
+        return getRetryCount() + " retries, " + getRetriesDeniedByBudget() + " denied by retry budget, " +
+            getFastFailureCount() + " fast failures, " + getTotalBackoffMs() + "ms backing off";
+    }
+
+    private CircuitBreaker circuitFor(String host) {
+        String key = host == null ? "" : host;
+        CircuitBreaker circuit = circuits.get(key);
+        if (circuit == null) {
+            circuits.putIfAbsent(key, new CircuitBreaker());
+            circuit = circuits.get(key);
+        }
+        return circuit;
+    }
+
+    private class CircuitBreaker {
+        private int consecutiveFailures = 0;
+        private long openUntil = 0L;
+        private boolean trialInFlight = false;
+
+        synchronized boolean allowRequest(long now) {
+            if (consecutiveFailures < failuresToOpenCircuit)
+                return true;
+            if (now < openUntil || trialInFlight)
+                return false;
+            // half open: let a single trial request through
+            trialInFlight = true;
+            return true;
+        }
+
+        synchronized boolean isClosed(long now) {
+            return consecutiveFailures < failuresToOpenCircuit || (now >= openUntil && !trialInFlight);
+        }
+
+        synchronized void recordSuccess() {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void releaseTrial() {
+            trialInFlight = false;
+        }
+
+        synchronized void recordFailure(long now) {
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (consecutiveFailures >= failuresToOpenCircuit)
+                openUntil = now + circuitOpenMs;
+        }
+    }
+
+    /**
+     * Thrown instead of attempting a request to a host whose circuit is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String host) {
+            super("Not contacting " + host + ": too many recent failures, will try again shortly");
+        }
+    }
+}
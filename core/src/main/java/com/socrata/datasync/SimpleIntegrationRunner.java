@@ -0,0 +1,352 @@
+package com.socrata.datasync;
+
+import com.socrata.datasync.job.IntegrationJob;
+import com.socrata.datasync.job.Job;
+import com.socrata.datasync.job.JobFiles;
+import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.PortJob;
+import com.socrata.datasync.job.GISJob;
+import com.socrata.datasync.job.GISJob.ControlDisagreementException;
+import com.socrata.datasync.job.MetadataJob;
+import com.socrata.datasync.job.Jobs;
+import com.socrata.datasync.job.LoadPreferencesJob;
+import com.socrata.datasync.config.CommandLineOptions;
+import com.socrata.datasync.daemon.DataSyncDaemon;
+import com.socrata.datasync.daemon.DropDirectoryWatcher;
+import com.socrata.datasync.config.userpreferences.UserPreferences;
+import com.socrata.datasync.config.userpreferences.UserPreferencesFile;
+import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.ParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class SimpleIntegrationRunner {
+    private static final int MAX_CONCURRENT_GIS_JOBS = 4;
+
+    /**
+     * Runs DataSync from the command line: a job file (or several GIS job files), or a job
+     * described by command line arguments. This is the entry point of the headless core jar.
+     */
+    public static void main(String[] args) throws ParseException, ControlDisagreementException {
+        if(args.length == 0) {
+            printHelp();
+            return;
+        }
+        // nothing below needs a display, and keeping AWT unloaded keeps the command line fast
+        if (System.getProperty("java.awt.headless") == null)
+            System.setProperty("java.awt.headless", "true");
+        if(args.length == 1) {
+            if (args[0].equals("-?") || args[0].equals("--help")) {
+                printHelp();
+            } else if (args[0].equals("-v") || args[0].equals("--version")) {
+                System.out.println("DataSync version " + VersionProvider.getThisVersion());
+            } else {
+                // Run a job file (.sij) in command-line mode
+                String jobFileToRun = args[0];
+
+                new SimpleIntegrationRunner(jobFileToRun);
+            }
+        } else if(SimpleIntegrationRunner.areAllGISJobFiles(args)) {
+            // Run several GIS job files (.gij) concurrently in command-line mode
+            SimpleIntegrationRunner.runGISJobFiles(args);
+        } else {
+            // generate & run job from command line args
+            VersionProvider.warnIfOutOfDateInBackground();
+
+            CommandLineOptions options = new CommandLineOptions();
+            CommandLine cmd = options.getCommandLine(args);
+            UserPreferences userPrefs = null;
+            try {
+                userPrefs = loadUserPreferences(options, cmd);
+            } catch (IOException e) {
+                System.err.println("Failed to load configuration: " + e.toString());
+                System.exit(1);
+            }
+            configureConnectionPool(options, cmd);
+
+            if (cmd.hasOption(options.DAEMON_FLAG)) {
+                runDaemon(new File(cmd.getOptionValue(options.DAEMON_FLAG)), userPrefs);
+                return;
+            }
+            if (cmd.hasOption(options.WATCH_FLAG)) {
+                long windowMs = DropDirectoryWatcher.DEFAULT_COALESCE_WINDOW_MS;
+                if (cmd.hasOption(options.WATCH_WINDOW_FLAG)) {
+                    try {
+                        windowMs = Long.parseLong(cmd.getOptionValue(options.WATCH_WINDOW_FLAG)) * 1000;
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid " + options.WATCH_WINDOW_FLAG + ": " + cmd.getOptionValue(options.WATCH_WINDOW_FLAG));
+                        System.exit(1);
+                    }
+                }
+                runWatcher(new File(cmd.getOptionValue(options.WATCH_FLAG)), windowMs);
+                return;
+            }
+
+            String jobTypeFlag = options.JOB_TYPE_FLAG;
+            String jobType = cmd.getOptionValue(jobTypeFlag, options.DEFAULT_JOBTYPE);
+
+            Job jobToRun = new com.socrata.datasync.job.IntegrationJob(userPrefs);
+            if(jobType.equals(Jobs.PORT_JOB.toString())) {
+                jobToRun = new PortJob(userPrefs);
+            } else if(jobType.equals(Jobs.GIS_JOB.toString())){
+                jobToRun = new GISJob(userPrefs);
+            } else if(jobType.equals(Jobs.LOAD_PREFERENCES_JOB.toString())) {
+                jobToRun = new LoadPreferencesJob(userPrefs);
+            } else if (!jobType.equals(Jobs.INTEGRATION_JOB.toString())){
+                System.err.println("Invalid " + jobTypeFlag + ": " + cmd.getOptionValue(jobTypeFlag) +
+                        " (must be " + Arrays.toString(Jobs.values()) + ")");
+                System.exit(1);
+            }
+
+            if (jobToRun.validateArgs(cmd)) {
+                jobToRun.configure(cmd);
+                new SimpleIntegrationRunner(jobToRun);
+            } else {
+                printHelp();
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * @author Adrian Laurenzi
+     *
+     * A command-line interface to DataSync
+     * @throws ControlDisagreementException 
+     */
+
+    public SimpleIntegrationRunner(String jobFileToRun) throws ControlDisagreementException {
+        File jobFile = new File(jobFileToRun);
+        if(jobFile.exists()) {
+            try {
+                Job job = loadJobFile(jobFileToRun);
+                JobStatus status = job.run();
+                if(status.isError()) {
+                    System.err.print("Job completed with errors: ");
+                    System.err.println(status.getMessage());
+                    System.exit(1);
+                } else {
+                    // job ran successfully!
+                    System.out.println("Job completed successfully");
+                    if(job.getClass() == PortJob.class) {
+                        if(JobStatus.SUCCESS.equals(status)) System.out.print("Success. ");
+                        System.out.println("Your newly created dataset is at:\n" +
+                                           ((PortJob)job).getSinkSiteDomain() + "/d/" + ((PortJob)job).getSinkSetID());
+                    }
+                    System.out.println(status.getMessage());
+                }
+            } catch (IOException | IntegrationJob.ControlDisagreementException e) {
+                System.err.println("Error running " + jobFileToRun + ":\n " + e.toString());
+                System.exit(1);
+            }
+        } else {
+            // TODO record error in DataSync log?
+            System.err.println("Error running " + jobFileToRun + ": job file does not exist.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loads a saved job, choosing the kind of job by the file's extension.
+     */
+    public static Job loadJobFile(String jobFileToRun) throws IOException, IntegrationJob.ControlDisagreementException, ControlDisagreementException {
+        //TODO BW: Follow how port jobs are run from command line?
+        if (jobFileToRun.endsWith(JobFiles.METADATA_JOB_EXTENSION)) {
+            return new MetadataJob(jobFileToRun);
+        } else if(jobFileToRun.endsWith(JobFiles.GIS_JOB_EXTENSION)) {
+            return new GISJob(jobFileToRun);
+        } else if(jobFileToRun.endsWith(JobFiles.PORT_JOB_EXTENSION)) {
+            return new PortJob(jobFileToRun);
+        } else {
+            return new IntegrationJob(jobFileToRun);
+        }
+    }
+
+    public SimpleIntegrationRunner(Job job) {
+        JobStatus status;
+        try {
+            status = job.run();
+            if(status.isError()) {
+                System.err.print("Job completed with errors: ");
+                System.err.println(status.getMessage());
+                System.exit(1);
+            } else {
+                System.out.println("Job completed successfully");
+                if(job.getClass() == PortJob.class) {
+                    if(JobStatus.SUCCESS.equals(status)) System.out.print("Success. ");
+                    System.out.println("Your newly created dataset is at:\n" +
+                        ((PortJob)job).getSinkSiteDomain() + "/d/" + ((PortJob)job).getSinkSetID());
+                    }
+                System.out.println(status.getMessage());
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the jobs in the given directory on their schedule until the process is stopped.
+     */
+    /**
+     * Sizes the HTTP connection pool shared by every job from the command line, before any job runs.
+     */
+    private static void configureConnectionPool(CommandLineOptions options, CommandLine cmd) {
+        if (!cmd.hasOption(options.MAX_CONNECTIONS_FLAG) && !cmd.hasOption(options.MAX_CONNECTIONS_PER_HOST_FLAG))
+            return;
+        try {
+            int maxTotal = cmd.hasOption(options.MAX_CONNECTIONS_FLAG) ?
+                    Integer.parseInt(cmd.getOptionValue(options.MAX_CONNECTIONS_FLAG)) :
+                    HttpClientRegistry.getMaxTotalConnections();
+            int maxPerHost = cmd.hasOption(options.MAX_CONNECTIONS_PER_HOST_FLAG) ?
+                    Integer.parseInt(cmd.getOptionValue(options.MAX_CONNECTIONS_PER_HOST_FLAG)) :
+                    Math.min(maxTotal, HttpClientRegistry.getMaxConnectionsPerRoute());
+            HttpClientRegistry.setPoolLimits(maxTotal, maxPerHost);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            System.err.println("Invalid " + options.MAX_CONNECTIONS_FLAG + " or " + options.MAX_CONNECTIONS_PER_HOST_FLAG +
+                    ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void runDaemon(File jobDirectory, UserPreferences userPrefs) {
+        final DataSyncDaemon daemon = new DataSyncDaemon(jobDirectory, userPrefs);
+        try {
+            daemon.start();
+        } catch (IOException e) {
+            System.err.println("Failed to start daemon: " + e.toString());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                daemon.close();
+            }
+        }));
+        try {
+            daemon.awaitTermination();
+        } catch (InterruptedException e) {
+            daemon.close();
+        }
+    }
+
+    /**
+     * Publishes files dropped into the given directory until the process is stopped.
+     */
+    private static void runWatcher(File dropDirectory, long coalesceWindowMs) {
+        final DropDirectoryWatcher watcher = new DropDirectoryWatcher(dropDirectory, coalesceWindowMs);
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            System.err.println("Failed to watch " + dropDirectory + ": " + e.toString());
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watcher.close();
+            }
+        }));
+        try {
+            watcher.awaitTermination();
+        } catch (InterruptedException e) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * @return true if every argument names a GIS job file (.gij)
+     */
+    public static boolean areAllGISJobFiles(String[] args) {
+        for (String arg : args) {
+            if (!arg.endsWith("." + JobFiles.GIS_JOB_EXTENSION))
+                return false;
+        }
+        return args.length > 0;
+    }
+
+    /**
+     * Runs the given GIS job files concurrently and exits with a non-zero status if any failed.
+     */
+    public static void runGISJobFiles(String[] jobFilesToRun) throws ControlDisagreementException {
+        List<GISJob> jobs = new ArrayList<>();
+        for (String jobFileToRun : jobFilesToRun) {
+            if (!new File(jobFileToRun).exists()) {
+                System.err.println("Error running " + jobFileToRun + ": job file does not exist.");
+                System.exit(1);
+            }
+            try {
+                jobs.add(new GISJob(jobFileToRun));
+            } catch (IOException e) {
+                System.err.println("Error running " + jobFileToRun + ":\n " + e.toString());
+                System.exit(1);
+            }
+        }
+
+        List<JobStatus> statuses;
+        try {
+            statuses = GISJob.runConcurrently(jobs, MAX_CONCURRENT_GIS_JOBS);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted while running GIS jobs");
+            System.exit(1);
+            return;
+        }
+
+        int failures = 0;
+        for (JobStatus status : statuses) {
+            if (status.isError())
+                failures++;
+        }
+        if (failures > 0) {
+            System.err.println(failures + " of " + jobs.size() + " jobs completed with errors");
+            System.exit(1);
+        } else {
+            System.out.println("All " + jobs.size() + " jobs completed successfully");
+        }
+    }
+
+    private static void printHelp() {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("DataSync", CommandLineOptions.options);
+    }
+
+    // TODO: move the method below to UserPreferences when I get those set of interfaces/classes consolidated.
+
+    /**
+     * Returns a UserPreferences object which either loads User Prefs from a JSON file
+     * or the Java Preferences class (previously saved from GUI mode input)
+     *
+     * @param cmd
+     * @return UserPreferences object containing global preferences
+     * @throws IOException
+     */
+    private static UserPreferences loadUserPreferences(CommandLineOptions options, CommandLine cmd) throws IOException {
+        UserPreferences userPrefs;
+        if (cmd.getOptionValue(options.CONFIG_FLAG) != null) {
+            // load user preferences from given JSON config file
+            File configFile = new File(cmd.getOptionValue("config"));
+            ObjectMapper mapper = new ObjectMapper();
+            userPrefs = mapper.readValue(configFile, UserPreferencesFile.class);
+            String proxyUsername = cmd.getOptionValue(options.PROXY_USERNAME_FLAG);
+            String proxyPassword = cmd.getOptionValue(options.PROXY_PASSWORD_FLAG);
+            String jobType = cmd.getOptionValue(options.JOB_TYPE_FLAG, options.DEFAULT_JOBTYPE);
+            if (proxyUsername != null && proxyPassword != null && !jobType.equals(Jobs.LOAD_PREFERENCES_JOB.toString())) {
+                userPrefs.setProxyUsername(proxyUsername);
+                userPrefs.setProxyPassword(proxyPassword);
+            }
+        } else {
+            // load user preferences from Java preferences class
+            userPrefs = new UserPreferencesJava();
+        }
+        return userPrefs;
+    }
+}
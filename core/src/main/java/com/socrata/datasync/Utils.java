@@ -1,16 +1,19 @@
 package com.socrata.datasync;
 
 import au.com.bytecode.opencsv.CSVReader;
+import com.google.common.io.ByteStreams;
 import com.socrata.datasync.config.controlfile.FileTypeControl;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
+import org.tukaani.xz.XZInputStream;
 
 import java.awt.Desktop;
+import java.io.BufferedInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -24,10 +27,8 @@ import java.util.UUID;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.entity.ContentType;
-import org.apache.http.Header;
 
 public class Utils {
 
@@ -36,6 +37,9 @@ public class Utils {
 
     public static final String BOM = "\uFEFF";
 
+    public static final List<String> COMPRESSED_FILE_EXTENSIONS = Arrays.asList("gz", "xz");
+    private static final int DECOMPRESSION_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Get file extension from the given path to a file
      * @param file filename
@@ -49,6 +53,42 @@ public class Utils {
         return extension;
     }
 
+    /**
+     * Get the extension of the data in the given file, looking past any compression extension
+     * (e.g. "csv" for both "crimes.csv" and "crimes.csv.gz")
+     * @param file filename
+     */
+    public static String getDataFileExtension(String file) {
+        String extension = getFileExtension(file);
+        if (COMPRESSED_FILE_EXTENSIONS.contains(extension))
+            extension = getFileExtension(file.substring(0, file.length() - extension.length() - 1));
+        return extension;
+    }
+
+    /**
+     * @return whether the given file is gzip or xz compressed, judging by its extension
+     */
+    public static boolean isCompressed(String file) {
+        return COMPRESSED_FILE_EXTENSIONS.contains(getFileExtension(file));
+    }
+
+    /**
+     * Opens the given data file, decompressing it as it is read if it is gzip or xz compressed.
+     */
+    public static InputStream openDataFile(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), DECOMPRESSION_BUFFER_SIZE);
+        try {
+            switch (getFileExtension(file.getName())) {
+                case "gz": return new GZIPInputStream(in, DECOMPRESSION_BUFFER_SIZE);
+                case "xz": return new XZInputStream(in);
+                default: return in;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
     public static String getFilename(String path) {
         return Paths.get(path).getFileName().toString();
     }
@@ -132,12 +172,12 @@ public class Utils {
         Charset charset = getCharset(fileControl);
         if (charset.newEncoder().canEncode('\uffef')) {
             byte bom[] = BOM.getBytes(charset);
-            FileInputStream is = null;
+            InputStream is = null;
             try {
-                is = new FileInputStream(fileToPublish);
+                is = openDataFile(fileToPublish);
                 byte startingBytes[] = new byte[bom.length];
-                int result = is.read(startingBytes);
-                if (result != -1) {
+                int result = ByteStreams.read(is, startingBytes, 0, startingBytes.length);
+                if (result > 0) {
                     return startsWith(bom, startingBytes);
                 } else {
                     return false;
@@ -154,17 +194,17 @@ public class Utils {
     /**
      * Sets up a csvReader.
      */
-    private static CSVReader getReader(File fileToPublish, FileTypeControl fileControl)
+    public static CSVReader getReader(File fileToPublish, FileTypeControl fileControl)
             throws IOException {
 
         String separator = fileControl.separator;
         if (separator == null)
-            separator = Utils.getFileExtension(fileToPublish.getName()).equals("csv") ? "," : "\t";
+            separator = Utils.getDataFileExtension(fileToPublish.getName()).equals("csv") ? "," : "\t";
 
         String quote = fileControl.quote == null ? "\"" : fileControl.quote;
         String escape = fileControl.escape == null ? "\u0000" : fileControl.escape;
 
-        return new CSVReader(new FileReader(fileToPublish), separator.charAt(0), quote.charAt(0), escape.charAt(0), 0);
+        return new CSVReader(new InputStreamReader(openDataFile(fileToPublish), getCharset(fileControl)), separator.charAt(0), quote.charAt(0), escape.charAt(0), 0);
     }
 
 
@@ -188,7 +228,7 @@ public class Utils {
      * @return command with absolute paths to execute job file at given path
      */
     public static String getRunJobCommand(String pathToSaveJobFile) {
-        String jarPath = Main.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+        String jarPath = SimpleIntegrationRunner.class.getProtectionDomain().getCodeSource().getLocation().getPath();
         try {
             jarPath = URLDecoder.decode(jarPath, "UTF-8");
             // Needed correct issue with windows where path includes a leading slash
@@ -238,16 +278,10 @@ public class Utils {
     }
 
     public static String regionOfDomain(UserPreferences userPrefs, String domain) throws URISyntaxException, IOException {
-        HttpUtility http = new HttpUtility(userPrefs, false);
         URI versionApiUri = new URI("https://" + DatasetUtils.getDomainWithoutScheme(domain) + VERSION_API_ENDPOINT);
-        try(CloseableHttpResponse response = http.get(versionApiUri, ContentType.APPLICATION_JSON.getMimeType())) {
-            Header[] headers = response.getHeaders(X_SOCRATA_REGION);
-            if(headers.length == 0) {
-                return "development";
-            } else {
-                return headers[0].getValue();
-            }
-        }
+        MetadataCache.Entry version = MetadataCache.getDefault().get(userPrefs, false, versionApiUri, MetadataCache.ResourceType.REGION);
+        String region = version.getHeader(X_SOCRATA_REGION);
+        return region == null ? "development" : region;
     }
 
     public static String[] commaSplit(String s) {
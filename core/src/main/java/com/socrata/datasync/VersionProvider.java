@@ -0,0 +1,153 @@
+package com.socrata.datasync;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ResourceBundle;
+import java.util.Scanner;
+import java.util.regex.MatchResult;
+
+public final class VersionProvider {
+
+    private static final VersionProvider INSTANCE = new VersionProvider();
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String datasyncReleases = "https://api.github.com/repos/socrata/datasync/releases";
+    // the latest release is remembered on disk, so most runs never ask GitHub
+    private static final File releaseCacheFile =
+        new File(System.getProperty("user.home"), ".datasync" + File.separator + "latest-release.json");
+    private static final long RELEASE_CACHE_TTL_MS = 24 * 60 * 60 * 1000L;
+    private static final int VERSION_CHECK_TIMEOUT_MS = 3000;
+
+    private String version;
+    private DatasyncGithubRelease latestRelease = null;
+    private boolean latestReleaseLoaded = false;
+
+    private VersionProvider() {
+        ResourceBundle rb;
+        rb = ResourceBundle.getBundle("datasync");
+        version = rb.getString("version");
+    }
+
+    public enum VersionStatus {
+        LATEST, NOT_LATEST, UNKNOWN
+    }
+
+    public static String getThisVersion() {
+        return INSTANCE.version;
+    }
+
+    public static VersionStatus isLatestMajorVersion() {
+        String latest = getLatestVersion();
+        if (latest == null) {
+            return VersionStatus.UNKNOWN;
+        } else {
+            if (getMajorVersion(INSTANCE.version) >= getMajorVersion(latest)) {
+                return VersionStatus.LATEST;
+            } else {
+                return VersionStatus.NOT_LATEST;
+            }
+        }
+    }
+
+    public static int getMajorVersion(String versionString) {
+        String[] versionSplit = versionString.split("\\.");
+        return Integer.parseInt(versionSplit[0]);
+    }
+
+    public static String getLatestVersion() {
+        DatasyncGithubRelease release = getLatestRelease();
+        return release == null ? null : stripVersion(release.name);
+    }
+
+    public static String getDownloadUrlForLatestVersion() {
+        DatasyncGithubRelease release = getLatestRelease();
+        return release == null ? null : release.htmlUrl;
+    }
+
+    /**
+     * Checks for a newer version on a background (daemon) thread and prints a warning if there is one.
+     * The check never delays the caller, and is abandoned if the job finishes first.
+     */
+    public static void warnIfOutOfDateInBackground() {
+        Thread check = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (isLatestMajorVersion() == VersionStatus.NOT_LATEST) {
+                    String newDownloadLink = getDownloadUrlForLatestVersion();
+                    String newVersionDownloadMessage = newDownloadLink == null ? "\n" :
+                        "Download the new version (" + getLatestVersion() + ") here:\n" +
+                            newDownloadLink + "\n";
+                    System.err.println("\nWARNING: DataSync is out-of-date. " + newVersionDownloadMessage);
+                }
+            }
+        }, "datasync-version-check");
+        check.setDaemon(true);
+        check.start();
+    }
+
+    /**
+     * @return the latest release, from the cache file if it was checked recently, otherwise from
+     * GitHub (giving up after a few seconds); null if it could not be determined
+     */
+    private static DatasyncGithubRelease getLatestRelease() {
+        synchronized (INSTANCE) {
+            if (!INSTANCE.latestReleaseLoaded) {
+                DatasyncGithubRelease release = readCachedRelease();
+                if (release == null) {
+                    release = fetchLatestRelease();
+                    if (release != null)
+                        writeCachedRelease(release);
+                }
+                INSTANCE.latestRelease = release;
+                INSTANCE.latestReleaseLoaded = true;
+            }
+            return INSTANCE.latestRelease;
+        }
+    }
+
+    private static DatasyncGithubRelease fetchLatestRelease() {
+        HttpUtility http = new HttpUtility();
+        try(CloseableHttpResponse response = http.get(new URI(datasyncReleases), ContentType.APPLICATION_JSON.getMimeType(), VERSION_CHECK_TIMEOUT_MS)) {
+            DatasyncGithubRelease[] releases = mapper.readValue(response.getEntity().getContent(), DatasyncGithubRelease[].class);
+            return releases[0];
+        } catch (Exception e) {   // no reason to fail jobs because of a version check
+            return null;
+        }
+    }
+
+    private static DatasyncGithubRelease readCachedRelease() {
+        if (!releaseCacheFile.isFile() || System.currentTimeMillis() - releaseCacheFile.lastModified() > RELEASE_CACHE_TTL_MS)
+            return null;
+        try {
+            return mapper.readValue(releaseCacheFile, DatasyncGithubRelease.class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void writeCachedRelease(DatasyncGithubRelease release) {
+        try {
+            File dir = releaseCacheFile.getParentFile();
+            if (dir.isDirectory() || dir.mkdirs())
+                mapper.writeValue(releaseCacheFile, release);
+        } catch (Exception e) {
+            // the cache only saves a request next time
+        }
+    }
+
+    public static String stripVersion(String text) {
+        Scanner scanner = new Scanner(text);
+        String versionNums = scanner.findWithinHorizon("(\\d+)(\\.\\d+)(\\.\\d+)?", 0);
+        String version = "";
+        if (versionNums != null) {
+            MatchResult groups = scanner.match();
+            for (int i = 1; i <= groups.groupCount() && groups.group(i) != null; i++) // yes, truly 1-indexed
+                version += groups.group(i);
+        }
+        return version;
+    }
+
+}
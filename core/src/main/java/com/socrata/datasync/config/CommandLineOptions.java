@@ -1,8 +1,11 @@
 package com.socrata.datasync.config;
 
+import com.socrata.datasync.HttpClientRegistry;
 import com.socrata.datasync.PortMethod;
 import com.socrata.datasync.PublishMethod;
+import com.socrata.datasync.daemon.DropDirectoryWatcher;
 import com.socrata.datasync.job.Jobs;
+import com.socrata.datasync.sources.JdbcRowSource;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -17,6 +20,11 @@ public class CommandLineOptions {
     public static final String JOB_TYPE_FLAG = "jobType";
     public static final String CONFIG_FLAG = "config";
     public static final String USER_AGENT_FLAG = "userAgent";
+    public static final String DAEMON_FLAG = "daemon";
+    public static final String WATCH_FLAG = "watch";
+    public static final String WATCH_WINDOW_FLAG = "watchWindow";
+    public static final String MAX_CONNECTIONS_FLAG = "maxConnections";
+    public static final String MAX_CONNECTIONS_PER_HOST_FLAG = "maxConnectionsPerHost";
 
     public static final String DATASET_ID_FLAG = "datasetID";
     public static final String FILE_TO_PUBLISH_FLAG = "fileToPublish";
@@ -25,6 +33,10 @@ public class CommandLineOptions {
     public static final String PUBLISH_VIA_FTP_FLAG = "publishViaFTP";
     public static final String PUBLISH_VIA_DI2_FLAG = "publishViaHttp";
     // TODO: remove at some point, ftp_control is deprecated in favor of control
+    public static final String PREFLIGHT_VALIDATION_FLAG = "preflightValidation";
+    public static final String JDBC_URL_FLAG = "jdbcUrl";
+    public static final String JDBC_QUERY_FLAG = "jdbcQuery";
+    public static final String JDBC_FETCH_SIZE_FLAG = "jdbcFetchSize";
     public static final String PATH_TO_FTP_CONTROL_FILE_FLAG = "pathToFTPControlFile";
     public static final String PATH_TO_CONTROL_FILE_FLAG = "pathToControlFile";
     public static final String PROXY_USERNAME_FLAG = "proxyUsername";
@@ -42,6 +54,7 @@ public class CommandLineOptions {
     public static final String DEFAULT_JOBTYPE = Jobs.INTEGRATION_JOB.toString();
     public static final String DEFAULT_PUBLISH_VIA_FTP = "false";
     public static final String DEFAULT_PUBLISH_VIA_DI2 = "false";
+    public static final String DEFAULT_PREFLIGHT_VALIDATION = "false";
     public static final String DEFAULT_PORT_PUBLISH_METHOD = PublishMethod.upsert.toString();
     public static final String DEFAULT_PUBLISH_DESTINATION_DATASET = "false";
 
@@ -52,6 +65,16 @@ public class CommandLineOptions {
         options.addOption("t", JOB_TYPE_FLAG, true, "Type of job to run: " + Arrays.toString(Jobs.values()) + " (default: " + DEFAULT_JOBTYPE  + ")");
         options.addOption("c", CONFIG_FLAG, true, ".json file that stores global preferences (authentication details, etc) (optional)");
         options.addOption("a", USER_AGENT_FLAG, true, "User-Agent string passed when making HTTPS calls (optional)");
+        options.addOption("d", DAEMON_FLAG, true, "Directory of job files to keep running on the schedule in its schedule.json; " +
+                "runs until stopped (optional)");
+        options.addOption("w", WATCH_FLAG, true, "Drop directory to watch; CSV/TSV files dropped there are published with the " +
+                "integration job (.sij) in it whose name prefixes theirs; runs until stopped (optional)");
+        options.addOption("ww", WATCH_WINDOW_FLAG, true, "Seconds to wait for more files for the same job before publishing " +
+                "them together in watch mode (default: " + DropDirectoryWatcher.DEFAULT_COALESCE_WINDOW_MS / 1000 + ")");
+        options.addOption("mc", MAX_CONNECTIONS_FLAG, true, "Maximum number of HTTP connections kept open across all jobs " +
+                "(default: " + HttpClientRegistry.DEFAULT_MAX_TOTAL_CONNECTIONS + ")");
+        options.addOption("mch", MAX_CONNECTIONS_PER_HOST_FLAG, true, "Maximum number of HTTP connections kept open to any one " +
+                "host (default: " + HttpClientRegistry.DEFAULT_MAX_CONNECTIONS_PER_ROUTE + ")");
 
         // IntegrationJob params
         options.addOption("i", DATASET_ID_FLAG, true, "Dataset ID to publish to [IntegrationJob]");
@@ -60,6 +83,13 @@ public class CommandLineOptions {
         options.addOption("h", HAS_HEADER_ROW_FLAG, true, "File to publish has header row (true or false) [IntegrationJob]");
         options.addOption("pf", PUBLISH_VIA_FTP_FLAG, true, "Use FTP (instead of HTTP) for publishing (true or false) (default: " + DEFAULT_PUBLISH_VIA_FTP + ") [IntegrationJob]");
         options.addOption("ph", PUBLISH_VIA_DI2_FLAG, true, "Use HTTP for publishing (true or false) (default: false) [IntegrationJob]");
+        options.addOption("pv", PREFLIGHT_VALIDATION_FLAG, true, "Check every row of the file to publish against the dataset's " +
+                "column types, and for repeated row identifiers, before publishing (true or false) (default: " + DEFAULT_PREFLIGHT_VALIDATION + ") [IntegrationJob]");
+        options.addOption("ju", JDBC_URL_FLAG, true, "JDBC URL of a database to publish the results of -jq,--" + JDBC_QUERY_FLAG +
+                " from, instead of a file; the database's JDBC driver must be on the classpath [IntegrationJob]");
+        options.addOption("jq", JDBC_QUERY_FLAG, true, "Query whose results are published; its column labels are used as the header row [IntegrationJob]");
+        options.addOption("jfs", JDBC_FETCH_SIZE_FLAG, true, "Number of rows to fetch from the database at a time (default: " +
+                JdbcRowSource.DEFAULT_FETCH_SIZE + ") [IntegrationJob]");
         options.addOption("sc", PATH_TO_FTP_CONTROL_FILE_FLAG, true, "deprecated! please use -cf, --pathToControlFile instead");
         options.addOption("cf", PATH_TO_CONTROL_FILE_FLAG, true, "control.json file, needed for publishing via FTP or HTTP;" +
                 "if set overrides job parameters [IntegrationJob]");
@@ -77,7 +77,7 @@ public class ControlFile {
                                                   final List<String> timeFormats) {
 
 
-        String fileToPublishExtension = Utils.getFileExtension(fileToPublish);
+        String fileToPublishExtension = Utils.getDataFileExtension(fileToPublish);
 
 
         boolean isCsv = fileToPublishExtension.equalsIgnoreCase("csv");
@@ -0,0 +1,90 @@
+package com.socrata.datasync.daemon;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * The schedule.json read by the daemon, e.g.
+ * <pre>
+ * {
+ *   "threads": 4,
+ *   "maxConcurrentJobsPerDomain": 2,
+ *   "jobs": [
+ *     { "file": "nightly_crime.sij", "intervalMinutes": 1440, "startAt": "02:30" },
+ *     { "file": "parcels.gij", "intervalMinutes": 60, "domain": "https://data.example.gov" }
+ *   ]
+ * }
+ * </pre>
+ */
+@JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown=false)
+public class DaemonSchedule {
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_MAX_CONCURRENT_JOBS_PER_DOMAIN = 2;
+
+    public Integer threads;
+    public Integer maxConcurrentJobsPerDomain;
+    public List<ScheduledJob> jobs = new ArrayList<>();
+
+    public DaemonSchedule() {}
+
+    public int getThreads() {
+        return threads == null || threads < 1 ? DEFAULT_THREADS : threads;
+    }
+
+    public int getMaxConcurrentJobsPerDomain() {
+        return maxConcurrentJobsPerDomain == null || maxConcurrentJobsPerDomain < 1 ?
+            DEFAULT_MAX_CONCURRENT_JOBS_PER_DOMAIN : maxConcurrentJobsPerDomain;
+    }
+
+    @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown=false)
+    public static class ScheduledJob {
+        /** the job file (.sij, .spj, .gij or .smj), relative to the job directory */
+        public String file;
+        /** how often to run the job */
+        public int intervalMinutes;
+        /** local time (HH:mm) of the first run; if absent the job first runs when the daemon starts */
+        public String startAt;
+        /** the domain the job publishes to, for the concurrency limit; defaults to the job's own */
+        public String domain;
+
+        public ScheduledJob() {}
+
+        public long getIntervalMs() {
+            return Math.max(1, intervalMinutes) * 60 * 1000L;
+        }
+
+        /**
+         * @return how long from now until the job's first run
+         */
+        public long getInitialDelayMs(Calendar now) {
+            if (startAt == null || startAt.trim().isEmpty())
+                return 0;
+            String[] hoursAndMinutes = startAt.trim().split(":");
+            if (hoursAndMinutes.length != 2)
+                throw new IllegalArgumentException("startAt must be HH:mm, not " + startAt);
+            Calendar next = (Calendar) now.clone();
+            next.set(Calendar.HOUR_OF_DAY, Integer.parseInt(hoursAndMinutes[0]));
+            next.set(Calendar.MINUTE, Integer.parseInt(hoursAndMinutes[1]));
+            next.set(Calendar.SECOND, 0);
+            next.set(Calendar.MILLISECOND, 0);
+            if (next.before(now))
+                next.add(Calendar.DAY_OF_MONTH, 1);
+            return next.getTimeInMillis() - now.getTimeInMillis();
+        }
+
+        /**
+         * Whether the job's timing differs, so that it has to be rescheduled
+         */
+        boolean sameTimingAs(ScheduledJob other) {
+            return intervalMinutes == other.intervalMinutes &&
+                (startAt == null ? other.startAt == null : startAt.equals(other.startAt));
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.socrata.datasync.daemon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.DatasetUtils;
+import com.socrata.datasync.SimpleIntegrationRunner;
+import com.socrata.datasync.config.userpreferences.UserPreferences;
+import com.socrata.datasync.job.Job;
+import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.PortJob;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a directory of saved jobs on a schedule inside one long-lived JVM, so that each run reuses
+ * the warm JIT, the pooled HTTP connections and the metadata cache instead of paying for a new
+ * process.
+ *
+ * The directory holds the job files and a schedule.json (see DaemonSchedule). Jobs run on a bounded
+ * pool of worker threads, at most a few at a time per domain, and a job is never started while its
+ * previous run is still going. Job files are reloaded when they change, and the schedule itself is
+ * re-read when schedule.json changes.
+ */
+public class DataSyncDaemon implements AutoCloseable {
+
+    public static final String SCHEDULE_FILE_NAME = "schedule.json";
+
+    private static final long RESCAN_INTERVAL_MS = 30 * 1000;
+    // how long a job waits before trying again when its domain is at its concurrency limit
+    private static final long DOMAIN_BUSY_RETRY_MS = 5 * 1000;
+    private static final int MAX_QUEUED_RUNS = 100;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final File jobDirectory;
+    private final UserPreferences userPrefs;
+    private final ScheduledExecutorService timer;
+    private ThreadPoolExecutor workers;
+    private final ConcurrentMap<String, Semaphore> domainPermits = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledEntry> entries = new HashMap<>();
+    private final Object lock = new Object();
+
+    private DaemonSchedule schedule = null;
+    private long scheduleLastModified = -1;
+
+    /**
+     * @param jobDirectory the directory holding the job files and schedule.json
+     * @param userPrefs the preferences whose domain is used for jobs that do not name their own
+     */
+    public DataSyncDaemon(File jobDirectory, UserPreferences userPrefs) {
+        this.jobDirectory = jobDirectory;
+        this.userPrefs = userPrefs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(namedThreads("datasync-daemon-scheduler", false));
+    }
+
+    /**
+     * Reads the schedule and starts running jobs.
+     * @throws IOException if the schedule cannot be read
+     */
+    public void start() throws IOException {
+        synchronized (lock) {
+            loadSchedule();
+        }
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (lock) {
+                        if (scheduleFile().lastModified() != scheduleLastModified)
+                            loadSchedule();
+                    }
+                } catch (Exception e) {
+                    log("Keeping the current schedule; could not read " + scheduleFile() + ": " + e.getMessage());
+                }
+            }
+        }, RESCAN_INTERVAL_MS, RESCAN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log("Running " + entries.size() + " scheduled jobs from " + jobDirectory.getAbsolutePath());
+    }
+
+    /**
+     * Blocks until the daemon is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!timer.awaitTermination(1, TimeUnit.DAYS)) {
+            // keep waiting
+        }
+    }
+
+    /**
+     * Stops scheduling jobs and waits briefly for running ones to finish.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        ThreadPoolExecutor pool;
+        synchronized (lock) {
+            pool = workers;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the job files currently scheduled
+     */
+    public Set<String> getScheduledJobFiles() {
+        synchronized (lock) {
+            return new HashSet<>(entries.keySet());
+        }
+    }
+
+    private File scheduleFile() {
+        return new File(jobDirectory, SCHEDULE_FILE_NAME);
+    }
+
+    // callers hold lock
+    private void loadSchedule() throws IOException {
+        File file = scheduleFile();
+        long modified = file.lastModified();
+        DaemonSchedule newSchedule = mapper.readValue(file, DaemonSchedule.class);
+        boolean firstLoad = schedule == null;
+        scheduleLastModified = modified;
+
+        if (workers == null || workers.getCorePoolSize() != newSchedule.getThreads()) {
+            ThreadPoolExecutor old = workers;
+            workers = new ThreadPoolExecutor(newSchedule.getThreads(), newSchedule.getThreads(), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUED_RUNS), namedThreads("datasync-daemon-worker", true));
+            if (old != null)
+                old.shutdown(); // lets runs already started finish
+        }
+        if (schedule == null || schedule.getMaxConcurrentJobsPerDomain() != newSchedule.getMaxConcurrentJobsPerDomain())
+            domainPermits.clear();
+        schedule = newSchedule;
+
+        Map<String, DaemonSchedule.ScheduledJob> wanted = new HashMap<>();
+        for (DaemonSchedule.ScheduledJob def : newSchedule.jobs)
+            wanted.put(def.file, def);
+
+        for (String jobFile : new HashSet<>(entries.keySet())) {
+            ScheduledEntry entry = entries.get(jobFile);
+            DaemonSchedule.ScheduledJob def = wanted.get(jobFile);
+            if (def == null || !def.sameTimingAs(entry.def)) {
+                entry.trigger.cancel(false);
+                entries.remove(jobFile);
+            } else {
+                entry.def = def;
+            }
+        }
+        Calendar now = Calendar.getInstance();
+        for (DaemonSchedule.ScheduledJob def : newSchedule.jobs) {
+            if (entries.containsKey(def.file))
+                continue;
+            final ScheduledEntry entry = new ScheduledEntry(def);
+            entry.trigger = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    submit(entry);
+                }
+            }, def.getInitialDelayMs(now), def.getIntervalMs(), TimeUnit.MILLISECONDS);
+            entries.put(def.file, entry);
+        }
+        if (!firstLoad)
+            log("Reloaded " + file + "; " + entries.size() + " jobs scheduled");
+    }
+
+    private void submit(final ScheduledEntry entry) {
+        if (!entry.running.compareAndSet(false, true)) {
+            log("Skipping " + entry.def.file + ": its previous run has not finished");
+            return;
+        }
+        ThreadPoolExecutor pool;
+        synchronized (lock) {
+            pool = workers;
+        }
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runEntry(entry);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.running.set(false);
+            log("Skipping " + entry.def.file + ": too many runs are waiting");
+        }
+    }
+
+    private void runEntry(final ScheduledEntry entry) {
+        boolean retrying = false;
+        try {
+            Job job = entry.currentJob(jobDirectory);
+            String domain = entry.def.domain != null ? entry.def.domain : domainOf(job);
+            Semaphore permits = permitsFor(domain);
+            if (!permits.tryAcquire()) {
+                // don't hold a worker while waiting for the domain; try again shortly
+                retrying = true;
+                timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        entry.running.set(false);
+                        submit(entry);
+                    }
+                }, DOMAIN_BUSY_RETRY_MS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            try {
+                log("Starting " + entry.def.file);
+                long start = System.currentTimeMillis();
+                JobStatus status = job.run();
+                long seconds = (System.currentTimeMillis() - start) / 1000;
+                log((status.isError() ? "Failed " : "Finished ") + entry.def.file + " in " + seconds + "s: " + status.getMessage());
+            } finally {
+                permits.release();
+            }
+        } catch (Exception e) {
+            log("Failed " + entry.def.file + ": " + e.toString());
+        } finally {
+            if (!retrying)
+                entry.running.set(false);
+        }
+    }
+
+    private Semaphore permitsFor(String domain) {
+        String key = domain == null ? "" : DatasetUtils.getDomainWithoutScheme(domain);
+        Semaphore permits = domainPermits.get(key);
+        if (permits == null) {
+            int limit;
+            synchronized (lock) {
+                limit = schedule.getMaxConcurrentJobsPerDomain();
+            }
+            domainPermits.putIfAbsent(key, new Semaphore(limit));
+            permits = domainPermits.get(key);
+        }
+        return permits;
+    }
+
+    private String domainOf(Job job) {
+        if (job instanceof PortJob && ((PortJob) job).getSinkSiteDomain() != null)
+            return ((PortJob) job).getSinkSiteDomain();
+        return userPrefs == null ? null : userPrefs.getDomain();
+    }
+
+    private static void log(String message) {
+        System.out.println(LocalDateTime.now().toString(ISODateTimeFormat.dateHourMinuteSecond()) + " " + message);
+    }
+
+    static ThreadFactory namedThreads(final String name, final boolean daemon) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                t.setDaemon(daemon);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * A scheduled job file, and the job loaded from it (reloaded whenever the file changes).
+     */
+    private static class ScheduledEntry {
+        volatile DaemonSchedule.ScheduledJob def;
+        ScheduledFuture<?> trigger;
+        final AtomicBoolean running = new AtomicBoolean(false);
+        private Job job = null;
+        private long jobFileModified = -1;
+
+        ScheduledEntry(DaemonSchedule.ScheduledJob def) {
+            this.def = def;
+        }
+
+        synchronized Job currentJob(File jobDirectory) throws Exception {
+            File jobFile = new File(def.file);
+            if (!jobFile.isAbsolute())
+                jobFile = new File(jobDirectory, def.file);
+            if (!jobFile.exists())
+                throw new IOException("job file " + jobFile + " does not exist");
+            long modified = jobFile.lastModified();
+            if (job == null || modified != jobFileModified) {
+                if (job != null)
+                    log("Reloading changed job file " + jobFile);
+                job = SimpleIntegrationRunner.loadJobFile(jobFile.getPath());
+                jobFileModified = modified;
+            }
+            return job;
+        }
+    }
+}
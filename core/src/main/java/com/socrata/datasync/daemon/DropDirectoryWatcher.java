@@ -0,0 +1,499 @@
+package com.socrata.datasync.daemon;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.google.common.io.Files;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.ControlFile;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.job.IntegrationJob;
+import com.socrata.datasync.job.JobFiles;
+import com.socrata.datasync.job.JobStatus;
+import org.apache.commons.io.FilenameUtils;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes CSV/TSV files, plain or gzip/xz compressed, as soon as they are dropped into a directory,
+ * rather than waiting for the next cron run.
+ *
+ * The drop directory holds integration job files (.sij) alongside the data files. A data file
+ * belongs to the job whose name is the longest prefix of the file's name, so crimes.sij publishes
+ * crimes.csv and crimes-2016-03-01.csv. A file is picked up once it is stable: its size and
+ * modification time have not changed for a couple of seconds and its writer has closed it (as far
+ * as the platform's file locks can tell). Files for the same job that become stable within the
+ * coalescing window are published together as one file, so a burst of drops costs one publish.
+ *
+ * Published files are moved to processed/ (or failed/ if the publish failed).
+ */
+public class DropDirectoryWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_COALESCE_WINDOW_MS = 30 * 1000;
+    public static final long DEFAULT_STABLE_MS = 2 * 1000;
+    public static final String PROCESSED_DIRECTORY = "processed";
+    public static final String FAILED_DIRECTORY = "failed";
+
+    private static final long POLL_INTERVAL_MS = 500;
+    private static final int PUBLISH_THREADS = 2;
+
+    /**
+     * Publishes the files that arrived for one job.
+     */
+    public interface BatchPublisher {
+        /**
+         * @param jobFile the job the files belong to
+         * @param files the files, in the order they became ready
+         */
+        JobStatus publish(File jobFile, List<File> files) throws Exception;
+    }
+
+    /**
+     * Runs the integration job on the files (concatenated into one file when there are several).
+     */
+    public static final BatchPublisher INTEGRATION_JOB_PUBLISHER = new BatchPublisher() {
+        @Override
+        public JobStatus publish(File jobFile, List<File> files) throws Exception {
+            IntegrationJob job = new IntegrationJob(jobFile.getPath());
+            if (files.size() == 1) {
+                job.setFileToPublish(files.get(0).getAbsolutePath());
+                return job.run();
+            }
+            File tempDir = Files.createTempDir();
+            // keep the first file's name, and so its extension, which the job validates; the merged file
+            // is written decompressed
+            String name = files.get(0).getName();
+            if (Utils.isCompressed(name))
+                name = name.substring(0, name.lastIndexOf('.'));
+            File merged = new File(tempDir, name);
+            try {
+                FileTypeControl fileControl = headerLayout(job, files.get(0));
+                if (fileControl != null)
+                    concatenate(files, fileControl, merged);
+                else
+                    concatenate(files, job.getFileToPublishHasHeaderRow(), merged);
+                job.setFileToPublish(merged.getAbsolutePath());
+                return job.run();
+            } finally {
+                merged.delete();
+                tempDir.delete();
+            }
+        }
+    };
+
+    private final File dropDirectory;
+    private final long coalesceWindowMs;
+    private final long stableMs;
+    private final BatchPublisher publisher;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+    private WatchService watchService;
+
+    // only touched on the timer thread
+    private final Map<File, Candidate> candidates = new LinkedHashMap<>();
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+    // batches being published, by key; new files for them wait until they finish
+    private final Set<String> publishing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    // files handed to a batch that have not been moved out of the drop directory yet
+    private final Set<File> claimed = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    // files no job matched; looked at again when a job file appears
+    private final Set<File> unmatched = new HashSet<>();
+
+    public DropDirectoryWatcher(File dropDirectory, long coalesceWindowMs) {
+        this(dropDirectory, coalesceWindowMs, DEFAULT_STABLE_MS, INTEGRATION_JOB_PUBLISHER);
+    }
+
+    /**
+     * @param dropDirectory the directory holding the job files and receiving the data files
+     * @param coalesceWindowMs how long to wait for more files for the same job before publishing
+     * @param stableMs how long a file must go unchanged before it is considered complete
+     * @param publisher publishes each batch of files
+     */
+    public DropDirectoryWatcher(File dropDirectory, long coalesceWindowMs, long stableMs, BatchPublisher publisher) {
+        this.dropDirectory = dropDirectory.getAbsoluteFile();
+        this.coalesceWindowMs = coalesceWindowMs;
+        this.stableMs = stableMs;
+        this.publisher = publisher;
+        this.timer = Executors.newSingleThreadScheduledExecutor(DataSyncDaemon.namedThreads("datasync-watch", false));
+        this.workers = Executors.newFixedThreadPool(PUBLISH_THREADS, DataSyncDaemon.namedThreads("datasync-watch-publisher", true));
+    }
+
+    /**
+     * Starts watching; files already in the drop directory are picked up as well.
+     * @throws IOException if the directory cannot be watched
+     */
+    public void start() throws IOException {
+        if (!dropDirectory.isDirectory())
+            throw new IOException(dropDirectory + " is not a directory");
+        watchService = FileSystems.getDefault().newWatchService();
+        dropDirectory.toPath().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        timer.execute(new Runnable() {
+            @Override
+            public void run() {
+                rescan();
+            }
+        });
+        timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    log("Error watching " + dropDirectory + ": " + e);
+                }
+            }
+        }, POLL_INTERVAL_MS, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        log("Watching " + dropDirectory + " for files to publish");
+    }
+
+    /**
+     * Blocks until the watcher is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!timer.awaitTermination(1, TimeUnit.DAYS)) {
+            // keep waiting
+        }
+    }
+
+    /**
+     * Stops watching and waits briefly for publishes in progress; files not yet published are left
+     * in the drop directory for next time.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    private void tick() {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    rescan();
+                } else {
+                    consider(dropDirectory.toPath().resolve((Path) event.context()).toFile());
+                }
+            }
+            key.reset();
+        }
+
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<File, Candidate>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<File, Candidate> entry = it.next();
+            File file = entry.getKey();
+            Candidate candidate = entry.getValue();
+            if (!file.isFile()) {
+                it.remove();
+                continue;
+            }
+            long size = file.length();
+            long modified = file.lastModified();
+            if (size != candidate.size || modified != candidate.modified) {
+                candidate.size = size;
+                candidate.modified = modified;
+                candidate.unchangedSince = now;
+            } else if (now - candidate.unchangedSince >= stableMs && isClosedByWriter(file)) {
+                it.remove();
+                addToBatch(file, now);
+            }
+        }
+
+        for (Iterator<Map.Entry<String, Batch>> it = batches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Batch> entry = it.next();
+            if (entry.getValue().publishAt <= now && publishing.add(entry.getKey())) {
+                it.remove();
+                submit(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void rescan() {
+        File[] files = dropDirectory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                consider(file);
+        }
+    }
+
+    private void consider(File file) {
+        if (file.getName().endsWith("." + JobFiles.INTEGRATION_JOB_EXTENSION) && !unmatched.isEmpty()) {
+            claimed.removeAll(unmatched);
+            unmatched.clear();
+            rescan();
+            return;
+        }
+        if (!isDataFile(file) || claimed.contains(file) || candidates.containsKey(file))
+            return;
+        candidates.put(file, new Candidate(file.length(), file.lastModified(), System.currentTimeMillis()));
+    }
+
+    private void addToBatch(File file, long now) {
+        File jobFile = findJobFor(file);
+        if (jobFile == null) {
+            log("Ignoring " + file.getName() + ": no job file in " + dropDirectory + " matches its name");
+            claimed.add(file);
+            unmatched.add(file);
+            return;
+        }
+        String key = jobFile.getName() + "|" + Utils.getDataFileExtension(file.getName());
+        Batch batch = batches.get(key);
+        if (batch == null) {
+            batch = new Batch(jobFile, now + coalesceWindowMs);
+            batches.put(key, batch);
+        }
+        batch.files.add(file);
+        claimed.add(file);
+    }
+
+    private void submit(final String key, final Batch batch) {
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    publish(batch);
+                } finally {
+                    publishing.remove(key);
+                }
+            }
+        });
+    }
+
+    private void publish(Batch batch) {
+        List<String> names = new ArrayList<>();
+        for (File file : batch.files)
+            names.add(file.getName());
+        log("Publishing " + names + " with " + batch.jobFile.getName());
+        boolean succeeded;
+        try {
+            JobStatus status = publisher.publish(batch.jobFile, batch.files);
+            succeeded = !status.isError();
+            log((succeeded ? "Published " : "Failed to publish ") + names + ": " + status.getMessage());
+        } catch (Exception e) {
+            succeeded = false;
+            log("Failed to publish " + names + ": " + e);
+        }
+        File destination = new File(dropDirectory, succeeded ? PROCESSED_DIRECTORY : FAILED_DIRECTORY);
+        destination.mkdirs();
+        for (File file : batch.files) {
+            try {
+                java.nio.file.Files.move(file.toPath(), new File(destination, file.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log("Could not move " + file + " to " + destination + ": " + e.getMessage());
+            }
+            claimed.remove(file);
+        }
+    }
+
+    /**
+     * @return the job file whose name is the longest prefix of the data file's name, or null
+     */
+    File findJobFor(File dataFile) {
+        File[] files = dropDirectory.listFiles();
+        if (files == null)
+            return null;
+        File best = null;
+        int bestLength = -1;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith("." + JobFiles.INTEGRATION_JOB_EXTENSION))
+                continue;
+            String base = FilenameUtils.getBaseName(name);
+            if (dataFile.getName().startsWith(base) && base.length() > bestLength) {
+                best = file;
+                bestLength = base.length();
+            }
+        }
+        return best;
+    }
+
+    private static boolean isDataFile(File file) {
+        String extension = Utils.getDataFileExtension(file.getName());
+        return file.isFile() && (extension.equals("csv") || extension.equals("tsv"));
+    }
+
+    /**
+     * Whether no other process holds the file open for writing. File locks are advisory on most
+     * Unix systems, so this only catches writers that lock; the stability period catches the rest.
+     */
+    private static boolean isClosedByWriter(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock == null)
+                return false;
+            lock.release();
+            return true;
+        } catch (IOException | OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the control laying out the leading rows of the job's files, for jobs publishing via
+     * delta-importer-2 or FTP, whose control file takes precedence; null if the job itself says whether
+     * its files have a header row
+     */
+    static FileTypeControl headerLayout(IntegrationJob job, File dataFile) {
+        ControlFile controlFile = job.getControlFile();
+        if ((job.getPublishViaDi2Http() || job.getPublishViaFTP()) && controlFile != null) {
+            FileTypeControl fileControl = Utils.getDataFileExtension(dataFile.getName()).equals("tsv") ?
+                controlFile.getTsvFtc() : controlFile.getCsvFtc();
+            if (fileControl != null)
+                return fileControl;
+        }
+        return null;
+    }
+
+    /**
+     * Writes the files one after another to the target, decompressing any that are compressed and
+     * keeping only the first file's header row.
+     */
+    public static void concatenate(List<File> files, boolean hasHeaderRow, File target) throws IOException {
+        concatenate(files, new FileTypeControl(), hasHeaderRow ? 1 : 0, target);
+    }
+
+    /**
+     * Writes the files one after another to the target, decompressing any that are compressed and
+     * keeping only the first file's leading rows: the rows the control skips and, unless it lists the
+     * columns, the header row after them (as NumberedRowReader reads them). Those are parsed as the
+     * control says, so quoted headers that span lines are left out whole.
+     */
+    public static void concatenate(List<File> files, FileTypeControl fileControl, File target) throws IOException {
+        int skip = fileControl.skip == null ? 0 : fileControl.skip;
+        concatenate(files, fileControl, skip + (fileControl.columns == null ? 1 : 0), target);
+    }
+
+    private static void concatenate(List<File> files, FileTypeControl fileControl, int leadingRows, File target) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+            int last = '\n';
+            boolean first = true;
+            byte[] buffer = new byte[64 * 1024];
+            for (File file : files) {
+                int leadingLines = first ? 0 : linesOfLeadingRows(file, fileControl, leadingRows);
+                try (InputStream in = new BufferedInputStream(Utils.openDataFile(file))) {
+                    if (!first) {
+                        skipByteOrderMark(in);
+                        for (int i = 0; i < leadingLines; i++)
+                            skipLine(in);
+                    }
+                    int read;
+                    boolean wroteAny = false;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (read == 0)
+                            continue;
+                        if (!wroteAny && last != '\n')
+                            out.write('\n');
+                        out.write(buffer, 0, read);
+                        last = buffer[read - 1];
+                        wroteAny = true;
+                    }
+                }
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * @return the number of lines the first rows of the file take up
+     */
+    private static int linesOfLeadingRows(File file, FileTypeControl fileControl, int rows) throws IOException {
+        int lines = 0;
+        try (CSVReader reader = Utils.getReader(file, fileControl)) {
+            for (int i = 0; i < rows; i++) {
+                String[] row = reader.readNext();
+                if (row == null)
+                    break;
+                lines++;
+                for (String cell : row) {
+                    for (int at = cell.indexOf('\n'); at >= 0; at = cell.indexOf('\n', at + 1))
+                        lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static void skipByteOrderMark(InputStream in) throws IOException {
+        in.mark(3);
+        if (in.read() != 0xEF || in.read() != 0xBB || in.read() != 0xBF)
+            in.reset();
+    }
+
+    private static void skipLine(InputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            // skip
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println(LocalDateTime.now().toString(ISODateTimeFormat.dateHourMinuteSecond()) + " " + message);
+    }
+
+    private static class Candidate {
+        long size;
+        long modified;
+        long unchangedSince;
+
+        Candidate(long size, long modified, long unchangedSince) {
+            this.size = size;
+            this.modified = modified;
+            this.unchangedSince = unchangedSince;
+        }
+    }
+
+    private static class Batch {
+        final File jobFile;
+        final long publishAt;
+        final List<File> files = new ArrayList<>();
+
+        Batch(File jobFile, long publishAt) {
+            this.jobFile = jobFile;
+            this.publishAt = publishAt;
+        }
+    }
+}
@@ -19,13 +19,13 @@ import java.util.Date;
 import java.util.List;
 
 public class DatasyncDirectory {
-    private static HttpUtility http;
     private static String datasync = "/datasync/id/";
     private static String completedFolder = "completed/";
     private static String signaturesFolder = "signatures/";
     private static ObjectMapper mapper = new ObjectMapper();
-    private static String baseFolder;
-    private URIBuilder baseUri;
+    private final HttpUtility http;
+    private final String baseFolder;
+    private final URIBuilder baseUri;
 
     /**
      * Creates a new DatasyncDirectory object for a given dataset
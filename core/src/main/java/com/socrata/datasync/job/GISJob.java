@@ -7,11 +7,14 @@ import com.socrata.datasync.config.controlfile.ControlFile;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.publishers.GISPublisher;
+import com.socrata.datasync.publishers.GeoJsonPreprocessor;
 import com.socrata.datasync.validation.GISJobValidity;
+import com.socrata.model.importer.Column;
 import com.socrata.model.importer.Dataset;
 import com.socrata.model.importer.GeoDataset;
 
 
+import com.google.common.io.Files;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.http.HttpException;
@@ -25,6 +28,11 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -38,7 +46,7 @@ public class GISJob extends Job {
     private String defaultJobName = "Unsaved GIS Job" + " (" + jobNum + ")";
 
     // Anytime a @JsonProperty is added/removed/updated in this class add 1 to this value
-    private static final long fileVersionUID = 4L;
+    private static final long fileVersionUID = 5L;
 
     private UserPreferences userPrefs;
     private String datasetID = "";
@@ -47,6 +55,10 @@ public class GISJob extends Job {
     private boolean fileToPublishHasHeaderRow = true;
     private ControlFile controlFile = null;
     private Map<String, String> layerMap = new HashMap<>();
+    // optional GeoJSON preprocessing; see GeoJsonPreprocessor
+    private Integer geoJsonCoordinatePrecision = null;
+    private Double geoJsonSimplificationTolerance = null;
+    private boolean dropUnmappedGeoJsonProperties = false;
 
     private String userAgent = "datasync";
 
@@ -91,6 +103,9 @@ public class GISJob extends Job {
         setPublishMethod(loadedJob.getPublishMethod());
         setPathToSavedFile(pathToFile);
         setLayerMap(loadedJob.getLayerMap());
+        setGeoJsonCoordinatePrecision(loadedJob.getGeoJsonCoordinatePrecision());
+        setGeoJsonSimplificationTolerance(loadedJob.getGeoJsonSimplificationTolerance());
+        setDropUnmappedGeoJsonProperties(loadedJob.getDropUnmappedGeoJsonProperties());
 
         setUserAgentSijFile();
     }
@@ -146,6 +161,24 @@ public class GISJob extends Job {
     @JsonProperty("layerMap")
     public Map<String, String> getLayerMap() { return layerMap; }
 
+    @JsonProperty("geoJsonCoordinatePrecision")
+    public void setGeoJsonCoordinatePrecision(Integer decimalPlaces) { geoJsonCoordinatePrecision = decimalPlaces; }
+
+    @JsonProperty("geoJsonCoordinatePrecision")
+    public Integer getGeoJsonCoordinatePrecision() { return geoJsonCoordinatePrecision; }
+
+    @JsonProperty("geoJsonSimplificationTolerance")
+    public void setGeoJsonSimplificationTolerance(Double tolerance) { geoJsonSimplificationTolerance = tolerance; }
+
+    @JsonProperty("geoJsonSimplificationTolerance")
+    public Double getGeoJsonSimplificationTolerance() { return geoJsonSimplificationTolerance; }
+
+    @JsonProperty("dropUnmappedGeoJsonProperties")
+    public void setDropUnmappedGeoJsonProperties(boolean drop) { dropUnmappedGeoJsonProperties = drop; }
+
+    @JsonProperty("dropUnmappedGeoJsonProperties")
+    public boolean getDropUnmappedGeoJsonProperties() { return dropUnmappedGeoJsonProperties; }
+
     public String getDefaultJobName() { return defaultJobName; }
 
     public void setUserAgent(String usrAgentName) {
@@ -198,6 +231,7 @@ public class GISJob extends Job {
      */
     public JobStatus run() {
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
+        long startedAt = System.currentTimeMillis();
         String publishExceptions = "";
         JobStatus runStatus = JobStatus.SUCCESS;
 
@@ -211,7 +245,19 @@ public class GISJob extends Job {
             try {
                 File fileToPublishFile = new File(fileToPublish);
                 if (publishMethod == PublishMethod.replace) {
-                    runStatus = GISPublisher.replaceGeo(fileToPublishFile, connectionInfo, datasetID, layerMap, userPrefs);
+                    File preprocessedFile = null;
+                    try {
+                        preprocessedFile = preprocessGeoJson(fileToPublishFile);
+                        try (GISPublisher publisher = new GISPublisher(userPrefs)) {
+                            runStatus = publisher.replaceGeo(
+                                preprocessedFile == null ? fileToPublishFile : preprocessedFile, datasetID, layerMap);
+                        }
+                    } finally {
+                        if (preprocessedFile != null) {
+                            preprocessedFile.delete();
+                            preprocessedFile.getParentFile().delete();
+                        }
+                    }
                 } else {
                     runStatus = JobStatus.INVALID_PUBLISH_METHOD;
                 }
@@ -223,14 +269,112 @@ public class GISJob extends Job {
 
 
         if (publishExceptions.length() > 0) {
-            runStatus = JobStatus.PUBLISH_ERROR;
-            runStatus.setMessage(publishExceptions);
+            runStatus = JobStatus.PUBLISH_ERROR.withMessage(publishExceptions);
         }
 
+        runStatus = runStatus.finishedSince(startedAt);
+        logRetryMetrics();
         emailAdmin(runStatus);
         return runStatus;
     }
 
+    /**
+     * If any GeoJSON preprocessing is configured and the file to publish is GeoJSON, writes a
+     * preprocessed copy (with the same file name) to a temporary directory.
+     * @return the preprocessed copy, or null if the original file should be published as is
+     */
+    private File preprocessGeoJson(File geoJsonFile) throws IOException, URISyntaxException, HttpException {
+        if (!FilenameUtils.getExtension(geoJsonFile.getName()).equalsIgnoreCase(GISJobValidity.GEOJSON_EXT))
+            return null;
+
+        GeoJsonPreprocessor preprocessor = new GeoJsonPreprocessor();
+        if (geoJsonCoordinatePrecision != null)
+            preprocessor.coordinatePrecision(geoJsonCoordinatePrecision);
+        if (geoJsonSimplificationTolerance != null)
+            preprocessor.simplificationTolerance(geoJsonSimplificationTolerance);
+        if (dropUnmappedGeoJsonProperties) {
+            Set<String> targetColumns = getTargetLayerColumnNames();
+            if (targetColumns == null)
+                System.out.println("Keeping all GeoJSON properties: the target layer could not be determined");
+            else
+                preprocessor.keepOnlyProperties(targetColumns);
+        }
+        if (!preprocessor.hasWorkToDo())
+            return null;
+
+        File tempDir = Files.createTempDir();
+        File preprocessedFile = new File(tempDir, geoJsonFile.getName());
+        try {
+            GeoJsonPreprocessor.Result result = preprocessor.process(geoJsonFile, preprocessedFile);
+            System.out.println(result);
+        } catch (IOException | RuntimeException e) {
+            // the caller only cleans up a copy it was given
+            preprocessedFile.delete();
+            tempDir.delete();
+            throw e;
+        }
+        return preprocessedFile;
+    }
+
+    /**
+     * @return the names and field names of the columns of the layer the GeoJSON will replace,
+     * or null if the dataset does not have exactly one layer
+     */
+    private Set<String> getTargetLayerColumnNames() throws URISyntaxException, IOException, HttpException {
+        List<String> layers = new ArrayList<>(layerMap.values());
+        if (layers.isEmpty())
+            layers = DatasetUtils.getGeoDatasetInfo(userPrefs, datasetID).getChildViews();
+        if (layers == null || layers.size() != 1)
+            return null;
+
+        Set<String> names = new HashSet<>();
+        for (Column column : DatasetUtils.getDatasetInfo(userPrefs, layers.get(0)).getColumns()) {
+            names.add(column.getName());
+            names.add(column.getFieldName());
+        }
+        return names;
+    }
+
+    /**
+     * Runs several GIS jobs at once, at most maxConcurrentJobs at a time. Each job uses its own
+     * publisher (and so its own import ticket and HTTP client).
+     * @param jobs the jobs to run; each must already be configured
+     * @param maxConcurrentJobs the maximum number of jobs to run at the same time
+     * @return the status of each job, in the same order as the given jobs
+     */
+    public static List<JobStatus> runConcurrently(List<GISJob> jobs, int maxConcurrentJobs) throws InterruptedException {
+        if (maxConcurrentJobs < 1)
+            throw new IllegalArgumentException("maxConcurrentJobs must be at least 1");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrentJobs, Math.max(1, jobs.size())));
+        try {
+            List<Future<JobStatus>> futures = new ArrayList<>();
+            for (final GISJob job : jobs) {
+                futures.add(executor.submit(new Callable<JobStatus>() {
+                    @Override
+                    public JobStatus call() {
+                        JobStatus status = job.run();
+                        System.out.println(job.getJobFilename() + ": " + status.getMessage());
+                        return status;
+                    }
+                }));
+            }
+
+            List<JobStatus> statuses = new ArrayList<>();
+            for (Future<JobStatus> future : futures) {
+                try {
+                    statuses.add(future.get());
+                } catch (ExecutionException e) {
+                    JobStatus status = JobStatus.PUBLISH_ERROR.withMessage(e.getCause().getMessage());
+                    statuses.add(status);
+                }
+            }
+            return statuses;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * This method attempts to map layers in the existing dataset to layers found in a shapefile,
      * so that we replace existing layers where possible instead of creating new ones and changing
@@ -271,15 +415,19 @@ public class GISJob extends Job {
         List<String> existingLayersUids = dataset.getChildViews();
         Map<String, String> existingLayerInfo = new HashMap<>();
 
-        for (String uid : existingLayersUids) {
-            try {
-                Dataset child = DatasetUtils.getDatasetInfo(userPrefs, uid);
-                existingLayerInfo.put(child.getName(), uid);
-            } catch (Exception e) {
-                // there’s no way for the client to recover,
-                // so a checked exception is not necessary
-                throw new RuntimeException(e);
+        try {
+            // fetch every layer at once on the asynchronous client
+            Map<String, Future<Dataset>> children = new LinkedHashMap<>();
+            for (String uid : existingLayersUids) {
+                children.put(uid, DatasetUtils.getDatasetInfoAsync(userPrefs, uid));
+            }
+            for (Map.Entry<String, Future<Dataset>> child : children.entrySet()) {
+                existingLayerInfo.put(child.getValue().get().getName(), child.getKey());
             }
+        } catch (Exception e) {
+            // there’s no way for the client to recover,
+            // so a checked exception is not necessary
+            throw new RuntimeException(e);
         }
 
         return existingLayerInfo;
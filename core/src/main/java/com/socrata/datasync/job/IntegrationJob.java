@@ -3,6 +3,7 @@ package com.socrata.datasync.job;
 import com.google.common.collect.ImmutableMap;
 import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaImporter;
+import com.socrata.datasync.LogDatasetSink;
 import com.socrata.datasync.PublishMethod;
 import com.socrata.datasync.SMTPMailer;
 import com.socrata.datasync.SocrataConnectionInfo;
@@ -10,11 +11,16 @@ import com.socrata.datasync.Utils;
 import com.socrata.datasync.VersionProvider;
 import com.socrata.datasync.config.CommandLineOptions;
 import com.socrata.datasync.config.controlfile.ControlFile;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.publishers.DeltaImporter2Publisher;
 import com.socrata.datasync.publishers.FTPDropbox2Publisher;
 import com.socrata.datasync.publishers.Soda2Publisher;
+import com.socrata.datasync.sources.ColumnProjection;
+import com.socrata.datasync.sources.CsvEncodingInputStream;
+import com.socrata.datasync.sources.JdbcRowSource;
+import com.socrata.datasync.validation.ColumnProfiler;
 import com.socrata.datasync.validation.IntegrationJobValidity;
 import com.socrata.exceptions.SodaError;
 import com.socrata.model.UpsertError;
@@ -26,24 +32,28 @@ import com.fasterxml.jackson.databind.DeserializationConfig;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.io.Files;
+import com.google.common.io.InputSupplier;
 import org.joda.time.LocalDateTime;
 import org.joda.time.format.ISODateTimeFormat;
-import javax.ws.rs.ProcessingException;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectInputStream;
-import java.net.SocketException;
-import java.util.ArrayList;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 @JsonIgnoreProperties(ignoreUnknown=true)
 @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
@@ -58,7 +68,7 @@ public class IntegrationJob extends Job {
     public static final int NUM_BYTES_PER_MB = 1048576;
 
     // Anytime a @JsonProperty is added/removed/updated in this class add 1 to this value
-    private static final long fileVersionUID = 4L;
+    private static final long fileVersionUID = 6L;
 
     private UserPreferences userPrefs;
     private String datasetID = "";
@@ -69,6 +79,10 @@ public class IntegrationJob extends Job {
     private String controlFileContent = null;
     private boolean publishViaFTP = false;
     private boolean publishViaDi2Http = false;
+    private boolean preflightValidation = false;
+    private String jdbcUrl = null;
+    private String jdbcQuery = null;
+    private Integer jdbcFetchSize = null;
     private ControlFile controlFile = null;
 
     private String userAgent = "datasync";
@@ -139,6 +153,10 @@ public class IntegrationJob extends Job {
         setControlFileContent(loadedJob.getControlFileContent());
         setPublishViaFTP(loadedJob.getPublishViaFTP());
         setPublishViaDi2Http(loadedJob.getPublishViaDi2Http());
+        setPreflightValidation(loadedJob.getPreflightValidation());
+        setJdbcUrl(loadedJob.getJdbcUrl());
+        setJdbcQuery(loadedJob.getJdbcQuery());
+        setJdbcFetchSize(loadedJob.getJdbcFetchSize());
     }
 
 
@@ -217,6 +235,30 @@ public class IntegrationJob extends Job {
     @JsonProperty("publishViaDi2Http")
     public void setPublishViaDi2Http(boolean newPublishViaDi2Http) { publishViaDi2Http = newPublishViaDi2Http; }
 
+    @JsonProperty("preflightValidation")
+    public boolean getPreflightValidation() { return preflightValidation; }
+
+    @JsonProperty("preflightValidation")
+    public void setPreflightValidation(boolean validate) { preflightValidation = validate; }
+
+    @JsonProperty("jdbcUrl")
+    public String getJdbcUrl() { return jdbcUrl; }
+
+    @JsonProperty("jdbcUrl")
+    public void setJdbcUrl(String url) { jdbcUrl = url; }
+
+    @JsonProperty("jdbcQuery")
+    public String getJdbcQuery() { return jdbcQuery; }
+
+    @JsonProperty("jdbcQuery")
+    public void setJdbcQuery(String query) { jdbcQuery = query; }
+
+    @JsonProperty("jdbcFetchSize")
+    public Integer getJdbcFetchSize() { return jdbcFetchSize; }
+
+    @JsonProperty("jdbcFetchSize")
+    public void setJdbcFetchSize(Integer fetchSize) { jdbcFetchSize = fetchSize; }
+
     public String getDefaultJobName() { return defaultJobName; }
 
     public void setUserAgent(String usrAgentName) {
@@ -260,6 +302,12 @@ public class IntegrationJob extends Job {
         if (controlFilePath == null)
             controlFilePath = cmd.getOptionValue(options.PATH_TO_FTP_CONTROL_FILE_FLAG);
         setPathToControlFile(controlFilePath);
+        setPreflightValidation(Boolean.parseBoolean(cmd.getOptionValue(options.PREFLIGHT_VALIDATION_FLAG, options.DEFAULT_PREFLIGHT_VALIDATION)));
+        setJdbcUrl(cmd.getOptionValue(options.JDBC_URL_FLAG));
+        setJdbcQuery(cmd.getOptionValue(options.JDBC_QUERY_FLAG));
+        String fetchSize = cmd.getOptionValue(options.JDBC_FETCH_SIZE_FLAG);
+        if(fetchSize != null)
+            setJdbcFetchSize(Integer.parseInt(fetchSize));
 
         String userAgentName = cmd.getOptionValue(options.USER_AGENT_FLAG);
         if(Utils.nullOrEmpty(userAgentName)) {
@@ -277,6 +325,7 @@ public class IntegrationJob extends Job {
     public JobStatus run() {
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
         UpsertResult result = null;
+        long startedAt = System.currentTimeMillis();
         String publishExceptions = "";
         JobStatus runStatus = JobStatus.SUCCESS;
 
@@ -285,12 +334,19 @@ public class IntegrationJob extends Job {
             runStatus = controlDeserialization;
         } else {
             JobStatus validationStatus = IntegrationJobValidity.validateJobParams(userPrefs, this);
+            if (!validationStatus.isError() && preflightValidation && Utils.nullOrEmpty(jdbcUrl)) {
+                System.out.println("Checking every row of " + fileToPublish + " before publishing...");
+                validationStatus = IntegrationJobValidity.checkRows(userPrefs, this);
+            }
             if (validationStatus.isError()) {
                 runStatus = validationStatus;
             } else {
+                FutureTask<File> profiling = startColumnProfile();
                 Soda2Producer producer = null;
                 try {
-                    File fileToPublishFile = new File(fileToPublish);
+                    boolean fromQuery = !Utils.nullOrEmpty(jdbcUrl);
+                    // query jobs have no file to publish
+                    File fileToPublishFile = fromQuery ? null : new File(fileToPublish);
                     if (publishViaDi2Http) {
                         try (DeltaImporter2Publisher publisher = new DeltaImporter2Publisher(userPrefs, userAgent)) {
                             String action = controlFile.action == null ? publishMethod.name() : controlFile.action;
@@ -298,7 +354,15 @@ public class IntegrationJob extends Job {
                             if ("upsert".equalsIgnoreCase(action))
                                 action = "Append";
                             controlFile.action = Utils.capitalizeFirstLetter(action);
-                            runStatus = publisher.publishWithDi2OverHttp(datasetID, fileToPublishFile, controlFile);
+                            if (fromQuery) {
+                                runStatus = publishQueryWithDi2(publisher);
+                            } else {
+                                ColumnProjection projection = projectIgnoredColumns(fileToPublishFile);
+                                if (projection != null)
+                                    runStatus = publishProjectionWithDi2(publisher, projection);
+                                else
+                                    runStatus = publisher.publishWithDi2OverHttp(datasetID, fileToPublishFile, controlFile);
+                            }
                         }
                     } else if (publishViaFTP) {
                         runStatus = doPublishViaFTPv2(fileToPublishFile);
@@ -312,22 +376,26 @@ public class IntegrationJob extends Job {
                                 Integer.parseInt(userPrefs.getFilesizeChunkingCutoffMB()) * NUM_BYTES_PER_MB;
                         int numRowsPerChunk = userPrefs.getNumRowsPerChunk() == null ? 10000 :
                                 Integer.parseInt(userPrefs.getNumRowsPerChunk());
-                        switch (publishMethod) {
-                            case upsert:
-                            case append:
-                                result = doAppendOrUpsertViaHTTP(
-                                        producer, importer, fileToPublishFile, filesizeChunkingCutoffBytes, numRowsPerChunk);
-                                break;
-                            case replace:
-                                result = Soda2Publisher.replaceNew(
-                                        producer, importer, datasetID, fileToPublishFile, fileToPublishHasHeaderRow);
-                                break;
-                            case delete:
-                                result = doDeleteViaHTTP(
-                                        producer, importer, fileToPublishFile, filesizeChunkingCutoffBytes, numRowsPerChunk);
-                                break;
-                            default:
-                                runStatus = JobStatus.INVALID_PUBLISH_METHOD;
+                        if (fromQuery) {
+                            result = doPublishQueryViaHTTP(producer, importer, numRowsPerChunk);
+                        } else {
+                            switch (publishMethod) {
+                                case upsert:
+                                case append:
+                                    result = doAppendOrUpsertViaHTTP(
+                                            producer, importer, fileToPublishFile, filesizeChunkingCutoffBytes, numRowsPerChunk);
+                                    break;
+                                case replace:
+                                    result = Soda2Publisher.replaceNew(
+                                            producer, importer, datasetID, fileToPublishFile, fileToPublishHasHeaderRow);
+                                    break;
+                                case delete:
+                                    result = doDeleteViaHTTP(
+                                            producer, importer, fileToPublishFile, filesizeChunkingCutoffBytes, numRowsPerChunk);
+                                    break;
+                                default:
+                                    runStatus = JobStatus.INVALID_PUBLISH_METHOD;
+                            }
                         }
                     }
 
@@ -337,33 +405,28 @@ public class IntegrationJob extends Job {
                 } finally {
                     if (producer != null) producer.close();
                 }
+                finishColumnProfile(profiling);
             }
         }
 
         if (publishExceptions.length() > 0) {
-            runStatus = JobStatus.PUBLISH_ERROR;
-            runStatus.setMessage(publishExceptions);
+            runStatus = JobStatus.PUBLISH_ERROR.withMessage(publishExceptions);
         } else if (result != null && result.errorCount() > 0) {  // Check for [row-level] SODA 2 errors
             runStatus = craftSoda2PublishError(result);
         }
 
-        String logPublishingErrorMessage = logRunResults(runStatus, result);
-        emailAdmin(runStatus, logPublishingErrorMessage);
+        runStatus = runStatus.finishedSince(startedAt);
+        logRetryMetrics();
+        logRunResults(runStatus, result);
+        emailAdmin(runStatus);
         return runStatus;
     }
 
 
     /**
-     * Adds an entry to specified log dataset with given job run information
-     *
-     * @return null if log entry was added successfully, otherwise return an error message as a String
+     * @return the row recording the given run in the log dataset
      */
-    public static String addLogEntry(final String logDatasetID, final SocrataConnectionInfo connectionInfo,
-                                     final IntegrationJob job, final JobStatus status, final UpsertResult result) {
-        final Soda2Producer producer = Soda2Producer.newProducer(connectionInfo.getUrl(), connectionInfo.getUser(),
-                connectionInfo.getPassword(), connectionInfo.getToken());
-
-        List<Map<String, Object>> upsertObjects = new ArrayList<>();
+    public static Map<String, Object> buildLogEntry(final IntegrationJob job, final JobStatus status, final UpsertResult result) {
         Map<String, Object> newCols = new HashMap<>();
 
         // add standard log data
@@ -389,41 +452,71 @@ public class IntegrationJob extends Job {
             newCols.put("Success", true);
         }
         newCols.put("DataSyncVersion", VersionProvider.getThisVersion());
-        upsertObjects.add(ImmutableMap.copyOf(newCols));
-
-        String logPublishingErrorMessage = null;
+        return ImmutableMap.copyOf(newCols);
+    }
 
-        int retryLimit = 10;
-        boolean retry;
-        do {
-            retry = false;
-            try {
-                producer.upsert(logDatasetID, upsertObjects);
-            }
-            catch (SodaError | InterruptedException e) {
-                e.printStackTrace();
-                logPublishingErrorMessage = e.getMessage();
-            }
-            catch (ProcessingException e) {
-                if(e.getCause() instanceof SocketException) {
-                    System.out.println("Socket exception while updating logging dataset: " + e.getCause().getMessage());
-                    if(retryLimit-- > 0) {
-                        System.out.println("Retrying");
-                        retry = true;
-                    } else {
-                        e.printStackTrace();
-                        logPublishingErrorMessage = e.getMessage();
-                    }
-                } else {
-                    throw e;
-                }
+    /**
+     * Starts profiling the columns of the file to publish alongside publishing it, if its control file
+     * asks for column statistics. The profile is written next to the job file, or if the job hasn't been
+     * saved, next to the file to publish.
+     * @return the task writing the profile, or null if there is none
+     */
+    private FutureTask<File> startColumnProfile() {
+        if (!(publishViaDi2Http || publishViaFTP) || controlFile == null || !Utils.nullOrEmpty(jdbcUrl))
+            return null;
+        final File file = new File(fileToPublish);
+        final FileTypeControl fileControl = Utils.getDataFileExtension(fileToPublish).equals("tsv") ?
+                controlFile.getTsvFtc() : controlFile.getCsvFtc();
+        if (fileControl == null || fileControl.columnStatistics == null || !fileControl.columnStatistics)
+            return null;
+
+        String reportBase = Utils.nullOrEmpty(pathToSavedJobFile) ? fileToPublish : pathToSavedJobFile;
+        final File report = new File(reportBase + ".profile.json");
+        FutureTask<File> profiling = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                new ColumnProfiler(fileControl).profile(file).writeTo(report);
+                return report;
             }
-        } while(retry);
+        });
+        Thread thread = new Thread(profiling, "column-profile");
+        thread.setDaemon(true);
+        thread.start();
+        return profiling;
+    }
 
-        return logPublishingErrorMessage;
+    /**
+     * Waits for the column profile to be written; failing to write it doesn't fail the job.
+     */
+    private void finishColumnProfile(FutureTask<File> profiling) {
+        if (profiling == null)
+            return;
+        try {
+            System.out.println("Wrote the column profile of " + fileToPublish + " to " + profiling.get());
+        } catch (ExecutionException e) {
+            System.out.println("Unable to profile the columns of " + fileToPublish + ": " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            profiling.cancel(true);
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private JobStatus doPublishViaFTPv2(File fileToPublishFile) {
+    private JobStatus doPublishViaFTPv2(File fileToPublishFile) throws IOException {
+        ColumnProjection projection = projectIgnoredColumns(fileToPublishFile);
+        if (projection != null) {
+            File tempDir = Files.createTempDir();
+            File projectedFile = new File(tempDir, projection.getFileName() + ".gz");
+            try {
+                try (OutputStream out = new GZIPOutputStream(new FileOutputStream(projectedFile))) {
+                    projection.writeTo(out);
+                }
+                return FTPDropbox2Publisher.publishViaFTPDropboxV2(
+                        userPrefs, datasetID, projectedFile, controlFileMapper.writeValueAsString(projectControlFile(projection)));
+            } finally {
+                projectedFile.delete();
+                tempDir.delete();
+            }
+        }
         if((pathToControlFile != null && !pathToControlFile.equals(""))) {
             return FTPDropbox2Publisher.publishViaFTPDropboxV2(
                     userPrefs, datasetID, fileToPublishFile, new File(pathToControlFile));
@@ -433,7 +526,7 @@ public class IntegrationJob extends Job {
         }
     }
 
-    private void sendErrorNotificationEmail(final String adminEmail, final SocrataConnectionInfo connectionInfo, final JobStatus runStatus, final String runErrorMessage, final String logDatasetID, final String logPublishingErrorMessage) {
+    private void sendErrorNotificationEmail(final String adminEmail, final SocrataConnectionInfo connectionInfo, final JobStatus runStatus, final String runErrorMessage, final String logDatasetID) {
         String errorEmailMessage = "";
         String urlToLogDataset = connectionInfo.getUrl() + "/d/" + logDatasetID;
         if(runStatus.isError()) {
@@ -446,12 +539,7 @@ public class IntegrationJob extends Job {
                     + "\nError message: " + runErrorMessage
                     + "\nLog dataset: " + urlToLogDataset + "\n\n";
         }
-        if(logPublishingErrorMessage != null) {
-            errorEmailMessage += "There was an error updating the log dataset: "
-                    + urlToLogDataset + "\n"
-                    + "Error message: " + logPublishingErrorMessage + "\n\n";
-        }
-        if(runStatus.isError() || logPublishingErrorMessage != null) {
+        if(runStatus.isError()) {
             try {
                 SMTPMailer.send(adminEmail, "Socrata DataSync Error", errorEmailMessage);
             } catch (Exception e) {
@@ -476,9 +564,99 @@ public class IntegrationJob extends Job {
         return result;
     }
 
+    /**
+     * Publishes the results of the job's query via SODA 2; their size isn't known up front,
+     * so upserts are always chunked.
+     */
+    private UpsertResult doPublishQueryViaHTTP(Soda2Producer producer, SodaImporter importer, int numRowsPerChunk)
+            throws SodaError, InterruptedException, IOException {
+        try (JdbcRowSource rows = openQuery()) {
+            switch (publishMethod) {
+                case upsert:
+                case append:
+                    return Soda2Publisher.publishViaSoda2(
+                            producer, importer, PublishMethod.upsert, datasetID, rows, numRowsPerChunk, true);
+                case replace:
+                    return Soda2Publisher.publishViaSoda2(
+                            producer, importer, PublishMethod.replace, datasetID, rows, UPLOAD_SINGLE_CHUNK, true);
+                case delete:
+                    return Soda2Publisher.deleteRows(producer, importer, datasetID, rows, numRowsPerChunk, true);
+                default:
+                    throw new IllegalArgumentException("Error performing publish: "
+                            + publishMethod + " is not a valid publishing method");
+            }
+        }
+    }
+
+    /**
+     * @return the projection of the file leaving out its ignored columns, or null if there are none to leave out
+     */
+    private ColumnProjection projectIgnoredColumns(File fileToPublishFile) throws IOException {
+        if (controlFile == null)
+            return null;
+        FileTypeControl fileControl = Utils.getDataFileExtension(fileToPublishFile.getName()).equals("tsv") ?
+                controlFile.getTsvFtc() : controlFile.getCsvFtc();
+        if (fileControl == null)
+            return null;
+        ColumnProjection projection = ColumnProjection.of(fileToPublishFile, fileControl);
+        if (projection != null)
+            System.out.println("Leaving the ignored columns " + projection.getDroppedColumns() + " out of the upload");
+        return projection;
+    }
+
+    private ControlFile projectControlFile(ColumnProjection projection) throws IOException {
+        return new ControlFile(controlFile.action, controlFile.opaque, projection.getFileControl(), null,
+                controlFile.replacePreviousQueued);
+    }
+
+    private JobStatus publishProjectionWithDi2(DeltaImporter2Publisher publisher, final ColumnProjection projection) throws IOException {
+        InputSupplier<InputStream> csv = new InputSupplier<InputStream>() {
+            @Override
+            public InputStream getInput() throws IOException {
+                return projection.openStream();
+            }
+        };
+        return publisher.publishWithDi2OverHttp(datasetID, projection.getFileName(), csv, projectControlFile(projection));
+    }
+
+    /**
+     * Publishes the results of the job's query via delta-importer-2, encoding them as CSV as they are read.
+     * The query is run again should the publisher need to restart the job.
+     */
+    private JobStatus publishQueryWithDi2(DeltaImporter2Publisher publisher) throws IOException {
+        if (controlFile.csv == null)
+            return JobStatus.PUBLISH_ERROR.withMessage("The control file must have a 'csv' section to publish the results of a query");
+        // a copy describing the CSV the rows are encoded as, leaving the job's own control file as it was
+        FileTypeControl csvControl = controlFileMapper.readValue(
+                controlFileMapper.writeValueAsBytes(controlFile.csv), FileTypeControl.class);
+        csvControl.encoding = "utf-8";
+        csvControl.separator = ",";
+        csvControl.quote = "\"";
+        csvControl.escape = null;
+        // the header row is always written from the query's column labels, so the server reads the
+        // columns from it rather than from any the user listed
+        csvControl.columns = null;
+        csvControl.skip = 0;
+        csvControl.hasHeaderRow = true;
+        InputSupplier<InputStream> csv = new InputSupplier<InputStream>() {
+            @Override
+            public InputStream getInput() throws IOException {
+                return new CsvEncodingInputStream(openQuery());
+            }
+        };
+        ControlFile queryControl = new ControlFile(controlFile.action, controlFile.opaque, csvControl, null,
+                controlFile.replacePreviousQueued);
+        return publisher.publishWithDi2OverHttp(datasetID, datasetID + ".csv", csv, queryControl);
+    }
+
+    private JdbcRowSource openQuery() throws IOException {
+        return new JdbcRowSource(jdbcUrl, jdbcQuery, jdbcFetchSize == null ? JdbcRowSource.DEFAULT_FETCH_SIZE : jdbcFetchSize);
+    }
+
     private int numRowsPerChunk(File fileToPublishFile, int filesizeChunkingCutoffBytes, int numRowsPerChunk) {
         int numberOfRows;
-        if(fileToPublishFile.length() > filesizeChunkingCutoffBytes) {
+        // a compressed file's length says little about the size of its data, so always chunk those
+        if(fileToPublishFile.length() > filesizeChunkingCutoffBytes || Utils.isCompressed(fileToPublishFile.getName())) {
             numberOfRows = numRowsPerChunk;
         } else {
             numberOfRows = UPLOAD_SINGLE_CHUNK;
@@ -494,37 +672,31 @@ public class IntegrationJob extends Job {
             for (UpsertError upsertErr : result.getErrors()) {
                 errMsg += upsertErr.getError() + " (line " + (upsertErr.getIndex() + lineIndexOffset) + " of file) \n";
             }
-            error.setMessage(errMsg);
+            error = error.withMessage(errMsg);
         }
         return error;
     }
 
-    private String logRunResults(JobStatus runStatus, UpsertResult result) {
+    /**
+     * Queues the run's results for the log dataset, if there is one; they are written in the background.
+     */
+    private void logRunResults(JobStatus runStatus, UpsertResult result) {
         String logDatasetID = userPrefs.getLogDatasetID();
-        String logPublishingErrorMessage = null;
-        SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
-
         if (logDatasetID != null && !logDatasetID.equals("")) {
-            String logDatasetUrl = userPrefs.getDomain() + "/d/" + userPrefs.getLogDatasetID();
+            String logDatasetUrl = userPrefs.getDomain() + "/d/" + logDatasetID;
             System.out.println("Publishing results to logging dataset (" + logDatasetUrl + ")...");
-            logPublishingErrorMessage = addLogEntry(
-                    logDatasetID, connectionInfo, this, runStatus, result);
-            if (logPublishingErrorMessage != null) {
-                System.out.println("Error publishing results to logging dataset (" + logDatasetUrl + "): " +
-                        logPublishingErrorMessage);
-            }
+            LogDatasetSink.forPreferences(userPrefs).add(buildLogEntry(this, runStatus, result));
         }
-        return logPublishingErrorMessage;
     }
 
-    private void emailAdmin(JobStatus status, String logPublishingErrorMessage) {
+    private void emailAdmin(JobStatus status) {
         String adminEmail = userPrefs.getAdminEmail();
         String logDatasetID = userPrefs.getLogDatasetID();
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
 
         if(userPrefs.emailUponError() && adminEmail != null && !adminEmail.equals("")) {
             sendErrorNotificationEmail(
-                    adminEmail, connectionInfo, status, status.getMessage(), logDatasetID, logPublishingErrorMessage);
+                    adminEmail, connectionInfo, status, status.getMessage(), logDatasetID);
         }
     }
 
@@ -540,8 +712,7 @@ public class IntegrationJob extends Job {
             controlDeserialization = deserializeControlFile(new File(pathToControlFile));
 
         if (controlDeserialization == null) {
-            JobStatus noControl = JobStatus.PUBLISH_ERROR;
-            noControl.setMessage("You must generate or select a Control file if publishing via FTP SmartUpdate or delta-importer-2 over HTTP");
+            JobStatus noControl = JobStatus.PUBLISH_ERROR.withMessage("You must generate or select a Control file if publishing via FTP SmartUpdate or delta-importer-2 over HTTP");
             return noControl;
         } else if (controlDeserialization.isError()) {
             return controlDeserialization;
@@ -555,8 +726,7 @@ public class IntegrationJob extends Job {
             controlFile = controlFileMapper.readValue(contents, ControlFile.class);
             return JobStatus.SUCCESS;
         } catch (Exception e) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Unable to interpret control file contents: " + e);
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Unable to interpret control file contents: " + e);
             return status;
         }
     }
@@ -566,8 +736,7 @@ public class IntegrationJob extends Job {
             controlFile = controlFileMapper.readValue(controlFilePath, ControlFile.class);
             return JobStatus.SUCCESS;
         } catch (Exception e) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Unable to read in and interpret control file contents: " + e);
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Unable to read in and interpret control file contents: " + e);
             return status;
         }
     }
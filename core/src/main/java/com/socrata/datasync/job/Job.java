@@ -1,5 +1,6 @@
 package com.socrata.datasync.job;
 
+import com.socrata.datasync.RetryPolicy;
 import com.socrata.datasync.Utils;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.lang3.StringUtils;
@@ -34,5 +35,14 @@ public abstract class Job {
         return StringUtils.isBlank(pathToSavedJobFile) ? getDefaultJobName() : Utils.getFilename(pathToSavedJobFile);
     }
 
+    /**
+     * Prints how this process's requests have been retried or failed fast so far, if they have been at all.
+     */
+    static void logRetryMetrics() {
+        RetryPolicy retryPolicy = RetryPolicy.getDefault();
+        if (retryPolicy.getRetryCount() + retryPolicy.getRetriesDeniedByBudget() + retryPolicy.getFastFailureCount() > 0)
+            System.out.println("Requests so far: " + retryPolicy.metricsSummary());
+    }
+
 
 }
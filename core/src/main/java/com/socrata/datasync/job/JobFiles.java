@@ -0,0 +1,19 @@
+package com.socrata.datasync.job;
+
+/**
+ * The file extensions under which each kind of job is saved.
+ *
+ * These live here rather than on the job tabs so that running a job file from the command line
+ * does not load any of the GUI.
+ */
+public final class JobFiles {
+
+    public static final String INTEGRATION_JOB_EXTENSION = "sij";
+    public static final String PORT_JOB_EXTENSION = "spj";
+    public static final String METADATA_JOB_EXTENSION = "smj";
+    public static final String GIS_JOB_EXTENSION = "gij";
+
+    private JobFiles() {
+        throw new AssertionError("Never instantiate utility classes!");
+    }
+}
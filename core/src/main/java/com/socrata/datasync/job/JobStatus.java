@@ -0,0 +1,184 @@
+package com.socrata.datasync.job;
+
+/**
+ * The outcome of validating or running a job: a status code (one of the constants below) plus the
+ * message, row counts and timings of that particular run.
+ *
+ * Instances are immutable, so jobs running at the same time never see each other's messages or
+ * counts. Constants are starting points; use withMessage, withRowCounts and withTimings to get a
+ * copy carrying the details of a run. Two statuses are equal when they have the same code.
+ *
+ * @author Adrian Laurenzi
+ */
+public final class JobStatus {
+    /**
+     * Job completed
+     */
+    public static final JobStatus SUCCESS = new JobStatus("SUCCESS", "Success", false);
+
+    /**
+     * Job details are valid
+     */
+    public static final JobStatus VALID = new JobStatus("VALID", "Valid", false);
+
+    /**
+     * This is when an error is returned from the publish API call.
+     * The error message varies so it is set with withMessage()
+     */
+    public static final JobStatus PUBLISH_ERROR = new JobStatus("PUBLISH_ERROR", "", true);
+
+    /**
+     * This is when an error is returned upon running a DataPort job.
+     * The error message varies so it is set with withMessage()
+     */
+    public static final JobStatus PORT_ERROR = new JobStatus("PORT_ERROR", "", true);
+
+    public static final JobStatus INVALID_DOMAIN = new JobStatus("INVALID_DOMAIN", "Invalid Domain", true);
+
+    public static final JobStatus INVALID_DATASET_ID = new JobStatus("INVALID_DATASET_ID", "Invalid Dataset ID", true);
+
+    public static final JobStatus MISSING_FILE_TO_PUBLISH = new JobStatus("MISSING_FILE_TO_PUBLISH", "No File To Publish selected", true);
+
+    public static final JobStatus FILE_TO_PUBLISH_DOESNT_EXIST = new JobStatus("FILE_TO_PUBLISH_DOESNT_EXIST", "File To Publish does not exist", true);
+
+    public static final JobStatus FILE_TO_PUBLISH_INVALID_TABULAR_FORMAT = new JobStatus("FILE_TO_PUBLISH_INVALID_TABULAR_FORMAT", "Incorrect File Format: File to publish must be a .CSV or .TSV file.", true);
+
+    public static final JobStatus FILE_TO_PUBLISH_INVALID_GIS_FORMAT = new JobStatus("FILE_TO_PUBLISH_INVALID_GIS_FORMAT", "Incorrect File Format: File to publish must be a zipped shapefile, .KML, .KMZ or .GEOJSON file.", true);
+
+    public static final JobStatus INVALID_PUBLISH_METHOD = new JobStatus("INVALID_PUBLISH_METHOD", "Invalid publish method", true);
+
+    public static final JobStatus INVALID_PORT_METHOD = new JobStatus("INVALID_PORT_METHOD", "Invalid port method", true);
+
+    public static final JobStatus INVALID_SCHEMAS = new JobStatus("INVALID_SCHEMAS", "Schemas do not match; cannot port rows.", true);
+
+    public static final JobStatus VERSION_OUT_OF_DATE = new JobStatus("VERSION_OUT_OF_DATE", "Must download new version of DataSync before jobs can be run (critical update)", true);
+
+    public static final JobStatus MISSING_METADATA_TITLE = new JobStatus("MISSING_METADATA_TITLE", "Title is Required", true);
+
+    public static final JobStatus MISSING_COLUMNS = new JobStatus("MISSING_COLUMNS", "All fields in the dataset must be mapped",true);
+
+    public static final JobStatus ROWS_DO_NOT_CONTAIN_SAME_NUMBER_OF_COLUMNS = new JobStatus("ROWS_DO_NOT_CONTAIN_SAME_NUMBER_OF_COLUMNS", "CSV does not contain a consistent number of columns", true);
+
+    public static final JobStatus INVALID_DATETIME = new JobStatus("INVALID_DATETIME", "Cannot parse the datetime values given the current formatting.  Please check your formatting values under advanced options and try again.", true);
+
+    public static final JobStatus INVALID_ROWS = new JobStatus("INVALID_ROWS", "Rows in the file to publish cannot be interpreted", true);
+
+    public static final JobStatus INVALID_FILE = new JobStatus("INVALID_FILE", "Invalid file or file type", true);
+
+    public static final JobStatus NOT_A_GEO_DATASET = new JobStatus("NOT_A_GEO_DATASET", "The dataset you chose is not a geo dataset", true);
+
+    /**
+     * The status code, e.g. "PUBLISH_ERROR".
+     */
+    private final String name;
+
+    /**
+     * The human-readable message to store.
+     */
+    private final String message;
+
+    /**
+     * Whether this status indicates an error condition.
+     */
+    private final boolean isError;
+
+    public final Integer rowsUpdated;
+    public final Integer rowsCreated;
+    public final Integer rowsDeleted;
+    public final Integer errors;
+
+    /**
+     * When the run started and finished (epoch millis), or null if not recorded.
+     */
+    public final Long startedAt;
+    public final Long finishedAt;
+
+    private JobStatus(final String name, final String message, final boolean isError) {
+        this(name, message, isError, null, null, null, null, null, null);
+    }
+
+    private JobStatus(String name, String message, boolean isError,
+                      Integer rowsCreated, Integer rowsUpdated, Integer rowsDeleted, Integer errors,
+                      Long startedAt, Long finishedAt) {
+        this.name = name;
+        this.message = message;
+        this.isError = isError;
+        this.rowsCreated = rowsCreated;
+        this.rowsUpdated = rowsUpdated;
+        this.rowsDeleted = rowsDeleted;
+        this.errors = errors;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+    }
+
+    /**
+     * @return a copy of this status with the given message
+     */
+    public JobStatus withMessage(final String newMessage) {
+        return new JobStatus(name, newMessage, isError, rowsCreated, rowsUpdated, rowsDeleted, errors, startedAt, finishedAt);
+    }
+
+    /**
+     * @return a copy of this status with the given row counts
+     */
+    public JobStatus withRowCounts(Integer created, Integer updated, Integer deleted, Integer errorCount) {
+        return new JobStatus(name, message, isError, created, updated, deleted, errorCount, startedAt, finishedAt);
+    }
+
+    /**
+     * @return a copy of this status recording when the run started and finished
+     */
+    public JobStatus withTimings(long started, long finished) {
+        return new JobStatus(name, message, isError, rowsCreated, rowsUpdated, rowsDeleted, errors, started, finished);
+    }
+
+    /**
+     * @return a copy of this status whose run started at the given time and finished now
+     */
+    public JobStatus finishedSince(long started) {
+        return withTimings(started, System.currentTimeMillis());
+    }
+
+    /**
+     * @return a human-readable message for this status
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true if the status represents an error condition, false otherwise
+     */
+    public boolean isError() {
+        return isError;
+    }
+
+    /**
+     * @return the status code, e.g. "SUCCESS"
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return how long the run took in milliseconds, or null if not recorded
+     */
+    public Long getDurationMs() {
+        return startedAt == null || finishedAt == null ? null : finishedAt - startedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JobStatus && name.equals(((JobStatus) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -4,14 +4,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.ImmutableMap;
-import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaDdl;
 import com.socrata.api.SodaWorkflow;
 import com.socrata.datasync.*;
@@ -28,6 +26,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.ISODateTimeFormat;
 
 @JsonIgnoreProperties(ignoreUnknown=true)
 @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
@@ -236,13 +236,13 @@ public class MetadataJob extends Job {
 
         String adminEmail = userPrefs.getAdminEmail();
         String logDatasetID = userPrefs.getLogDatasetID();
-        JobStatus logStatus = JobStatus.SUCCESS;
+        if(runErrorMessage != null)
+            runStatus = runStatus.withMessage(runErrorMessage);
         if(!logDatasetID.equals("")) {
-            if(runErrorMessage != null)
-                runStatus.setMessage(runErrorMessage);
-            logStatus = addLogEntry(logDatasetID, connectionInfo, this, runStatus);
+            // written in the background; see LogDatasetSink
+            LogDatasetSink.forPreferences(userPrefs).add(buildLogEntry(this, runStatus));
         }
-        //Send email if there was an error updating log or target dataset
+        //Send email if there was an error updating the target dataset
         if(userPrefs.emailUponError() && !adminEmail.equals("")) {
             String errorEmailMessage = "";
             String urlToLogDataset = connectionInfo.getUrl() + "/d/" + logDatasetID;
@@ -253,12 +253,7 @@ public class MetadataJob extends Job {
                         + "\nError message: " + runErrorMessage
                         + "\nLog dataset: " + urlToLogDataset + "\n\n";
             }
-            if(logStatus.isError()) {
-                errorEmailMessage += "There was an error updating the log dataset: "
-                        + urlToLogDataset + "\n"
-                        + "Error message: " + logStatus.getMessage() + "\n\n";
-            }
-            if(runStatus.isError() || logStatus.isError()) {
+            if(runStatus.isError()) {
                 try {
                     SMTPMailer.send(adminEmail, "Socrata DataSync Error", errorEmailMessage);
                 } catch (Exception e) {
@@ -267,10 +262,6 @@ public class MetadataJob extends Job {
             }
         }
 
-        // IMPORTANT because setMessage from Logging dataset interferes with enum
-        if(runErrorMessage != null)
-            runStatus.setMessage(runErrorMessage);
-
         return runStatus;
     }
 
@@ -287,17 +278,14 @@ public class MetadataJob extends Job {
         }
     }
 
-    //Probably makes sense to make one generic addLogEntry() for all job types
-    public static JobStatus addLogEntry(String logDatasetID, SocrataConnectionInfo connectionInfo,
-                                        MetadataJob job, JobStatus status) {
-        final Soda2Producer producer = Soda2Producer.newProducer(connectionInfo.getUrl(), connectionInfo.getUser(), connectionInfo.getPassword(), connectionInfo.getToken());
-
-        List<Map<String, Object>> upsertObjects = new ArrayList<Map<String, Object>>();
+    /**
+     * @return the row recording the given run in the log dataset
+     */
+    static Map<String, Object> buildLogEntry(MetadataJob job, JobStatus status) {
         Map<String, Object> newCols = new HashMap<String,Object>();
 
         // add standard log data
-        Date currentDateTime = new Date();
-        newCols.put("Date", (Object) currentDateTime);
+        newCols.put("Date", ISODateTimeFormat.dateTime().print(new LocalDateTime()));
         newCols.put("DatasetID", (Object) job.getDatasetID());
         newCols.put("JobFile", (Object) job.getPathToSavedFile());
         if(status.isError()) {
@@ -305,33 +293,9 @@ public class MetadataJob extends Job {
         } else {
             newCols.put("Success", (Object) true);
         }
-        upsertObjects.add(ImmutableMap.copyOf(newCols));
-
-        JobStatus logStatus = JobStatus.SUCCESS;
-        String errorMessage = "";
-        boolean noPublishExceptions = false;
-        try {
-            producer.upsert(logDatasetID, upsertObjects);
-            noPublishExceptions = true;
-        }
-        catch (SodaError sodaError) {
-            errorMessage = sodaError.getMessage();
-        }
-        catch (InterruptedException intrruptException) {
-            errorMessage = intrruptException.getMessage();
-        }
-        catch (Exception other) {
-            errorMessage = other.toString() + ": " + other.getMessage();
-        } finally {
-            if(!noPublishExceptions) {
-                logStatus = JobStatus.PUBLISH_ERROR;
-                logStatus.setMessage(errorMessage);
-            }
-        }
-        return logStatus;
+        return ImmutableMap.copyOf(newCols);
     }
 
-
     @JsonProperty("fileVersionUID")
     public long getFileVersionUID() {
         return fileVersionUID;
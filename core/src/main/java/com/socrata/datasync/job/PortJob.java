@@ -222,8 +222,7 @@ public class PortJob extends Job {
             try {
                 useOldCodePath = !Utils.regionOfDomain(userPrefs, sourceSiteDomain).equals(Utils.regionOfDomain(userPrefs, userPrefs.getDomain()));
             } catch(URISyntaxException | IOException e) {
-                runStatus = JobStatus.PORT_ERROR;
-                runStatus.setMessage(e.getMessage());
+                runStatus = JobStatus.PORT_ERROR.withMessage(e.getMessage());
                 return runStatus;
             }
 
@@ -289,8 +288,7 @@ public class PortJob extends Job {
                         // TODO (maybe) more DataPort error checking...?
                         runStatus = JobStatus.SUCCESS;
                     } else {
-                        runStatus = JobStatus.PORT_ERROR;
-                        runStatus.setMessage(errorMessage);
+                        runStatus = JobStatus.PORT_ERROR.withMessage(errorMessage);
                     }
                 }
             } else {
@@ -306,13 +304,11 @@ public class PortJob extends Job {
                     } else if (portMethod.equals(PortMethod.copy_data)) {
                         JobStatus schemaCheck = PortUtility.assertSchemasAreAlike(loader, creator, sourceSetID, sinkSetID);
                         if (schemaCheck.isError()) {
-                            runStatus = JobStatus.PORT_ERROR;
-                            runStatus.setMessage(schemaCheck.getMessage());
+                            runStatus = JobStatus.PORT_ERROR.withMessage(schemaCheck.getMessage());
                             return runStatus;
                         }
                     } else {
-                        runStatus = JobStatus.PORT_ERROR;
-                        runStatus.setMessage(JobStatus.INVALID_PORT_METHOD.toString());
+                        runStatus = JobStatus.PORT_ERROR.withMessage(JobStatus.INVALID_PORT_METHOD.toString());
                         return runStatus;
                     }
 
@@ -328,20 +324,18 @@ public class PortJob extends Job {
 
                     DeltaImporter2Publisher publisher = new DeltaImporter2Publisher(userPrefs, "fixme");
                     runStatus = publisher.copyWithDi2(sinkSetID, control);
-                    if(runStatus == JobStatus.SUCCESS) {
+                    if(JobStatus.SUCCESS.equals(runStatus)) {
                         // Urrrrghghghgh
                         Pattern p = Pattern.compile("The new dataset id is (....-....)");
                         Matcher m = p.matcher(runStatus.getMessage());
                         if(m.find()) {
                             sinkSetID = m.group(1);
                         } else {
-                            runStatus = JobStatus.PORT_ERROR;
-                            runStatus.setMessage("Unable to find newly-created dataset");
+                            runStatus = JobStatus.PORT_ERROR.withMessage("Unable to find newly-created dataset");
                         }
                     }
                 } catch(Exception e) {
-                    runStatus = JobStatus.PORT_ERROR;
-                    runStatus.setMessage(e.getMessage());
+                    runStatus = JobStatus.PORT_ERROR.withMessage(e.getMessage());
                 }
             }
         }
@@ -1,13 +1,15 @@
 package com.socrata.datasync.publishers;
 
+import com.socrata.datasync.CancellableInputStream;
 import com.socrata.datasync.SizeCountingInputStream;
 import com.socrata.datasync.Utils;
+import com.socrata.datasync.HttpCompression;
 import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.ProgressListener;
 import com.socrata.datasync.config.controlfile.ControlFile;
 import com.socrata.datasync.config.controlfile.PortControlFile;
 import com.socrata.datasync.config.controlfile.FileTypeControl;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
-import com.socrata.datasync.ui.SimpleIntegrationWizard;
 import com.socrata.datasync.deltaimporter2.*;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.ssync.PatchComputer;
@@ -22,25 +24,29 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationConfig;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.InputSupplier;
 
-import javax.swing.*;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class DeltaImporter2Publisher implements AutoCloseable {
 
@@ -57,25 +63,42 @@ public class DeltaImporter2Publisher implements AutoCloseable {
     private static final String committingLogKey = "committing-job";
     private static final String committedLogKey = "committed-job";
     private static final int httpRetries = 3;
+    private static final int maxBlobsInFlight = 3;
     private static final int defaultChunkSize = 1024 * 4000;
 
     private static class CompletelyRestartJob extends Exception {}
 
-    private static String domain;
-    private static HttpUtility http;
-    private static URIBuilder baseUri;
+    // per publisher, since jobs publishing to different domains (or as different users) can run at once
+    private final String domain;
+    private final HttpUtility http;
+    private final URIBuilder baseUri;
     private static ObjectMapper mapper = new ObjectMapper().enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+    private static ProgressListener defaultProgressListener = ProgressListener.NONE;
     private String pathToSignature = null;
+    private ProgressListener progressListener = defaultProgressListener;
     CloseableHttpResponse signatureResponse = null;
 
     public DeltaImporter2Publisher(UserPreferences userPrefs, String userAgent) {
         http = new HttpUtility(userPrefs, true, userAgent);
+        // commit messages carry the whole control file, which can be large for wide datasets
+        http.setRequestCompressionThreshold(HttpCompression.DEFAULT_REQUEST_THRESHOLD_BYTES);
         domain = userPrefs.getHost();
         baseUri = new URIBuilder()
                 .setScheme("https")
                 .setHost(domain);
     }
 
+    /**
+     * Sets the listener given progress updates by publishers created from now on (e.g. the GUI's status bar).
+     */
+    public static void setDefaultProgressListener(ProgressListener listener) {
+        defaultProgressListener = listener == null ? ProgressListener.NONE : listener;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener == null ? ProgressListener.NONE : listener;
+    }
+
     @Override
     public void close() throws IOException {
         http.close();
@@ -90,19 +113,56 @@ public class DeltaImporter2Publisher implements AutoCloseable {
      */
     public JobStatus publishWithDi2OverHttp(String datasetId, final File csvOrTsvFile, ControlFile controlFile) throws
             IOException {
+        String fileExtension = Utils.getDataFileExtension(csvOrTsvFile.getName());
+        FileTypeControl fileControl = fileExtension.equals("csv") ? controlFile.csv : controlFile.tsv;
+        boolean fileHasBom = Utils.fileStartsWithBom(csvOrTsvFile, fileControl);
+        final int bomLength = fileHasBom ? Utils.BOM.getBytes(Utils.getCharset(fileControl)).length : 0;
+
+        InputSupplier<InputStream> contents = new InputSupplier<InputStream>() {
+            @Override
+            public InputStream getInput() throws IOException {
+                InputStream fileStream = Utils.openDataFile(csvOrTsvFile);
+                for (int i=0; i<bomLength; i++)
+                    fileStream.read();
+                return fileStream;
+            }
+        };
+        String fileName = csvOrTsvFile.getName();
+        long fileSize = csvOrTsvFile.length() - bomLength;
+        if (Utils.isCompressed(fileName)) {
+            // the patch is of the decompressed data, whose size isn't known until it has all been read
+            fileName = fileName.substring(0, fileName.lastIndexOf('.'));
+            fileSize = -1;
+        }
+        return publishWithDi2OverHttp(datasetId, fileName, contents, fileSize, controlFile);
+    }
+
+    /**
+     * Publishes csv or tsv data that is produced as it is read (e.g. encoded from the results of a
+     * database query) using delta-importer-2 over http.
+     * @param datasetId the 4x4 of the dataset to be replaced
+     * @param fileName the name to give the data; its extension determines whether it is csv or tsv
+     * @param contents opens the data, without any byte order mark; it is reopened if the job must be restarted
+     * @param controlFile the control file used to specialize the resulting dataset
+     * @return a job status indicating success or failure
+     */
+    public JobStatus publishWithDi2OverHttp(String datasetId, String fileName, InputSupplier<? extends InputStream> contents,
+                                            ControlFile controlFile) throws IOException {
+        return publishWithDi2OverHttp(datasetId, fileName, contents, -1, controlFile);
+    }
 
-        System.out.println("Publishing " + csvOrTsvFile.getName() + " via delta-importer-2 over HTTP");
+    private JobStatus publishWithDi2OverHttp(String datasetId, final String fileName, InputSupplier<? extends InputStream> contents,
+                                             final long fileSize, ControlFile controlFile) throws IOException {
+
+        System.out.println("Publishing " + fileName + " via delta-importer-2 over HTTP");
         DatasyncDirectory datasyncDir = new DatasyncDirectory(http, domain, datasetId);
         boolean useCompression = true;
         InputStream previousSignature = null;
+        InputStream contentStream = null;
         SizeCountingInputStream patch = null;
         int chunkSize = fetchDatasyncChunkSize();
         String uuid = controlFile.generateAndAddOpaqueUUID();
         int retryCount = 0;
-        String fileExtension = Utils.getFileExtension(csvOrTsvFile.getName());
-        FileTypeControl fileControl = fileExtension.equals("csv") ? controlFile.csv : controlFile.tsv;
-        boolean fileHasBom = Utils.fileStartsWithBom(csvOrTsvFile, fileControl);
-        int bomLength = fileHasBom ? Utils.BOM.getBytes(Utils.getCharset(fileControl)).length : 0;
 
         do {
             try {
@@ -110,18 +170,18 @@ public class DeltaImporter2Publisher implements AutoCloseable {
                 pathToSignature = datasyncDir.getPathToSignature();
                 previousSignature = getPreviousSignature(pathToSignature);
 
-                final long fileSize = csvOrTsvFile.length() - bomLength;
-                final FileInputStream fileStream = new FileInputStream(csvOrTsvFile);
-                if (fileHasBom)
-                    for (int i=0; i<bomLength; i++)
-                        fileStream.read();
-
-                InputStream progressingInputStream = new ProgressingInputStream(fileStream) {
+                contentStream = new CancellableInputStream(contents.getInput());
+                InputStream progressingInputStream = new ProgressingInputStream(contentStream) {
                     @Override
                     protected void progress(long count) {
-                        System.out.println("\tRead " + count + " of " + fileSize + " bytes of " + csvOrTsvFile.getName());
-                        int pct = (int) (count*100/fileSize);
-                        updateStatus("Reading File", pct, true, "");
+                        if (fileSize > 0) {
+                            System.out.println("\tRead " + count + " of " + fileSize + " bytes of " + fileName);
+                            int pct = (int) (count*100/fileSize);
+                            updateStatus("Reading File", pct, true, "");
+                        } else {
+                            System.out.println("\tRead " + count + " bytes of " + fileName);
+                            updateStatus("Reading " + count + " bytes", 0, false, "");
+                        }
                     }
                 };
                 // compute the patch between the csv/tsv file and its previous signature
@@ -132,7 +192,7 @@ public class DeltaImporter2Publisher implements AutoCloseable {
 
                 // commit the chunks, thereby applying the diff
                 CommitMessage<ControlFile> commit = new CommitMessage<ControlFile>()
-                        .filename(csvOrTsvFile.getName() + patchExtenstion + (useCompression ? compressionExtenstion : ""))
+                        .filename(fileName + patchExtenstion + (useCompression ? compressionExtenstion : ""))
                         .relativeTo(pathToSignature)
                         .chunks(blobIds)
                         .control(controlFile)
@@ -146,17 +206,16 @@ public class DeltaImporter2Publisher implements AutoCloseable {
             } catch (ParseException | NoSuchAlgorithmException | InputException | URISyntaxException |
                     SignatureException |InterruptedException | HttpException e) {
                 e.printStackTrace();
-                JobStatus jobStatus = JobStatus.PUBLISH_ERROR;
-                jobStatus.setMessage(e.getMessage());
+                JobStatus jobStatus = JobStatus.PUBLISH_ERROR.withMessage(e.getMessage());
                 return jobStatus;
             } finally {
                 if (previousSignature != null) { previousSignature.close(); }
+                if (contentStream != null) { contentStream.close(); }
                 if (patch != null) { patch.close(); }
                 if (signatureResponse != null) { signatureResponse.close(); }
             }
         } while(retryCount < httpRetries);
-        JobStatus jobStatus = JobStatus.PUBLISH_ERROR;
-        jobStatus.setMessage("Couldn't get the request through; too many retries"); // TODO Better message
+        JobStatus jobStatus = JobStatus.PUBLISH_ERROR.withMessage("Couldn't get the request through; too many retries"); // TODO Better message
         return jobStatus;
     }
 
@@ -172,13 +231,11 @@ public class DeltaImporter2Publisher implements AutoCloseable {
                 retryCount += 1;
             } catch(URISyntaxException | InterruptedException | HttpException e) {
                 e.printStackTrace();
-                JobStatus jobStatus = JobStatus.PORT_ERROR;
-                jobStatus.setMessage(e.getMessage());
+                JobStatus jobStatus = JobStatus.PORT_ERROR.withMessage(e.getMessage());
                 return jobStatus;
             }
         } while(retryCount < httpRetries);
-        JobStatus jobStatus = JobStatus.PORT_ERROR;
-        jobStatus.setMessage("Couldn't get the request through; too many retries"); // TODO Better message
+        JobStatus jobStatus = JobStatus.PORT_ERROR.withMessage("Couldn't get the request through; too many retries"); // TODO Better message
         return jobStatus;
     }
 
@@ -261,48 +318,93 @@ public class DeltaImporter2Publisher implements AutoCloseable {
     }
 
     /**
-     * Chunks up the signature patch file into ~4MB chunks and posts these to delta-importer-2
+     * Chunks up the signature patch file into ~4MB chunks and posts these to delta-importer-2.
+     * Up to maxBlobsInFlight chunks are uploaded at once on the asynchronous client while the
+     * next chunk of the patch is being computed; blob ids are returned in chunk order.
      * @param patchStream an inputStream to the patch
      * @param datasetId the 4x4 of the dataset being patched
      * @return the list of blobIds corresponding to each successful post
      */
     private List<String> postPatchBlobs(InputStream patchStream, String datasetId, int chunkSize) throws
-            IOException, URISyntaxException, HttpException {
+            IOException, URISyntaxException, HttpException, InterruptedException {
         updateStatus("Chunking and posting the diff", 0, false, "");
         System.out.println("Creating the diff...");
 
         URI postingPath = baseUri.setPath(datasyncPath + "/" + datasetId).build();
         List<String> blobIds = new LinkedList<>();
-        byte[] bytes = new byte[chunkSize];
-        StatusLine statusLine;
-        int status;
+        Deque<PendingBlob> inFlight = new ArrayDeque<>();
         int bytesRead;
 
-        while ((bytesRead = Utils.readChunk(patchStream, bytes, 0, bytes.length)) != -1) {
-            System.out.println("\tUploading " + bytesRead + " bytes of the diff");
-            byte[] chunk = bytesRead == bytes.length ? bytes : Arrays.copyOf(bytes, bytesRead);
-            HttpEntity entity = EntityBuilder.create().setBinary(chunk).build();
-            int retries = 0;
-            do {
-                try(CloseableHttpResponse response = http.post(postingPath, entity)) {
-                    statusLine = response.getStatusLine();
-                    status = statusLine.getStatusCode();
-                    if (status != HttpStatus.SC_CREATED) {
-                        retries += 1;
-                    } else {
-                        String blobId = mapper.readValue(response.getEntity().getContent(), BlobId.class).blobId;
-                        blobIds.add(blobId);
-                    }
+        try {
+            while (true) {
+                byte[] chunk = new byte[chunkSize];
+                bytesRead = Utils.readChunk(patchStream, chunk, 0, chunk.length);
+                if (bytesRead == -1) break;
+                if (bytesRead != chunk.length) chunk = Arrays.copyOf(chunk, bytesRead);
+                System.out.println("\tUploading " + bytesRead + " bytes of the diff");
+                inFlight.addLast(new PendingBlob(postingPath, chunk));
+                if (inFlight.size() >= maxBlobsInFlight) {
+                    blobIds.add(inFlight.peekFirst().awaitBlobId());
+                    inFlight.removeFirst();
                 }
-            } while (status != HttpStatus.SC_CREATED && retries < httpRetries);
-            //We hit the max number of retries without success and should throw an exception accordingly.
-            if (retries >= httpRetries) throw new HttpException(statusLine.toString());
-            updateStatus("Uploading file", 0, false, bytesRead + " bytes");
-            System.out.println("\tUploaded " + bytesRead + " bytes");
+            }
+            while (!inFlight.isEmpty()) {
+                blobIds.add(inFlight.peekFirst().awaitBlobId());
+                inFlight.removeFirst();
+            }
+        } finally {
+            // the job failed, was cancelled or is restarting: stop uploading the chunks it won't commit
+            for (PendingBlob blob : inFlight)
+                blob.cancel();
         }
         return blobIds;
     }
 
+    /**
+     * One chunk of the patch being posted asynchronously.
+     */
+    private class PendingBlob {
+        final URI postingPath;
+        final byte[] chunk;
+        Future<HttpResponse> response;
+
+        PendingBlob(URI postingPath, byte[] chunk) {
+            this.postingPath = postingPath;
+            this.chunk = chunk;
+            post();
+        }
+
+        private void post() {
+            response = http.postAsync(postingPath, EntityBuilder.create().setBinary(chunk).build(), true);
+        }
+
+        void cancel() {
+            response.cancel(true);
+        }
+
+        /**
+         * Waits for the post to finish, reposting it if delta-importer-2 does not accept it.
+         */
+        String awaitBlobId() throws IOException, HttpException, InterruptedException {
+            int retries = 0;
+            while (true) {
+                HttpResponse r = awaitResponse(response);
+                StatusLine statusLine = r.getStatusLine();
+                if (statusLine.getStatusCode() == HttpStatus.SC_CREATED) {
+                    String blobId = mapper.readValue(r.getEntity().getContent(), BlobId.class).blobId;
+                    updateStatus("Uploading file", 0, false, chunk.length + " bytes");
+                    System.out.println("\tUploaded " + chunk.length + " bytes");
+                    return blobId;
+                }
+                EntityUtils.consumeQuietly(r.getEntity());
+                retries += 1;
+                //We hit the max number of retries without success and should throw an exception accordingly.
+                if (retries >= httpRetries) throw new HttpException(statusLine.toString());
+                post();
+            }
+        }
+    }
+
 
     /**
      * Commits the blobs that were posted.
@@ -344,7 +446,7 @@ public class DeltaImporter2Publisher implements AutoCloseable {
 
             CloseableHttpResponse doPost(HttpEntity entity) {
                 try {
-                    return http.post(committingPath, entity);
+                    return http.post(committingPath, entity, false);
                 } catch (IOException e) {
                     lastPostException = e;
                     return null;
@@ -444,7 +546,8 @@ public class DeltaImporter2Publisher implements AutoCloseable {
         URI logUri = baseUri.setPath(datasyncPath + "/" + datasetId + logPath + "/" + jobId + ".json").build();
         int retries = 0;
         while (jobStatus == null && retries < httpRetries) {
-            try(CloseableHttpResponse response = http.get(statusUri, ContentType.APPLICATION_JSON.getMimeType())) {
+            // polled on this thread, which waits between polls anyway, so a cancelled job can abort the poll
+            try (CloseableHttpResponse response = http.get(statusUri, ContentType.APPLICATION_JSON.getMimeType())) {
                 statusLine = response.getStatusLine();
                 int statusCode = statusLine.getStatusCode();
                 if (statusCode == HttpStatus.SC_OK) {
@@ -504,13 +607,22 @@ public class DeltaImporter2Publisher implements AutoCloseable {
         if (jobStatus == null) {
             throw new HttpException(statusLine.toString());
         }
-        jobStatus.setMessage(status.english + "(jobId:" + jobId + ")");
-        if(!jobStatus.isError()) loadStatusWithCRUD(jobStatus, logUri);
+        jobStatus = jobStatus.withMessage(status.english + "(jobId:" + jobId + ")");
+        if(!jobStatus.isError()) jobStatus = loadStatusWithCRUD(jobStatus, logUri);
         return jobStatus;
     }
 
+    private static HttpResponse awaitResponse(Future<HttpResponse> response) throws IOException, InterruptedException {
+        try {
+            return response.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
     private void updateStatus(String loadingLabel, int progressPercent, boolean showProgress, String message) {
-        SimpleIntegrationWizard.updateStatus(loadingLabel, progressPercent, showProgress, message);
+        progressListener.updateStatus(loadingLabel, progressPercent, showProgress, message);
     }
 
     private Commital getJobCommitment(String datasetId, String uuid) throws URISyntaxException {
@@ -561,7 +673,7 @@ public class DeltaImporter2Publisher implements AutoCloseable {
     }
 
 
-    private void loadStatusWithCRUD(JobStatus status, URI logUri) {
+    private JobStatus loadStatusWithCRUD(JobStatus status, URI logUri) {
         try(CloseableHttpResponse response = http.get(logUri, ContentType.APPLICATION_JSON.getMimeType())) {
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
@@ -571,10 +683,7 @@ public class DeltaImporter2Publisher implements AutoCloseable {
                 LogItem[] deltaLog = mapper.readValue(response.getEntity().getContent(), LogItem[].class);
                 LogItem deltas = getLogItem(deltaLog, finishedLogKey);
                 if (deltas != null) {
-                    status.rowsCreated = deltas.getInserted();
-                    status.rowsUpdated = deltas.getUpdated();
-                    status.rowsDeleted = deltas.getDeleted();
-                    status.errors = deltas.getErrors();
+                    return status.withRowCounts(deltas.getInserted(), deltas.getUpdated(), deltas.getDeleted(), deltas.getErrors());
                 }
             } else {
                 System.err.println("Unable to parse out CRUD details from logs");
@@ -582,6 +691,7 @@ public class DeltaImporter2Publisher implements AutoCloseable {
         } catch (IOException e) {
             System.err.println("Unable to parse out CRUD details from logs");
         }
+        return status;
     }
 
     private InputStream getNullSignature() throws IOException, NoSuchAlgorithmException {
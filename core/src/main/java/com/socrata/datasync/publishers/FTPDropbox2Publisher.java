@@ -1,5 +1,6 @@
 package com.socrata.datasync.publishers;
 
+import com.socrata.datasync.CancellableInputStream;
 import com.socrata.datasync.HttpUtility;
 import com.socrata.datasync.VersionProvider;
 import com.socrata.datasync.job.JobStatus;
@@ -44,7 +45,11 @@ public class FTPDropbox2Publisher {
     private static final String FTP_REQUEST_ID_FILENAME = "requestId";
     private static final String FTP_DATASYNC_VERSION_FILENAME = "datasync-version";
     private static final int NUM_BYTES_OUT_BUFFER = 1024;
-    private static final int TIME_BETWEEN_FTP_STATUS_POLLS_MS = 1000;
+    private static final int MIN_TIME_BETWEEN_FTP_STATUS_POLLS_MS = 1000;
+    private static final int MAX_TIME_BETWEEN_FTP_STATUS_POLLS_MS = 15000;
+    private static final double FTP_STATUS_POLL_BACKOFF_MULTIPLIER = 1.5;
+    // even if MDTM/SIZE report no change, re-read status.txt every so often (MDTM only has 1s resolution)
+    private static final int MAX_POLLS_WITHOUT_STATUS_FETCH = 10;
 
     private FTPDropbox2Publisher() {
         throw new AssertionError("Never instantiate utility classes!");
@@ -67,8 +72,7 @@ public class FTPDropbox2Publisher {
             return publishViaFTPDropboxV2(userPrefs, datasetId, csvOrTsvFile, inputControlFile);
         } catch (Exception e) {
             e.printStackTrace();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Error uploading control file: " + e.getMessage());
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Error uploading control file: " + e.getMessage());
             return status;
         }
     }
@@ -90,8 +94,7 @@ public class FTPDropbox2Publisher {
             return publishViaFTPDropboxV2(userPrefs, datasetId, csvOrTsvFile, inputControlFile);
         } catch (Exception e) {
             e.printStackTrace();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Error uploading control file content: " + e.getMessage());
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Error uploading control file content: " + e.getMessage());
             return status;
         }
     }
@@ -115,7 +118,7 @@ public class FTPDropbox2Publisher {
             ftpHost = getFTPHost(userPrefs);
         } catch (Exception e) {
             e.printStackTrace();
-            status.setMessage("Error obtaining FTP host: " + e.getMessage());
+            status = status.withMessage("Error obtaining FTP host: " + e.getMessage());
             return status;
         }
 
@@ -141,7 +144,7 @@ public class FTPDropbox2Publisher {
                     }
                 }
                 if (++tryCount > maxTries) {
-                    status.setMessage("FTP server refused connection (connection timeout).");
+                    status = status.withMessage("FTP server refused connection (connection timeout).");
                     return status;
                 }
             } while(!connectionSuccessful);
@@ -174,7 +177,7 @@ public class FTPDropbox2Publisher {
                     boolean datasetDirCreated = ftp.makeDirectory(pathToDatasetDir);
                     if(!datasetDirCreated) {
                         closeFTPConnection(ftp);
-                        status.setMessage("Error creating dataset ID directory at" +
+                        status = status.withMessage("Error creating dataset ID directory at" +
                                 " '" + pathToDatasetDir + "': " + ftp.getReplyString());
                         return status;
                     }
@@ -184,7 +187,7 @@ public class FTPDropbox2Publisher {
                 String controlFileRequestId = setFTPRequestId(ftp, pathToDomainRoot + "/" + FTP_REQUEST_ID_FILENAME);
                 if(controlFileRequestId.startsWith(FAILURE_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error setting request Id: " + controlFileRequestId);
+                    status = status.withMessage("Error setting request Id: " + controlFileRequestId);
                     return status;
                 }
                 // for tracking DataSync version
@@ -196,15 +199,17 @@ public class FTPDropbox2Publisher {
                 inputControlFile.close();
                 if(!controlResponse.equals(SUCCESS_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error uploading control file: " + controlResponse);
+                    status = status.withMessage("Error uploading control file: " + controlResponse);
                     return status;
                 }
                 // ensure control.json was uploaded without issues
+                PollingBackoff controlFilePolls = newStatusPollingBackoff();
                 String controlFileUploadStatus = pollUploadStatus(
-                        ftp, pathToDatasetDir + "/" + FTP_STATUS_FILENAME, controlFileRequestId);
+                        ftp, pathToDatasetDir + "/" + FTP_STATUS_FILENAME, controlFileRequestId, controlFilePolls);
                 if(!controlFileUploadStatus.startsWith(SUCCESS_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error uploading control file: " + controlFileUploadStatus);
+                    status = status.withMessage("Error uploading control file: " + controlFileUploadStatus +
+                            " (" + controlFilePolls.summary() + ")");
                     return status;
                 }
 
@@ -213,7 +218,7 @@ public class FTPDropbox2Publisher {
                 String csvOrTsvFileRequestId = setFTPRequestId(ftp, pathToDomainRoot + "/" + FTP_REQUEST_ID_FILENAME);
                 if(csvOrTsvFileRequestId.startsWith(FAILURE_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error setting request Id: " + csvOrTsvFileRequestId);
+                    status = status.withMessage("Error setting request Id: " + csvOrTsvFileRequestId);
                     return status;
                 }
 
@@ -221,60 +226,76 @@ public class FTPDropbox2Publisher {
                 boolean deleteFileToUpload = false;
                 File fileToUpload;
                 String dataFilePathFTP;
-                try {
-                    System.out.println("Gzipping file before uploading...");
-                    fileToUpload = createTempGzippedFile(csvOrTsvFile);
-                    dataFilePathFTP = pathToDatasetDir + "/" + csvOrTsvFile.getName() + ".gz";
-                    deleteFileToUpload = true;
-                } catch (IOException ex) {
-                    // if gzipping fails revert to sending raw CSV
-                    System.out.println("Gzipping failed, uploading CSV directly");
+                String dataFileName = csvOrTsvFile.getName();
+                if (Utils.getFileExtension(dataFileName).equals("gz")) {
+                    // already gzipped; send it as it is
                     fileToUpload = csvOrTsvFile;
-                    dataFilePathFTP = pathToDatasetDir + "/" + csvOrTsvFile.getName();
+                    dataFilePathFTP = pathToDatasetDir + "/" + dataFileName;
+                } else {
+                    if (Utils.isCompressed(dataFileName))
+                        dataFileName = dataFileName.substring(0, dataFileName.lastIndexOf('.'));
+                    try {
+                        System.out.println("Gzipping file before uploading...");
+                        fileToUpload = createTempGzippedFile(csvOrTsvFile);
+                        dataFilePathFTP = pathToDatasetDir + "/" + dataFileName + ".gz";
+                        deleteFileToUpload = true;
+                    } catch (IOException ex) {
+                        if (Utils.isCompressed(csvOrTsvFile.getName()) || Thread.currentThread().isInterrupted())
+                            throw ex;
+                        // if gzipping fails revert to sending raw CSV
+                        System.out.println("Gzipping failed, uploading CSV directly");
+                        fileToUpload = csvOrTsvFile;
+                        dataFilePathFTP = pathToDatasetDir + "/" + dataFileName;
+                    }
                 }
 
                 // upload CSV/TSV file
                 long dataFileSizeBytes = fileToUpload.length();
-                InputStream inputDataFile = new FileInputStream(fileToUpload);
-                String dataFileResponse = uploadAndEnqueue(ftp, inputDataFile, dataFilePathFTP, dataFileSizeBytes);
-                inputDataFile.close();
-                if(deleteFileToUpload)
-                    fileToUpload.delete();
+                String dataFileResponse;
+                try (InputStream inputDataFile = new CancellableInputStream(new FileInputStream(fileToUpload))) {
+                    dataFileResponse = uploadAndEnqueue(ftp, inputDataFile, dataFilePathFTP, dataFileSizeBytes);
+                } finally {
+                    if(deleteFileToUpload)
+                        fileToUpload.delete();
+                }
                 if(!dataFileResponse.equals(SUCCESS_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage(dataFileResponse);
+                    status = status.withMessage(dataFileResponse);
                     return status;
                 }
 
                 // Poll upload status until complete
+                PollingBackoff dataFilePolls = newStatusPollingBackoff();
                 String dataFileUploadStatus = pollUploadStatus(
-                        ftp, pathToDatasetDir + "/" + FTP_STATUS_FILENAME, csvOrTsvFileRequestId);
+                        ftp, pathToDatasetDir + "/" + FTP_STATUS_FILENAME, csvOrTsvFileRequestId, dataFilePolls);
+                System.out.println("Upload status polling finished (" + dataFilePolls.summary() + ")");
                 if(!dataFileUploadStatus.startsWith(SUCCESS_PREFIX)) {
-                    status.setMessage(dataFileUploadStatus);
+                    status = status.withMessage(dataFileUploadStatus + " (" + dataFilePolls.summary() + ")");
                     return status;
                 }
+                status = JobStatus.SUCCESS.withMessage("Success (" + dataFilePolls.summary() + ")");
             } else {
-                status.setMessage("FTP server refused connection (check your username and password).");
+                status = status.withMessage("FTP server refused connection (check your username and password).");
                 return status;
             }
         } catch(IOException e) {
             e.printStackTrace();
-            status.setMessage("FTP error: " + e.getMessage());
+            status = status.withMessage("FTP error: " + e.getMessage());
             return status;
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
-            status.setMessage("Java error: " + e.getMessage());
+            status = status.withMessage("Java error: " + e.getMessage());
             return status;
         } finally {
             if(ftp != null)
                 closeFTPConnection(ftp);
         }
-        return JobStatus.SUCCESS;
+        return status;
     }
 
     /**
      *
-     * @param fileToZip file to be compressed
+     * @param fileToZip file to be compressed; if it is xz compressed it is decompressed first
      * @return gzipped version of fileToZip
      * @throws java.io.IOException
      */
@@ -284,7 +305,7 @@ public class FTPDropbox2Publisher {
             byte[] buffer = new byte[NUM_BYTES_OUT_BUFFER];
             FileOutputStream fileOutputStream = new FileOutputStream(tempGzippedFile);
             GZIPOutputStream gzipOuputStream = new GZIPOutputStream(fileOutputStream);
-            FileInputStream fileInput = new FileInputStream(fileToZip);
+            InputStream fileInput = new CancellableInputStream(Utils.openDataFile(fileToZip));
             int bytes_read;
             while ((bytes_read = fileInput.read(buffer)) > 0) {
                 gzipOuputStream.write(buffer, 0, bytes_read);
@@ -325,38 +346,65 @@ public class FTPDropbox2Publisher {
         return pathToDomainRoot;
     }
 
+    private static PollingBackoff newStatusPollingBackoff() {
+        return new PollingBackoff(MIN_TIME_BETWEEN_FTP_STATUS_POLLS_MS, MAX_TIME_BETWEEN_FTP_STATUS_POLLS_MS,
+                FTP_STATUS_POLL_BACKOFF_MULTIPLIER);
+    }
+
     /**
      * Polls upload status.txt file until ERROR or SUCCESS message (ensuring
      * status.txt contains given requestId)
      *
+     * Each poll first asks for the modification time and size of status.txt over the control
+     * connection; the file itself is only downloaded (which requires a new data connection) when
+     * either of those has changed. The time between polls backs off while nothing changes.
+     *
      * @param ftp authenticated ftps object
      * @param pathToStatusFile absolute path on FTP server to the status.txt file
      * @param requestId requestId that must be present for status.txt content to be valid
+     * @param backoff paces the polls and records how many were made and how long was spent waiting
      * @return status message (begins with 'SUCCESS: ...' or 'FAILURE: ...')
-     * @throws java.io.IOException
      */
-    private static String pollUploadStatus(FTPSClient ftp, String pathToStatusFile, String requestId) {
+    private static String pollUploadStatus(FTPSClient ftp, String pathToStatusFile, String requestId,
+                                           PollingBackoff backoff) {
         String uploadStatus = "";
+        String lastStatusContent = null;
+        String lastFingerprint = null;
+        int pollsSinceLastFetch = 0;
         int numSubsequentFailedPolls = 0;
         int maxSubsequentFailedPolls = 12;
         boolean lastPollFailed = false;
         do {
             try {
-                Thread.sleep(TIME_BETWEEN_FTP_STATUS_POLLS_MS);
-            } catch (InterruptedException e) { }
+                backoff.pause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return FAILURE_PREFIX + ": interrupted while polling upload status";
+            }
 
             try {
-                InputStream in = ftp.retrieveFileStream(pathToStatusFile);
-                StringWriter writer = new StringWriter();
-                IOUtils.copy(in, writer, "UTF-8");
-                uploadStatus = writer.toString();
-                in.close();
-                ftp.completePendingCommand();
-
-                if(uploadStatus.contains(requestId)) {
-                    uploadStatus = uploadStatus.replace(requestId + " : ", "");
+                String fingerprint = getRemoteFileFingerprint(ftp, pathToStatusFile);
+                pollsSinceLastFetch++;
+                boolean mustFetch = fingerprint == null || !fingerprint.equals(lastFingerprint) ||
+                        pollsSinceLastFetch >= MAX_POLLS_WITHOUT_STATUS_FETCH;
+                if(mustFetch) {
+                    String statusContent = retrieveRemoteFile(ftp, pathToStatusFile);
+                    pollsSinceLastFetch = 0;
+                    lastFingerprint = fingerprint;
+                    if(statusContent.equals(lastStatusContent)) {
+                        backoff.unchanged();
+                    } else {
+                        backoff.changed();
+                        lastStatusContent = statusContent;
+                    }
+
+                    if(statusContent.contains(requestId)) {
+                        uploadStatus = statusContent.replace(requestId + " : ", "");
+                    } else {
+                        uploadStatus = "";
+                    }
                 } else {
-                    uploadStatus = "";
+                    backoff.unchanged();
                 }
                 lastPollFailed = false;
                 System.out.print("\rPolling upload status..." + uploadStatus);
@@ -367,9 +415,52 @@ public class FTPDropbox2Publisher {
             }
         } while(!uploadStatus.startsWith(SUCCESS_PREFIX) && !uploadStatus.startsWith(FAILURE_PREFIX)
                     && numSubsequentFailedPolls < maxSubsequentFailedPolls);
+        System.out.println();
         return uploadStatus;
     }
 
+    /**
+     * Cheaply identifies the current version of a remote file using MDTM and SIZE, both of which
+     * are answered over the control connection.
+     *
+     * @param ftp authenticated ftps object
+     * @param path absolute path on FTP server where file is located
+     * @return "[modification time]/[size]" or null if the server could not answer either command
+     */
+    private static String getRemoteFileFingerprint(FTPClient ftp, final String path) throws IOException {
+        String modificationTime = ftp.getModificationTime(path);
+        if(modificationTime == null)
+            return null;
+        if(!FTPReply.isPositiveCompletion(ftp.sendCommand("SIZE", path)))
+            return null;
+        String[] replySplit = ftp.getReplyString().trim().split(" ");
+        if(replySplit.length < 2)
+            return null;
+        return modificationTime.trim() + "/" + replySplit[1];
+    }
+
+    /**
+     * Downloads the content of a (small) remote text file.
+     *
+     * @param ftp authenticated ftps object
+     * @param path absolute path on FTP server where file is located
+     * @return the file content
+     */
+    private static String retrieveRemoteFile(FTPClient ftp, final String path) throws IOException {
+        InputStream in = ftp.retrieveFileStream(path);
+        if(in == null)
+            throw new IOException(ftp.getReplyString());
+        StringWriter writer = new StringWriter();
+        try {
+            IOUtils.copy(in, writer, "UTF-8");
+        } finally {
+            in.close();
+        }
+        if(!ftp.completePendingCommand())
+            throw new IOException(ftp.getReplyString());
+        return writer.toString();
+    }
+
     /**
      * Sets (and returns) the FTP requestId to be a random 32 character hexidecimal value
      *
@@ -0,0 +1,289 @@
+package com.socrata.datasync.publishers;
+
+import com.socrata.datasync.config.userpreferences.UserPreferences;
+import com.socrata.datasync.deltaimporter2.ProgressingInputStream;
+import com.socrata.datasync.imports2.*;
+import com.socrata.datasync.job.GISJob;
+import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.HttpUtility;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.util.EntityUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replaces geospatial datasets via the imports2 API.
+ *
+ * One publisher holds a single HTTP client which is reused for the upload, the replace
+ * request and every status poll; close it when done. A publisher keeps no per-job state,
+ * so separate publishers (or separate calls on one publisher) may run concurrently.
+ */
+public class GISPublisher implements AutoCloseable {
+
+    private static final Logger logging = Logger.getLogger(GISJob.class.getName());
+
+    private static final long MIN_TIME_BETWEEN_STATUS_POLLS_MS = 1000;
+    private static final long MAX_TIME_BETWEEN_STATUS_POLLS_MS = 10000;
+    private static final double STATUS_POLL_BACKOFF_MULTIPLIER = 1.5;
+    // the server scans the whole upload before responding, which can take a long time for large files
+    private static final int SCAN_SOCKET_TIMEOUT_MS = 30 * 60 * 1000;
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
+    private final String domain;
+    private final HttpUtility http;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public GISPublisher(UserPreferences userPrefs) {
+        this.domain = userPrefs.getConnectionInfo().getUrl();
+        this.http = new HttpUtility(userPrefs, true, 3, 2);
+    }
+
+    public JobStatus replaceGeo(File file, String datasetID, Map<String, String> layerMap) {
+        try {
+            URI scan_url = makeUri(domain, "scan", "");
+            Blueprint blueprint = postRawFile(scan_url, file);
+            return replaceGeoFile(blueprint, file, datasetID, layerMap);
+        } catch (IOException e) {
+            String message = e.getMessage();
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage(message);
+            return status;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        http.close();
+    }
+
+    private JobStatus replaceGeoFile(Blueprint blueprint,
+                                     File file,
+                                     String datasetID,
+                                     Map<String, String> layerMap) {
+        try {
+            if (blueprint.getError() != null) {
+                String message = blueprint.getError().getMessage();
+                System.out.println(message);
+                JobStatus status = JobStatus.PUBLISH_ERROR.withMessage(message);
+                return status;
+            }
+
+            applyLayerMapToBlueprintSummary(blueprint.getSummary(), layerMap);
+            String blueprintSummary = mapper.writeValueAsString(blueprint.getSummary());
+
+            String query = "&fileId=" +  URLEncoder.encode(blueprint.getFileId(),"UTF-8");
+            query = query + "&name=" + URLEncoder.encode(file.getName(),"UTF-8");
+            query = query + "&blueprint=" + URLEncoder.encode(blueprintSummary,"UTF-8");
+            query = query + "&viewUid=" + URLEncoder.encode(datasetID,"UTF-8");
+
+            URI uri = makeUri(domain,"replace",query);
+            logging.log(Level.FINE, uri.toString());
+            return postReplaceGeoFile(uri);
+        } catch (IOException e) {
+            String message = e.getMessage();
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage(message);
+            return status;
+        }
+    }
+
+    private static void applyLayerMapToBlueprintSummary(Summary summary, Map<String, String> layerMap) {
+        for (Layer layer : summary.getLayers()) {
+            if (layerMap.containsKey(layer.getName())) {
+                layer.setReplacingUid(layerMap.get(layer.getName()));
+            }
+        }
+    }
+
+    private JobStatus postReplaceGeoFile(URI uri) {
+        try {
+            HttpEntity empty = MultipartEntityBuilder.create().build();
+            String result;
+            try (CloseableHttpResponse response = http.post(uri, empty)) {
+                result = EntityUtils.toString(response.getEntity());
+            }
+            JSONParser parser = new JSONParser();
+            JSONObject resJson = (JSONObject) parser.parse(result);
+            logging.log(Level.FINE, result);
+
+            boolean error = (boolean) resJson.get("error");
+
+            if (error) {
+                JobStatus s = JobStatus.PUBLISH_ERROR;
+                String error_message = (String) resJson.get("message");
+                s = s.withMessage(error_message);
+                return s;
+            }
+
+            String ticket = resJson.get("ticket").toString();
+
+            try {
+                return pollForStatus(ticket);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                JobStatus s = JobStatus.PUBLISH_ERROR.withMessage("Interrupted while waiting for import ticket " + ticket + " to complete");
+                return s;
+            }
+        } catch (IOException | ParseException e) {
+            String message = e.getMessage();
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage(message);
+            return status;
+        }
+    }
+
+    /**
+     * Polls the import ticket until it completes or fails. Polls start a second apart and
+     * back off while the reported progress stays the same.
+     */
+    private JobStatus pollForStatus(String ticket) throws InterruptedException, IOException {
+        URI status_url = makeUri(domain, "status", ticket);
+        PollingBackoff backoff = new PollingBackoff(MIN_TIME_BETWEEN_STATUS_POLLS_MS,
+                MAX_TIME_BETWEEN_STATUS_POLLS_MS, STATUS_POLL_BACKOFF_MULTIPLIER);
+        String lastProgress = null;
+        while (true) {
+            backoff.pause();
+            String[] status = getStatus(status_url);
+            System.out.println("Polling the job status: " + status[1]);
+
+            if (status[0].equals("Complete")) {
+                logging.log(Level.FINE, "Ticket " + ticket + " complete after " + backoff.summary());
+                return JobStatus.SUCCESS;
+            }
+
+            if (status[0].equals("Error")) {
+                JobStatus s = JobStatus.PUBLISH_ERROR.withMessage(status[1]);
+                return s;
+            }
+
+            if (status[1].equals(lastProgress)) {
+                backoff.unchanged();
+            } else {
+                backoff.changed();
+                lastProgress = status[1];
+            }
+        }
+    }
+
+    private String[] getStatus(URI uri) throws IOException {
+        String[] status = new String[2];
+
+        String result;
+        try (CloseableHttpResponse response = http.get(uri, "application/json")) {
+            result = EntityUtils.toString(response.getEntity());
+        }
+
+        try {
+            JSONParser parser = new JSONParser();
+            JSONObject resJson = (JSONObject) parser.parse(result);
+            try {
+                boolean error = (boolean) resJson.get("error");
+                JSONObject details = (JSONObject) resJson.get("details");
+                if (error){
+                    status[0] = "Error";
+                    status[1] = resJson.get("message").toString() + " with code: " + resJson.get("code").toString();
+                    return status;
+                } else {
+                    try {
+                        status[0] = "Progress";
+                        status[1] = details.get("status").toString() + ": " + details.get("progress").toString() + " features completed";
+                    } catch (NullPointerException e) {
+                        status[0] = "Progress";
+                        status[1] = details.get("stage").toString();
+
+                        return status;
+                    }
+                }
+            } catch (NullPointerException e) {
+                // For once the ticket is complete
+                status[0] = "Complete";
+                status[1] = "Complete";
+
+                return status;
+            }
+
+            return status;
+        } catch (ParseException e) {
+            status[0] = "Complete";
+            status[1] = "Complete";
+
+            return status;
+        }
+    }
+
+    private Blueprint postRawFile(URI uri, File file) throws IOException {
+        System.out.println("Posting file...");
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+            .addPart(file.getName(), new ProgressingFileBody(file, ContentType.APPLICATION_OCTET_STREAM, file.getName()))
+            .build();
+
+        String result;
+        try (CloseableHttpResponse response = http.post(uri, httpEntity, true, SCAN_SOCKET_TIMEOUT_MS)) {
+            result = EntityUtils.toString(response.getEntity());
+        }
+        logging.log(Level.FINE, result);
+
+        return mapper.readValue(result, Blueprint.class);
+    }
+
+    /**
+     * A file part which reports how much of the file has been sent. The file is re-read on every
+     * write, so the part stays repeatable and a failed upload can be retried by the HTTP client.
+     */
+    private static class ProgressingFileBody extends FileBody {
+        public ProgressingFileBody(File file, ContentType contentType, String filename) {
+            super(file, contentType, filename);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            final File file = getFile();
+            final long fileSize = file.length();
+            System.out.println("Uploading " + fileSize + " bytes of " + file.getName());
+            try (InputStream in = new ProgressingInputStream(new FileInputStream(file)) {
+                    @Override
+                    protected void progress(long count) {
+                        int pct = fileSize == 0 ? 100 : (int) (count * 100 / fileSize);
+                        System.out.println("\tSent " + count + " of " + fileSize + " bytes of " + file.getName() +
+                                " (" + pct + "%)");
+                    }
+                }) {
+                byte[] buf = new byte[UPLOAD_BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    out.write(buf, 0, read);
+                }
+            }
+            out.flush();
+            System.out.println("\tSent " + fileSize + " bytes of " + file.getName() + "; waiting for the server to scan it");
+        }
+    }
+
+    private static URI makeUri(String domain, String method, String query) {
+        switch(method) {
+            case "scan":
+                return URI.create(domain + "/api/imports2?method=scanShape");
+            case "replace":
+                return URI.create(domain + "/api/imports2?method=replaceShapefile" + query);
+            case "status":
+                return URI.create(domain + "/api/imports2?ticket=" + query);
+            default:
+                return URI.create("");
+        }
+    }
+}
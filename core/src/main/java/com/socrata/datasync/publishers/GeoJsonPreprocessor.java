@@ -0,0 +1,346 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Shrinks a GeoJSON file before it is uploaded: coordinates can be rounded to a fixed number of
+ * decimal places, feature properties that have no matching column in the target layer can be dropped
+ * and line and polygon geometries can be simplified (Douglas-Peucker) within a tolerance.
+ *
+ * The input is streamed; only one feature is held in memory at a time, so files of any size can be
+ * processed.
+ */
+public class GeoJsonPreprocessor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory factory = mapper.getFactory();
+
+    private Integer coordinatePrecision = null;
+    private Set<String> propertiesToKeep = null;
+    private double simplificationTolerance = 0.0;
+
+    /**
+     * @param decimalPlaces number of decimal places to keep in each coordinate
+     */
+    public GeoJsonPreprocessor coordinatePrecision(int decimalPlaces) {
+        if (decimalPlaces < 0)
+            throw new IllegalArgumentException("Coordinate precision must not be negative");
+        this.coordinatePrecision = decimalPlaces;
+        return this;
+    }
+
+    /**
+     * @param propertyNames names of the properties to keep; matching ignores case and treats
+     *                      any run of non-alphanumeric characters as '_', as the importer does
+     *                      when it derives field names
+     */
+    public GeoJsonPreprocessor keepOnlyProperties(Collection<String> propertyNames) {
+        propertiesToKeep = new HashSet<>();
+        for (String name : propertyNames) {
+            propertiesToKeep.add(normalizePropertyName(name));
+        }
+        return this;
+    }
+
+    /**
+     * @param tolerance the maximum distance (in coordinate units) a simplified line may stray from the original
+     */
+    public GeoJsonPreprocessor simplificationTolerance(double tolerance) {
+        if (tolerance < 0)
+            throw new IllegalArgumentException("Simplification tolerance must not be negative");
+        this.simplificationTolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * @return true if processing would change the file at all
+     */
+    public boolean hasWorkToDo() {
+        return coordinatePrecision != null || propertiesToKeep != null || simplificationTolerance > 0;
+    }
+
+    public Result process(File input, File output) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE)) {
+            return process(in, out);
+        }
+    }
+
+    /**
+     * Copies the GeoJSON document read from in to out, applying the configured transformations
+     * to every feature (or to the bare feature or geometry, if that is what the document is).
+     */
+    public Result process(InputStream in, OutputStream out) throws IOException {
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CountingOutputStream countingOut = new CountingOutputStream(out);
+        long features = 0;
+        try (JsonParser parser = factory.createParser(countingIn);
+             JsonGenerator generator = factory.createGenerator(countingOut)) {
+            generator.enable(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("GeoJSON document must be a JSON object");
+
+            // the members of a bare geometry, held until the end of the document since they can't be
+            // simplified without its type, which may come after them
+            ObjectNode bareGeometry = null;
+            String documentType = null;
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field) && value == JsonToken.VALUE_STRING)
+                    documentType = parser.getText();
+                if (("coordinates".equals(field) || "geometries".equals(field)) &&
+                        (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY)) {
+                    JsonNode node = mapper.readTree(parser);
+                    if (bareGeometry == null)
+                        bareGeometry = mapper.createObjectNode();
+                    bareGeometry.set(field, node);
+                    continue;
+                }
+                generator.writeFieldName(field);
+                if ("features".equals(field) && value == JsonToken.START_ARRAY) {
+                    generator.writeStartArray();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        JsonNode feature = mapper.readTree(parser);
+                        processFeature((ObjectNode) feature);
+                        mapper.writeTree(generator, feature);
+                        features++;
+                    }
+                    generator.writeEndArray();
+                } else if (("geometry".equals(field) || "properties".equals(field)) &&
+                        (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY)) {
+                    // the document is a single feature
+                    JsonNode node = mapper.readTree(parser);
+                    ObjectNode wrapper = mapper.createObjectNode();
+                    wrapper.set(field, node);
+                    processFeature(wrapper);
+                    mapper.writeTree(generator, wrapper.get(field));
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            if (bareGeometry != null) {
+                // the document is a single geometry
+                if (documentType != null)
+                    bareGeometry.put("type", documentType);
+                processGeometry(bareGeometry);
+                for (String field : new String[] {"coordinates", "geometries"}) {
+                    if (bareGeometry.has(field)) {
+                        generator.writeFieldName(field);
+                        mapper.writeTree(generator, bareGeometry.get(field));
+                    }
+                }
+            }
+            generator.writeEndObject();
+        }
+        out.flush();
+        return new Result(features, countingIn.getCount(), countingOut.getCount());
+    }
+
+    private void processFeature(ObjectNode feature) {
+        JsonNode properties = feature.get("properties");
+        if (propertiesToKeep != null && properties != null && properties.isObject()) {
+            Iterator<String> names = properties.fieldNames();
+            while (names.hasNext()) {
+                if (!propertiesToKeep.contains(normalizePropertyName(names.next())))
+                    names.remove();
+            }
+        }
+        JsonNode geometry = feature.get("geometry");
+        if (geometry != null && geometry.isObject())
+            processGeometry((ObjectNode) geometry);
+    }
+
+    private void processGeometry(ObjectNode geometry) {
+        JsonNode geometries = geometry.get("geometries");
+        if (geometries != null && geometries.isArray()) {
+            for (JsonNode member : geometries) {
+                if (member.isObject())
+                    processGeometry((ObjectNode) member);
+            }
+        }
+
+        JsonNode coordinates = geometry.get("coordinates");
+        if (coordinates == null || !coordinates.isArray())
+            return;
+
+        if (simplificationTolerance > 0) {
+            String type = geometry.path("type").asText();
+            switch (type) {
+                case "LineString":
+                    simplifyLine((ArrayNode) coordinates, 2);
+                    break;
+                case "MultiLineString":
+                    for (JsonNode line : coordinates)
+                        if (line.isArray()) simplifyLine((ArrayNode) line, 2);
+                    break;
+                case "Polygon":
+                    for (JsonNode ring : coordinates)
+                        if (ring.isArray()) simplifyLine((ArrayNode) ring, 4);
+                    break;
+                case "MultiPolygon":
+                    for (JsonNode polygon : coordinates)
+                        for (JsonNode ring : polygon)
+                            if (ring.isArray()) simplifyLine((ArrayNode) ring, 4);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (coordinatePrecision != null)
+            quantize((ArrayNode) coordinates);
+    }
+
+    private void quantize(ArrayNode coordinates) {
+        for (int i = 0; i < coordinates.size(); i++) {
+            JsonNode element = coordinates.get(i);
+            if (element.isArray()) {
+                quantize((ArrayNode) element);
+            } else if (element.isNumber() && !element.isIntegralNumber()) {
+                BigDecimal rounded = BigDecimal.valueOf(element.doubleValue())
+                        .setScale(coordinatePrecision, RoundingMode.HALF_UP)
+                        .stripTrailingZeros();
+                coordinates.set(i, coordinates.numberNode(rounded));
+            }
+        }
+    }
+
+    /**
+     * Simplifies a line (or ring) in place using Douglas-Peucker. Lines that would be left with
+     * fewer than minPoints positions, or that contain malformed positions, are left unchanged.
+     */
+    private void simplifyLine(ArrayNode line, int minPoints) {
+        int n = line.size();
+        if (n <= minPoints)
+            return;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            JsonNode position = line.get(i);
+            if (!position.isArray() || position.size() < 2)
+                return;
+            xs[i] = position.get(0).asDouble();
+            ys[i] = position.get(1).asDouble();
+        }
+
+        boolean[] keep = douglasPeucker(xs, ys, simplificationTolerance);
+        int kept = 0;
+        for (boolean k : keep)
+            if (k) kept++;
+        if (kept < minPoints || kept == n)
+            return;
+
+        for (int i = n - 1; i >= 0; i--) {
+            if (!keep[i])
+                line.remove(i);
+        }
+    }
+
+    static boolean[] douglasPeucker(double[] xs, double[] ys, double tolerance) {
+        int n = xs.length;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        double toleranceSquared = tolerance * tolerance;
+
+        // iterate over an explicit stack of [start, end] ranges so long lines cannot overflow the call stack
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, n - 1});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int start = range[0];
+            int end = range[1];
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistanceSquared(xs[i], ys[i], xs[start], ys[start], xs[end], ys[end]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+            if (farthest != -1 && maxDistance > toleranceSquared) {
+                keep[farthest] = true;
+                ranges.push(new int[] {start, farthest});
+                ranges.push(new int[] {farthest, end});
+            }
+        }
+        return keep;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+
+    static String normalizePropertyName(String name) {
+        return name.toLowerCase().replaceAll("[^a-z0-9]+", "_");
+    }
+
+    /**
+     * The outcome of a preprocessing pass.
+     */
+    public static class Result {
+        private final long featureCount;
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        Result(long featureCount, long bytesRead, long bytesWritten) {
+            this.featureCount = featureCount;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public long getFeatureCount() { return featureCount; }
+
+        public long getBytesRead() { return bytesRead; }
+
+        public long getBytesWritten() { return bytesWritten; }
+
+        public long getBytesSaved() { return bytesRead - bytesWritten; }
+
+        @Override
+        public String toString() {
+            double pct = bytesRead == 0 ? 0 : 100.0 * getBytesSaved() / bytesRead;
+            return "Preprocessed " + featureCount + " features: " + bytesRead + " bytes -> " + bytesWritten +
+                    " bytes (saved " + getBytesSaved() + " bytes, " + String.format("%.1f", pct) + "%)";
+        }
+    }
+}
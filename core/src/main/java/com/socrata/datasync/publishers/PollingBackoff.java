@@ -0,0 +1,83 @@
+package com.socrata.datasync.publishers;
+
+/**
+ * Paces repeated status polls against a remote job.
+ *
+ * The delay between polls starts at the minimum and grows geometrically (up to the maximum) for as long
+ * as the polled resource reports no change; as soon as a change is observed the delay drops back to the
+ * minimum. The number of polls and the total time spent waiting are tracked so they can be reported
+ * alongside the job result.
+ */
+public class PollingBackoff {
+
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    private final double multiplier;
+
+    private long nextDelayMs;
+    private int pollCount = 0;
+    private long totalWaitMs = 0L;
+
+    public PollingBackoff(long minDelayMs, long maxDelayMs, double multiplier) {
+        if (minDelayMs < 0 || maxDelayMs < minDelayMs || multiplier < 1.0)
+            throw new IllegalArgumentException("Invalid backoff: min=" + minDelayMs + "ms, max=" + maxDelayMs +
+                    "ms, multiplier=" + multiplier);
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.multiplier = multiplier;
+        this.nextDelayMs = minDelayMs;
+    }
+
+    /**
+     * Sleeps for the current delay and counts the poll that follows it.
+     */
+    public void pause() throws InterruptedException {
+        long delay = nextDelayMs;
+        pollCount++;
+        if (delay > 0) {
+            Thread.sleep(delay);
+            totalWaitMs += delay;
+        }
+    }
+
+    /**
+     * Records that the last poll observed a change; the next poll happens after the minimum delay.
+     */
+    public void changed() {
+        nextDelayMs = minDelayMs;
+    }
+
+    /**
+     * Records that the last poll observed nothing new; the next poll is pushed further out.
+     */
+    public void unchanged() {
+        nextDelayMs = Math.min(maxDelayMs, Math.max(1L, (long) Math.ceil(nextDelayMs * multiplier)));
+    }
+
+    /**
+     * @return true if polling has backed off as far as it will go
+     */
+    public boolean atMaxDelay() {
+        return nextDelayMs >= maxDelayMs;
+    }
+
+    public long getNextDelayMs() {
+        return nextDelayMs;
+    }
+
+    public int getPollCount() {
+        return pollCount;
+    }
+
+    public long getTotalWaitMs() {
+        return totalWaitMs;
+    }
+
+    /**
+     * @return a human-readable summary, e.g. "12 status polls, 31.5s waiting"
+     */
+    public String summary() {
+        return pollCount + " status poll" + (pollCount == 1 ? "" : "s") + ", " +
+                String.format("%.1f", totalWaitMs / 1000.0) + "s waiting";
+    }
+}
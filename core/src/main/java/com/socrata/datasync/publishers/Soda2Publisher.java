@@ -4,8 +4,10 @@ import au.com.bytecode.opencsv.CSVReader;
 import com.google.common.collect.ImmutableMap;
 import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaDdl;
+import com.socrata.datasync.MetadataCache;
 import com.socrata.datasync.PublishMethod;
 import com.socrata.datasync.Utils;
+import com.socrata.datasync.sources.RowSource;
 import com.socrata.exceptions.SodaError;
 import com.socrata.model.UpsertError;
 import com.socrata.model.UpsertResult;
@@ -14,11 +16,12 @@ import com.socrata.model.importer.Dataset;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class Soda2Publisher {
 
@@ -34,15 +37,25 @@ public class Soda2Publisher {
     public static UpsertResult deleteRows(Soda2Producer producer, SodaDdl ddl,
                                           final String id, final File csvOrTsvFile, final int numRowsPerChunk, final boolean containsHeaderRow)
             throws IOException, SodaError, InterruptedException
+    {
+        CSVReader reader = new CSVReader(new InputStreamReader(Utils.openDataFile(csvOrTsvFile)));
+        return deleteRows(producer, ddl, id, csvRows(reader), numRowsPerChunk, containsHeaderRow);
+    }
+
+    /**
+     * Deletes the rows corresponding to the IDs in the first column of the given rows
+     * @param reader the rows specifying the ids of the rows to be deleted; closed once they have all been read
+     * @return an upsertResult with the number of rows deleted and the number of errors encountered
+     */
+    public static UpsertResult deleteRows(Soda2Producer producer, SodaDdl ddl,
+                                          final String id, final RowSource reader, final int numRowsPerChunk, final boolean containsHeaderRow)
+            throws IOException, SodaError, InterruptedException
     {
         List<Map<String, Object>> upsertObjectsChunk = new ArrayList<Map<String, Object>>();
         int totalRowsDeleted = 0;
         List<UpsertError> deleteErrors = new ArrayList<UpsertError>();
 
         String rowIdentifierName = getDatasetRowId(ddl, id);
-
-        FileReader fileReader = new FileReader(csvOrTsvFile);
-        CSVReader reader = new CSVReader(fileReader);
         String[] currLine;
 
         // skip first row if there is a header row
@@ -100,6 +113,29 @@ public class Soda2Publisher {
                                                final PublishMethod method, final String id, final File csvOrTsvFile,
                                                int numRowsPerChunk, final boolean containsHeaderRow)
             throws IOException, SodaError, InterruptedException
+    {
+        char columnDelimiter = ',';
+        if(Utils.getDataFileExtension(csvOrTsvFile.toString()).equals("tsv")) {
+            columnDelimiter = '\t';
+        }
+
+        InputStreamReader fileReader = new InputStreamReader(Utils.openDataFile(csvOrTsvFile));
+        CSVReader reader = new CSVReader(fileReader, columnDelimiter);
+        return publishViaSoda2(producer, ddl, method, id, csvRows(reader), numRowsPerChunk, containsHeaderRow);
+    }
+
+    /**
+     * Publishes the given rows via SODA 2 replace or upsert/append, chunking them in the same way as
+     * {@link #publishViaSoda2(Soda2Producer, SodaDdl, PublishMethod, String, File, int, boolean)}.
+     *
+     * @param reader the rows to publish (e.g. the results of a database query); closed once they have all been read
+     * @param containsHeaderRow if true the first row is taken to be the list of the dataset columns
+     * @return UpsertResult containing success or error information
+     */
+    public static UpsertResult publishViaSoda2(Soda2Producer producer, SodaDdl ddl,
+                                               final PublishMethod method, final String id, final RowSource reader,
+                                               int numRowsPerChunk, final boolean containsHeaderRow)
+            throws IOException, SodaError, InterruptedException
     {
         // If doing a replace force it to upload all data as a single chunk
         if(method.equals(PublishMethod.replace)) {
@@ -113,14 +149,7 @@ public class Soda2Publisher {
         int totalRowsDeleted = 0;
         List<UpsertError> upsertErrors = new ArrayList<UpsertError>();
 
-        char columnDelimiter = ',';
-        if(Utils.getFileExtension(csvOrTsvFile.toString()).equals("tsv")) {
-            columnDelimiter = '\t';
-        }
-
         int numUploadedChunks = 0;
-        FileReader  fileReader = new FileReader(csvOrTsvFile);
-        CSVReader reader = new CSVReader(fileReader, columnDelimiter);
 
         String[] headers;
         if(containsHeaderRow) {
@@ -133,7 +162,7 @@ public class Soda2Publisher {
             }
         } else {
             // get API field names for each column in dataset
-            Dataset info = (Dataset) ddl.loadDatasetInfo(id);
+            Dataset info = loadDatasetInfo(ddl, id);
             List<Column> columns = info.getColumns();
             headers = new String[columns.size()];
             for(int i = 0; i < columns.size(); i++) {
@@ -234,8 +263,44 @@ public class Soda2Publisher {
         return publishViaSoda2(producer, ddl, PublishMethod.replace, id, file, 0, containsHeaderRow);
     }
 
+    /**
+     * Reads the rows of a CSV/TSV file.
+     */
+    private static RowSource csvRows(final CSVReader reader) {
+        return new RowSource() {
+            @Override
+            public String[] readNext() throws IOException {
+                return reader.readNext();
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Loads the dataset's schema, reusing a copy loaded through the same client within the last few minutes.
+     */
+    private static Dataset loadDatasetInfo(final SodaDdl ddl, final String id) throws SodaError, InterruptedException {
+        String key = ddl.getHttpLowLevel().uriBuilder().build() + " " + id;
+        try {
+            return MetadataCache.getDefault().getOrLoad(key, MetadataCache.ResourceType.SCHEMA, new Callable<Dataset>() {
+                @Override
+                public Dataset call() throws SodaError, InterruptedException {
+                    return (Dataset) ddl.loadDatasetInfo(id);
+                }
+            });
+        } catch (SodaError | InterruptedException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
     private static String getDatasetRowId(SodaDdl ddl, String id) throws SodaError, InterruptedException {
-        Dataset info = (Dataset) ddl.loadDatasetInfo(id);
+        Dataset info = loadDatasetInfo(ddl, id);
         Column rowIdentifier = info.lookupRowIdentifierColumn();
         String rowIdentifierName;
         if (rowIdentifier == null) {
@@ -0,0 +1,198 @@
+package com.socrata.datasync.sources;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.CancellableInputStream;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.config.controlfile.SyntheticColumn;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Leaves the ignored columns of a CSV/TSV file out of it on its way to delta-importer-2 or the FTP
+ * dropbox, rather than diffing, compressing and sending them only for the server to drop them.
+ *
+ * The kept columns are re-encoded as UTF-8 CSV (see CsvEncodingInputStream) after a header row, and
+ * {@link #getFileControl()} describes the result: a copy of the file's control with only the kept
+ * columns listed and with the new file's encoding, separator, quoting and skip. Ignored columns that
+ * synthetic locations or points are built from are kept, and stay ignored, since the server reads them.
+ */
+public class ColumnProjection {
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+
+    private final File file;
+    private final FileTypeControl fileControl;
+    private final int columnCount;
+    private final int[] keptIndexes;
+    private final String[] keptColumns;
+    private final Set<String> droppedColumns;
+
+    private ColumnProjection(File file, FileTypeControl fileControl, int columnCount, int[] keptIndexes, String[] keptColumns,
+                             Set<String> droppedColumns) {
+        this.file = file;
+        this.fileControl = fileControl;
+        this.columnCount = columnCount;
+        this.keptIndexes = keptIndexes;
+        this.keptColumns = keptColumns;
+        this.droppedColumns = droppedColumns;
+    }
+
+    /**
+     * @param file the CSV/TSV file to publish, possibly compressed
+     * @param fileControl the control of the file
+     * @return the projection of the file, or null if none of its columns can be left out
+     */
+    public static ColumnProjection of(File file, FileTypeControl fileControl) throws IOException {
+        if (!fileControl.hasIgnoredColumns())
+            return null;
+        String[] headers;
+        try (NumberedRowReader reader = new NumberedRowReader(file, fileControl)) {
+            headers = reader.getHeaders();
+        }
+        if (headers == null)
+            return null;
+
+        Set<String> droppable = new HashSet<>(Arrays.asList(fileControl.ignoreColumns));
+        droppable.removeAll(componentColumns(fileControl.syntheticLocations));
+        droppable.removeAll(componentColumns(fileControl.analyticLocations));
+        droppable.removeAll(componentColumns(fileControl.syntheticPoints));
+
+        List<Integer> keptIndexes = new ArrayList<>();
+        List<String> keptColumns = new ArrayList<>();
+        Set<String> droppedColumns = new HashSet<>();
+        for (int i = 0; i < headers.length; i++) {
+            if (droppable.contains(headers[i])) {
+                droppedColumns.add(headers[i]);
+            } else {
+                keptIndexes.add(i);
+                keptColumns.add(headers[i]);
+            }
+        }
+        if (droppedColumns.isEmpty())
+            return null;
+        int[] indexes = new int[keptIndexes.size()];
+        for (int i = 0; i < indexes.length; i++)
+            indexes[i] = keptIndexes.get(i);
+        return new ColumnProjection(file, fileControl, headers.length, indexes, keptColumns.toArray(new String[keptColumns.size()]), droppedColumns);
+    }
+
+    private static Set<String> componentColumns(Map<String, ? extends SyntheticColumn> syntheticColumns) {
+        Set<String> components = new HashSet<>();
+        if (syntheticColumns != null) {
+            for (SyntheticColumn column : syntheticColumns.values())
+                components.addAll(column.findComponentColumns().values());
+        }
+        return components;
+    }
+
+    /**
+     * @return the names of the columns left out
+     */
+    public Set<String> getDroppedColumns() {
+        return droppedColumns;
+    }
+
+    /**
+     * @return the name to publish the projected file under: that of the file, as CSV
+     */
+    public String getFileName() {
+        String name = file.getName();
+        if (Utils.isCompressed(name))
+            name = name.substring(0, name.lastIndexOf('.'));
+        int extension = name.lastIndexOf('.');
+        return (extension > 0 ? name.substring(0, extension) : name) + ".csv";
+    }
+
+    /**
+     * @return a control describing the projected file
+     */
+    public FileTypeControl getFileControl() throws IOException {
+        FileTypeControl projected = mapper.readValue(mapper.writeValueAsBytes(fileControl), FileTypeControl.class);
+        projected.encoding = "utf-8";
+        projected.separator = ",";
+        projected.quote = "\"";
+        projected.escape = null;
+        projected.hasHeaderRow = true;
+        projected.skip = 1;
+        projected.columns = keptColumns.clone();
+
+        List<String> stillIgnored = new ArrayList<>();
+        for (String column : fileControl.ignoreColumns) {
+            if (!droppedColumns.contains(column))
+                stillIgnored.add(column);
+        }
+        projected.ignoreColumns = stillIgnored.toArray(new String[stillIgnored.size()]);
+        if (projected.overrides != null)
+            projected.overrides.keySet().removeAll(droppedColumns);
+        return projected;
+    }
+
+    /**
+     * @return the rows of the projected file, starting with its header row
+     */
+    public RowSource openRows() throws IOException {
+        final NumberedRowReader reader = new NumberedRowReader(file, fileControl);
+        return new RowSource() {
+            private boolean headerRead = false;
+
+            @Override
+            public String[] readNext() throws IOException {
+                if (!headerRead) {
+                    headerRead = true;
+                    return keptColumns.clone();
+                }
+                String[] row = reader.readNext();
+                return row == null ? null : project(row);
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * @return the projected file, encoded as it is read
+     */
+    public InputStream openStream() throws IOException {
+        return new CsvEncodingInputStream(openRows());
+    }
+
+    /**
+     * Writes the projected file, e.g. to be compressed for the FTP dropbox.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new CancellableInputStream(openStream())) {
+            int read;
+            while ((read = in.read(buffer)) > 0)
+                out.write(buffer, 0, read);
+        }
+    }
+
+    private String[] project(String[] row) {
+        // rows that are too short or too long stay that way, for the server to report as it would have
+        int kept = 0;
+        while (kept < keptIndexes.length && keptIndexes[kept] < row.length)
+            kept++;
+        int extra = Math.max(0, row.length - columnCount);
+        String[] projected = new String[kept + extra];
+        for (int i = 0; i < kept; i++)
+            projected[i] = row[keptIndexes[i]];
+        if (extra > 0)
+            System.arraycopy(row, columnCount, projected, kept, extra);
+        return projected;
+    }
+}
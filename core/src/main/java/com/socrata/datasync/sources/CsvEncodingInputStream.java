@@ -0,0 +1,100 @@
+package com.socrata.datasync.sources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes rows as UTF-8 CSV as they are read, for publishing paths (like delta-importer-2) that
+ * consume a byte stream rather than rows. Cells are quoted only where RFC 4180 requires it and rows
+ * end with a single newline.
+ */
+public class CsvEncodingInputStream extends InputStream {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RowSource rows;
+    private byte[] buffer = new byte[0];
+    private int position = 0;
+    private boolean exhausted = false;
+
+    /**
+     * @param rows the rows to encode; they are closed along with this stream
+     * @param skipFirstRow whether to leave out the first row (e.g. the header row of a query)
+     */
+    public CsvEncodingInputStream(RowSource rows, boolean skipFirstRow) throws IOException {
+        this.rows = rows;
+        if (skipFirstRow)
+            rows.readNext();
+    }
+
+    public CsvEncodingInputStream(RowSource rows) throws IOException {
+        this(rows, false);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int count = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows.close();
+    }
+
+    /**
+     * @return the row as a line of CSV, including the line ending
+     */
+    public static String encodeRow(String[] row) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0)
+                line.append(',');
+            String cell = row[i] == null ? "" : row[i];
+            if (needsQuotes(cell)) {
+                line.append('"').append(cell.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(cell);
+            }
+        }
+        return line.append('\n').toString();
+    }
+
+    private static boolean needsQuotes(String cell) {
+        for (int i = 0; i < cell.length(); i++) {
+            char c = cell.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                return true;
+        }
+        return false;
+    }
+
+    private boolean fill() throws IOException {
+        while (position == buffer.length) {
+            if (exhausted)
+                return false;
+            String[] row = rows.readNext();
+            if (row == null) {
+                exhausted = true;
+                return false;
+            }
+            buffer = encodeRow(row).getBytes(UTF_8);
+            position = 0;
+        }
+        return true;
+    }
+}
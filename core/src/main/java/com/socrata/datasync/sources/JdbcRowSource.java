@@ -0,0 +1,148 @@
+package com.socrata.datasync.sources;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+
+/**
+ * Streams the results of a query straight out of a database. The first row returned is the query's
+ * column labels, so the rows read the same as a CSV file with a header row.
+ *
+ * The query runs in a read-only transaction with the given fetch size, which is what lets drivers
+ * such as PostgreSQL's use a cursor instead of loading the entire result set into memory. The JDBC
+ * driver for the URL must be on the classpath.
+ */
+public class JdbcRowSource implements RowSource {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final Connection connection;
+    private final Statement statement;
+    private final ResultSet results;
+    private final String[] headers;
+    private boolean headersRead = false;
+    private boolean closed = false;
+
+    /**
+     * Connects to the database and executes the query
+     * @param jdbcUrl the JDBC URL of the database, including any credentials
+     * @param query the SELECT statement whose results are to be published
+     * @param fetchSize the number of rows to fetch from the database at a time
+     */
+    public JdbcRowSource(String jdbcUrl, String query, int fetchSize) throws IOException {
+        Connection conn = null;
+        Statement stmt = null;
+        try {
+            conn = DriverManager.getConnection(jdbcUrl);
+            conn.setReadOnly(true);
+            conn.setAutoCommit(false);
+            stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE);
+            results = stmt.executeQuery(query);
+            ResultSetMetaData meta = results.getMetaData();
+            headers = new String[meta.getColumnCount()];
+            for (int i = 0; i < headers.length; i++) {
+                headers[i] = meta.getColumnLabel(i + 1);
+            }
+        } catch (SQLException e) {
+            closeQuietly(stmt, conn);
+            throw new IOException("Unable to run query against " + describe(jdbcUrl) + ": " + e.getMessage(), e);
+        }
+        connection = conn;
+        statement = stmt;
+    }
+
+    /**
+     * @return the column labels of the query
+     */
+    public String[] getHeaders() {
+        return headers.clone();
+    }
+
+    @Override
+    public String[] readNext() throws IOException {
+        if (!headersRead) {
+            headersRead = true;
+            return getHeaders();
+        }
+        try {
+            if (!results.next())
+                return null;
+            String[] row = new String[headers.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = toText(results.getObject(i + 1));
+            }
+            return row;
+        } catch (SQLException e) {
+            throw new IOException("Error reading query results: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            results.close();
+            statement.close();
+            connection.rollback();
+            connection.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Converts a value read from the database into the text a CSV file would hold for it; dates and
+     * times are written as ISO8601 floating timestamps and nulls as empty cells.
+     */
+    public static String toText(Object value) throws SQLException {
+        if (value == null)
+            return "";
+        if (value instanceof Timestamp)
+            return ISODateTimeFormat.dateHourMinuteSecondMillis().print(new LocalDateTime(value));
+        if (value instanceof java.sql.Date)
+            return ISODateTimeFormat.date().print(new LocalDate(value));
+        if (value instanceof Time)
+            return value.toString();
+        if (value instanceof BigDecimal)
+            return ((BigDecimal) value).toPlainString();
+        if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        }
+        return value.toString();
+    }
+
+    // keep passwords given in the URL out of error messages
+    private static String describe(String jdbcUrl) {
+        int params = jdbcUrl.length();
+        for (char separator : new char[] {'?', ';'}) {
+            int at = jdbcUrl.indexOf(separator);
+            if (at >= 0 && at < params)
+                params = at;
+        }
+        return jdbcUrl.substring(0, params);
+    }
+
+    private static void closeQuietly(Statement stmt, Connection conn) {
+        try {
+            if (stmt != null) stmt.close();
+            if (conn != null) conn.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.socrata.datasync.sources;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the rows of a file to publish as its control file lays them out (skipping leading rows, taking
+ * the headers from the file or the control file and dropping any byte order mark), keeping track of
+ * the line of the file each row starts on. Quoted cells may span lines, so that isn't the row number.
+ */
+public class NumberedRowReader implements RowSource {
+
+    private final CSVReader reader;
+    private final String[] headers;
+    private boolean first;
+    private long nextLine = 1;
+    private long line;
+
+    public NumberedRowReader(File file, FileTypeControl fileControl) throws IOException {
+        reader = Utils.getReader(file, fileControl);
+        try {
+            int skip = fileControl.skip == null ? 0 : fileControl.skip;
+            for (int i = 0; i < skip; i++)
+                nextLine += linesSpanned(reader.readNext());
+
+            String[] fileHeaders = fileControl.columns;
+            if (fileHeaders == null) {
+                fileHeaders = reader.readNext();
+                if (fileHeaders != null) {
+                    nextLine += linesSpanned(fileHeaders);
+                    fileHeaders = fileHeaders.clone();
+                    stripBom(fileHeaders);
+                    for (int i = 0; i < fileHeaders.length; i++)
+                        fileHeaders[i] = fileHeaders[i].trim();
+                }
+            }
+            headers = fileHeaders;
+            first = fileControl.columns != null;
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the names of the columns, or null if the file is empty
+     */
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return the next row, or null at the end of the file
+     */
+    @Override
+    public String[] readNext() throws IOException {
+        if (headers == null)
+            return null;
+        String[] row = reader.readNext();
+        if (row != null) {
+            if (first) {
+                stripBom(row);
+                first = false;
+            }
+            line = nextLine;
+            nextLine += linesSpanned(row);
+        }
+        return row;
+    }
+
+    /**
+     * @return the line the last row read starts on
+     */
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static void stripBom(String[] row) {
+        if (row.length > 0 && row[0].startsWith(Utils.BOM))
+            row[0] = row[0].substring(Utils.BOM.length());
+    }
+
+    /**
+     * @return the number of lines of the file that the row was read from
+     */
+    private static int linesSpanned(String[] row) {
+        int lines = 1;
+        if (row != null) {
+            for (String cell : row) {
+                for (int i = cell.indexOf('\n'); i >= 0; i = cell.indexOf('\n', i + 1))
+                    lines++;
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,65 @@
+package com.socrata.datasync.sources;
+
+import java.nio.charset.Charset;
+
+/**
+ * Finds where the rows of a CSV/TSV file end by scanning its bytes, taking line breaks inside quoted
+ * cells to be part of the cell. The scanner keeps its state between calls, so a file can be scanned a
+ * buffer at a time.
+ *
+ * This only works for encodings in which line breaks, quotes and escapes are single bytes of the same
+ * value as their character (see {@link #canScan}), such as UTF-8 and the ISO-8859 and Windows code pages.
+ */
+public class RowBoundaryScanner {
+
+    private final byte quote;
+    private final byte escape;
+    private final boolean hasEscape;
+    private boolean quoted;
+    private boolean escaped;
+
+    public RowBoundaryScanner(char quote, char escape) {
+        this.quote = (byte) quote;
+        this.escape = (byte) escape;
+        // an escape that is the quote itself ("") toggles quoting twice, which needs no special case
+        this.hasEscape = escape != '\u0000' && escape != quote;
+    }
+
+    /**
+     * @return whether files in the given encoding, quote and escape can be scanned byte by byte
+     */
+    public static boolean canScan(Charset charset, char quote, char escape) {
+        for (char c : new char[] {'\n', '\r', quote, escape}) {
+            byte[] encoded = String.valueOf(c).getBytes(charset);
+            if (c != '\u0000' && (encoded.length != 1 || encoded[0] != c))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the position after the line break that ends the current row, or -1 if it doesn't end
+     *         before {@code to}
+     */
+    public int nextRowEnd(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (escaped)
+                escaped = false;
+            else if (quoted && hasEscape && b == escape)
+                escaped = true;
+            else if (b == quote)
+                quoted = !quoted;
+            else if (b == '\n' && !quoted)
+                return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether the bytes scanned so far end inside a quoted cell
+     */
+    public boolean inQuotes() {
+        return quoted;
+    }
+}
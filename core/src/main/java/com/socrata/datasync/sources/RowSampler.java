@@ -0,0 +1,268 @@
+package com.socrata.datasync.sources;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks rows from across the whole of a CSV/TSV file, in the order they appear in it, so that previews
+ * and checks of a sample see more than the top of the file.
+ *
+ * A large uncompressed file is split into equal strata: the first is read from the start of the data,
+ * and each of the others from a random offset within it. Reading from an offset starts at the first
+ * line break from which the next rows parse with the same number of cells as the first rows of the
+ * file, so that a line break inside a quoted cell isn't taken for the end of a row. Only a few small
+ * reads are made, however large the file. Compressed and small files, and those in encodings a line
+ * break can't be found in byte by byte, are read through with reservoir sampling instead.
+ *
+ * Unless given a Random, a sampler picks the same rows each time it samples a file, so that a preview
+ * doesn't change every time it is reloaded.
+ */
+public class RowSampler {
+
+    private static final int ROWS_PER_OFFSET = 5;
+    private static final int ROWS_TO_CHECK = 2;
+    private static final long SEQUENTIAL_LIMIT = 1024 * 1024;
+    private static final int READ_SIZE = 64 * 1024;
+    private static final int MAX_READ_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_SEED = 1;
+
+    private final char separator;
+    private final char quote;
+    private final char escape;
+    private final Charset charset;
+    private final int skipLines;
+    private final Random random;
+
+    /**
+     * @param fileControl the separator, quote, escape and encoding of the file
+     * @param skipLines the number of lines at the top of the file that aren't rows to sample
+     * @param random where to pick rows from, or null to pick the same rows of a file every time
+     */
+    public RowSampler(FileTypeControl fileControl, int skipLines, Random random) {
+        this.separator = Utils.nullOrEmpty(fileControl.separator) ? ',' : fileControl.separator.charAt(0);
+        this.quote = Utils.nullOrEmpty(fileControl.quote) ? '"' : fileControl.quote.charAt(0);
+        this.escape = Utils.nullOrEmpty(fileControl.escape) ? '\u0000' : fileControl.escape.charAt(0);
+        this.charset = Utils.getCharset(fileControl);
+        this.skipLines = skipLines;
+        this.random = random;
+    }
+
+    public RowSampler(FileTypeControl fileControl, int skipLines) {
+        this(fileControl, skipLines, null);
+    }
+
+    /**
+     * @return up to the given number of rows, in file order
+     */
+    public List<String[]> sample(File file, int rows) throws IOException {
+        Random random = this.random == null ? new Random(DEFAULT_SEED) : this.random;
+        if (Utils.isCompressed(file.getName()) || file.length() <= SEQUENTIAL_LIMIT ||
+                !RowBoundaryScanner.canScan(charset, quote, escape))
+            return reservoirSample(file, rows, random);
+        try (FileInputStream in = new FileInputStream(file)) {
+            return stratifiedSample(in.getChannel(), rows, random);
+        }
+    }
+
+    private List<String[]> reservoirSample(File file, int rows, Random random) throws IOException {
+        List<String[]> reservoir = new ArrayList<>(rows);
+        List<Long> positions = new ArrayList<>(rows);
+        try (CSVReader reader = new CSVReader(new InputStreamReader(Utils.openDataFile(file), charset),
+                separator, quote, escape, skipLines)) {
+            long seen = 0;
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (reservoir.size() < rows) {
+                    reservoir.add(row);
+                    positions.add(seen);
+                } else {
+                    long replace = (long) (random.nextDouble() * (seen + 1));
+                    if (replace < rows) {
+                        reservoir.set((int) replace, row);
+                        positions.set((int) replace, seen);
+                    }
+                }
+                seen++;
+            }
+        }
+        // put the rows back in file order
+        Integer[] order = new Integer[reservoir.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        final List<Long> at = positions;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return at.get(a).compareTo(at.get(b));
+            }
+        });
+        List<String[]> sample = new ArrayList<>(order.length);
+        for (Integer i : order)
+            sample.add(reservoir.get(i));
+        return sample;
+    }
+
+    private List<String[]> stratifiedSample(FileChannel channel, int rows, Random random) throws IOException {
+        long size = channel.size();
+        long dataStart = skipLines(channel);
+        int strata = Math.max(1, (rows + ROWS_PER_OFFSET - 1) / ROWS_PER_OFFSET);
+        long stratumSize = (size - dataStart) / strata;
+
+        List<String[]> sample = new ArrayList<>(rows);
+        long end = dataStart;
+        int expectedCells = -1;
+        for (int stratum = 0; stratum < strata && sample.size() < rows && end < size; stratum++) {
+            long offset = dataStart + stratum * stratumSize;
+            boolean atRowStart = stratum == 0;
+            if (stratum > 0) {
+                offset += (long) (random.nextDouble() * stratumSize);
+                if (offset <= end) {
+                    offset = end;
+                    atRowStart = true;
+                }
+            }
+            Chunk chunk = readChunk(channel, offset, size);
+            int start = atRowStart ? 0 : chunk.findRowStart(expectedCells);
+            if (start < 0)
+                continue;
+            int take = Math.min(ROWS_PER_OFFSET, rows - sample.size());
+            for (int[] row : chunk.rows(start, take)) {
+                String[] cells = chunk.parse(row, offset + row[0] == 0);
+                sample.add(cells);
+                if (expectedCells < 0 && !isBlank(cells))
+                    expectedCells = cells.length;
+                end = offset + row[2];
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * @return the byte offset of the first line after the lines skipped
+     */
+    private long skipLines(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+        long position = 0;
+        int skipped = 0;
+        while (skipped < skipLines) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read && skipped < skipLines; i++) {
+                position++;
+                if (buffer.get(i) == '\n')
+                    skipped++;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Reads enough of the file from the given offset to hold a few rows, reading more if rows are long.
+     */
+    private Chunk readChunk(FileChannel channel, long offset, long size) throws IOException {
+        int readSize = READ_SIZE;
+        while (true) {
+            int length = (int) Math.min(readSize, size - offset);
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {}
+            Chunk chunk = new Chunk(buffer.array(), buffer.position(), offset + length >= size);
+            if (chunk.toEnd || readSize >= MAX_READ_SIZE || chunk.rows(0, ROWS_PER_OFFSET + 1).size() > ROWS_PER_OFFSET)
+                return chunk;
+            readSize *= 4;
+        }
+    }
+
+    private static boolean isBlank(String[] row) {
+        return row.length == 1 && row[0].isEmpty();
+    }
+
+    /**
+     * Bytes read from an offset of the file, and the rows that can be found in them.
+     */
+    private class Chunk {
+        private final byte[] bytes;
+        private final int length;
+        private final boolean toEnd;
+
+        private Chunk(byte[] bytes, int length, boolean toEnd) {
+            this.bytes = bytes;
+            this.length = length;
+            this.toEnd = toEnd;
+        }
+
+        /**
+         * @return the position after the first line break from which rows parse with the expected
+         *         number of cells, or -1 if there isn't one
+         */
+        int findRowStart(int expectedCells) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != '\n')
+                    continue;
+                List<int[]> rows = rows(i + 1, ROWS_TO_CHECK);
+                if (rows.isEmpty())
+                    return -1;
+                boolean matches = true;
+                for (int[] row : rows) {
+                    String[] cells = parse(row, false);
+                    if (expectedCells >= 0 && !isBlank(cells) && cells.length != expectedCells)
+                        matches = false;
+                }
+                if (matches)
+                    return i + 1;
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the ends of rows by line breaks outside of quotes. A row cut off by the end of the chunk
+         * isn't included unless the chunk runs to the end of the file.
+         * @return for each row, its start, the end of its contents and the start of the next row
+         */
+        List<int[]> rows(int start, int max) {
+            List<int[]> rows = new ArrayList<>();
+            RowBoundaryScanner scanner = new RowBoundaryScanner(quote, escape);
+            int rowStart = start;
+            while (rows.size() < max && rowStart < length) {
+                int next = scanner.nextRowEnd(bytes, rowStart, length);
+                if (next < 0) {
+                    if (toEnd && !scanner.inQuotes())
+                        rows.add(new int[] {rowStart, length, length});
+                    break;
+                }
+                int contentEnd = next - 1 > rowStart && bytes[next - 2] == '\r' ? next - 2 : next - 1;
+                rows.add(new int[] {rowStart, contentEnd, next});
+                rowStart = next;
+            }
+            return rows;
+        }
+
+        String[] parse(int[] row, boolean startOfFile) {
+            String line = new String(bytes, row[0], row[1] - row[0], charset);
+            if (startOfFile && line.startsWith(Utils.BOM))
+                line = line.substring(Utils.BOM.length());
+            try {
+                String[] cells = new CSVReader(new StringReader(line), separator, quote, escape).readNext();
+                return cells == null ? new String[] {""} : cells;
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // not thrown reading from a string
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.socrata.datasync.sources;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Rows to publish, read one at a time so that the whole source never has to be held in memory.
+ * A CSV/TSV file and the results of a JDBC query are both read through this.
+ */
+public interface RowSource extends Closeable {
+
+    /**
+     * @return the values of the next row, or null once there are no more rows
+     */
+    String[] readNext() throws IOException;
+}
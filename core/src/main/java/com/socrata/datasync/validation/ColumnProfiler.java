@@ -0,0 +1,213 @@
+package com.socrata.datasync.validation;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.sources.NumberedRowReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Profiles each column of a file to publish in a single pass, for a quick look at what a file holds
+ * (and how it differs from the last one) without loading it anywhere: the share of its cells that are
+ * missing or empty, its smallest and largest values, a histogram of their lengths, the type its values
+ * appear to be and an estimate of how many distinct values it has.
+ *
+ * Memory use is bounded by the number of columns rather than rows: each column keeps a few counters,
+ * its smallest and largest values and a 16KB {@link HyperLogLog}.
+ */
+public class ColumnProfiler {
+
+    private static final HashFunction VALUE_HASH = Hashing.murmur3_128();
+    // lengths are counted in buckets by powers of two: 0, 1, 2-3, 4-7, ...
+    private static final int LENGTH_BUCKETS = 32;
+    private static final PreflightValidator.ValueCheck NUMBER_CHECK = new PreflightValidator.NumberCheck("number");
+
+    private final FileTypeControl fileControl;
+
+    public ColumnProfiler(FileTypeControl fileControl) {
+        this.fileControl = fileControl;
+    }
+
+    public Profile profile(File file) throws IOException {
+        try (NumberedRowReader reader = new NumberedRowReader(file, fileControl)) {
+            String[] headers = reader.getHeaders();
+            if (headers == null)
+                return new Profile(file.getName(), 0, Collections.<ColumnProfile>emptyList());
+
+            Set<String> ignored = fileControl.hasIgnoredColumns() ?
+                    new HashSet<>(Arrays.asList(fileControl.ignoreColumns)) : Collections.<String>emptySet();
+            boolean trimWhitespace = fileControl.trimWhitespace == null || fileControl.trimWhitespace;
+            ColumnStats[] stats = new ColumnStats[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                if (!ignored.contains(headers[i]))
+                    stats[i] = new ColumnStats(headers[i]);
+            }
+
+            long rows = 0;
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                if (row.length == 1 && row[0].isEmpty() && headers.length > 1)
+                    continue; // blank line
+                rows++;
+                for (int i = 0; i < stats.length; i++) {
+                    if (stats[i] == null)
+                        continue;
+                    if (i >= row.length)
+                        stats[i].missing++;
+                    else
+                        stats[i].add(trimWhitespace ? row[i].trim() : row[i]);
+                }
+            }
+
+            List<ColumnProfile> columns = new ArrayList<>();
+            for (ColumnStats column : stats) {
+                if (column != null)
+                    columns.add(column.profile(rows));
+            }
+            return new Profile(file.getName(), rows, columns);
+        }
+    }
+
+    /**
+     * What has been seen of one column so far. A value's type is the first of number, checkbox and
+     * calendar date that all of the column's values can be read as, otherwise text.
+     */
+    private class ColumnStats {
+        private final String name;
+        private final PreflightValidator.ValueCheck timestampCheck;
+        private final HyperLogLog distinct = new HyperLogLog();
+        private final long[] lengths = new long[LENGTH_BUCKETS];
+        private long missing;
+        private long empty;
+        private boolean number = true;
+        private boolean checkbox = true;
+        private boolean timestamp = true;
+        private BigDecimal minNumber;
+        private BigDecimal maxNumber;
+        private String min;
+        private String max;
+
+        ColumnStats(String name) {
+            this.name = name;
+            timestampCheck = new PreflightValidator.TimestampCheck(
+                    PreflightValidator.timestampFormats(fileControl, name, fileControl.floatingTimestampFormat));
+        }
+
+        void add(String value) {
+            if (value.isEmpty()) {
+                empty++;
+                lengths[0]++;
+                return;
+            }
+            lengths[64 - Long.numberOfLeadingZeros(value.length())]++;
+            distinct.add(VALUE_HASH.hashString(value, Charsets.UTF_8).asLong());
+            if (min == null || value.compareTo(min) < 0)
+                min = value;
+            if (max == null || value.compareTo(max) > 0)
+                max = value;
+
+            if (number) {
+                if (NUMBER_CHECK.check(value) == null) {
+                    BigDecimal parsed = new BigDecimal(value.replace(",", ""));
+                    if (minNumber == null || parsed.compareTo(minNumber) < 0)
+                        minNumber = parsed;
+                    if (maxNumber == null || parsed.compareTo(maxNumber) > 0)
+                        maxNumber = parsed;
+                } else {
+                    number = false;
+                }
+            }
+            if (checkbox)
+                checkbox = PreflightValidator.CHECKBOX_CHECK.check(value) == null;
+            if (timestamp)
+                timestamp = timestampCheck.check(value) == null;
+        }
+
+        ColumnProfile profile(long rows) {
+            String type = null;
+            String low = min, high = max;
+            if (min != null) {
+                if (number) {
+                    type = "number";
+                    low = minNumber.toPlainString();
+                    high = maxNumber.toPlainString();
+                } else if (checkbox) {
+                    type = "checkbox";
+                } else if (timestamp) {
+                    type = "calendar_date";
+                } else {
+                    type = "text";
+                }
+            }
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] > 0)
+                    histogram.put(i < 2 ? String.valueOf(i) : (1L << (i - 1)) + "-" + ((1L << i) - 1), lengths[i]);
+            }
+            return new ColumnProfile(name, type, ratio(missing, rows), ratio(empty, rows), low, high,
+                    min == null ? 0 : distinct.estimate(), histogram);
+        }
+    }
+
+    private static double ratio(long count, long rows) {
+        return rows == 0 ? 0 : (double) count / rows;
+    }
+
+    @JsonPropertyOrder({"name", "inferredType", "nullRatio", "emptyRatio", "min", "max", "approxDistinct", "lengthHistogram"})
+    public static class ColumnProfile {
+        public final String name;
+        // null if the column has no values
+        public final String inferredType;
+        // the share of rows with no cell for the column
+        public final double nullRatio;
+        // the share of rows whose cell is empty
+        public final double emptyRatio;
+        public final String min;
+        public final String max;
+        public final long approxDistinct;
+        public final Map<String, Long> lengthHistogram;
+
+        public ColumnProfile(String name, String inferredType, double nullRatio, double emptyRatio,
+                             String min, String max, long approxDistinct, Map<String, Long> lengthHistogram) {
+            this.name = name;
+            this.inferredType = inferredType;
+            this.nullRatio = nullRatio;
+            this.emptyRatio = emptyRatio;
+            this.min = min;
+            this.max = max;
+            this.approxDistinct = approxDistinct;
+            this.lengthHistogram = Collections.unmodifiableMap(lengthHistogram);
+        }
+    }
+
+    @JsonPropertyOrder({"file", "rows", "columns"})
+    public static class Profile {
+        public final String file;
+        public final long rows;
+        public final List<ColumnProfile> columns;
+
+        public Profile(String file, long rows, List<ColumnProfile> columns) {
+            this.file = file;
+            this.rows = rows;
+            this.columns = Collections.unmodifiableList(columns);
+        }
+
+        public void writeTo(File report) throws IOException {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(report, this);
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package com.socrata.datasync.validation;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.sources.NumberedRowReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds rows of a file to publish that repeat the row identifier of an earlier row, which an upsert
+ * would silently collapse into one row.
+ *
+ * The first pass over the file keeps a 64-bit fingerprint of each key rather than the key itself, in
+ * an open-addressing table allocated outside of the Java heap. If the table would outgrow the memory
+ * budget, its fingerprints and those of the rest of the file are instead written out in sorted runs,
+ * which are merged to find the repeated fingerprints. A second pass then reads the keys with those
+ * fingerprints to report them with their line numbers; it also weeds out the (at 64 bits, very rare)
+ * different keys that share a fingerprint.
+ */
+public class DuplicateKeyDetector {
+
+    public static final int DEFAULT_MAX_KEYS = 100;
+    private static final int MAX_LINES_PER_KEY = 10;
+    private static final int MIN_RUN_LENGTH = 1 << 16;
+    private static final int MAX_RUN_LENGTH = 1 << 24;
+    private static final HashFunction FINGERPRINT = Hashing.murmur3_128();
+
+    private final FileTypeControl fileControl;
+    private final String keyColumn;
+    private final long memoryBudget;
+    private final File tempDir;
+    private final int maxKeys;
+
+    /**
+     * @param fileControl how the file is laid out
+     * @param keyColumn the field name of the row identifier column
+     * @param memoryBudget the number of bytes the fingerprints may take up in memory; direct buffers are
+     *                     limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size
+     * @param tempDir where to write sorted runs of fingerprints if they don't fit in the budget, or null
+     *                for the default temporary directory
+     * @param maxKeys the number of duplicated keys to list in the report
+     */
+    public DuplicateKeyDetector(FileTypeControl fileControl, String keyColumn, long memoryBudget, File tempDir, int maxKeys) {
+        this.fileControl = fileControl;
+        this.keyColumn = keyColumn;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+        this.maxKeys = maxKeys;
+    }
+
+    public DuplicateKeyDetector(FileTypeControl fileControl, String keyColumn) {
+        this(fileControl, keyColumn, Runtime.getRuntime().maxMemory() / 4, null, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Reads the given file twice if any of its keys are repeated, otherwise once.
+     * @return the number of rows read and the rows repeating a key; null if the file has no key column
+     */
+    public Report detect(File file) throws IOException {
+        Set<Long> suspects = new HashSet<>();
+        long rowsChecked = 0;
+        long duplicateRows = 0;
+
+        FingerprintTable table = FingerprintTable.allocate(Math.min(1 << 20, memoryBudget / 8));
+        SortedRuns runs = table == null ? new SortedRuns(runLength(), tempDir) : null;
+        try {
+            try (NumberedRowReader reader = new NumberedRowReader(file, fileControl)) {
+                int keyIndex = keyIndex(reader.getHeaders());
+                if (keyIndex < 0)
+                    return null;
+                String[] row;
+                while ((row = reader.readNext()) != null) {
+                    rowsChecked++;
+                    String key = key(row, keyIndex);
+                    if (key == null)
+                        continue;
+                    long fingerprint = fingerprint(key);
+                    if (runs != null) {
+                        runs.add(fingerprint);
+                    } else if (!table.add(fingerprint)) {
+                        duplicateRows++;
+                        if (suspects.size() < maxKeys)
+                            suspects.add(fingerprint);
+                    } else if (table.isFull()) {
+                        // while copying, the table and one twice its size are both in memory
+                        FingerprintTable larger = table.capacity() * 8 * 3 <= memoryBudget ?
+                                FingerprintTable.allocate(table.capacity() * 2) : null;
+                        if (larger != null) {
+                            table.copyTo(larger);
+                            table = larger;
+                        } else {
+                            runs = new SortedRuns(runLength(), tempDir);
+                            table.copyTo(runs);
+                            table = null;
+                        }
+                    }
+                }
+            }
+            if (runs != null)
+                duplicateRows += runs.mergeDuplicates(suspects, maxKeys);
+        } finally {
+            if (runs != null)
+                runs.delete();
+        }
+
+        if (suspects.isEmpty())
+            return new Report(keyColumn, rowsChecked, 0, Collections.<Duplicate>emptyList());
+
+        List<Duplicate> duplicates = findKeys(file, suspects);
+        if (suspects.size() < maxKeys) {
+            // every repeated fingerprint was looked at, so the duplicates found are all of them
+            duplicateRows = 0;
+            for (Duplicate duplicate : duplicates)
+                duplicateRows += duplicate.getOccurrences() - 1;
+        }
+        if (duplicates.size() > maxKeys)
+            duplicates = duplicates.subList(0, maxKeys);
+        return new Report(keyColumn, rowsChecked, duplicateRows, duplicates);
+    }
+
+    /**
+     * The second pass: collects the keys with the given fingerprints and the lines they are on.
+     * @return the keys that really are repeated, in order of the line they first appear on
+     */
+    private List<Duplicate> findKeys(File file, Set<Long> fingerprints) throws IOException {
+        Map<String, Duplicate> candidates = new HashMap<>();
+        try (NumberedRowReader reader = new NumberedRowReader(file, fileControl)) {
+            int keyIndex = keyIndex(reader.getHeaders());
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                String key = key(row, keyIndex);
+                if (key == null || !fingerprints.contains(fingerprint(key)))
+                    continue;
+                Duplicate candidate = candidates.get(key);
+                if (candidate == null) {
+                    candidate = new Duplicate(key);
+                    candidates.put(key, candidate);
+                }
+                candidate.seenOn(reader.getLine());
+            }
+        }
+        List<Duplicate> duplicates = new ArrayList<>();
+        for (Duplicate candidate : candidates.values()) {
+            if (candidate.getOccurrences() > 1)
+                duplicates.add(candidate);
+        }
+        Collections.sort(duplicates, new Comparator<Duplicate>() {
+            @Override
+            public int compare(Duplicate a, Duplicate b) {
+                long first = a.getLines().get(0), second = b.getLines().get(0);
+                return first < second ? -1 : (first == second ? 0 : 1);
+            }
+        });
+        return duplicates;
+    }
+
+    private int keyIndex(String[] headers) {
+        if (headers == null)
+            return -1;
+        return Arrays.asList(headers).indexOf(keyColumn);
+    }
+
+    /**
+     * @return the row's key as it would be published, or null if it has none
+     */
+    private String key(String[] row, int keyIndex) {
+        if (keyIndex >= row.length)
+            return null;
+        String key = row[keyIndex];
+        if (fileControl.trimWhitespace == null || fileControl.trimWhitespace)
+            key = key.trim();
+        return key.isEmpty() ? null : key;
+    }
+
+    private static long fingerprint(String key) {
+        return FINGERPRINT.hashString(key, Charsets.UTF_8).asLong();
+    }
+
+    private int runLength() {
+        return (int) Math.max(MIN_RUN_LENGTH, Math.min(MAX_RUN_LENGTH, memoryBudget / 8));
+    }
+
+    /**
+     * A set of fingerprints in direct memory, probed linearly. Zero marks an empty slot, so a
+     * fingerprint of zero is stored as one. The slots are split across buffers, as a single
+     * buffer can't hold more than 2^31 bytes.
+     */
+    private static class FingerprintTable {
+        private static final int SEGMENT_BITS = 24;
+        private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+
+        private final LongBuffer[] segments;
+        private final long mask;
+        private long size;
+
+        /**
+         * @return a table of at least the given number of slots, or null if there isn't the memory for it
+         */
+        static FingerprintTable allocate(long slots) {
+            long capacity = Long.highestOneBit(Math.max(16, slots - 1) << 1);
+            try {
+                return new FingerprintTable(capacity);
+            } catch (OutOfMemoryError e) {
+                return null;
+            }
+        }
+
+        private FingerprintTable(long capacity) {
+            int segmentSize = (int) Math.min(capacity, 1 << SEGMENT_BITS);
+            segments = new LongBuffer[(int) (capacity / segmentSize)];
+            for (int i = 0; i < segments.length; i++)
+                segments[i] = ByteBuffer.allocateDirect(segmentSize * 8).asLongBuffer();
+            mask = capacity - 1;
+        }
+
+        long capacity() {
+            return mask + 1;
+        }
+
+        /**
+         * @return whether the table is half full, past which probing slows down
+         */
+        boolean isFull() {
+            return size * 2 > mask;
+        }
+
+        /**
+         * @return false if the fingerprint was already in the table
+         */
+        boolean add(long fingerprint) {
+            if (fingerprint == 0)
+                fingerprint = 1;
+            for (long slot = fingerprint & mask; ; slot = (slot + 1) & mask) {
+                LongBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+                int index = (int) (slot & SEGMENT_MASK);
+                long stored = segment.get(index);
+                if (stored == fingerprint)
+                    return false;
+                if (stored == 0) {
+                    segment.put(index, fingerprint);
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        void copyTo(FingerprintTable other) {
+            for (LongBuffer segment : segments) {
+                for (int i = 0; i < segment.capacity(); i++) {
+                    long fingerprint = segment.get(i);
+                    if (fingerprint != 0)
+                        other.add(fingerprint);
+                }
+            }
+        }
+
+        void copyTo(SortedRuns runs) throws IOException {
+            for (LongBuffer segment : segments) {
+                for (int i = 0; i < segment.capacity(); i++) {
+                    long fingerprint = segment.get(i);
+                    if (fingerprint != 0)
+                        runs.add(fingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fingerprints written to temporary files in sorted runs of a fixed length.
+     */
+    private static class SortedRuns {
+        private final long[] buffer;
+        private final File tempDir;
+        private final List<File> files = new ArrayList<>();
+        private int buffered;
+
+        SortedRuns(int runLength, File tempDir) {
+            this.buffer = new long[runLength];
+            this.tempDir = tempDir;
+        }
+
+        void add(long fingerprint) throws IOException {
+            if (fingerprint == 0)
+                fingerprint = 1; // as in the table
+            if (buffered == buffer.length)
+                flush();
+            buffer[buffered++] = fingerprint;
+        }
+
+        private void flush() throws IOException {
+            Arrays.sort(buffer, 0, buffered);
+            File run = File.createTempFile("datasync-keys", ".run", tempDir);
+            files.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+                for (int i = 0; i < buffered; i++)
+                    out.writeLong(buffer[i]);
+            }
+            buffered = 0;
+        }
+
+        /**
+         * Merges the runs, adding the fingerprints that appear more than once to the given set until it
+         * has maxSuspects of them.
+         * @return the number of fingerprints that repeat an earlier one
+         */
+        long mergeDuplicates(Set<Long> suspects, int maxSuspects) throws IOException {
+            flush();
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(files.size());
+            try {
+                for (File file : files) {
+                    RunReader reader = new RunReader(file);
+                    if (reader.next())
+                        heads.add(reader);
+                    else
+                        reader.close();
+                }
+                long repeats = 0;
+                boolean any = false;
+                long previous = 0;
+                while (!heads.isEmpty()) {
+                    RunReader head = heads.poll();
+                    if (any && head.current == previous) {
+                        repeats++;
+                        if (suspects.size() < maxSuspects)
+                            suspects.add(previous);
+                    }
+                    previous = head.current;
+                    any = true;
+                    if (head.next())
+                        heads.add(head);
+                    else
+                        head.close();
+                }
+                return repeats;
+            } finally {
+                for (RunReader reader : heads)
+                    reader.close();
+            }
+        }
+
+        void delete() {
+            for (File file : files)
+                file.delete();
+        }
+    }
+
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream in;
+        long current;
+
+        RunReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /**
+         * @return false at the end of the run
+         */
+        boolean next() throws IOException {
+            try {
+                current = in.readLong();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return current < other.current ? -1 : (current == other.current ? 0 : 1);
+        }
+    }
+
+    /**
+     * A key that more than one row has.
+     */
+    public static class Duplicate {
+        public final String key;
+        private final List<Long> lines = new ArrayList<>();
+        private long occurrences;
+
+        Duplicate(String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the number of rows with the key
+         */
+        public long getOccurrences() {
+            return occurrences;
+        }
+
+        /**
+         * @return the first few of the lines the key is on
+         */
+        public List<Long> getLines() {
+            return Collections.unmodifiableList(lines);
+        }
+
+        void seenOn(long line) {
+            occurrences++;
+            if (lines.size() < MAX_LINES_PER_KEY)
+                lines.add(line);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder description = new StringBuilder("'").append(key).append("' is on lines ");
+            for (int i = 0; i < lines.size(); i++)
+                description.append(i == 0 ? "" : ", ").append(lines.get(i));
+            if (occurrences > lines.size())
+                description.append(" and ").append(occurrences - lines.size()).append(" more");
+            return description.toString();
+        }
+    }
+
+    public static class Report {
+        public final String keyColumn;
+        public final long rowsChecked;
+        public final long duplicateRows;
+        public final List<Duplicate> duplicates;
+
+        public Report(String keyColumn, long rowsChecked, long duplicateRows, List<Duplicate> duplicates) {
+            this.keyColumn = keyColumn;
+            this.rowsChecked = rowsChecked;
+            this.duplicateRows = duplicateRows;
+            this.duplicates = Collections.unmodifiableList(duplicates);
+        }
+
+        public boolean isValid() {
+            return duplicateRows == 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder summary = new StringBuilder();
+            summary.append("Found ").append(duplicateRows).append(duplicateRows == 1 ? " row" : " rows")
+                   .append(" in ").append(rowsChecked).append(" repeating the '").append(keyColumn)
+                   .append("' of an earlier row");
+            for (Duplicate duplicate : duplicates)
+                summary.append("\n").append(duplicate);
+            return summary.toString();
+        }
+    }
+}
@@ -51,8 +51,7 @@ public class GISJobValidity {
 
         File publishFile = new File(fileToPublish);
         if (!publishFile.exists() || publishFile.isDirectory()) {
-            JobStatus errorStatus = JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST;
-            errorStatus.setMessage(fileToPublish + ": File to publish does not exist");
+            JobStatus errorStatus = JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST.withMessage(fileToPublish + ": File to publish does not exist");
             return errorStatus;
         }
 
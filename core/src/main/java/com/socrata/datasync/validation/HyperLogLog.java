@@ -0,0 +1,40 @@
+package com.socrata.datasync.validation;
+
+/**
+ * Estimates the number of distinct values added to it in a fixed amount of memory (Flajolet et al.,
+ * "HyperLogLog: the analysis of a near-optimal cardinality estimation algorithm"). With 2^14
+ * registers, it takes 16KB and the estimate is typically within 1% of the true count.
+ *
+ * Values are added by a 64-bit hash, so the large range correction of the 32-bit algorithm isn't needed.
+ */
+class HyperLogLog {
+
+    private static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    void add(long hash) {
+        int register = (int) (hash >>> (64 - PRECISION));
+        // the position of the first one bit after the register's bits; the sentinel caps it
+        long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[register])
+            registers[register] = rank;
+    }
+
+    long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0)
+                zeros++;
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0)
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);  // linear counting for small counts
+        return Math.round(estimate);
+    }
+}
@@ -1,7 +1,7 @@
 package com.socrata.datasync.validation;
 
 import com.socrata.datasync.DatasetUtils;
-import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.MetadataCache;
 import com.socrata.datasync.PublishMethod;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.Utils;
@@ -12,10 +12,9 @@ import com.socrata.datasync.config.controlfile.LocationColumn;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.job.JobStatus;
+import com.socrata.model.importer.Column;
 import com.socrata.model.importer.Dataset;
 import org.apache.commons.cli.CommandLine;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.entity.ContentType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -25,6 +24,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +33,8 @@ import java.util.Set;
 public class IntegrationJobValidity {
 
     public static final List<String> allowedFileToPublishExtensions = Arrays.asList("csv", "tsv");
+    // the extensions of files to publish as offered by file choosers, which only see the last one (e.g. "gz" of "crimes.csv.gz")
+    public static final List<String> allowedFileToPublishChooserExtensions = Arrays.asList("csv", "tsv", "gz", "xz");
     public static final List<String> allowedControlFileExtensions = Arrays.asList("json");
     public static final String supportedTimeFormat = "ISO8601";
     public static final String jodaLink = "http://www.joda.org/joda-time/apidocs/org/joda/time/format/DateTimeFormat.html";
@@ -53,6 +55,8 @@ public class IntegrationJobValidity {
                 validatePublishViaFtpArg(cmd, options) &&
                 validatePublishViaDi2HttpArg(cmd, options) &&
                 validatePathToControlFileArg(cmd, options) &&
+                validateJdbcArgs(cmd, options) &&
+                validatePreflightArg(cmd, options) &&
                 validateProxyArgs(cmd, options);
     }
 
@@ -66,18 +70,20 @@ public class IntegrationJobValidity {
         if(!Utils.uidIsValid(job.getDatasetID()))
             return JobStatus.INVALID_DATASET_ID;
 
+        if(!Utils.nullOrEmpty(job.getJdbcUrl()))
+            return validateJdbcSource(job);
+
         String fileToPublish = job.getFileToPublish();
         if(fileToPublish.equals(""))
             return JobStatus.MISSING_FILE_TO_PUBLISH;
 
         File publishFile = new File(fileToPublish);
         if(!publishFile.exists() || publishFile.isDirectory()) {
-            JobStatus errorStatus = JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST;
-            errorStatus.setMessage(fileToPublish + ": File to publish does not exist");
+            JobStatus errorStatus = JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST.withMessage(fileToPublish + ": File to publish does not exist");
             return errorStatus;
         }
 
-        String fileExtension = Utils.getFileExtension(fileToPublish);
+        String fileExtension = Utils.getDataFileExtension(fileToPublish);
         if(!allowedFileToPublishExtensions.contains(fileExtension))
             return JobStatus.FILE_TO_PUBLISH_INVALID_TABULAR_FORMAT;
 
@@ -112,14 +118,87 @@ public class IntegrationJobValidity {
         return JobStatus.VALID;
     }
 
+    /**
+     * Checks a job that publishes the results of a database query rather than a file. The query's
+     * headers aren't known until it runs, so they aren't checked against the dataset or control file.
+     */
+    private static JobStatus validateJdbcSource(IntegrationJob job) {
+        if(Utils.nullOrEmpty(job.getJdbcQuery()))
+            return JobStatus.PUBLISH_ERROR.withMessage("A query must be given to publish from " + job.getJdbcUrl());
+        if(job.getPublishViaFTP())
+            return JobStatus.PUBLISH_ERROR.withMessage("The results of a query cannot be published via FTP");
+        if(!job.getPublishViaDi2Http() && job.getPublishMethod() == null)
+            return JobStatus.INVALID_PUBLISH_METHOD;
+        if(job.getPublishViaDi2Http() && (job.getControlFile() == null || job.getControlFile().csv == null))
+            return JobStatus.PUBLISH_ERROR.withMessage("The control file must have a 'csv' section to publish the results of a query");
+        return JobStatus.VALID;
+    }
+
+    /**
+     * Reads the whole of the job's file to publish and checks each of its rows against the dataset's
+     * columns (see {@link PreflightValidator}), and unless the job deletes rows, that no two rows share
+     * a row identifier (see {@link DuplicateKeyDetector}).
+     * @return INVALID_ROWS listing the first of any problems found, otherwise JobStatus.VALID
+     */
+    public static JobStatus checkRows(UserPreferences userPrefs, IntegrationJob job) {
+        File publishFile = new File(job.getFileToPublish());
+        Dataset schema;
+        try {
+            schema = DatasetUtils.getDatasetInfo(userPrefs, job.getDatasetID());
+        } catch (Exception e) {
+            // Not going to fail jobs on the validation check
+            return JobStatus.VALID;
+        }
+        Map<String, String> columnTypes = new HashMap<>(DatasetUtils.getDatasetTypeMapping(schema));
+
+        FileTypeControl fileControl;
+        ControlFile control = job.getControlFile();
+        if (control != null && (job.getPublishViaDi2Http() || job.getPublishViaFTP())) {
+            fileControl = Utils.getDataFileExtension(publishFile.getName()).equals("tsv") ? control.getTsvFtc() : control.getCsvFtc();
+            if (fileControl == null)
+                return JobStatus.VALID;
+        } else {
+            fileControl = new FileTypeControl();
+            if (!job.getFileToPublishHasHeaderRow()) {
+                List<Column> columns = schema.getColumns();
+                fileControl.columns = new String[columns.size()];
+                for (int i = 0; i < columns.size(); i++)
+                    fileControl.columns[i] = columns.get(i).getFieldName();
+            }
+            // SODA2 reads more timestamp formats than can be listed here; only control file formats are checked
+            columnTypes.values().removeAll(Arrays.asList("calendar_date", "date"));
+        }
+
+        try {
+            PreflightValidator.Report report = new PreflightValidator(fileControl, columnTypes).validate(publishFile);
+            if (!report.isValid())
+                return JobStatus.INVALID_ROWS.withMessage(report.toString());
+
+            // rows sharing a row identifier would silently be collapsed into one
+            String rowIdentifier = DatasetUtils.getRowIdentifierName(schema);
+            String action = control != null && control.action != null ? control.action :
+                    (job.getPublishMethod() == null ? null : job.getPublishMethod().name());
+            if (rowIdentifier != null && !PublishMethod.delete.name().equalsIgnoreCase(action)) {
+                DuplicateKeyDetector.Report duplicates = new DuplicateKeyDetector(fileControl, rowIdentifier).detect(publishFile);
+                if (duplicates != null && !duplicates.isValid())
+                    return JobStatus.INVALID_ROWS.withMessage(duplicates.toString());
+            }
+            return JobStatus.VALID;
+        } catch (IOException e) {
+            return JobStatus.INVALID_ROWS.withMessage("Unable to read " + publishFile.getName() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return JobStatus.PUBLISH_ERROR.withMessage("Interrupted while checking the rows of " + publishFile.getName());
+        }
+    }
+
     public static JobStatus checkControl(ControlFile control,FileTypeControl fileControl, Dataset schema, File publishFile, String urlBase){
 
-        String fileExtension = Utils.getFileExtension(publishFile.getAbsolutePath());
+        String fileExtension = Utils.getDataFileExtension(publishFile.getAbsolutePath());
 
 
         if (fileControl == null && !control.action.equalsIgnoreCase(PublishMethod.delete.name())) {
-            JobStatus noFileTypeContent = JobStatus.PUBLISH_ERROR;
-            noFileTypeContent.setMessage("The control file for '" + publishFile.getName() +
+            JobStatus noFileTypeContent = JobStatus.PUBLISH_ERROR.withMessage("The control file for '" + publishFile.getName() +
                     "' requires that the '" + fileExtension + "' option be filled in");
             return noFileTypeContent;
         }
@@ -127,8 +206,7 @@ public class IntegrationJobValidity {
         try {
             String[] headers = getHeaders(fileControl, publishFile);
             if (headers == null) {
-                JobStatus noHeaders = JobStatus.PUBLISH_ERROR;
-                noHeaders.setMessage("Headers must be specified in one of " + publishFile.getName() + " or the control file using 'columns'");
+                JobStatus noHeaders = JobStatus.PUBLISH_ERROR.withMessage("Headers must be specified in one of " + publishFile.getName() + " or the control file using 'columns'");
                 return noHeaders;
             }
 
@@ -146,8 +224,7 @@ public class IntegrationJobValidity {
                 return controlSensibility;
         }
         catch (IOException e){
-            JobStatus cannotConnect = JobStatus.PUBLISH_ERROR;
-            cannotConnect.setMessage("Cannot determine the headers for dataset: " + schema.getId());
+            JobStatus cannotConnect = JobStatus.PUBLISH_ERROR.withMessage("Cannot determine the headers for dataset: " + schema.getId());
             return cannotConnect;
         }
         return JobStatus.VALID;
@@ -240,7 +317,9 @@ public class IntegrationJobValidity {
         String publishingWithFtp = cmd.getOptionValue(options.PUBLISH_VIA_FTP_FLAG);
         String controlFilePath = cmd.getOptionValue(options.PATH_TO_CONTROL_FILE_FLAG);
         if(haveHeader == null) {
-            if (controlFilePath == null) {
+            if (cmd.getOptionValue(options.JDBC_URL_FLAG) != null) { // query results always have a header row
+                return true;
+            } else if (controlFilePath == null) {
                 if (isNullOrFalse(publishingWithFtp) && isNullOrFalse(publishingWithDi2)) {
                     System.err.println("Missing required argument: -h,--" + options.HAS_HEADER_ROW_FLAG + " is required");
                     return false;
@@ -262,13 +341,59 @@ public class IntegrationJobValidity {
     }
 
     private static boolean validateFileToPublishArg(CommandLine cmd, CommandLineOptions options) {
-        if(cmd.getOptionValue(options.FILE_TO_PUBLISH_FLAG) == null) {
+        if(cmd.getOptionValue(options.FILE_TO_PUBLISH_FLAG) == null && cmd.getOptionValue(options.JDBC_URL_FLAG) == null) {
             System.err.println("Missing required argument: -f,--" + options.FILE_TO_PUBLISH_FLAG + " is required");
             return false;
         }
         return true;
     }
 
+    private static boolean validatePreflightArg(CommandLine cmd, CommandLineOptions options) {
+        String preflight = cmd.getOptionValue(options.PREFLIGHT_VALIDATION_FLAG);
+        if (preflight != null && !preflight.equalsIgnoreCase("true") && !preflight.equalsIgnoreCase("false")) {
+            System.err.println("Invalid argument: -pv,--" + options.PREFLIGHT_VALIDATION_FLAG + " must be 'true' or 'false'");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean validateJdbcArgs(CommandLine cmd, CommandLineOptions options) {
+        if(cmd.getOptionValue(options.JDBC_URL_FLAG) == null) {
+            if(cmd.getOptionValue(options.JDBC_QUERY_FLAG) != null) {
+                System.err.println("Invalid argument: -jq,--" + options.JDBC_QUERY_FLAG + " can only be supplied " +
+                        "with -ju,--" + options.JDBC_URL_FLAG);
+                return false;
+            }
+            return true;
+        }
+        if(cmd.getOptionValue(options.FILE_TO_PUBLISH_FLAG) != null) {
+            System.err.println("Only one of -f,--" + options.FILE_TO_PUBLISH_FLAG + " and " +
+                    "-ju,--" + options.JDBC_URL_FLAG + " may be supplied");
+            return false;
+        }
+        if(cmd.getOptionValue(options.JDBC_QUERY_FLAG) == null) {
+            System.err.println("Missing required argument: -jq,--" + options.JDBC_QUERY_FLAG + " is required " +
+                    "with -ju,--" + options.JDBC_URL_FLAG);
+            return false;
+        }
+        if(!isNullOrFalse(cmd.getOptionValue(options.PUBLISH_VIA_FTP_FLAG))) {
+            System.err.println("Invalid argument: -pf,--" + options.PUBLISH_VIA_FTP_FLAG + " cannot be used " +
+                    "with -ju,--" + options.JDBC_URL_FLAG);
+            return false;
+        }
+        String fetchSize = cmd.getOptionValue(options.JDBC_FETCH_SIZE_FLAG);
+        if(fetchSize != null) {
+            try {
+                if(Integer.parseInt(fetchSize) < 1)
+                    throw new NumberFormatException();
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid argument: -jfs,--" + options.JDBC_FETCH_SIZE_FLAG + " must be a positive integer");
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean validateDatasetIdArg(CommandLine cmd, CommandLineOptions options) {
         if(cmd.getOptionValue(options.DATASET_ID_FLAG) == null) {
             System.err.println("Missing required argument: -i,--" + options.DATASET_ID_FLAG + " is required");
@@ -374,29 +499,25 @@ public class IntegrationJobValidity {
                 okAction = true;
         }
         if (!okAction) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Unknown Publish Method: " +
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Unknown Publish Method: " +
                     "The control file must specify the publishing method via the 'action' option as one of: \n" +
                     methods.toString());
             return status;
         }
         if (!PublishMethod.replace.name().equalsIgnoreCase(action) && job.getPublishViaFTP()) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("FTP does not currently support upsert, append or delete");
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("FTP does not currently support upsert, append or delete");
             return status;
         }
         PublishMethod publishMethod = job.getPublishMethod();
         if (publishMethod != null && !action.equalsIgnoreCase(publishMethod.name())) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Conflicting Publish Methods: " +
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Conflicting Publish Methods: " +
                     "The publish method selected was '" + publishMethod.name() +
                     "', but the 'action' option in the control file specifies the publish method as '" + action + ".");
             return status;
         }
         String rowIdentifier = DatasetUtils.getRowIdentifierName(schema);
         if (rowIdentifier == null && PublishMethod.delete.name().equalsIgnoreCase(action)) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Dataset Requirement Unfulfilled: " +
+            JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Dataset Requirement Unfulfilled: " +
                     "To delete from a dataset, a row identifier must be set. Dataset '" + schema.getId() +
                     "' does not have a row identifier set");
             return status;
@@ -415,8 +536,7 @@ public class IntegrationJobValidity {
                 continue;
             try { formatter = DateTimeFormat.forPattern(format); }
             catch (IllegalArgumentException e) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Unsupported Date Time Format: The time format '" + format +
+                JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Unsupported Date Time Format: The time format '" + format +
                         "' specified in the control file is not a valid pattern." +
                         "\nPlease consult " + jodaLink + " for more information");
                 return status;
@@ -435,11 +555,11 @@ public class IntegrationJobValidity {
                 encoding.equalsIgnoreCase("UTF-8"))
             return JobStatus.VALID;
 
-        HttpUtility http = new HttpUtility();
         String charsetUri = urlBase + charsetsPath;
         ObjectMapper mapper = new ObjectMapper();
-        try(CloseableHttpResponse response = http.get(new URI(charsetUri), ContentType.APPLICATION_JSON.getMimeType())) {
-            String[] charsets = mapper.readValue(response.getEntity().getContent(), String[].class);
+        try {
+            MetadataCache.Entry supported = MetadataCache.getDefault().get(null, false, new URI(charsetUri), MetadataCache.ResourceType.CHARSETS);
+            String[] charsets = mapper.readValue(supported.body, String[].class);
             boolean encodingFound = false;
             for (String charset : charsets) {
                 if (encoding.equalsIgnoreCase(charset)) {
@@ -448,8 +568,7 @@ public class IntegrationJobValidity {
                 }
             }
             if (!encodingFound) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Unsupported Encoding: The encoding '" + encoding + "' in the control file is not supported." +
+                JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Unsupported Encoding: The encoding '" + encoding + "' in the control file is not supported." +
                         "\nPlease consult " + charsetUri + " for a listing of supported encodings");
                 return status;
             }
@@ -494,8 +613,7 @@ public class IntegrationJobValidity {
                 }
             }
             if (locationInFile) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Ambiguous Column Name: Synthetic location '" + field + "' specified in the control file may conflict with '" +
+                JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Ambiguous Column Name: Synthetic location '" + field + "' specified in the control file may conflict with '" +
                         field + "' provided in '" + csvFilename + "'." +
                         "\nPlease ensure '" + field + "' is not currently mapped to fields in the CSV.");
                 return status;
@@ -506,7 +624,7 @@ public class IntegrationJobValidity {
 //            for (int i = 0; i < componentsInFile.length; i++) {
 //                if (!componentsInFile[i]) {
 //                    JobStatus status = JobStatus.PUBLISH_ERROR;
-//                    status.setMessage("Synthetic Location Not Found: The synthetic location column '" + field +
+//                    status = status.withMessage("Synthetic Location Not Found: The synthetic location column '" + field +
 //                            "' references a component '" + locationComponents[i] + "' which is not present in '" +
 //                            csvFilename + "'." +
 //                            "\nPlease check your control file to ensure that the column name is spelled correctly, " +
@@ -550,7 +668,7 @@ public class IntegrationJobValidity {
                 message.append(" column");
                 if (supportedTypes.length > 1) message.append('s');
                 message.append(".\nPlease specify a column that matches a supported type.");
-                status.setMessage(message.toString());
+                status = status.withMessage(message.toString());
                 return status;
             }
         }
@@ -599,8 +717,7 @@ public class IntegrationJobValidity {
             if (field.equalsIgnoreCase(rowIdentifier)) headerHasRowId = true;
 
             if (!columnNames.contains(field)) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Extra Columns Specified: File '" + csvFilename + "' contains column '" + field +
+                JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Extra Columns Specified: File '" + csvFilename + "' contains column '" + field +
                         "', but dataset '" + schema.getId() + "' does not." +
                         "\nPlease check that your headers are using the field name rather than the human readable name." +
                         "\nConsider using 'ignoreColumns' in the control file if '" + field +
@@ -642,11 +759,10 @@ public class IntegrationJobValidity {
                         writtenFirstValue = true;
                     }
                 }
-                status.setMessage(message.toString());
+                status = status.withMessage(message.toString());
                 return status;
             } else if (!headerHasRowId) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Missing Row Identifier: Dataset '" + schema.getId() + "' contains a row identifier in column '" + rowIdentifier +
+                JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("Missing Row Identifier: Dataset '" + schema.getId() + "' contains a row identifier in column '" + rowIdentifier +
                         "'. This column must be present in '" + csvFilename + "'.");
                 return status;
             }
@@ -0,0 +1,370 @@
+package com.socrata.datasync.validation;
+
+import com.socrata.datasync.config.controlfile.ColumnOverride;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.sources.NumberedRowReader;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads an entire CSV/TSV file before it is published and checks every row against the dataset: that
+ * it has a cell for each column, and that each value can be interpreted as its column's type (numbers,
+ * checkboxes, and floating and fixed timestamps through the control file's formats and overrides).
+ *
+ * Quoted cells may span lines, so the file can't be split up by byte offset; one thread parses it and
+ * hands consecutive ranges of rows to a pool of threads that check them.
+ */
+public class PreflightValidator {
+
+    public static final int DEFAULT_MAX_ERRORS = 100;
+    private static final int ROWS_PER_RANGE = 5000;
+    private static final Set<String> CHECKBOX_VALUES = new HashSet<>(Arrays.asList(
+            "true", "false", "t", "f", "yes", "no", "y", "n", "1", "0"));
+
+    private final FileTypeControl fileControl;
+    private final Map<String, String> columnTypes;
+    private final int threads;
+    private final int maxErrors;
+
+    /**
+     * @param fileControl how the file is laid out and which timestamp formats its columns use
+     * @param columnTypes the datatype name of each of the dataset's columns, by field name; columns
+     *                    that aren't in the map aren't checked
+     * @param threads the number of threads checking rows
+     * @param maxErrors the number of errors to keep for the report; all of them are counted
+     */
+    public PreflightValidator(FileTypeControl fileControl, Map<String, String> columnTypes, int threads, int maxErrors) {
+        this.fileControl = fileControl;
+        this.columnTypes = columnTypes;
+        this.threads = Math.max(1, threads);
+        this.maxErrors = maxErrors;
+    }
+
+    public PreflightValidator(FileTypeControl fileControl, Map<String, String> columnTypes) {
+        this(fileControl, columnTypes, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * Checks every row of the given file.
+     * @return the number of rows checked and the problems found, in order of line number
+     */
+    public Report validate(File file) throws IOException, InterruptedException {
+        NumberedRowReader reader = new NumberedRowReader(file, fileControl);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "preflight-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            String[] headers = reader.getHeaders();
+            if (headers == null)
+                return new Report(0, 0, Collections.<RowError>emptyList());
+
+            final Checker checker = new Checker(headers);
+            Semaphore rangesInFlight = new Semaphore(threads * 2);
+            List<Future<?>> checked = new ArrayList<>();
+            String[] row;
+            do {
+                final List<String[]> rows = new ArrayList<>(ROWS_PER_RANGE);
+                final long[] lines = new long[ROWS_PER_RANGE];
+                while (rows.size() < ROWS_PER_RANGE && (row = reader.readNext()) != null) {
+                    lines[rows.size()] = reader.getLine();
+                    rows.add(row);
+                }
+                if (rows.isEmpty())
+                    break;
+                rangesInFlight.acquire();
+                checked.add(pool.submit(new RangeCheck(checker, rows, lines, rangesInFlight)));
+            } while (true);
+
+            for (Future<?> range : checked) {
+                try {
+                    range.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Error validating " + file.getName(), e.getCause());
+                }
+            }
+            return checker.report();
+        } finally {
+            pool.shutdownNow();
+            reader.close();
+        }
+    }
+
+    private static class RangeCheck implements Runnable {
+        private final Checker checker;
+        private final List<String[]> rows;
+        private final long[] lines;
+        private final Semaphore rangesInFlight;
+
+        RangeCheck(Checker checker, List<String[]> rows, long[] lines, Semaphore rangesInFlight) {
+            this.checker = checker;
+            this.rows = rows;
+            this.lines = lines;
+            this.rangesInFlight = rangesInFlight;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < rows.size(); i++)
+                    checker.check(rows.get(i), lines[i]);
+            } finally {
+                rangesInFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Checks rows against the headers of the file; shared by all of the threads checking rows.
+     */
+    private class Checker {
+        private final String[] headers;
+        private final ValueCheck[] checks;
+        private final boolean trimWhitespace;
+        private final AtomicLong rowsChecked = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        // the errors with the lowest line numbers seen so far, the highest of them at the head
+        private final PriorityQueue<RowError> errors = new PriorityQueue<>(11, Collections.reverseOrder(RowError.BY_LINE));
+
+        Checker(String[] headers) {
+            this.headers = headers;
+            this.trimWhitespace = fileControl.trimWhitespace == null || fileControl.trimWhitespace;
+            Set<String> ignored = fileControl.hasIgnoredColumns() ?
+                    new HashSet<>(Arrays.asList(fileControl.ignoreColumns)) : Collections.<String>emptySet();
+            checks = new ValueCheck[headers.length];
+            for (int i = 0; i < headers.length; i++) {
+                if (!ignored.contains(headers[i]))
+                    checks[i] = checkFor(headers[i], columnTypes.get(headers[i]));
+            }
+        }
+
+        void check(String[] row, long line) {
+            rowsChecked.incrementAndGet();
+            if (row.length == 1 && row[0].isEmpty() && headers.length > 1)
+                return; // blank line
+            if (row.length != headers.length)
+                error(new RowError(line, -1, null, null, "has " + row.length + " cells but there are " + headers.length + " columns"));
+            for (int i = 0; i < Math.min(row.length, headers.length); i++) {
+                if (checks[i] == null)
+                    continue;
+                String value = trimWhitespace ? row[i].trim() : row[i];
+                if (value.isEmpty())
+                    continue;
+                String problem = checks[i].check(value);
+                if (problem != null)
+                    error(new RowError(line, i, headers[i], value, problem));
+            }
+        }
+
+        private void error(RowError error) {
+            errorCount.incrementAndGet();
+            synchronized (errors) {
+                if (errors.size() < maxErrors) {
+                    errors.add(error);
+                } else if (maxErrors > 0 && RowError.BY_LINE.compare(error, errors.peek()) < 0) {
+                    errors.poll();
+                    errors.add(error);
+                }
+            }
+        }
+
+        Report report() {
+            List<RowError> sorted;
+            synchronized (errors) {
+                sorted = new ArrayList<>(errors);
+            }
+            Collections.sort(sorted, RowError.BY_LINE);
+            return new Report(rowsChecked.get(), errorCount.get(), sorted);
+        }
+    }
+
+    interface ValueCheck {
+        /**
+         * @return why the value can't be interpreted, or null if it can
+         */
+        String check(String value);
+    }
+
+    static class NumberCheck implements ValueCheck {
+        private final String type;
+        NumberCheck(String type) { this.type = type; }
+
+        @Override
+        public String check(String value) {
+            String number = value.replace(",", "");
+            if (type.equals("money") && number.startsWith("$"))
+                number = number.substring(1);
+            if (type.equals("percent") && number.endsWith("%"))
+                number = number.substring(0, number.length() - 1);
+            try {
+                new BigDecimal(number);
+                return null;
+            } catch (NumberFormatException e) {
+                return "is not a valid " + type;
+            }
+        }
+    }
+
+    static final ValueCheck CHECKBOX_CHECK = new ValueCheck() {
+        @Override
+        public String check(String value) {
+            return CHECKBOX_VALUES.contains(value.toLowerCase()) ? null : "is not a valid checkbox value";
+        }
+    };
+
+    static class TimestampCheck implements ValueCheck {
+        private final String[] formats;
+        private final DateTimeFormatter[] formatters;
+
+        TimestampCheck(String[] formats) {
+            this.formats = formats;
+            formatters = new DateTimeFormatter[formats.length];
+            for (int i = 0; i < formats.length; i++) {
+                DateTimeFormatter formatter = formats[i].equalsIgnoreCase(IntegrationJobValidity.supportedTimeFormat) ?
+                        ISODateTimeFormat.dateTimeParser() : DateTimeFormat.forPattern(formats[i]);
+                // parsing in UTC avoids rejecting local times that fall in a daylight saving gap
+                formatters[i] = formatter.withZoneUTC();
+            }
+        }
+
+        @Override
+        public String check(String value) {
+            for (DateTimeFormatter formatter : formatters) {
+                try {
+                    formatter.parseDateTime(value);
+                    return null;
+                } catch (IllegalArgumentException | UnsupportedOperationException e) {
+                    // try the next format
+                }
+            }
+            return "does not match any of the timestamp formats " + Arrays.toString(formats);
+        }
+    }
+
+    private ValueCheck checkFor(String column, String type) {
+        if (type == null)
+            return null;
+        switch (type) {
+            case "number":
+            case "double":
+            case "money":
+            case "percent":
+                return new NumberCheck(type);
+            case "checkbox":
+                return CHECKBOX_CHECK;
+            case "calendar_date":
+                return new TimestampCheck(timestampFormats(fileControl, column, fileControl.floatingTimestampFormat));
+            case "date":
+                return new TimestampCheck(timestampFormats(fileControl, column, fileControl.fixedTimestampFormat));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the formats the given column's timestamps are read with: its override's, otherwise the given ones
+     */
+    static String[] timestampFormats(FileTypeControl fileControl, String column, String[] formats) {
+        ColumnOverride override = fileControl.hasOverrides() ? fileControl.overrides.get(column) : null;
+        if (override != null && override.timestampFormat != null && override.timestampFormat.length > 0)
+            return override.timestampFormat;
+        if (formats != null && formats.length > 0)
+            return formats;
+        return new String[] {IntegrationJobValidity.supportedTimeFormat};
+    }
+
+    /**
+     * A row that can't be published as it is.
+     */
+    public static class RowError {
+        // orders errors by line, and then by the position of their cell in it
+        static final Comparator<RowError> BY_LINE = new Comparator<RowError>() {
+            @Override
+            public int compare(RowError a, RowError b) {
+                if (a.line != b.line)
+                    return a.line < b.line ? -1 : 1;
+                return a.cell < b.cell ? -1 : (a.cell == b.cell ? 0 : 1);
+            }
+        };
+
+        public final long line;
+        public final String column;
+        public final String value;
+        public final String message;
+        private final int cell;
+
+        public RowError(long line, String column, String value, String message) {
+            this(line, -1, column, value, message);
+        }
+
+        private RowError(long line, int cell, String column, String value, String message) {
+            this.line = line;
+            this.cell = cell;
+            this.column = column;
+            this.value = value;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            if (column == null)
+                return "Line " + line + " " + message;
+            return "Line " + line + ", column '" + column + "': '" + value + "' " + message;
+        }
+    }
+
+    public static class Report {
+        public final long rowsChecked;
+        public final long errorCount;
+        public final List<RowError> errors;
+
+        public Report(long rowsChecked, long errorCount, List<RowError> errors) {
+            this.rowsChecked = rowsChecked;
+            this.errorCount = errorCount;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        public boolean isValid() {
+            return errorCount == 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder summary = new StringBuilder();
+            summary.append("Found ").append(errorCount).append(errorCount == 1 ? " problem" : " problems")
+                   .append(" in ").append(rowsChecked).append(" rows");
+            if (errors.size() < errorCount)
+                summary.append(" (the first ").append(errors.size()).append(" are listed)");
+            for (RowError error : errors)
+                summary.append("\n").append(error);
+            return summary.toString();
+        }
+    }
+}
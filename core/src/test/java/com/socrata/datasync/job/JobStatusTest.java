@@ -0,0 +1,66 @@
+package com.socrata.datasync.job;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class JobStatusTest {
+
+    @Test
+    public void testWithMessageLeavesTheConstantAlone() {
+        JobStatus status = JobStatus.PUBLISH_ERROR.withMessage("row 3 is bad");
+        TestCase.assertEquals("row 3 is bad", status.getMessage());
+        TestCase.assertEquals("", JobStatus.PUBLISH_ERROR.getMessage());
+        TestCase.assertTrue(status.isError());
+        TestCase.assertEquals(JobStatus.PUBLISH_ERROR, status);
+        TestCase.assertFalse(JobStatus.SUCCESS.equals(status));
+        TestCase.assertEquals("PUBLISH_ERROR", status.toString());
+    }
+
+    @Test
+    public void testCountsAndTimingsAreKeptAcrossCopies() {
+        JobStatus status = JobStatus.SUCCESS
+            .withRowCounts(10, 2, 1, 0)
+            .withTimings(1000, 3500)
+            .withMessage("done");
+        TestCase.assertEquals(Integer.valueOf(10), status.rowsCreated);
+        TestCase.assertEquals(Integer.valueOf(2), status.rowsUpdated);
+        TestCase.assertEquals(Integer.valueOf(1), status.rowsDeleted);
+        TestCase.assertEquals(Integer.valueOf(0), status.errors);
+        TestCase.assertEquals(Long.valueOf(2500), status.getDurationMs());
+        TestCase.assertNull(JobStatus.SUCCESS.rowsCreated);
+        TestCase.assertNull(JobStatus.SUCCESS.getDurationMs());
+    }
+
+    @Test
+    public void testConcurrentRunsKeepTheirOwnMessages() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final String message = "run " + i;
+                results.add(pool.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 1000; j++) {
+                            JobStatus status = JobStatus.PORT_ERROR.withMessage(message);
+                            if (!message.equals(status.getMessage()))
+                                return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results)
+                TestCase.assertTrue(result.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.socrata.datasync.job;
 
-import com.socrata.datasync.Main;
+import com.socrata.datasync.SimpleIntegrationRunner;
 import com.socrata.datasync.config.CommandLineOptions;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
@@ -41,7 +41,7 @@ public class LoadPreferencesJobTest {
         userPrefs.clear();
 
         String[] args = {"-t", "LoadPreferences", "-c", "src/test/resources/basic_test_config.json"};
-        Main.main(args);
+        SimpleIntegrationRunner.main(args);
         TestCase.assertEquals("https://sandbox.demo.socrata.com", userPrefs.getDomain());
         TestCase.assertEquals("testuser@gmail.com", userPrefs.getUsername());
         TestCase.assertEquals("OpenData", userPrefs.getPassword());
@@ -64,7 +64,7 @@ public class LoadPreferencesJobTest {
         userPrefs.clear();
 
         String[] args = {"-t", "LoadPreferences", "-c", "src/test/resources/simple_config.json"};
-        Main.main(args);
+        SimpleIntegrationRunner.main(args);
         TestCase.assertEquals("https://someDomain.com", userPrefs.getDomain());
         TestCase.assertEquals("some.user@gmail.com", userPrefs.getUsername());
         TestCase.assertEquals("somePassword", userPrefs.getPassword());
@@ -79,11 +79,11 @@ public class LoadPreferencesJobTest {
         // fill up java preference node with old junk
         UserPreferencesJava userPrefs = new UserPreferencesJava();
         String[] argsOld = {"-t", "LoadPreferences", "-c", "src/test/resources/basic_test_config.json"};
-        Main.main(argsOld);
+        SimpleIntegrationRunner.main(argsOld);
 
         // run new load job
         String[] argsNew = {"-t", "LoadPreferences", "-c", "src/test/resources/simple_config.json"};
-        Main.main(argsNew);
+        SimpleIntegrationRunner.main(argsNew);
 
         TestCase.assertEquals("https://someDomain.com", userPrefs.getDomain());
         TestCase.assertEquals("some.user@gmail.com", userPrefs.getUsername());
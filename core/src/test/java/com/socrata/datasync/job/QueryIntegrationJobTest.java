@@ -0,0 +1,30 @@
+package com.socrata.datasync.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.config.CommandLineOptions;
+import com.socrata.datasync.config.userpreferences.UserPreferencesFile;
+import junit.framework.TestCase;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class QueryIntegrationJobTest {
+
+    private static final String PREFERENCES = "{\"domain\":\"https://localhost:1\",\"logDatasetID\":\"\"}";
+
+    @Test
+    public void testQueryJobRunsWithoutAFileToPublish() throws IOException, ParseException {
+        IntegrationJob job = new IntegrationJob(new ObjectMapper().readValue(PREFERENCES, UserPreferencesFile.class));
+        String[] args = {"-t", "IntegrationJob", "-i", "abcd-1234", "-m", "upsert",
+                "-ju", "jdbc:h2:mem:queryjob", "-jq", "SELECT id FROM no_such_table"};
+        job.configure(new PosixParser().parse(new CommandLineOptions().options, args));
+        TestCase.assertNull(job.getFileToPublish());
+
+        // the query fails before anything is sent, and the job says so rather than crashing
+        JobStatus status = job.run();
+        TestCase.assertTrue(status.isError());
+        TestCase.assertTrue(status.getMessage().contains("NO_SUCH_TABLE"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.socrata.datasync.utilities;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.validation.ColumnProfiler;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ColumnProfilerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String contents) throws IOException {
+        File file = new File(dir, "crimes.csv");
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        return file;
+    }
+
+    @Test
+    public void testColumnsAreProfiled() throws Exception {
+        File file = write("id,open,reported,notes\n" +
+                "10,true,2016-03-04T10:00:00,a\n" +
+                "\"1,200\",N,2016-03-05,\n" +
+                "9.5,,2016-03-06,hello there\n" +
+                "-3,y\n");
+        ColumnProfiler.Profile profile = new ColumnProfiler(new FileTypeControl()).profile(file);
+        TestCase.assertEquals(4, profile.rows);
+
+        ColumnProfiler.ColumnProfile id = profile.columns.get(0);
+        TestCase.assertEquals("number", id.inferredType);
+        TestCase.assertEquals("-3", id.min);
+        TestCase.assertEquals("1200", id.max);
+        TestCase.assertEquals(4, id.approxDistinct);
+
+        ColumnProfiler.ColumnProfile open = profile.columns.get(1);
+        TestCase.assertEquals("checkbox", open.inferredType);
+        TestCase.assertEquals(0.25, open.emptyRatio);
+
+        ColumnProfiler.ColumnProfile reported = profile.columns.get(2);
+        TestCase.assertEquals("calendar_date", reported.inferredType);
+        TestCase.assertEquals(0.25, reported.nullRatio);
+
+        ColumnProfiler.ColumnProfile notes = profile.columns.get(3);
+        TestCase.assertEquals("text", notes.inferredType);
+        TestCase.assertEquals("a", notes.min);
+        TestCase.assertEquals(Long.valueOf(1), notes.lengthHistogram.get("1"));
+        TestCase.assertEquals(Long.valueOf(1), notes.lengthHistogram.get("8-15"));
+        TestCase.assertEquals(Long.valueOf(1), notes.lengthHistogram.get("0"));
+    }
+
+    @Test
+    public void testDistinctCountIsApproximatedAndReportIsWritten() throws Exception {
+        StringBuilder csv = new StringBuilder("id,kind\n");
+        for (int i = 0; i < 200000; i++)
+            csv.append(i).append(',').append(i % 7).append('\n');
+        File file = write(csv.toString());
+
+        ColumnProfiler.Profile profile = new ColumnProfiler(new FileTypeControl()).profile(file);
+        long ids = profile.columns.get(0).approxDistinct;
+        TestCase.assertTrue(String.valueOf(ids), Math.abs(ids - 200000) < 200000 * 0.03);
+        TestCase.assertEquals(7, profile.columns.get(1).approxDistinct);
+
+        File report = new File(dir, "job.sij.profile.json");
+        profile.writeTo(report);
+        JsonNode json = new ObjectMapper().readTree(report);
+        TestCase.assertEquals(200000, json.get("rows").asLong());
+        TestCase.assertEquals("kind", json.get("columns").get(1).get("name").asText());
+        TestCase.assertEquals("number", json.get("columns").get(1).get("inferredType").asText());
+    }
+}
@@ -0,0 +1,96 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.ColumnOverride;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.config.controlfile.LocationColumn;
+import com.socrata.datasync.sources.ColumnProjection;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+public class ColumnProjectionTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        return file;
+    }
+
+    private static String read(ColumnProjection projection) throws IOException {
+        try (InputStream in = projection.openStream()) {
+            return IOUtils.toString(in, "UTF-8");
+        }
+    }
+
+    @Test
+    public void testIgnoredColumnsAreLeftOut() throws Exception {
+        File file = write("crimes.tsv", "id\tnotes\tdescription\tlat\tlon\n" +
+                "1\tlong text\t\"two\nlines, quoted\"\t47.6\t-122.3\n" +
+                "2\t\tshort\n" +
+                "3\tx\ty\t1\t2\textra\n");
+        TreeMap<String, LocationColumn> locations = new TreeMap<>();
+        locations.put("location", new LocationColumn().latitude("lat").longitude("lon"));
+        TreeMap<String, ColumnOverride> overrides = new TreeMap<>();
+        overrides.put("notes", new ColumnOverride());
+        overrides.put("description", new ColumnOverride());
+        FileTypeControl fileControl = new FileTypeControl().encoding("utf-8").separator("\t")
+                .ignoreColumns(new String[] {"notes", "lat", "lon"}).syntheticLocations(locations).overrides(overrides);
+
+        ColumnProjection projection = ColumnProjection.of(file, fileControl);
+        // the location is still built from lat and lon, so they are still sent
+        TestCase.assertEquals(Arrays.asList("notes"), Arrays.asList(projection.getDroppedColumns().toArray()));
+        TestCase.assertEquals("crimes.csv", projection.getFileName());
+        TestCase.assertEquals("id,description,lat,lon\n" +
+                "1,\"two\nlines, quoted\",47.6,-122.3\n" +
+                "2,short\n" +
+                "3,y,1,2,extra\n", read(projection));
+
+        FileTypeControl projected = projection.getFileControl();
+        TestCase.assertEquals(",", projected.separator);
+        TestCase.assertEquals(1, (int) projected.skip);
+        TestCase.assertEquals(Arrays.asList("id", "description", "lat", "lon"), Arrays.asList(projected.columns));
+        TestCase.assertEquals(Arrays.asList("lat", "lon"), Arrays.asList(projected.ignoreColumns));
+        TestCase.assertEquals(Arrays.asList("description"), Arrays.asList(projected.overrides.keySet().toArray()));
+        TestCase.assertTrue(projected.hasSyntheticLocations());
+        // the control being projected is left alone
+        TestCase.assertEquals(3, fileControl.ignoreColumns.length);
+        TestCase.assertEquals(2, fileControl.overrides.size());
+    }
+
+    @Test
+    public void testColumnsNamedByTheControlFile() throws Exception {
+        // as the control file editor writes them: every column named, the unmapped ones ignored
+        File file = write("permits.csv", "\uFEFFPermit #,Applicant,Fee\nA-1,Jo,10\nA-2,Sam,20\n");
+        FileTypeControl fileControl = new FileTypeControl().encoding("utf-8").skip(1)
+                .columns(new String[] {"permit", "column_1", "fee"}).ignoreColumns(new String[] {"column_1"});
+
+        ColumnProjection projection = ColumnProjection.of(file, fileControl);
+        TestCase.assertEquals("permit,fee\nA-1,10\nA-2,20\n", read(projection));
+        TestCase.assertEquals(0, projection.getFileControl().ignoreColumns.length);
+
+        TestCase.assertNull(ColumnProjection.of(file, fileControl.ignoreColumns(new String[] {"not_there"})));
+        TestCase.assertNull(ColumnProjection.of(file, fileControl.ignoreColumns(null)));
+    }
+}
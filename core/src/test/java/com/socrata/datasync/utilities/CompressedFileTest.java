@@ -0,0 +1,77 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.io.Files;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+public class CompressedFileTest {
+
+    private static final String CONTENTS = "\uFEFFID,Name\n1,Food\n2,Drink\n";
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String name) throws IOException {
+        File file = new File(dir, name);
+        OutputStream out = new FileOutputStream(file);
+        if (name.endsWith(".gz"))
+            out = new GZIPOutputStream(out);
+        else if (name.endsWith(".xz"))
+            out = new XZOutputStream(out, new LZMA2Options());
+        try {
+            out.write(CONTENTS.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testDataFileExtensionLooksPastCompression() {
+        TestCase.assertEquals("csv", Utils.getDataFileExtension("crimes.csv"));
+        TestCase.assertEquals("csv", Utils.getDataFileExtension("crimes.csv.gz"));
+        TestCase.assertEquals("tsv", Utils.getDataFileExtension("/data/crimes.TSV.xz"));
+        TestCase.assertEquals("", Utils.getDataFileExtension("crimes.gz"));
+        TestCase.assertTrue(Utils.isCompressed("crimes.csv.gz"));
+        TestCase.assertFalse(Utils.isCompressed("crimes.csv"));
+    }
+
+    @Test
+    public void testCompressedFilesAreReadDecompressed() throws IOException {
+        FileTypeControl control = new FileTypeControl().encoding("utf-8");
+        for (String name : new String[] {"crimes.csv", "crimes.csv.gz", "crimes.csv.xz"}) {
+            File file = write(name);
+            try (InputStream in = Utils.openDataFile(file)) {
+                TestCase.assertEquals(name, CONTENTS, IOUtils.toString(in, "UTF-8"));
+            }
+            TestCase.assertTrue(name, Utils.fileStartsWithBom(file, control));
+            TestCase.assertEquals(name, Arrays.asList("ID", "Name"), Arrays.asList(Utils.pullHeadersFromFile(file, control, 0)));
+            TestCase.assertEquals(name, Arrays.asList("1", "Food"), Arrays.asList(Utils.pullHeadersFromFile(file, control, 1)));
+        }
+    }
+}
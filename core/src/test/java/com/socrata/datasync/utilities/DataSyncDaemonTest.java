@@ -0,0 +1,60 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.daemon.DaemonSchedule;
+import com.socrata.datasync.daemon.DataSyncDaemon;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+
+public class DataSyncDaemonTest {
+
+    @Test
+    public void testInitialDelayWithoutStartTimeIsZero() {
+        DaemonSchedule.ScheduledJob job = new DaemonSchedule.ScheduledJob();
+        job.intervalMinutes = 15;
+        TestCase.assertEquals(0, job.getInitialDelayMs(Calendar.getInstance()));
+        TestCase.assertEquals(15 * 60 * 1000L, job.getIntervalMs());
+    }
+
+    @Test
+    public void testInitialDelayWaitsForNextStartTime() {
+        Calendar now = Calendar.getInstance();
+        now.set(2016, Calendar.MARCH, 1, 2, 0, 0);
+        now.set(Calendar.MILLISECOND, 0);
+
+        DaemonSchedule.ScheduledJob later = new DaemonSchedule.ScheduledJob();
+        later.startAt = "02:30";
+        TestCase.assertEquals(30 * 60 * 1000L, later.getInitialDelayMs(now));
+
+        DaemonSchedule.ScheduledJob tomorrow = new DaemonSchedule.ScheduledJob();
+        tomorrow.startAt = "01:00";
+        TestCase.assertEquals(23 * 60 * 60 * 1000L, tomorrow.getInitialDelayMs(now));
+    }
+
+    @Test
+    public void testStartSchedulesEveryJobInTheScheduleFile() throws IOException {
+        File dir = Files.createTempDirectory("datasync-daemon").toFile();
+        try {
+            FileUtils.writeStringToFile(new File(dir, DataSyncDaemon.SCHEDULE_FILE_NAME),
+                "{\"threads\": 2, \"jobs\": [" +
+                "{\"file\": \"a.sij\", \"intervalMinutes\": 60, \"startAt\": \"23:59\"}," +
+                "{\"file\": \"b.spj\", \"intervalMinutes\": 1440, \"startAt\": \"23:59\"}]}");
+            DataSyncDaemon daemon = new DataSyncDaemon(dir, null);
+            try {
+                daemon.start();
+                TestCase.assertEquals(new HashSet<>(Arrays.asList("a.sij", "b.spj")), daemon.getScheduledJobFiles());
+            } finally {
+                daemon.close();
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.daemon.DropDirectoryWatcher;
+import com.socrata.datasync.job.JobStatus;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class DropDirectoryWatcherTest {
+
+    private File dropDir;
+    private final List<String> published = Collections.synchronizedList(new ArrayList<String>());
+
+    private final DropDirectoryWatcher.BatchPublisher recorder = new DropDirectoryWatcher.BatchPublisher() {
+        @Override
+        public JobStatus publish(File jobFile, List<File> files) {
+            List<String> names = new ArrayList<>();
+            for (File file : files)
+                names.add(file.getName());
+            Collections.sort(names);
+            published.add(jobFile.getName() + " " + names);
+            return JobStatus.SUCCESS;
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        dropDir = Files.createTempDir();
+        FileUtils.writeStringToFile(new File(dropDir, "crimes.sij"), "{}");
+        FileUtils.writeStringToFile(new File(dropDir, "crimes_2016.sij"), "{}");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dropDir);
+    }
+
+    @Test
+    public void testFilesForTheSameJobArePublishedTogether() throws Exception {
+        DropDirectoryWatcher watcher = new DropDirectoryWatcher(dropDir, 1500, 200, recorder);
+        try {
+            FileUtils.writeStringToFile(new File(dropDir, "crimes-a.csv"), "id\n1\n");
+            watcher.start();
+            FileUtils.writeStringToFile(new File(dropDir, "crimes-b.csv"), "id\n2\n");
+            FileUtils.writeStringToFile(new File(dropDir, "crimes-d.csv.gz"), "compressed");
+            FileUtils.writeStringToFile(new File(dropDir, "crimes_2016-c.csv"), "id\n3\n");
+            FileUtils.writeStringToFile(new File(dropDir, "notes.txt"), "not data");
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (published.size() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(100);
+            Collections.sort(published);
+            TestCase.assertEquals(Arrays.asList(
+                "crimes.sij [crimes-a.csv, crimes-b.csv, crimes-d.csv.gz]",
+                "crimes_2016.sij [crimes_2016-c.csv]"), published);
+            Thread.sleep(300);
+            TestCase.assertTrue(new File(dropDir, "processed/crimes-a.csv").exists());
+            TestCase.assertTrue(new File(dropDir, "processed/crimes_2016-c.csv").exists());
+            TestCase.assertFalse(new File(dropDir, "crimes-b.csv").exists());
+            TestCase.assertTrue(new File(dropDir, "notes.txt").exists());
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testConcatenateKeepsOnlyTheFirstHeader() throws IOException {
+        File a = new File(dropDir, "a.csv");
+        File b = new File(dropDir, "b.csv");
+        File merged = new File(dropDir, "merged.csv");
+        FileUtils.writeStringToFile(a, "id,name\n1,x"); // no trailing newline
+        FileUtils.writeStringToFile(b, "\uFEFFid,name\n2,y\n", "UTF-8");
+        DropDirectoryWatcher.concatenate(Arrays.asList(a, b), true, merged);
+        TestCase.assertEquals("id,name\n1,x\n2,y\n", FileUtils.readFileToString(merged, "UTF-8"));
+
+        DropDirectoryWatcher.concatenate(Arrays.asList(a, b), false, merged);
+        TestCase.assertEquals("id,name\n1,x\nid,name\n2,y\n", FileUtils.readFileToString(merged, "UTF-8"));
+    }
+
+    @Test
+    public void testConcatenateDecompressesCompressedFiles() throws IOException {
+        File a = new File(dropDir, "a.csv.gz");
+        File b = new File(dropDir, "b.csv");
+        File merged = new File(dropDir, "merged.csv");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(a))) {
+            out.write("id,name\n1,x\n".getBytes("UTF-8"));
+        }
+        FileUtils.writeStringToFile(b, "id,name\n2,y\n", "UTF-8");
+        DropDirectoryWatcher.concatenate(Arrays.asList(a, b), true, merged);
+        TestCase.assertEquals("id,name\n1,x\n2,y\n", FileUtils.readFileToString(merged, "UTF-8"));
+    }
+
+    @Test
+    public void testConcatenateLeavesOutTheLeadingRowsTheControlFileSkips() throws IOException {
+        File a = new File(dropDir, "a.csv");
+        File b = new File(dropDir, "b.csv");
+        File merged = new File(dropDir, "merged.csv");
+        FileUtils.writeStringToFile(a, "exported today\n\"id\",\"long\nname\"\n1,x\n", "UTF-8");
+        FileUtils.writeStringToFile(b, "exported yesterday\n\"id\",\"long\nname\"\n2,\"y\nz\"\n", "UTF-8");
+        FileTypeControl fileControl = new FileTypeControl().encoding("utf-8").skip(1).hasHeaderRow(true);
+        DropDirectoryWatcher.concatenate(Arrays.asList(a, b), fileControl, merged);
+        TestCase.assertEquals("exported today\n\"id\",\"long\nname\"\n1,x\n2,\"y\nz\"\n",
+            FileUtils.readFileToString(merged, "UTF-8"));
+    }
+
+    @Test
+    public void testConcatenateCountsTheHeaderRowOnceWhenTheControlListsTheColumns() throws IOException {
+        File a = new File(dropDir, "a.csv");
+        File b = new File(dropDir, "b.csv");
+        File merged = new File(dropDir, "merged.csv");
+        FileUtils.writeStringToFile(a, "id,name\n1,x\n2,y\n", "UTF-8");
+        FileUtils.writeStringToFile(b, "id,name\n3,z\n4,w\n", "UTF-8");
+        // skip includes the header row when the columns are listed
+        FileTypeControl fileControl = new FileTypeControl().encoding("utf-8").columns(new String[] {"id", "name"})
+            .skip(1).hasHeaderRow(true);
+        DropDirectoryWatcher.concatenate(Arrays.asList(a, b), fileControl, merged);
+        TestCase.assertEquals("id,name\n1,x\n2,y\n3,z\n4,w\n", FileUtils.readFileToString(merged, "UTF-8"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.validation.DuplicateKeyDetector;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class DuplicateKeyDetectorTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String contents) throws IOException {
+        File file = new File(dir, "crimes.csv");
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        return file;
+    }
+
+    @Test
+    public void testRepeatedKeysAreReportedWithTheirLines() throws Exception {
+        File file = write("name,id\n" +
+                "a,1\n" +
+                "\"b\nc\",2\n" +  // lines 3-4
+                "d, 1\n" +        // line 5
+                "e,3\n" +
+                "f,\n" +
+                "g,2\n" +         // line 8
+                "h,1\n");         // line 9
+        DuplicateKeyDetector.Report report = new DuplicateKeyDetector(new FileTypeControl(), "id").detect(file);
+        TestCase.assertEquals(7, report.rowsChecked);
+        TestCase.assertEquals(3, report.duplicateRows);
+        TestCase.assertEquals(2, report.duplicates.size());
+        TestCase.assertEquals("'1' is on lines 2, 5, 9", report.duplicates.get(0).toString());
+        TestCase.assertEquals(Arrays.asList(3L, 8L), report.duplicates.get(1).getLines());
+
+        TestCase.assertNull(new DuplicateKeyDetector(new FileTypeControl(), "case_number").detect(file));
+    }
+
+    @Test
+    public void testSortedRunsFindTheSameDuplicatesAsTheTable() throws Exception {
+        StringBuilder csv = new StringBuilder("id\n");
+        for (int i = 0; i < 300000; i++)
+            csv.append(i).append("\n");
+        csv.append("17\n299999\n17\n");
+        File file = write(csv.toString());
+
+        DuplicateKeyDetector inMemory = new DuplicateKeyDetector(new FileTypeControl(), "id", 64 << 20, dir, 10);
+        DuplicateKeyDetector spilled = new DuplicateKeyDetector(new FileTypeControl(), "id", 0, dir, 10);
+        for (DuplicateKeyDetector detector : Arrays.asList(inMemory, spilled)) {
+            DuplicateKeyDetector.Report report = detector.detect(file);
+            TestCase.assertEquals(300003, report.rowsChecked);
+            TestCase.assertEquals(3, report.duplicateRows);
+            TestCase.assertEquals("'17' is on lines 19, 300002, 300004", report.duplicates.get(0).toString());
+            TestCase.assertEquals("'299999' is on lines 300001, 300003", report.duplicates.get(1).toString());
+        }
+        TestCase.assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void testUniqueKeysPass() throws Exception {
+        File file = write("1,a\n2,b\n3,c\n");
+        DuplicateKeyDetector.Report report = new DuplicateKeyDetector(
+                new FileTypeControl().columns(new String[] {"id", "name"}), "id").detect(file);
+        TestCase.assertTrue(report.toString(), report.isValid());
+        TestCase.assertEquals(3, report.rowsChecked);
+    }
+}
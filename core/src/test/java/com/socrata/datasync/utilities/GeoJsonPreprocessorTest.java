@@ -0,0 +1,87 @@
+package com.socrata.datasync.utilities;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.publishers.GeoJsonPreprocessor;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class GeoJsonPreprocessorTest {
+    private static final String COLLECTION =
+        "{\"type\":\"FeatureCollection\",\"crs\":{\"type\":\"name\"},\"features\":[" +
+            "{\"type\":\"Feature\",\"properties\":{\"Parcel ID\":\"1\",\"junk\":\"x\"}," +
+            "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-122.123456789012345,47.987654321098765]}}," +
+            "{\"type\":\"Feature\",\"properties\":{\"parcel_id\":\"2\"}," +
+            "\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[0,0],[1,0.00001],[2,0],[3,5],[4,0]]}}" +
+        "]}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private JsonNode process(GeoJsonPreprocessor preprocessor, String json, GeoJsonPreprocessor.Result[] result) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        result[0] = preprocessor.process(new ByteArrayInputStream(json.getBytes("UTF-8")), out);
+        return mapper.readTree(out.toByteArray());
+    }
+
+    @Test
+    public void testQuantizesCoordinatesAndReportsSavings() throws IOException {
+        GeoJsonPreprocessor.Result[] result = new GeoJsonPreprocessor.Result[1];
+        JsonNode output = process(new GeoJsonPreprocessor().coordinatePrecision(5), COLLECTION, result);
+
+        JsonNode point = output.get("features").get(0).get("geometry").get("coordinates");
+        TestCase.assertEquals("-122.12346", point.get(0).asText());
+        TestCase.assertEquals("47.98765", point.get(1).asText());
+        TestCase.assertEquals("name", output.get("crs").get("type").asText());
+        TestCase.assertEquals(2, result[0].getFeatureCount());
+        TestCase.assertTrue(result[0].getBytesSaved() > 0);
+        TestCase.assertEquals(COLLECTION.length(), result[0].getBytesRead());
+    }
+
+    @Test
+    public void testDropsPropertiesNotInTargetLayer() throws IOException {
+        GeoJsonPreprocessor.Result[] result = new GeoJsonPreprocessor.Result[1];
+        JsonNode output = process(new GeoJsonPreprocessor().keepOnlyProperties(Arrays.asList("parcel_id")),
+            COLLECTION, result);
+
+        JsonNode first = output.get("features").get(0).get("properties");
+        TestCase.assertEquals(1, first.size());
+        TestCase.assertEquals("1", first.get("Parcel ID").asText());
+        TestCase.assertEquals("2", output.get("features").get(1).get("properties").get("parcel_id").asText());
+    }
+
+    @Test
+    public void testSimplifiesLinesWithinTolerance() throws IOException {
+        GeoJsonPreprocessor.Result[] result = new GeoJsonPreprocessor.Result[1];
+        JsonNode output = process(new GeoJsonPreprocessor().simplificationTolerance(0.001), COLLECTION, result);
+
+        JsonNode line = output.get("features").get(1).get("geometry").get("coordinates");
+        TestCase.assertEquals("[[0,0],[2,0],[3,5],[4,0]]", line.toString());
+    }
+
+    @Test
+    public void testProcessesBareFeature() throws IOException {
+        String feature = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.23456,2.5]}," +
+            "\"properties\":{\"a\":1,\"b\":2}}";
+        GeoJsonPreprocessor.Result[] result = new GeoJsonPreprocessor.Result[1];
+        JsonNode output = process(new GeoJsonPreprocessor().coordinatePrecision(2).keepOnlyProperties(Arrays.asList("b")),
+            feature, result);
+
+        TestCase.assertEquals("[1.23,2.5]", output.get("geometry").get("coordinates").toString());
+        TestCase.assertEquals("{\"b\":2}", output.get("properties").toString());
+    }
+
+    @Test
+    public void testSimplifiesBareGeometry() throws IOException {
+        String polygon = "{\"coordinates\":[[[0,0],[1,0.0001],[2,0],[2,2],[0,2],[0,0]]],\"type\":\"Polygon\"}";
+        GeoJsonPreprocessor.Result[] result = new GeoJsonPreprocessor.Result[1];
+        JsonNode output = process(new GeoJsonPreprocessor().simplificationTolerance(0.001), polygon, result);
+
+        TestCase.assertEquals("Polygon", output.get("type").asText());
+        TestCase.assertEquals("[[[0,0],[2,0],[2,2],[0,2],[0,0]]]", output.get("coordinates").toString());
+    }
+}
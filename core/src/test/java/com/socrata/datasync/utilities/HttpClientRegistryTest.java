@@ -0,0 +1,42 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.HttpClientRegistry;
+import junit.framework.TestCase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Test;
+
+public class HttpClientRegistryTest {
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClientRegistry.setPoolLimits(HttpClientRegistry.DEFAULT_MAX_TOTAL_CONNECTIONS,
+            HttpClientRegistry.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    @Test
+    public void testClientIsShared() {
+        CloseableHttpClient first = HttpClientRegistry.getSharedClient();
+        TestCase.assertSame(first, HttpClientRegistry.getSharedClient());
+    }
+
+    @Test
+    public void testShutdownCreatesFreshClient() throws Exception {
+        CloseableHttpClient first = HttpClientRegistry.getSharedClient();
+        HttpClientRegistry.shutdown();
+        CloseableHttpClient second = HttpClientRegistry.getSharedClient();
+        TestCase.assertNotSame(first, second);
+    }
+
+    @Test
+    public void testPoolLimits() {
+        HttpClientRegistry.setPoolLimits(20, 5);
+        TestCase.assertEquals(20, HttpClientRegistry.getMaxTotalConnections());
+        TestCase.assertEquals(5, HttpClientRegistry.getMaxConnectionsPerRoute());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPerRouteLimitCannotExceedTotal() {
+        HttpClientRegistry.setPoolLimits(5, 10);
+    }
+}
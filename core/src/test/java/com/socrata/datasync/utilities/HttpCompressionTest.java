@@ -0,0 +1,148 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.HttpCompression;
+import com.socrata.datasync.HttpUtility;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpCompressionTest {
+
+    private static final String BODY;
+    static {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++)
+            sb.append(i == 0 ? "" : ",").append("{\"name\":\"row ").append(i).append("\"}");
+        BODY = sb.append("]").toString();
+    }
+
+    private HttpServer server;
+    private String base;
+    private final List<String> receivedEncodings = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzipped", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                if (gzip)
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+                out.write(BODY.getBytes("UTF-8"));
+                out.close();
+                exchange.close();
+            }
+        });
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                receivedEncodings.add(String.valueOf(encoding));
+                InputStream in = exchange.getRequestBody();
+                byte[] body = IOUtils.toByteArray("gzip".equals(encoding) ? new GZIPInputStream(in) : in);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.createContext("/plain-only", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                receivedEncodings.add(String.valueOf(encoding));
+                IOUtils.toByteArray(exchange.getRequestBody());
+                exchange.sendResponseHeaders("gzip".equals(encoding) ? 415 : 200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGzippedResponsesAreDecoded() throws Exception {
+        HttpUtility http = new HttpUtility();
+        try (CloseableHttpResponse response = http.get(new URI(base + "/gzipped"), "application/json")) {
+            TestCase.assertEquals(BODY, EntityUtils.toString(response.getEntity(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testLargeBodiesAreSentGzipped() throws Exception {
+        HttpUtility http = new HttpUtility();
+        http.setRequestCompressionThreshold(HttpCompression.DEFAULT_REQUEST_THRESHOLD_BYTES);
+        StringEntity entity = new StringEntity(BODY, ContentType.APPLICATION_JSON);
+        try (CloseableHttpResponse response = http.post(new URI(base + "/echo"), entity)) {
+            TestCase.assertEquals(BODY, EntityUtils.toString(response.getEntity(), "UTF-8"));
+        }
+        TestCase.assertEquals("gzip", receivedEncodings.get(0));
+    }
+
+    @Test
+    public void testSmallBodiesAreSentPlain() throws Exception {
+        HttpUtility http = new HttpUtility();
+        http.setRequestCompressionThreshold(HttpCompression.DEFAULT_REQUEST_THRESHOLD_BYTES);
+        StringEntity entity = new StringEntity("{\"name\":\"row\"}", ContentType.APPLICATION_JSON);
+        try (CloseableHttpResponse response = http.post(new URI(base + "/echo"), entity)) {
+            EntityUtils.consume(response.getEntity());
+        }
+        TestCase.assertEquals("null", receivedEncodings.get(0));
+    }
+
+    @Test
+    public void testRejectedGzipIsResentPlainAndRemembered() throws Exception {
+        HttpUtility http = new HttpUtility();
+        http.setRequestCompressionThreshold(HttpCompression.DEFAULT_REQUEST_THRESHOLD_BYTES);
+        URI uri = new URI(base + "/plain-only");
+        for (int i = 0; i < 2; i++) {
+            try (CloseableHttpResponse response = http.post(uri, new StringEntity(BODY, ContentType.APPLICATION_JSON))) {
+                TestCase.assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+        }
+        TestCase.assertEquals(3, receivedEncodings.size());
+        TestCase.assertEquals("gzip", receivedEncodings.get(0));
+        TestCase.assertEquals("null", receivedEncodings.get(1));
+        TestCase.assertEquals("null", receivedEncodings.get(2));
+    }
+
+    @Test
+    public void testOnlyCompressedTypesAreSentAsTheyAre() throws Exception {
+        URI uri = new URI(base + "/echo");
+        String[] compressed = {"application/x-gzip", "application/x-xz", "application/x-bzip2",
+            "application/x-7z-compressed", "application/x-rar-compressed", "application/zip", "image/png"};
+        for (String type : compressed)
+            TestCase.assertNull(type, HttpCompression.compressRequest(new StringEntity(BODY, ContentType.create(type)), uri, 0));
+
+        String[] compressible = {"application/x-www-form-urlencoded", "application/x-ndjson",
+            "application/x-javascript", "text/csv"};
+        for (String type : compressible)
+            TestCase.assertNotNull(type, HttpCompression.compressRequest(new StringEntity(BODY, ContentType.create(type)), uri, 0));
+    }
+}
@@ -1,11 +1,13 @@
 package com.socrata.datasync.utilities;
 
+import com.google.common.io.Files;
 import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaDdl;
 import com.socrata.datasync.DatasetUtils;
+import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.LogDatasetSink;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.job.JobStatus;
-import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.TestBase;
 import com.socrata.datasync.Utils;
 import com.socrata.datasync.job.IntegrationJob;
@@ -21,6 +23,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 
@@ -281,7 +284,7 @@ public class IntegrationUtilityTest extends TestBase {
     }
 
     @Test
-    public void testAddLogEntry() throws IOException, SodaError, InterruptedException, LongRunningQueryException {
+    public void testAddLogEntry() throws IOException, SodaError, InterruptedException, LongRunningQueryException, URISyntaxException {
         final Soda2Producer producer = createProducer();
         final SodaDdl ddl = createSodaDdl();
 
@@ -291,23 +294,35 @@ public class IntegrationUtilityTest extends TestBase {
 
         IntegrationJob job = new IntegrationJob();
         UpsertResult result = new UpsertResult(1, 1, 1, new ArrayList<UpsertError>());
-        SocrataConnectionInfo connectionInfo = new SocrataConnectionInfo(DOMAIN, USERNAME, PASSWORD, API_KEY);
-        String logPublishingErrorMessage = job.addLogEntry(
-                UNITTEST_LOG_DATASET_ID, connectionInfo, job, JobStatus.INVALID_DATASET_ID, result);
-
-        TestCase.assertEquals(null, logPublishingErrorMessage);
+        LogDatasetSink sink = newLogSink(UNITTEST_LOG_DATASET_ID);
+        try {
+            sink.add(IntegrationJob.buildLogEntry(job, JobStatus.INVALID_DATASET_ID, result));
+            TestCase.assertTrue(sink.flush());
+            TestCase.assertEquals(1, sink.getRowsWritten());
+        } finally {
+            sink.close();
+        }
         TestCase.assertEquals(2, getTotalRows(UNITTEST_LOG_DATASET_ID));
     }
 
     @Test
-    public void testAddLogEntryInvalidLogDatasetId() {
+    public void testAddLogEntryInvalidLogDatasetId() throws IOException, URISyntaxException {
         IntegrationJob job = new IntegrationJob();
         UpsertResult result = new UpsertResult(1, 1, 1, new ArrayList<UpsertError>());
-        SocrataConnectionInfo connectionInfo = new SocrataConnectionInfo(DOMAIN, USERNAME, PASSWORD, API_KEY);
-        String logPublishingErrorMessage = job.addLogEntry(
-                "xxxx-xxxx", connectionInfo, job, JobStatus.SUCCESS, result);
+        LogDatasetSink sink = newLogSink("xxxx-xxxx");
+        try {
+            sink.add(IntegrationJob.buildLogEntry(job, JobStatus.SUCCESS, result));
+            // the row is turned away rather than kept to send again
+            TestCase.assertTrue(sink.flush());
+            TestCase.assertEquals(1, sink.getRowsDropped());
+        } finally {
+            sink.close();
+        }
+    }
 
-        TestCase.assertEquals("Not found", logPublishingErrorMessage);
+    private LogDatasetSink newLogSink(String logDatasetID) throws IOException, URISyntaxException {
+        return new LogDatasetSink(new HttpUtility(getUserPrefs(), true), new URI(DOMAIN + "/resource/" + logDatasetID + ".json"),
+                Files.createTempDir(), LogDatasetSink.DEFAULT_MAX_BATCH_ROWS, LogDatasetSink.DEFAULT_FLUSH_INTERVAL_MS);
     }
 
     @Test
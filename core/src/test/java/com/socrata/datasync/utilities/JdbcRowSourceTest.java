@@ -0,0 +1,81 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.sources.CsvEncodingInputStream;
+import com.socrata.datasync.sources.JdbcRowSource;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+public class JdbcRowSourceTest {
+
+    private static final String URL = "jdbc:h2:mem:jdbcrowsource;DB_CLOSE_DELAY=-1";
+    private static final String QUERY = "SELECT id, name, amount, seen_at FROM crimes ORDER BY id";
+
+    private Connection db;
+
+    @Before
+    public void setUp() throws SQLException {
+        db = DriverManager.getConnection(URL);
+        try (Statement statement = db.createStatement()) {
+            statement.execute("CREATE TABLE crimes (id INT PRIMARY KEY, name VARCHAR(100), " +
+                    "amount DECIMAL(12,2), seen_at TIMESTAMP)");
+            statement.execute("INSERT INTO crimes VALUES (1, 'Theft', 1250.50, '2016-03-04 05:06:07.089')");
+            statement.execute("INSERT INTO crimes VALUES (2, 'Assault, \"aggravated\"', NULL, NULL)");
+            statement.execute("INSERT INTO crimes VALUES (3, NULL, 0.10, '2016-12-31 23:59:59')");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = db.createStatement()) {
+            statement.execute("DROP TABLE crimes");
+        }
+        db.close();
+    }
+
+    @Test
+    public void testRowsFollowTheColumnLabels() throws IOException {
+        try (JdbcRowSource rows = new JdbcRowSource(URL, QUERY, 2)) {
+            TestCase.assertEquals(Arrays.asList("ID", "NAME", "AMOUNT", "SEEN_AT"), Arrays.asList(rows.readNext()));
+            TestCase.assertEquals(Arrays.asList("1", "Theft", "1250.50", "2016-03-04T05:06:07.089"),
+                    Arrays.asList(rows.readNext()));
+            TestCase.assertEquals(Arrays.asList("2", "Assault, \"aggravated\"", "", ""), Arrays.asList(rows.readNext()));
+            TestCase.assertEquals(Arrays.asList("3", "", "0.10", "2016-12-31T23:59:59.000"), Arrays.asList(rows.readNext()));
+            TestCase.assertNull(rows.readNext());
+        }
+    }
+
+    @Test
+    public void testQueryResultsAreEncodedAsCsv() throws IOException {
+        String expectedRows =
+                "1,Theft,1250.50,2016-03-04T05:06:07.089\n" +
+                "2,\"Assault, \"\"aggravated\"\"\",,\n" +
+                "3,,0.10,2016-12-31T23:59:59.000\n";
+        try (CsvEncodingInputStream csv = new CsvEncodingInputStream(new JdbcRowSource(URL, QUERY, 1))) {
+            TestCase.assertEquals("ID,NAME,AMOUNT,SEEN_AT\n" + expectedRows, IOUtils.toString(csv, "UTF-8"));
+        }
+        try (CsvEncodingInputStream csv = new CsvEncodingInputStream(new JdbcRowSource(URL, QUERY, 1), true)) {
+            TestCase.assertEquals(expectedRows, IOUtils.toString(csv, "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testFailedQueriesDoNotReportTheUrlParameters() {
+        try {
+            new JdbcRowSource(URL + ";PASSWORD=secret", "SELECT * FROM no_such_table", 10);
+            TestCase.fail("the query should have failed");
+        } catch (IOException e) {
+            TestCase.assertTrue(e.getMessage().startsWith("Unable to run query against jdbc:h2:mem:jdbcrowsource:"));
+            TestCase.assertFalse(e.getMessage().contains("secret"));
+        }
+    }
+}
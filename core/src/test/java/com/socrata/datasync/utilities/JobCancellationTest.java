@@ -0,0 +1,83 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.CancellableInputStream;
+import com.socrata.datasync.HttpUtility;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+
+public class JobCancellationTest {
+
+    @After
+    public void tearDown() {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void testInterruptStopsReading() throws IOException {
+        InputStream in = new CancellableInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        TestCase.assertEquals(1, in.read());
+        Thread.currentThread().interrupt();
+        try {
+            in.read(new byte[2]);
+            TestCase.fail("Read from an interrupted thread");
+        } catch (InterruptedIOException e) {
+            // the job can still tell that it was cancelled
+            TestCase.assertTrue(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    @Test
+    public void testAbortStopsWaitingOnTheServer() throws Exception {
+        // a server that accepts the request and never answers it
+        try (final ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket ignored = server.accept()) {
+                        Thread.sleep(60000);
+                    } catch (IOException | InterruptedException e) {
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            final Thread job = Thread.currentThread();
+            Thread canceller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    job.interrupt();
+                    HttpUtility.abortRequestOf(job);
+                }
+            });
+            canceller.start();
+
+            long start = System.currentTimeMillis();
+            try {
+                new HttpUtility().get(new URI("http://localhost:" + server.getLocalPort() + "/"), "application/json");
+                TestCase.fail("The request was not aborted");
+            } catch (IOException e) {
+                TestCase.assertTrue(System.currentTimeMillis() - start < 10000);
+            } finally {
+                // the job thread was interrupted to cancel it; clear that so it can wait on the canceller
+                TestCase.assertTrue(Thread.interrupted());
+                canceller.join();
+                acceptor.interrupt();
+            }
+        }
+    }
+}
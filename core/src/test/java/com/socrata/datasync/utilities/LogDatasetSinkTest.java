@@ -0,0 +1,195 @@
+package com.socrata.datasync.utilities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.LogDatasetSink;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class LogDatasetSinkTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+    private File spoolDir;
+    private URI uri;
+    private volatile int responseStatus = 200;
+    private volatile String rejectedJobFile = null;
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/resource/logs-0001.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                List<Map<?, ?>> rows = mapper.readValue(IOUtils.toString(exchange.getRequestBody(), "UTF-8"), List.class);
+                int status = responseStatus;
+                for (Map<?, ?> row : rows) {
+                    if (row.get("JobFile").equals(rejectedJobFile))
+                        status = 400;
+                }
+                if (status == 200)
+                    batchSizes.add(rows.size());
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        uri = new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/resource/logs-0001.json");
+        spoolDir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        for (File f : spoolDir.listFiles())
+            f.delete();
+        spoolDir.delete();
+    }
+
+    private LogDatasetSink newSink(int maxBatchRows) {
+        return new LogDatasetSink(new HttpUtility(null, false, 0, 0.1), uri, spoolDir, maxBatchRows, 60 * 1000);
+    }
+
+    private static Map<String, Object> row(int i) {
+        return ImmutableMap.<String, Object>of("JobFile", "job" + i + ".sij", "Success", true);
+    }
+
+    @Test
+    public void testQueuedRowsAreSentInBatches() {
+        LogDatasetSink sink = newSink(4);
+        try {
+            for (int i = 0; i < 3; i++)
+                sink.add(row(i));
+            TestCase.assertTrue(batchSizes.isEmpty()); // nothing is sent while the job runs
+            for (int i = 3; i < 10; i++)
+                sink.add(row(i));
+            TestCase.assertTrue(sink.flush());
+            TestCase.assertEquals(10, sink.getRowsWritten());
+            int total = 0;
+            for (int size : batchSizes) {
+                TestCase.assertTrue(size <= 4);
+                total += size;
+            }
+            TestCase.assertEquals(10, total);
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    public void testRowsAreSpooledWhileTheDatasetIsUnavailable() {
+        responseStatus = 503;
+        LogDatasetSink sink = newSink(100);
+        sink.add(row(1));
+        sink.add(row(2));
+        TestCase.assertFalse(sink.flush());
+        TestCase.assertEquals(2, sink.getRowsSpooled());
+        sink.close();
+        TestCase.assertEquals(1, spoolDir.listFiles().length);
+
+        // a later process picks up the spooled rows ahead of its own
+        responseStatus = 200;
+        LogDatasetSink next = newSink(100);
+        try {
+            next.add(row(3));
+            TestCase.assertTrue(next.flush());
+            TestCase.assertEquals(3, next.getRowsWritten());
+            TestCase.assertEquals(Collections.singletonList(3), batchSizes);
+            TestCase.assertEquals(0, spoolDir.listFiles().length);
+        } finally {
+            next.close();
+        }
+    }
+
+    @Test
+    public void testFlushesBackOffWhileTheDatasetIsUnavailable() {
+        responseStatus = 503;
+        LogDatasetSink sink = newSink(100);
+        try {
+            TestCase.assertEquals(60 * 1000, sink.getFlushDelayMs());
+            sink.add(row(1));
+            TestCase.assertFalse(sink.flush());
+            TestCase.assertEquals(2 * 60 * 1000, sink.getFlushDelayMs());
+            TestCase.assertFalse(sink.flush());
+            TestCase.assertEquals(4 * 60 * 1000, sink.getFlushDelayMs());
+            TestCase.assertFalse(sink.flush());
+            TestCase.assertEquals(5 * 60 * 1000, sink.getFlushDelayMs());
+
+            responseStatus = 200;
+            TestCase.assertTrue(sink.flush());
+            TestCase.assertEquals(1, sink.getRowsWritten());
+            TestCase.assertEquals(60 * 1000, sink.getFlushDelayMs());
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    public void testRejectedRowsAreNotSpooled() {
+        responseStatus = 400;
+        LogDatasetSink sink = newSink(100);
+        sink.add(row(1));
+        TestCase.assertTrue(sink.flush());
+        TestCase.assertEquals(1, sink.getRowsDropped());
+        sink.close();
+        TestCase.assertEquals(0, spoolDir.listFiles().length);
+    }
+
+    @Test
+    public void testOnlyTheRejectedRowOfABatchIsDropped() {
+        rejectedJobFile = "job5.sij";
+        LogDatasetSink sink = newSink(100);
+        try {
+            for (int i = 0; i < 10; i++)
+                sink.add(row(i));
+            TestCase.assertTrue(sink.flush());
+            TestCase.assertEquals(9, sink.getRowsWritten());
+            TestCase.assertEquals(1, sink.getRowsDropped());
+        } finally {
+            sink.close();
+        }
+    }
+
+    @Test
+    public void testRowsClaimedByADeadProcessAreSentAgain() throws IOException {
+        responseStatus = 503;
+        LogDatasetSink sink = newSink(100);
+        sink.add(row(1));
+        TestCase.assertFalse(sink.flush());
+        sink.close();
+        // as a process that died while sending the spooled rows would leave them
+        File spooled = spoolDir.listFiles()[0];
+        File claimed = new File(spoolDir, spooled.getName() + ".sending");
+        TestCase.assertTrue(spooled.renameTo(claimed));
+        TestCase.assertTrue(claimed.setLastModified(System.currentTimeMillis() - 60 * 60 * 1000));
+
+        responseStatus = 200;
+        LogDatasetSink next = newSink(100);
+        try {
+            TestCase.assertTrue(next.flush());
+            TestCase.assertEquals(1, next.getRowsWritten());
+            TestCase.assertEquals(0, spoolDir.listFiles().length);
+        } finally {
+            next.close();
+        }
+    }
+}
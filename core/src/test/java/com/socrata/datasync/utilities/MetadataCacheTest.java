@@ -0,0 +1,156 @@
+package com.socrata.datasync.utilities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import com.socrata.datasync.MetadataCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MetadataCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String BODY = "[\"UTF-8\",\"ISO-8859-1\"]";
+
+    private HttpServer server;
+    private File cacheDir;
+    private URI uri;
+    private final AtomicInteger downloads = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile int failWith = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/datasync/charsets.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (failWith != 0) {
+                    exchange.sendResponseHeaders(failWith, -1);
+                } else if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    downloads.incrementAndGet();
+                    byte[] body = BODY.getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("ETag", ETAG);
+                    exchange.getResponseHeaders().add("X-Socrata-Region", "test");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        uri = new URI("http://127.0.0.1:" + server.getAddress().getPort() + "/datasync/charsets.json");
+        cacheDir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        for (File f : cacheDir.listFiles())
+            f.delete();
+        cacheDir.delete();
+    }
+
+    @Test
+    public void testFreshEntriesAreServedFromMemory() throws Exception {
+        MetadataCache cache = new MetadataCache(cacheDir, 10);
+        MetadataCache.Entry first = cache.get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+        MetadataCache.Entry second = cache.get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+        TestCase.assertEquals(BODY, first.body);
+        TestCase.assertEquals(BODY, second.body);
+        TestCase.assertEquals("test", second.getHeader("X-Socrata-Region"));
+        TestCase.assertEquals(1, downloads.get());
+        TestCase.assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testEntriesSurviveOnDisk() throws Exception {
+        new MetadataCache(cacheDir, 10).get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+        MetadataCache nextRun = new MetadataCache(cacheDir, 10);
+        TestCase.assertEquals(BODY, nextRun.get(null, false, uri, MetadataCache.ResourceType.CHARSETS).body);
+        TestCase.assertEquals(1, downloads.get());
+    }
+
+    @Test
+    public void testStaleEntriesAreRevalidated() throws Exception {
+        new MetadataCache(cacheDir, 10).get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+
+        // age the entry on disk past its TTL
+        ObjectMapper mapper = new ObjectMapper();
+        File onDisk = cacheDir.listFiles()[0];
+        MetadataCache.Entry entry = mapper.readValue(onDisk, MetadataCache.Entry.class);
+        entry.fetchedAt = 0;
+        mapper.writeValue(onDisk, entry);
+
+        MetadataCache nextRun = new MetadataCache(cacheDir, 10);
+        TestCase.assertEquals(BODY, nextRun.get(null, false, uri, MetadataCache.ResourceType.CHARSETS).body);
+        TestCase.assertEquals(1, downloads.get());
+        TestCase.assertEquals(1, notModified.get());
+        TestCase.assertEquals(1, nextRun.getRevalidationCount());
+    }
+
+    private void ageEntryOnDisk() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        File onDisk = cacheDir.listFiles()[0];
+        MetadataCache.Entry entry = mapper.readValue(onDisk, MetadataCache.Entry.class);
+        entry.fetchedAt = 0;
+        mapper.writeValue(onDisk, entry);
+    }
+
+    @Test
+    public void testStaleEntriesAreUsedWhileTheServerIsFailing() throws Exception {
+        new MetadataCache(cacheDir, 10).get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+        ageEntryOnDisk();
+
+        failWith = 503;
+        MetadataCache nextRun = new MetadataCache(cacheDir, 10);
+        TestCase.assertEquals(BODY, nextRun.get(null, false, uri, MetadataCache.ResourceType.CHARSETS).body);
+        TestCase.assertEquals(1, nextRun.getStaleHitCount());
+    }
+
+    @Test
+    public void testStaleEntriesAreNotUsedWhenTheResourceIsGone() throws Exception {
+        new MetadataCache(cacheDir, 10).get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+        ageEntryOnDisk();
+
+        failWith = 404;
+        try {
+            new MetadataCache(cacheDir, 10).get(null, false, uri, MetadataCache.ResourceType.CHARSETS);
+            TestCase.fail("A stale entry was used for a resource that is gone");
+        } catch (IOException e) {
+            TestCase.assertTrue(e.getMessage().contains("404"));
+        }
+    }
+
+    @Test
+    public void testLoadedObjectsAreMemoized() throws Exception {
+        MetadataCache cache = new MetadataCache(null, 10);
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() {
+                return "schema " + loads.incrementAndGet();
+            }
+        };
+        TestCase.assertEquals("schema 1", cache.getOrLoad("abcd-1234", MetadataCache.ResourceType.SCHEMA, loader));
+        TestCase.assertEquals("schema 1", cache.getOrLoad("abcd-1234", MetadataCache.ResourceType.SCHEMA, loader));
+        TestCase.assertEquals(1, loads.get());
+    }
+}
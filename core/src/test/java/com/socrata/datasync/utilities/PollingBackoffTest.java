@@ -0,0 +1,54 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.publishers.PollingBackoff;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class PollingBackoffTest {
+
+    @Test
+    public void testDelayGrowsWhileUnchangedAndIsCapped() {
+        PollingBackoff backoff = new PollingBackoff(100, 400, 2.0);
+        TestCase.assertEquals(100, backoff.getNextDelayMs());
+        backoff.unchanged();
+        TestCase.assertEquals(200, backoff.getNextDelayMs());
+        backoff.unchanged();
+        TestCase.assertEquals(400, backoff.getNextDelayMs());
+        backoff.unchanged();
+        TestCase.assertEquals(400, backoff.getNextDelayMs());
+        TestCase.assertTrue(backoff.atMaxDelay());
+    }
+
+    @Test
+    public void testChangeResetsDelay() {
+        PollingBackoff backoff = new PollingBackoff(100, 400, 2.0);
+        backoff.unchanged();
+        backoff.unchanged();
+        backoff.changed();
+        TestCase.assertEquals(100, backoff.getNextDelayMs());
+        TestCase.assertFalse(backoff.atMaxDelay());
+    }
+
+    @Test
+    public void testZeroMinimumStillBacksOff() {
+        PollingBackoff backoff = new PollingBackoff(0, 10, 1.5);
+        backoff.unchanged();
+        TestCase.assertEquals(1, backoff.getNextDelayMs());
+    }
+
+    @Test
+    public void testPauseTracksPollsAndWaitTime() throws InterruptedException {
+        PollingBackoff backoff = new PollingBackoff(5, 20, 2.0);
+        backoff.pause();
+        backoff.unchanged();
+        backoff.pause();
+        TestCase.assertEquals(2, backoff.getPollCount());
+        TestCase.assertEquals(15, backoff.getTotalWaitMs());
+        TestCase.assertEquals("2 status polls, 0.0s waiting", backoff.summary());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsShrinkingMultiplier() {
+        new PollingBackoff(100, 400, 0.5);
+    }
+}
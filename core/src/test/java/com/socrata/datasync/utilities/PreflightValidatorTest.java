@@ -0,0 +1,102 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.ColumnOverride;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.validation.PreflightValidator;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class PreflightValidatorTest {
+
+    private static final Map<String, String> TYPES = ImmutableMap.of(
+            "id", "number",
+            "open", "checkbox",
+            "reported", "calendar_date",
+            "closed", "calendar_date",
+            "notes", "text");
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private File write(String contents) throws IOException {
+        File file = new File(dir, "crimes.csv");
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        return file;
+    }
+
+    private static FileTypeControl control() {
+        TreeMap<String, ColumnOverride> overrides = new TreeMap<>();
+        overrides.put("closed", new ColumnOverride().timestampFormat(new String[] {"yyyyMMdd"}));
+        FileTypeControl control = new FileTypeControl()
+                .floatingTimestampFormat(new String[] {"MM/dd/yyyy", "ISO8601"});
+        control.overrides = overrides;
+        return control;
+    }
+
+    @Test
+    public void testGoodRowsPass() throws Exception {
+        File file = write("id,open,reported,closed,notes\n" +
+                "1,true,03/04/2016,20160305,\"a note\nover two lines\"\n" +
+                "\"1,234.5\",N,2016-03-04T10:00:00,,\n" +
+                "3,,,, \n");
+        PreflightValidator.Report report = new PreflightValidator(control(), TYPES, 2, 10).validate(file);
+        TestCase.assertTrue(report.toString(), report.isValid());
+        TestCase.assertEquals(3, report.rowsChecked);
+    }
+
+    @Test
+    public void testProblemsAreReportedWithTheirLineNumbers() throws Exception {
+        StringBuilder csv = new StringBuilder("id,open,reported,closed,notes\n");
+        csv.append("1,true,03/04/2016,20160305,\"two\nlines\"\n");  // lines 2-3
+        csv.append("x1,maybe,2016/03/04,03/05/2016,note\n");      // line 4
+        csv.append("3,false,03/04/2016\n");                       // line 5
+        for (int i = 0; i < 20000; i++)
+            csv.append(i).append(",true,03/04/2016,20160305,\n");
+        csv.append("oops,true,03/04/2016,20160305,\n");          // line 20006
+        File file = write(csv.toString());
+
+        PreflightValidator.Report report = new PreflightValidator(control(), TYPES, 4, 5).validate(file);
+        TestCase.assertEquals(20004, report.rowsChecked);
+        TestCase.assertEquals(6, report.errorCount);
+        TestCase.assertEquals(5, report.errors.size());
+        TestCase.assertEquals("Line 4, column 'id': 'x1' is not a valid number", report.errors.get(0).toString());
+        TestCase.assertEquals("open", report.errors.get(1).column);
+        TestCase.assertEquals("reported", report.errors.get(2).column);
+        TestCase.assertEquals("closed", report.errors.get(3).column);
+        TestCase.assertEquals("Line 5 has 3 cells but there are 5 columns", report.errors.get(4).toString());
+
+        report = new PreflightValidator(control(), TYPES, 4, 100).validate(file);
+        TestCase.assertEquals(20006, report.errors.get(5).line);
+    }
+
+    @Test
+    public void testControlFileColumnsAndSkipAreHonoured() throws Exception {
+        File file = write("exported by some tool\nx,y\n7,notabool\n");
+        FileTypeControl control = new FileTypeControl()
+                .columns(new String[] {"id", "open"})
+                .skip(2)
+                .ignoreColumns(new String[] {"open"});
+        PreflightValidator.Report report = new PreflightValidator(control, TYPES, 1, 10).validate(file);
+        TestCase.assertTrue(report.toString(), report.isValid());
+        TestCase.assertEquals(1, report.rowsChecked);
+    }
+}
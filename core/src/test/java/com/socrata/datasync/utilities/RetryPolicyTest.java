@@ -0,0 +1,84 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.RetryPolicy;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testDelaysUseDecorrelatedJitterWithinBounds() {
+        RetryPolicy policy = new RetryPolicy(5000, 5, 1000, 10, 0.1);
+        long delay = 100;
+        for (int i = 0; i < 100; i++) {
+            long next = policy.nextDelayMs(100, delay);
+            TestCase.assertTrue(next >= 100);
+            TestCase.assertTrue(next <= Math.min(5000, Math.max(100, delay * 3)));
+            delay = next;
+        }
+    }
+
+    @Test
+    public void testRetryBudgetIsSharedAndRefilledBySuccesses() {
+        RetryPolicy policy = new RetryPolicy(5000, 5, 1000, 2, 0.5);
+        TestCase.assertTrue(policy.tryAcquireRetry());
+        TestCase.assertTrue(policy.tryAcquireRetry());
+        TestCase.assertFalse(policy.tryAcquireRetry());
+        TestCase.assertEquals(1, policy.getRetriesDeniedByBudget());
+
+        policy.onSuccess("example.com");
+        policy.onSuccess("example.com");
+        TestCase.assertTrue(policy.tryAcquireRetry());
+        TestCase.assertEquals(3, policy.getRetryCount());
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailuresAndFailsFast() throws Exception {
+        RetryPolicy policy = new RetryPolicy(5000, 3, 60000, 10, 0.1);
+        for (int i = 0; i < 3; i++) {
+            policy.beforeRequest("down.example.com");
+            policy.onFailure("down.example.com");
+        }
+        TestCase.assertTrue(policy.isCircuitOpen("down.example.com"));
+        TestCase.assertFalse(policy.isCircuitOpen("up.example.com"));
+        try {
+            policy.beforeRequest("down.example.com");
+            TestCase.fail("expected the open circuit to fail fast");
+        } catch (RetryPolicy.CircuitOpenException e) {
+            TestCase.assertEquals(1, policy.getFastFailureCount());
+        }
+        policy.beforeRequest("up.example.com");
+    }
+
+    @Test
+    public void testCircuitLetsOneTrialThroughAfterCoolDown() throws Exception {
+        RetryPolicy policy = new RetryPolicy(5000, 1, 0, 10, 0.1);
+        policy.onFailure("flaky.example.com");
+        policy.beforeRequest("flaky.example.com");
+        try {
+            policy.beforeRequest("flaky.example.com");
+            TestCase.fail("only one trial request should be let through");
+        } catch (RetryPolicy.CircuitOpenException e) {
+            // expected
+        }
+        policy.onSuccess("flaky.example.com");
+        TestCase.assertFalse(policy.isCircuitOpen("flaky.example.com"));
+        policy.beforeRequest("flaky.example.com");
+    }
+
+    @Test
+    public void testCancelledTrialReleasesTheCircuit() throws Exception {
+        RetryPolicy policy = new RetryPolicy(5000, 1, 0, 10, 0.1);
+        policy.onFailure("flaky.example.com");
+        policy.beforeRequest("flaky.example.com");
+        // the trial was cancelled: the next request gets to be the trial, but the circuit isn't closed
+        policy.onAbandoned("flaky.example.com");
+        policy.beforeRequest("flaky.example.com");
+        try {
+            policy.beforeRequest("flaky.example.com");
+            TestCase.fail("only one trial request should be let through");
+        } catch (RetryPolicy.CircuitOpenException e) {
+            // expected
+        }
+    }
+}
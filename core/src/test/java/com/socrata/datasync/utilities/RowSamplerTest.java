@@ -0,0 +1,107 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.sources.RowSampler;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public class RowSamplerTest {
+
+    private static final FileTypeControl UTF8 = new FileTypeControl().encoding("utf-8");
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Writes a header and the given number of rows, every third of which has a quoted cell spanning lines.
+     */
+    private File write(String name, int rows) throws IOException {
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try (Writer writer = new OutputStreamWriter(name.endsWith(".gz") ? new GZIPOutputStream(out) : out, "UTF-8")) {
+            writer.write("\uFEFFid,notes,kind\r\n");
+            for (int i = 0; i < rows; i++) {
+                String notes = i % 3 == 0 ? "\"first line,\nsecond \"\"line\"\",\n" + i + ",x\"" : "plain";
+                writer.write(i + "," + notes + ",k" + (i % 5) + "\r\n");
+            }
+        }
+        return file;
+    }
+
+    private static void assertRowsInFileOrder(List<String[]> sample) {
+        int previous = -1;
+        for (String[] row : sample) {
+            TestCase.assertEquals(3, row.length);
+            int id = Integer.parseInt(row[0]);
+            TestCase.assertTrue(id > previous);
+            TestCase.assertEquals("k" + (id % 5), row[2]);
+            if (id % 3 == 0)
+                TestCase.assertEquals("first line,\nsecond \"line\",\n" + id + ",x", row[1]);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void testLargeFilesAreSampledFromEveryPart() throws IOException {
+        int rows = 100000;
+        File file = write("crimes.csv", rows);
+        TestCase.assertTrue(file.length() > 2 * 1024 * 1024);
+
+        for (long seed = 0; seed < 20; seed++) {
+            List<String[]> sample = new RowSampler(UTF8, 1, new Random(seed)).sample(file, 100);
+            TestCase.assertEquals(100, sample.size());
+            TestCase.assertEquals("0", sample.get(0)[0]);
+            assertRowsInFileOrder(sample);
+            TestCase.assertTrue(Integer.parseInt(sample.get(99)[0]) > rows * 0.9);
+        }
+        List<String[]> withHeader = new RowSampler(UTF8, 0).sample(file, 10);
+        TestCase.assertEquals("id", withHeader.get(0)[0]);
+    }
+
+    @Test
+    public void testCompressedAndSmallFilesAreReservoirSampled() throws IOException {
+        File small = write("small.csv", 40);
+        List<String[]> all = new RowSampler(UTF8, 1).sample(small, 100);
+        TestCase.assertEquals(40, all.size());
+        assertRowsInFileOrder(all);
+
+        File compressed = write("crimes.csv.gz", 5000);
+        List<String[]> sample = new RowSampler(UTF8, 1, new Random(7)).sample(compressed, 100);
+        TestCase.assertEquals(100, sample.size());
+        assertRowsInFileOrder(sample);
+        TestCase.assertTrue(Integer.parseInt(sample.get(99)[0]) > 4000);
+    }
+
+    @Test
+    public void testTheSameRowsAreSampledEachTime() throws IOException {
+        for (File file : new File[] {write("small.csv", 500), write("crimes.csv", 100000)}) {
+            List<String[]> first = new RowSampler(UTF8, 1).sample(file, 100);
+            List<String[]> again = new RowSampler(UTF8, 1).sample(file, 100);
+            TestCase.assertEquals(first.size(), again.size());
+            for (int i = 0; i < first.size(); i++)
+                TestCase.assertEquals(first.get(i)[0], again.get(i)[0]);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.socrata.datasync;
+
+import com.socrata.datasync.job.GISJob.ControlDisagreementException;
+import com.socrata.datasync.ui.SimpleIntegrationWizard;
+
+import org.apache.commons.cli.ParseException;
+
+public class Main {
+    /**
+     * Loads an instance of the SimpleIntegrationWizard in command line
+     * mode (if arguments are given) or as a GUI (if no arguments are given).
+     */
+    public static void main(String[] args) throws ParseException, ControlDisagreementException {
+        if(args.length == 0) {
+            // Open GUI (default)
+            openGui();
+        } else {
+            SimpleIntegrationRunner.main(args);
+        }
+    }
+
+    /**
+     * Kept apart from main so that the GUI classes are only loaded when the GUI is wanted.
+     */
+    private static void openGui() {
+        SimpleIntegrationWizard.get();
+    }
+}
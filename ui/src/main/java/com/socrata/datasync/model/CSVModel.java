@@ -1,14 +1,18 @@
 package com.socrata.datasync.model;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.List;
 import java.util.Vector;
 
 
 import javax.swing.table.AbstractTableModel;
 import au.com.bytecode.opencsv.CSVReader;
+import com.socrata.datasync.Utils;
 import com.socrata.datasync.config.controlfile.ControlFile;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.sources.RowSampler;
 
 /**
  * The CSV Model is used primarily to drive the previews in the
@@ -35,15 +39,18 @@ public class CSVModel extends AbstractTableModel{
         updateColumnNames(file);
 
         addSamples(file);
+        fireTableDataChanged();
     }
 
     // Return rows added
     private int addSamples(ControlFile controlFile) throws IOException{
-        CSVReader reader = getCSVReader(controlFile, controlFile.getFileTypeControl().skip);
-        String [] row =  reader.readNext();
+        FileTypeControl fileControl = controlFile.getFileTypeControl();
+        int skip = fileControl.skip == null ? 0 : fileControl.skip;
+        // Sample from across the whole file, so that the previews and checks of the editor see more than its top
+        List<String[]> rows = new RowSampler(fileControl, skip).sample(new File(fileControl.filePath), rowsToSample);
 
         int rowsAdded = 0;
-        while (row != null && rowsAdded < rowsToSample){
+        for (String[] row : rows){
             // The consumers of this class assume a table with an equal number of columns in every row.
             // If the row is blank, we'll need to get a placeholder with as many columns as the others to allow the
             // control file editor the ability to load.
@@ -54,7 +61,6 @@ public class CSVModel extends AbstractTableModel{
                 insertData(row);
             }
             rowsAdded++;
-            row = reader.readNext();
         }
 
         return rowsAdded;
@@ -79,7 +85,7 @@ public class CSVModel extends AbstractTableModel{
         char quote = controlFile.getFileTypeControl().quote.charAt(0);
         char escape = '\u0000';
 
-        InputStreamReader inputReader = new InputStreamReader(new FileInputStream(controlFile.getFileTypeControl().filePath), controlFile.getFileTypeControl().encoding);
+        InputStreamReader inputReader = new InputStreamReader(Utils.openDataFile(new File(controlFile.getFileTypeControl().filePath)), controlFile.getFileTypeControl().encoding);
 
         if (controlFile.getFileTypeControl().escape != null ){
             if (controlFile.getFileTypeControl().escape.equals(""))
@@ -100,6 +106,7 @@ public class CSVModel extends AbstractTableModel{
         boolean hasHeaderRow = file.getFileTypeControl().hasHeaderRow;
         CSVReader headerReader = getCSVReader(file, 0);
         String[] row = headerReader.readNext();
+        headerReader.close();
 
         if (hasHeaderRow) {
             columnNames = row;
@@ -177,8 +184,6 @@ public class CSVModel extends AbstractTableModel{
         for (int i =0; i < values.length; i++){
             data.get(data.size() - 1).add(values[i]);
         }
-
-        fireTableDataChanged();
     }
 
 }
@@ -0,0 +1,283 @@
+package com.socrata.datasync.model;
+
+import com.socrata.model.importer.Column;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Pairs the columns of a CSV with the dataset columns they most likely hold, for the ControlFileModel.
+ *
+ * Each pairing has a badness: the lesser of the distances from the CSV header to the column's name and
+ * field name, where a distance that is too large is infinite (see ControlFileModel.humanNameEditDistance
+ * and ControlFileModel.fieldNameEditDistance). Pairings are made least bad first, ties going to the
+ * leftmost CSV column and then the leftmost dataset column, and no column is paired twice.
+ *
+ * Scoring each pair of columns is what takes the time with wide datasets, so
+ * - a header identical to a column's name or field name is the only way for a pairing to have no
+ *   badness at all; those pairings are found by lookup and made first, and their columns aren't scored.
+ * - a pair is only scored if cheap lower bounds on its distances (from the characters, and pairs of
+ *   adjacent characters, that the names have in common) don't already show both of them to be infinite.
+ * - the CSV columns are scored in parallel.
+ */
+final class ColumnMatcher {
+
+    // below this many pairs to score, it isn't worth starting threads
+    private static final int PARALLEL_THRESHOLD = 10000;
+
+    private ColumnMatcher() {}
+
+    /**
+     * @return the pairings as {CSV column index, dataset column index}, in the order they were made
+     */
+    static List<int[]> match(List<String> headers, List<Column> columns) {
+        List<int[]> pairings = new ArrayList<>();
+        boolean[] paired = new boolean[headers.size()];
+        Set<String> usedFieldNames = new HashSet<>();
+
+        // identical names first
+        Map<String, List<Integer>> byName = new HashMap<>();
+        for (int j = 0; j < columns.size(); j++) {
+            index(byName, columns.get(j).getName(), j);
+            index(byName, columns.get(j).getFieldName(), j);
+        }
+        for (int i = 0; i < headers.size(); i++) {
+            List<Integer> identical = byName.get(headers.get(i));
+            if (identical == null)
+                continue;
+            for (int j : identical) {
+                if (usedFieldNames.add(columns.get(j).getFieldName())) {
+                    pairings.add(new int[] {i, j});
+                    paired[i] = true;
+                    break;
+                }
+            }
+        }
+
+        // then the rest, by badness
+        final List<Integer> unpairedHeaders = new ArrayList<>();
+        for (int i = 0; i < headers.size(); i++) {
+            if (!paired[i])
+                unpairedHeaders.add(i);
+        }
+        final List<Integer> unusedColumns = new ArrayList<>();
+        for (int j = 0; j < columns.size(); j++) {
+            if (!usedFieldNames.contains(columns.get(j).getFieldName()))
+                unusedColumns.add(j);
+        }
+        List<Pair> scored = score(headers, columns, unpairedHeaders, unusedColumns);
+        Collections.sort(scored, Pair.LEAST_BAD_FIRST);
+        for (Pair pair : scored) {
+            if (!paired[pair.header] && usedFieldNames.add(columns.get(pair.column).getFieldName())) {
+                pairings.add(new int[] {pair.header, pair.column});
+                paired[pair.header] = true;
+            }
+        }
+        return pairings;
+    }
+
+    private static void index(Map<String, List<Integer>> byName, String name, int column) {
+        if (name == null || name.isEmpty())
+            return; // an empty name isn't a match even for an empty header
+        List<Integer> columns = byName.get(name);
+        if (columns == null) {
+            columns = new ArrayList<>();
+            byName.put(name, columns);
+        }
+        if (columns.isEmpty() || columns.get(columns.size() - 1) != column)
+            columns.add(column);
+    }
+
+    /**
+     * @return the pairs of the given CSV and dataset columns with a finite badness
+     */
+    private static List<Pair> score(List<String> headers, List<Column> columns,
+                                    List<Integer> headerIndexes, final List<Integer> columnIndexes) {
+        final Name[] names = new Name[columns.size()];
+        final Name[] fieldNames = new Name[columns.size()];
+        for (int j : columnIndexes) {
+            names[j] = new Name(columns.get(j).getName());
+            fieldNames[j] = new Name(columns.get(j).getFieldName());
+        }
+
+        List<Callable<List<Pair>>> rows = new ArrayList<>();
+        for (final int i : headerIndexes) {
+            final Name header = new Name(headers.get(i));
+            rows.add(new Callable<List<Pair>>() {
+                @Override
+                public List<Pair> call() {
+                    List<Pair> pairs = new ArrayList<>();
+                    for (int j : columnIndexes) {
+                        double badness = badness(header, names[j], fieldNames[j]);
+                        if (badness != Double.POSITIVE_INFINITY)
+                            pairs.add(new Pair(i, j, badness));
+                    }
+                    return pairs;
+                }
+            });
+        }
+
+        List<Pair> scored = new ArrayList<>();
+        if ((long) headerIndexes.size() * columnIndexes.size() < PARALLEL_THRESHOLD) {
+            for (Callable<List<Pair>> row : rows)
+                scored.addAll(callQuietly(row));
+            return scored;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "column-matcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            for (Future<List<Pair>> row : pool.invokeAll(rows))
+                scored.addAll(row.get());
+            return scored;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while matching columns", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to match columns", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static List<Pair> callQuietly(Callable<List<Pair>> row) {
+        try {
+            return row.call();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to match columns", e);
+        }
+    }
+
+    /**
+     * @return the same badness as computing both distances, skipping those that are bound to be infinite
+     */
+    private static double badness(Name header, Name name, Name fieldName) {
+        double badness = Double.POSITIVE_INFINITY;
+        if (!humanNameTooFar(header, name))
+            badness = ControlFileModel.humanNameEditDistance(header.value, name.value);
+        if (!fieldNameTooFar(header, fieldName))
+            badness = Math.min(badness, ControlFileModel.fieldNameEditDistance(header.value, fieldName.value));
+        return badness;
+    }
+
+    /**
+     * The Levenshtein distance is at least the number of characters of the longer string that the other
+     * doesn't have, and (as each edit breaks at most two of them) half the number of its pairs of adjacent
+     * characters that the other doesn't have.
+     * @return whether humanNameEditDistance is bound to be infinite
+     */
+    private static boolean humanNameTooFar(Name header, Name name) {
+        int longest = Math.max(header.value.length(), name.value.length());
+        double limit = longest * 0.25;
+        if (longest - commonCount(header.chars, name.chars, false) >= limit)
+            return true;
+        int missingBigrams = longest - 1 - commonCount(header.bigrams, name.bigrams, false);
+        return (missingBigrams + 1) / 2 >= limit;
+    }
+
+    /**
+     * The distance from the field name to the header charges for each character of the field name that
+     * isn't matched by an identical character of the header, or in the case of an underscore, by any
+     * character that isn't a letter or digit.
+     * @return whether fieldNameEditDistance is bound to be infinite
+     */
+    private static boolean fieldNameTooFar(Name header, Name fieldName) {
+        int free = commonCount(fieldName.chars, header.chars, true) + Math.min(fieldName.underscores, header.punctuation);
+        int length = fieldName.value.length();
+        return length - free >= length * 0.25;
+    }
+
+    /**
+     * @return the size of the intersection of the two sorted multisets, optionally not counting underscores
+     */
+    private static int commonCount(int[] a, int[] b, boolean exceptUnderscores) {
+        int common = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                if (!exceptUnderscores || a[i] != '_')
+                    common++;
+                i++;
+                j++;
+            }
+        }
+        return common;
+    }
+
+    /**
+     * A name with the counts its distance bounds are computed from.
+     */
+    private static class Name {
+        final String value;
+        final int[] chars;
+        final int[] bigrams;
+        final int underscores;
+        final int punctuation;
+
+        Name(String value) {
+            this.value = value;
+            chars = new int[value.length()];
+            int underscoreCount = 0, punctuationCount = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                chars[i] = c;
+                if (c == '_')
+                    underscoreCount++;
+                if (!Character.isAlphabetic(c) && !Character.isDigit(c))
+                    punctuationCount++;
+            }
+            underscores = underscoreCount;
+            punctuation = punctuationCount;
+            bigrams = new int[Math.max(0, value.length() - 1)];
+            for (int i = 0; i < bigrams.length; i++)
+                bigrams[i] = (value.charAt(i) << 16) | value.charAt(i + 1);
+            Arrays.sort(chars);
+            Arrays.sort(bigrams);
+        }
+    }
+
+    private static class Pair {
+        static final Comparator<Pair> LEAST_BAD_FIRST = new Comparator<Pair>() {
+            @Override
+            public int compare(Pair a, Pair b) {
+                int badness = Double.compare(a.badness, b.badness);
+                if (badness != 0)
+                    return badness;
+                if (a.header != b.header)
+                    return a.header < b.header ? -1 : 1;
+                return a.column < b.column ? -1 : (a.column == b.column ? 0 : 1);
+            }
+        };
+
+        final int header;
+        final int column;
+        final double badness;
+
+        Pair(int header, int column, double badness) {
+            this.header = header;
+            this.column = column;
+            this.badness = badness;
+        }
+    }
+}
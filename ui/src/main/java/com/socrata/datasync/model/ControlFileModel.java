@@ -49,6 +49,9 @@ public class ControlFileModel extends Observable {
     private CSVModel csvModel;
     private DatasetModel datasetModel;
     private String path;
+    // whether updates to the listeners are being held back until a batch of changes is done, and whether any were
+    private boolean deferUpdates;
+    private boolean updatesDeferred;
 
     public ControlFileModel (ControlFile file, DatasetModel dataset) throws IOException{
         controlFile = file;
@@ -178,158 +181,34 @@ public class ControlFileModel extends Observable {
         }
     }
 
-    private static class Guess implements Comparable<Guess> {
-        public final Column column;
-        public final double badness;
-        public final int index;
-
-        public Guess(Column column, double badness, int index) {
-            this.column = column;
-            this.badness = badness;
-            this.index = index;
-        }
-
-        public int compareTo(Guess that) {
-            int badnessOrd = Double.compare(this.badness, that.badness);
-            if(badnessOrd == 0) return Integer.compare(this.index, that.index);
-            else return badnessOrd;
-        }
-
-        @Override public boolean equals(Object that) {
-            if(that instanceof Guess) return compareTo((Guess) that) == 0;
-            return false;
-        }
-    }
-
-    private static class Candidate implements Comparable<Candidate> {
-        public final int sourceColumnIndex;
-        public final PriorityQueue<Guess> preferences;
-
-        public Candidate(int sourceColumnIndex, PriorityQueue<Guess> preferences) {
-            this.sourceColumnIndex = sourceColumnIndex;
-            this.preferences = preferences;
-        }
-
-        public int compareTo(Candidate that) {
-            boolean thisIsInfinitelyBad = this.preferences.isEmpty() || this.preferences.peek().badness == Double.POSITIVE_INFINITY;
-            boolean thatIsInfinitelyBad = that.preferences.isEmpty() || that.preferences.peek().badness == Double.POSITIVE_INFINITY;
-
-            if(thisIsInfinitelyBad) {
-                if(thatIsInfinitelyBad) {
-                    return Integer.compare(this.sourceColumnIndex, that.sourceColumnIndex);
-                } else {
-                    return 1; // that is not infinitely bad, so put it first
-                }
-            } else {
-                if(thatIsInfinitelyBad) {
-                    return -1;
-                } else {
-                    int badnessOrd = Double.compare(this.preferences.peek().badness, that.preferences.peek().badness);
-                    if(badnessOrd == 0) return Integer.compare(this.sourceColumnIndex, that.sourceColumnIndex);
-                    else return badnessOrd;
-                }
-            }
-        }
-
-        @Override public boolean equals(Object that) {
-            if(that instanceof Candidate) return compareTo((Candidate) that) == 0;
-            return false;
-        }
-    }
-
-    private static int bestGuess(SortedMap<Integer, PriorityQueue<Guess>> allPreferences) {
-        // Returns the leftmost column with the best (== lowest)
-        // badness at the head.  Precondition: allPreferences is
-        // non-empty.
-        int best = -1;
-        double bestBadness = Double.POSITIVE_INFINITY;
-        for(Map.Entry<Integer, PriorityQueue<Guess>> ent : allPreferences.entrySet()) {
-            if(best == -1) {
-                best = ent.getKey();
-                if(ent.getValue().isEmpty()) bestBadness = Double.POSITIVE_INFINITY;
-                else bestBadness = ent.getValue().peek().badness;
-            } else if(ent.getValue().isEmpty()) {
-                // ok, we're definitely not better than our best
-                // guess.
-            } else if(ent.getValue().peek().badness < bestBadness) {
-                best = ent.getKey();
-                bestBadness = ent.getValue().peek().badness;
-            }
-            if(bestBadness == 0) return best; // short circuit: we're not going to get any better
-        }
-        return best;
-    }
-
-    static final boolean DEBUG = false;
-    private static void debug(Object... items) {
-        if(DEBUG) {
-            StringBuilder sb = new StringBuilder();
-            for(Object item : items) {
-                sb.append(item);
-            }
-            System.out.println(sb.toString());
-        }
-    }
-
+    /**
+     * Maps each column of the CSV to the dataset column it most likely holds, or ignores it if none is
+     * close enough; see {@link ColumnMatcher}. The listeners are updated once, when it is done.
+     */
     private void matchColumns() {
-        debug("Starting match columns");
-
-        List<String> columnNames = new ArrayList<>();
-        for(Column column : datasetModel.getColumns()) {
-            columnNames.add(column.getName());
-        }
-
-        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
-
+        List<String> headers = new ArrayList<>();
         for (int i = 0; i < csvModel.getColumnCount(); i++) {
-            String csvHeader = csvModel.getColumnName(i);
-            debug("Looking at CSV column: ", csvHeader);
-
-            PriorityQueue<Guess> preferences = new PriorityQueue<>();
-            int idx = 0;
-            for(Column column : datasetModel.getColumns()) {
-                double editDistanceToName = humanNameEditDistance(csvHeader, column.getName());
-                double editDistanceToFieldName = fieldNameEditDistance(csvHeader, column.getFieldName());
-                double badness = Math.min(editDistanceToName, editDistanceToFieldName);
-                debug("  Badness to ", column.getName(), " (", column.getFieldName(), ") : ", badness);
-                preferences.add(new Guess(column, badness, idx));
-                idx += 1;
-            }
-
-            candidates.add(new Candidate(i, preferences));
+            headers.add(csvModel.getColumnName(i));
         }
+        List<Column> columns = datasetModel.getColumns();
 
-        Set<String> usedFieldNames = new HashSet<>();
-        while(!candidates.isEmpty()) {
-            Candidate candidate = candidates.poll();
-            debug("Leftmost csv column with the least bad preference is ", csvModel.getColumnName(candidate.sourceColumnIndex));
-            PriorityQueue<Guess> preferences = candidate.preferences;
-            if(preferences.isEmpty()) {
-                debug("  It has no preferences.  Bailing.");
-                ignoreColumnInCSVAtPosition(candidate.sourceColumnIndex);
-                continue;
+        deferUpdates = true;
+        try {
+            boolean[] matched = new boolean[headers.size()];
+            for (int[] pairing : ColumnMatcher.match(headers, columns)) {
+                updateColumnAtPosition(columns.get(pairing[1]).getFieldName(), pairing[0]);
+                matched[pairing[0]] = true;
             }
-
-            Guess guess = preferences.poll();
-            if(guess.badness == Double.POSITIVE_INFINITY) {
-                debug("  Its most-prefered choice is infinitely bad.  Bailing.");
-                ignoreColumnInCSVAtPosition(candidate.sourceColumnIndex);
-                continue;
+            for (int i = 0; i < matched.length; i++) {
+                if (!matched[i])
+                    ignoreColumnInCSVAtPosition(i);
             }
-
-            if(usedFieldNames.contains(guess.column.getFieldName())) {
-                // Its best choice is something we've already
-                // selected; put the candidate back in the pool, minus
-                // that guess because mutability, and try again.
-                debug("  Its most-prefered choice (", guess.column.getFieldName(), ") has already been picked.  Removing that option and trying again.");
-                candidates.add(candidate);
-                continue;
-            }
-
-            Column col = guess.column;
-            debug("  That best matches column ", col.getName(), " (", col.getFieldName(), ") with badness ", guess.badness);
-            updateColumnAtPosition(col.getFieldName(), candidate.sourceColumnIndex);
-            usedFieldNames.add(col.getFieldName());
+        } finally {
+            deferUpdates = false;
+        }
+        if (updatesDeferred) {
+            updatesDeferred = false;
+            updateListeners();
         }
     }
 
@@ -434,6 +313,10 @@ public class ControlFileModel extends Observable {
     }
 
     public void updateListeners(){
+        if (deferUpdates) {
+            updatesDeferred = true;
+            return;
+        }
         //TODO: Should we really be swallowing this exception from here?  Given the current way it's factored, I think
         // that we will need to...
         try {
@@ -657,8 +540,7 @@ public class ControlFileModel extends Observable {
                             fieldType.equals("date")) {
                         Object value = csvModel.getValueAt(i, j);
                         if (!canParseDateTime(value, controlFile.getFileTypeControl().floatingTimestampFormat)) {
-                            JobStatus status = JobStatus.INVALID_DATETIME;
-                            status.setMessage("Cannot parse the datetime value \"" +value.toString()+  "\" in column \"" + columnName+ "\" given the current formatting.  Please check your formatting values under advanced options and try again.");
+                            JobStatus status = JobStatus.INVALID_DATETIME.withMessage("Cannot parse the datetime value \"" +value.toString()+  "\" in column \"" + columnName+ "\" given the current formatting.  Please check your formatting values under advanced options and try again.");
                             return status;
                         }
                     }
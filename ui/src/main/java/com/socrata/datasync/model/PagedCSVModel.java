@@ -0,0 +1,433 @@
+package com.socrata.datasync.model;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.sources.RowBoundaryScanner;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A table of every row of a CSV/TSV file, however large, for browsing in the control file editor.
+ * Rather than holding the rows, it keeps the position of the first row of each page of rows, found by
+ * a background thread scanning the file, and reads the pages being looked at through a small LRU cache.
+ * Memory use is the same for a file of a thousand rows or a hundred million, bar a long per page.
+ *
+ * Rows are added to the table as the scan finds them. Pages are read on another background thread, and
+ * their cells are blank until they arrive. Pages of files that can be scanned byte by byte are read from
+ * their position in the file; compressed files, and those in encodings such as UTF-16, are read on from
+ * the last page read, or from the start to go back, which gets slower the further into the file the page is.
+ *
+ * As with the CSVModel, the column names are only for display.
+ */
+public class PagedCSVModel extends AbstractTableModel {
+
+    static final int PAGE_SIZE = 1000;
+    private static final int CACHED_PAGES = 8;
+    private static final int READ_SIZE = 256 * 1024;
+    private static final long NOTIFY_INTERVAL_MS = 250;
+
+    private final File file;
+    private final char separator;
+    private final char quote;
+    private final char escape;
+    private final Charset charset;
+    private final int skipLines;
+    private final boolean seekable;
+    private final String[] columnNames;
+    private final Thread indexer;
+    private final ExecutorService pageLoader;
+
+    private final Object indexLock = new Object();
+    // the byte offset of the first row of each page found so far, and the number of rows found; guarded by indexLock
+    private long[] pageOffsets = new long[64];
+    private int rowsIndexed;
+    private volatile boolean indexed;
+    private volatile IOException indexFailure;
+
+    // the rows the table's listeners have been told about, and the pages being loaded for them;
+    // only used on the event dispatch thread
+    private int rowCount;
+    private final Set<Integer> pagesLoading = new HashSet<>();
+
+    // reads the pages of files that can't be scanned, and the number of rows it has read; guarded by readLock
+    private final Object readLock = new Object();
+    private CSVReader sequentialReader;
+    private int sequentialRow;
+    private final Map<Integer, List<String[]>> pages = new LinkedHashMap<Integer, List<String[]>>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<String[]>> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    public PagedCSVModel(FileTypeControl fileControl) throws IOException {
+        file = new File(fileControl.filePath);
+        separator = Utils.nullOrEmpty(fileControl.separator) ? ',' : fileControl.separator.charAt(0);
+        quote = Utils.nullOrEmpty(fileControl.quote) ? '"' : fileControl.quote.charAt(0);
+        escape = Utils.nullOrEmpty(fileControl.escape) ? '\u0000' : fileControl.escape.charAt(0);
+        charset = Utils.getCharset(fileControl);
+        skipLines = fileControl.skip == null ? 0 : fileControl.skip;
+        seekable = !Utils.isCompressed(file.getName()) && RowBoundaryScanner.canScan(charset, quote, escape);
+        columnNames = readColumnNames(fileControl.hasHeaderRow);
+
+        indexer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (seekable)
+                        scanRows();
+                    else
+                        countRows();
+                } catch (IOException e) {
+                    indexFailure = e;
+                } finally {
+                    notifyRowsFound();
+                    indexed = true;
+                }
+            }
+        }, "csv-index");
+        indexer.setDaemon(true);
+        indexer.start();
+
+        pageLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "csv-pages");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    private String[] readColumnNames(boolean hasHeaderRow) throws IOException {
+        String[] firstRow;
+        try (CSVReader reader = openReader(0)) {
+            firstRow = reader.readNext();
+        }
+        if (firstRow == null)
+            firstRow = new String[0];
+        if (firstRow.length > 0 && firstRow[0].startsWith(Utils.BOM))
+            firstRow[0] = firstRow[0].substring(Utils.BOM.length());
+        if (hasHeaderRow)
+            return firstRow;
+        String[] placeholders = new String[firstRow.length];
+        for (int i = 0; i < placeholders.length; i++)
+            placeholders[i] = ModelUtils.generatePlaceholderName(i);
+        return placeholders;
+    }
+
+    private CSVReader openReader(int linesToSkip) throws IOException {
+        return new CSVReader(new InputStreamReader(Utils.openDataFile(file), charset), separator, quote, escape, linesToSkip);
+    }
+
+    /**
+     * Finds the rows of the file by scanning its bytes for the line breaks that end them.
+     */
+    private void scanRows() throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+            byte[] bytes = buffer.array();
+            RowBoundaryScanner scanner = new RowBoundaryScanner(quote, escape);
+            long position = 0;
+            long rowStart = -1;
+            int linesSkipped = 0;
+            int rows = 0;
+            long lastNotified = System.currentTimeMillis();
+
+            int read;
+            while ((read = channel.read(buffer, position)) > 0 && !Thread.currentThread().isInterrupted()) {
+                int i = 0;
+                // the skipped lines are counted as lines, as the CSVReader counts them, rather than rows
+                while (rowStart < 0 && i < read) {
+                    if (linesSkipped == skipLines)
+                        rowStart = position + i;
+                    else if (bytes[i++] == '\n')
+                        linesSkipped++;
+                }
+                int next;
+                while (rowStart >= 0 && (next = scanner.nextRowEnd(bytes, i, read)) >= 0) {
+                    addRow(rows++, rowStart);
+                    rowStart = position + next;
+                    i = next;
+                }
+                position += read;
+                buffer.clear();
+                if (System.currentTimeMillis() - lastNotified > NOTIFY_INTERVAL_MS) {
+                    lastNotified = System.currentTimeMillis();
+                    notifyRowsFound();
+                }
+            }
+            if (rowStart >= 0 && rowStart < position)
+                addRow(rows, rowStart); // the last row has no line break after it
+        }
+    }
+
+    /**
+     * Counts the rows of a file that can't be scanned byte by byte; their pages are found by reading from the start.
+     */
+    private void countRows() throws IOException {
+        try (CSVReader reader = openReader(skipLines)) {
+            int rows = 0;
+            long lastNotified = System.currentTimeMillis();
+            while (reader.readNext() != null && !Thread.currentThread().isInterrupted()) {
+                addRow(rows++, -1);
+                if (rows % PAGE_SIZE == 0 && System.currentTimeMillis() - lastNotified > NOTIFY_INTERVAL_MS) {
+                    lastNotified = System.currentTimeMillis();
+                    notifyRowsFound();
+                }
+            }
+        }
+    }
+
+    private void addRow(int row, long offset) {
+        synchronized (indexLock) {
+            if (row % PAGE_SIZE == 0) {
+                int page = row / PAGE_SIZE;
+                if (page == pageOffsets.length)
+                    pageOffsets = Arrays.copyOf(pageOffsets, page * 2);
+                pageOffsets[page] = offset;
+            }
+            rowsIndexed = row + 1;
+        }
+    }
+
+    /**
+     * Tells the table's listeners about the rows found since they were last told, first leaving the
+     * pages the rows were added to out of the cache, as they were read without them.
+     */
+    private void notifyRowsFound() {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                int found = getIndexedRowCount();
+                if (found > rowCount) {
+                    int first = rowCount;
+                    rowCount = found;
+                    synchronized (pages) {
+                        for (int page = first / PAGE_SIZE; page <= (found - 1) / PAGE_SIZE; page++)
+                            pages.remove(page);
+                    }
+                    fireTableRowsInserted(first, found - 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of rows the scan of the file has found so far
+     */
+    public int getIndexedRowCount() {
+        synchronized (indexLock) {
+            return rowsIndexed;
+        }
+    }
+
+    /**
+     * @return whether the whole file has been scanned
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return why the file couldn't be scanned to the end, or null if it could
+     */
+    public IOException getIndexFailure() {
+        return indexFailure;
+    }
+
+    /**
+     * Stops scanning the file and reading its pages.
+     */
+    public void close() {
+        indexer.interrupt();
+        if (!pageLoader.isShutdown()) {
+            pageLoader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (readLock) {
+                        closeSequentialReader();
+                    }
+                }
+            });
+            pageLoader.shutdown();
+        }
+        synchronized (pages) {
+            pages.clear();
+        }
+    }
+
+    /**
+     * Reads the given page on the calling thread, unless it is cached. Pages are only cached once the scan
+     * has found all the rows they had when read, so a page read while the scan is still adding rows to it
+     * is read again.
+     * @return the rows of the given page; rows that can't be read are left out
+     */
+    List<String[]> getPage(int page) {
+        List<String[]> rows = cachedPage(page);
+        if (rows != null)
+            return rows;
+        synchronized (readLock) {
+            rows = cachedPage(page);
+            if (rows != null)
+                return rows;
+            int rowsInPage = rowsInPage(page);
+            try {
+                rows = readPage(page, rowsInPage);
+            } catch (IOException e) {
+                System.out.println("Unable to read rows " + (page * PAGE_SIZE + 1) + " to " +
+                        ((page + 1) * PAGE_SIZE) + " of " + file.getName() + ": " + e.getMessage());
+                rows = Collections.emptyList();
+            }
+            synchronized (pages) {
+                if (rowsInPage == rowsInPage(page))
+                    pages.put(page, rows);
+            }
+            return rows;
+        }
+    }
+
+    private List<String[]> cachedPage(int page) {
+        synchronized (pages) {
+            return pages.get(page);
+        }
+    }
+
+    private int rowsInPage(int page) {
+        synchronized (indexLock) {
+            return Math.max(0, Math.min(PAGE_SIZE, rowsIndexed - page * PAGE_SIZE));
+        }
+    }
+
+    /**
+     * Reads the page on the page loader's thread, then tells the table's listeners its rows have arrived.
+     * Only called on the event dispatch thread.
+     */
+    private void loadPage(final int page) {
+        if (pageLoader.isShutdown() || !pagesLoading.add(page))
+            return;
+        pageLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                getPage(page);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        pagesLoading.remove(page);
+                        int last = Math.min(rowCount, (page + 1) * PAGE_SIZE) - 1;
+                        if (last >= page * PAGE_SIZE)
+                            fireTableRowsUpdated(page * PAGE_SIZE, last);
+                    }
+                });
+            }
+        });
+    }
+
+    // only called holding readLock
+    private List<String[]> readPage(int page, int rowsInPage) throws IOException {
+        long offset;
+        synchronized (indexLock) {
+            offset = pageOffsets[page];
+        }
+        List<String[]> rows = new ArrayList<>(rowsInPage);
+        if (seekable) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                FileChannel channel = in.getChannel().position(offset);
+                CSVReader reader = new CSVReader(new InputStreamReader(Channels.newInputStream(channel), charset),
+                        separator, quote, escape);
+                readRows(reader, rows, rowsInPage);
+            }
+        } else {
+            // read on from the last page read, as pages are mostly looked at in order, or else from the start
+            int firstRow = page * PAGE_SIZE;
+            if (sequentialReader == null || sequentialRow > firstRow) {
+                closeSequentialReader();
+                sequentialReader = openReader(skipLines);
+                sequentialRow = 0;
+            }
+            try {
+                while (sequentialRow < firstRow && sequentialReader.readNext() != null)
+                    sequentialRow++;
+                readRows(sequentialReader, rows, rowsInPage);
+                sequentialRow += rows.size();
+            } catch (IOException e) {
+                closeSequentialReader();
+                throw e;
+            }
+        }
+        if (page == 0 && skipLines == 0 && !rows.isEmpty() && rows.get(0).length > 0 && rows.get(0)[0].startsWith(Utils.BOM))
+            rows.get(0)[0] = rows.get(0)[0].substring(Utils.BOM.length());
+        return rows;
+    }
+
+    private static void readRows(CSVReader reader, List<String[]> rows, int count) throws IOException {
+        String[] row;
+        while (rows.size() < count && (row = reader.readNext()) != null)
+            rows.add(row);
+    }
+
+    // only called holding readLock
+    private void closeSequentialReader() {
+        if (sequentialReader != null) {
+            try {
+                sequentialReader.close();
+            } catch (IOException ignored) {
+            }
+            sequentialReader = null;
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int col) {
+        return columnNames[col];
+    }
+
+    /**
+     * @return the cell, or null if the row is too short to have it or its page is still being read
+     */
+    @Override
+    public Object getValueAt(int row, int col) {
+        List<String[]> page = cachedPage(row / PAGE_SIZE);
+        if (page == null) {
+            loadPage(row / PAGE_SIZE);
+            return null;
+        }
+        int index = row % PAGE_SIZE;
+        if (index >= page.size())
+            return null;
+        String[] cells = page.get(index);
+        return col < cells.length ? cells[col] : null;
+    }
+}
@@ -4,6 +4,8 @@ import com.socrata.datasync.model.ControlFileModel;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  * Dialog which takes a control file model and then generates all of the UI components necessarily to update that model
@@ -47,7 +49,11 @@ public class ControlFileEditDialog extends JDialog {
         JScrollPane previewScroll = new JScrollPane();
 
         previewScroll.setViewportView(new MappingPanelContainer(controlFileModel));
-        previewPanel.add(previewScroll);
+        final FilePreviewPanel filePreview = new FilePreviewPanel(controlFileModel);
+        JTabbedPane previewTabs = new JTabbedPane();
+        previewTabs.addTab("Map Fields", previewScroll);
+        previewTabs.addTab("Preview File", filePreview);
+        previewPanel.add(previewTabs);
 
         Dimension minSize = new Dimension(100,50);
         headerPanel.setMinimumSize(minSize);
@@ -62,6 +68,12 @@ public class ControlFileEditDialog extends JDialog {
 
         setMaximumSize(CONTROL_FILE_DIALOG_DIMENSIONS);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                filePreview.close();
+            }
+        });
         getContentPane().add(containerPanel);
         pack();
         setSize(CONTROL_FILE_DIALOG_DIMENSIONS);
@@ -0,0 +1,104 @@
+package com.socrata.datasync.ui;
+
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.model.ControlFileModel;
+import com.socrata.datasync.model.PagedCSVModel;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Observable;
+import java.util.Observer;
+
+/**
+ * Panel showing every row of the file being mapped, as the control file currently reads it. The rows
+ * are read a page at a time as they are scrolled to (see {@link PagedCSVModel}), so any part of a very
+ * large file can be looked at.
+ *
+ * It listens for updates to the control file model, reading the file again if how it is laid out changes.
+ */
+public class FilePreviewPanel extends JPanel implements Observer {
+    private static final int STATUS_REFRESH_MS = 500;
+
+    private final ControlFileModel model;
+    private final JTable table = new JTable();
+    private final JLabel status = new JLabel();
+    private final Timer statusTimer;
+    private PagedCSVModel rows;
+    private String layout;
+
+    public FilePreviewPanel(ControlFileModel model) {
+        this.model = model;
+        setLayout(new BorderLayout());
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        status.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 0));
+        add(status, BorderLayout.SOUTH);
+
+        statusTimer = new Timer(STATUS_REFRESH_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateStatus();
+            }
+        });
+        loadRows();
+        model.addObserver(this);
+    }
+
+    private void loadRows() {
+        FileTypeControl fileControl = model.getControlFile().getFileTypeControl();
+        layout = describeLayout(fileControl);
+        if (rows != null)
+            rows.close();
+        try {
+            rows = new PagedCSVModel(fileControl);
+            table.setModel(rows);
+            statusTimer.start();
+        } catch (IOException e) {
+            rows = null;
+            table.setModel(new DefaultTableModel());
+            status.setText("Unable to read " + fileControl.filePath + ": " + e.getMessage());
+        }
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        if (rows == null)
+            return;
+        if (rows.getIndexFailure() != null) {
+            status.setText("Read " + rows.getIndexedRowCount() + " rows before failing: " + rows.getIndexFailure().getMessage());
+        } else {
+            status.setText(rows.getIndexedRowCount() + " rows" + (rows.isIndexed() ? "" : " found so far..."));
+        }
+        if (rows.isIndexed())
+            statusTimer.stop();
+    }
+
+    /**
+     * @return the options of the control file that change how the rows of the file are read
+     */
+    private static String describeLayout(FileTypeControl fileControl) {
+        return Arrays.asList(fileControl.filePath, fileControl.encoding, fileControl.separator, fileControl.quote,
+                fileControl.escape, fileControl.skip, fileControl.hasHeaderRow).toString();
+    }
+
+    /**
+     * Stops reading the file; called when the panel is no longer shown.
+     */
+    public void close() {
+        statusTimer.stop();
+        if (rows != null)
+            rows.close();
+        model.deleteObserver(this);
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        if (!describeLayout(model.getControlFile().getFileTypeControl()).equals(layout))
+            loadRows();
+    }
+}
@@ -5,6 +5,7 @@ import com.socrata.datasync.Utils;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.job.GISJob;
 import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobFiles;
 import com.socrata.datasync.model.ControlFileModel;
 import com.socrata.datasync.model.DatasetModel;
 import com.socrata.datasync.validation.GISJobValidity;
@@ -29,7 +30,7 @@ public class GISJobTab implements JobTab {
     private static final String BROWSE_BUTTON_TEXT = "Browse...";
 
     private static final String JOB_FILE_NAME = "Socrata GIS Job";
-    public static final String JOB_FILE_EXTENSION = "gij";
+    public static final String JOB_FILE_EXTENSION = JobFiles.GIS_JOB_EXTENSION;
 
     private static final int HELP_ICON_TOP_PADDING = 12;
     private static final String FILE_TO_PUBLISH_TIP_TEXT = "GeoJSON, kml/kmz, or zipped shape file containing the data to be published";
@@ -10,6 +10,7 @@ import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobFiles;
 import com.socrata.datasync.model.ControlFileModel;
 import com.socrata.datasync.model.DatasetModel;
 import com.socrata.datasync.validation.IntegrationJobValidity;
@@ -52,7 +53,7 @@ public class IntegrationJobTab implements JobTab {
     private static final String EMPTY_TEXTAREA_CONTENT = "";
 
     private static final String JOB_FILE_NAME = "Socrata Integration Job";
-    private static final String JOB_FILE_EXTENSION = "sij";
+    private static final String JOB_FILE_EXTENSION = JobFiles.INTEGRATION_JOB_EXTENSION;
 
     private static final int HELP_ICON_TOP_PADDING = 12;
     private static final String FILE_TO_PUBLISH_TIP_TEXT = "CSV or TSV file containing the data to be published";
@@ -305,8 +306,7 @@ public class IntegrationJobTab implements JobTab {
 
     public JobStatus runJobNow() {
         if (controlFileModel == null || controlFileModel.validate().isError()) {
-            JobStatus noControlFile = JobStatus.INVALID_PUBLISH_METHOD;
-            noControlFile.setMessage("We aren't quite ready to upload.  Click the \"Map Fields\" button to set the mappings for your CSV");
+            JobStatus noControlFile = JobStatus.INVALID_PUBLISH_METHOD.withMessage("We aren't quite ready to upload.  Click the \"Map Fields\" button to set the mappings for your CSV");
             return noControlFile;
         }
         IntegrationJob jobToRun = new IntegrationJob();
@@ -406,7 +406,7 @@ public class IntegrationJobTab implements JobTab {
             base = fileChooser.getCurrentDirectory().getAbsoluteFile();
             filePathTextField = textField;
             fileChooser.setFileFilter(
-                    UIUtility.getFileChooserFilter(IntegrationJobValidity.allowedFileToPublishExtensions));
+                    UIUtility.getFileChooserFilter(IntegrationJobValidity.allowedFileToPublishChooserExtensions));
         }
 
         public void actionPerformed(ActionEvent e) {
@@ -0,0 +1,345 @@
+package com.socrata.datasync.ui;
+
+import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.ProgressListener;
+import com.socrata.datasync.job.JobStatus;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the jobs of the open job tabs in the background, a few at a time, listing each with its progress
+ * and a button to cancel it. Jobs beyond the first few wait their turn.
+ *
+ * Cancelling a running job interrupts it and aborts the http request it is waiting on, so that it stops
+ * reading, diffing or uploading its file and cleans up after itself, however long a publish it was.
+ *
+ * Progress updates from publishers (see {@link #getProgressListener()}) are shown against the job
+ * whose thread sent them.
+ */
+public class JobQueuePanel extends JPanel {
+
+    static final int MAX_CONCURRENT_JOBS = 3;
+    private static final Dimension PROGRESS_BAR_DIMENSION = new Dimension(150, 16);
+
+    /**
+     * Told, on the event dispatch thread, about each job that finishes without being cancelled.
+     */
+    public interface CompletionListener {
+        void jobCompleted(JobTab jobTab, JobStatus status);
+    }
+
+    private final CompletionListener completionListener;
+    private final ExecutorService executor;
+    private final Map<Thread, QueuedJob> runningJobs = new ConcurrentHashMap<>();
+    // every job listed, in the order they were queued; only used on the event dispatch thread
+    private final List<QueuedJob> jobs = new ArrayList<>();
+    private final JPanel jobsPanel = new JPanel();
+    private final JLabel summary = new JLabel();
+    private final List<ActionListener> changeListeners = new ArrayList<>();
+
+    public JobQueuePanel(CompletionListener completionListener) {
+        this.completionListener = completionListener;
+        executor = Executors.newFixedThreadPool(MAX_CONCURRENT_JOBS, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "job-runner-" + (++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        setLayout(new BorderLayout());
+        jobsPanel.setLayout(new BoxLayout(jobsPanel, BoxLayout.Y_AXIS));
+        JPanel jobsHolder = new JPanel(new BorderLayout());
+        jobsHolder.add(jobsPanel, BorderLayout.NORTH);
+        add(new JScrollPane(jobsHolder), BorderLayout.CENTER);
+
+        JPanel footer = new JPanel(new BorderLayout());
+        footer.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        footer.add(summary, BorderLayout.WEST);
+        JButton clearButton = new JButton("Clear Finished");
+        clearButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                clearFinished();
+            }
+        });
+        footer.add(clearButton, BorderLayout.EAST);
+        add(footer, BorderLayout.SOUTH);
+        updateSummary();
+    }
+
+    /**
+     * Queues the job of the given tab to run as soon as fewer than MAX_CONCURRENT_JOBS jobs are running.
+     * @return false if the tab's job is already queued or running
+     */
+    public boolean submit(JobTab jobTab) {
+        for (QueuedJob job : jobs) {
+            if (job.jobTab == jobTab && !job.finished)
+                return false;
+        }
+        final QueuedJob job = new QueuedJob(jobTab);
+        jobs.add(job);
+        jobsPanel.add(job.row);
+        jobsPanel.revalidate();
+        job.future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                job.run();
+            }
+        });
+        updateSummary();
+        return true;
+    }
+
+    /**
+     * @return the number of jobs queued or running
+     */
+    public int getActiveJobCount() {
+        int active = 0;
+        for (QueuedJob job : jobs) {
+            if (!job.finished)
+                active++;
+        }
+        return active;
+    }
+
+    /**
+     * @return a description of how many jobs are running and waiting, or an empty string if none are
+     */
+    public String getSummary() {
+        return summary.getText();
+    }
+
+    /**
+     * Adds a listener told whenever a job is queued, starts or finishes.
+     */
+    public void addChangeListener(ActionListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @return a listener showing progress against the job whose thread reports it; progress reported by
+     * any other thread is ignored
+     */
+    public ProgressListener getProgressListener() {
+        return new ProgressListener() {
+            @Override
+            public void updateStatus(final String loadingLabel, final int progressPercent, final boolean showProgress, final String message) {
+                final QueuedJob job = runningJobs.get(Thread.currentThread());
+                if (job == null)
+                    return;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (job.finished)
+                            return;
+                        job.progress.setIndeterminate(!showProgress);
+                        job.progress.setValue(showProgress ? progressPercent : 0);
+                        job.status.setText(showProgress || message == null || message.isEmpty() ?
+                                loadingLabel : loadingLabel + " " + message);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Cancels all jobs and stops taking new ones; called when DataSync is closing.
+     */
+    public void shutdown() {
+        for (QueuedJob job : new ArrayList<>(jobs)) {
+            if (!job.finished)
+                job.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    private void clearFinished() {
+        for (QueuedJob job : new ArrayList<>(jobs)) {
+            if (job.finished) {
+                jobs.remove(job);
+                jobsPanel.remove(job.row);
+            }
+        }
+        jobsPanel.revalidate();
+        jobsPanel.repaint();
+    }
+
+    private void updateSummary() {
+        int running = 0, waiting = 0;
+        for (QueuedJob job : jobs) {
+            if (job.started && !job.finished)
+                running++;
+            else if (!job.finished)
+                waiting++;
+        }
+        String text = "";
+        if (running > 0)
+            text = running + (running == 1 ? " job" : " jobs") + " running";
+        if (waiting > 0)
+            text += (text.isEmpty() ? "" : ", ") + waiting + " waiting";
+        summary.setText(text);
+        ActionEvent event = new ActionEvent(this, ActionEvent.ACTION_PERFORMED, text);
+        for (ActionListener listener : changeListeners)
+            listener.actionPerformed(event);
+    }
+
+    /**
+     * A job in the queue, and its row in the list.
+     */
+    private class QueuedJob {
+        final JobTab jobTab;
+        final JPanel row = new JPanel(new BorderLayout(10, 0));
+        final JProgressBar progress = new JProgressBar(0, 100);
+        final JLabel status = new JLabel("Waiting...");
+        final JButton cancelButton = new JButton("Cancel");
+        Future<?> future;
+
+        // the thread running the job, while it runs; guarded by this, so that a cancel can't interrupt the
+        // thread once it has moved on to another job
+        private Thread runner;
+        private volatile boolean cancelled;
+        // only used on the event dispatch thread
+        boolean started;
+        boolean finished;
+
+        QueuedJob(JobTab jobTab) {
+            this.jobTab = jobTab;
+            row.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+            row.add(new JLabel(jobTab.getJobTabTitleLabel().getText()), BorderLayout.WEST);
+            JPanel progressPanel = new JPanel(new BorderLayout(10, 0));
+            progress.setPreferredSize(PROGRESS_BAR_DIMENSION);
+            progressPanel.add(progress, BorderLayout.WEST);
+            progressPanel.add(status, BorderLayout.CENTER);
+            row.add(progressPanel, BorderLayout.CENTER);
+            row.add(cancelButton, BorderLayout.EAST);
+            row.setMaximumSize(new Dimension(Integer.MAX_VALUE, row.getPreferredSize().height));
+            cancelButton.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    cancel();
+                }
+            });
+        }
+
+        /**
+         * Runs the job on the calling (pool) thread.
+         */
+        void run() {
+            synchronized (this) {
+                if (!cancelled) {
+                    runner = Thread.currentThread();
+                    runningJobs.put(runner, this);
+                }
+            }
+            if (runner == null) {
+                // cancelled just as it was starting
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(null);
+                    }
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    started = true;
+                    if (!finished) {
+                        progress.setIndeterminate(true);
+                        status.setText("Running...");
+                        updateSummary();
+                    }
+                }
+            });
+
+            JobStatus jobStatus;
+            try {
+                jobStatus = jobTab.runJobNow();
+            } catch (OutOfMemoryError err) {
+                jobStatus = JobStatus.PUBLISH_ERROR.withMessage("Error: ran out of memory " +
+                        "(try decreasing the chunking size and/or threshold by going to Edit -> Preferences)");
+            } catch (Exception e) {
+                if (!cancelled)
+                    e.printStackTrace();
+                jobStatus = JobStatus.PUBLISH_ERROR.withMessage("Unexpected error: " + e);
+            } finally {
+                synchronized (this) {
+                    runningJobs.remove(runner);
+                    runner = null;
+                    Thread.interrupted(); // the pool thread goes on to other jobs
+                }
+            }
+
+            final JobStatus finalStatus = jobStatus;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    finish(finalStatus);
+                }
+            });
+        }
+
+        /**
+         * Stops the job: takes it off the queue if it hasn't started, or interrupts it if it has.
+         * Called on the event dispatch thread.
+         */
+        void cancel() {
+            if (finished)
+                return;
+            cancelled = true;
+            cancelButton.setEnabled(false);
+            status.setText("Cancelling...");
+            if (future.cancel(false)) {
+                finish(null);
+                return;
+            }
+            synchronized (this) {
+                if (runner != null) {
+                    runner.interrupt();
+                    HttpUtility.abortRequestOf(runner);
+                }
+            }
+        }
+
+        /**
+         * Shows how the job ended; called on the event dispatch thread.
+         */
+        private void finish(JobStatus jobStatus) {
+            if (finished)
+                return;
+            finished = true;
+            cancelButton.setEnabled(false);
+            progress.setIndeterminate(false);
+            if (cancelled) {
+                progress.setValue(0);
+                status.setText("Cancelled");
+            } else {
+                progress.setValue(jobStatus == null || jobStatus.isError() ? 0 : 100);
+                if (jobStatus == null)
+                    status.setText("Finished");
+                else
+                    status.setText((jobStatus.isError() ? "Failed: " : "Done: ") + jobStatus.getMessage());
+                status.setToolTipText(status.getText());
+            }
+            updateSummary();
+            if (!cancelled)
+                completionListener.jobCompleted(jobTab, jobStatus);
+        }
+    }
+}
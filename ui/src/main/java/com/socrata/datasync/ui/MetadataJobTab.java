@@ -3,6 +3,7 @@ package com.socrata.datasync.ui;
 import com.socrata.datasync.*;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.job.MetadataJob;
+import com.socrata.datasync.job.JobFiles;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -35,7 +36,7 @@ public class MetadataJobTab implements JobTab {
     private final String DEFAULT_RUN_JOB_COMMAND = "(Generates when job is saved)";
 
     private final String JOB_FILE_NAME = "Socrata Metadata Job";
-    public final static String JOB_FILE_EXTENSION = "smj";
+    public final static String JOB_FILE_EXTENSION = JobFiles.METADATA_JOB_EXTENSION;
 
     private final int HELP_ICON_TOP_PADDING = 10;
 
@@ -8,6 +8,7 @@ import com.socrata.datasync.PublishDataset;
 import com.socrata.datasync.PublishMethod;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.job.PortJob;
+import com.socrata.datasync.job.JobFiles;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 
@@ -36,7 +37,7 @@ public class PortJobTab implements JobTab {
     private final int OPEN_SINK_DATASET_BUTTON_HEIGHT = 22;
     private final String DEFAULT_DESTINATION_SET_ID = "(Generates after running job)";
     private final String JOB_FILE_NAME = "Socrata Port Job";
-    public static final String JOB_FILE_EXTENSION = "spj";
+    public static final String JOB_FILE_EXTENSION = JobFiles.PORT_JOB_EXTENSION;
 
     private final int HELP_ICON_TOP_PADDING = 10;
     private final String PORT_METHOD_TIP_TEXT = "<html>" +
@@ -10,10 +10,12 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import com.socrata.datasync.*;
 import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.job.Job;
+import com.socrata.datasync.job.JobFiles;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.job.MetadataJob;
 import com.socrata.datasync.job.PortJob;
 import com.socrata.datasync.job.GISJob;
+import com.socrata.datasync.publishers.DeltaImporter2Publisher;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 
@@ -43,14 +45,16 @@ public class SimpleIntegrationWizard {
     private static final Dimension AUTH_DETAILS_DIMENSION = new Dimension(465, 100);
     private static final int PREFERENCES_FRAME_WIDTH = 475;
     private static final int PREFERENCES_FRAME_HEIGHT = 675;
+    private static final int JOB_QUEUE_FRAME_WIDTH = 600;
+    private static final int JOB_QUEUE_FRAME_HEIGHT = 300;
 
     private static UserPreferencesJava userPrefs;
 
     // TODO remove these declarations from this file (duplicates...)
-    private static final String STANDARD_JOB_FILE_EXTENSION = "sij";
-    private static final String PORT_JOB_FILE_EXTENSION = "spj";
-    private static final String METADATA_JOB_FILE_EXTENSION = "smj";
-    private static final String GIS_JOB_FILE_EXTENSION = "gij";
+    private static final String STANDARD_JOB_FILE_EXTENSION = JobFiles.INTEGRATION_JOB_EXTENSION;
+    private static final String PORT_JOB_FILE_EXTENSION = JobFiles.PORT_JOB_EXTENSION;
+    private static final String METADATA_JOB_FILE_EXTENSION = JobFiles.METADATA_JOB_EXTENSION;
+    private static final String GIS_JOB_FILE_EXTENSION = JobFiles.GIS_JOB_EXTENSION;
     
     // help icon balloon tip text
     private static final String FILE_CHUNKING_THRESHOLD_TIP_TEXT = "<html><body style='width: 300px'>If using the upsert, append, or " +
@@ -100,12 +104,10 @@ public class SimpleIntegrationWizard {
     private JTabbedPane jobTabsPane;
     private JFrame frame;
     private JFrame prefsFrame;
-    private JPanel loadingNoticePanel;
-    private JPanel progressPanel;
+    private JFrame jobQueueFrame;
+    private JobQueuePanel jobQueue;
+    private JLabel jobQueueSummaryLabel = new JLabel("");
     private JButton runJobNowButton;
-    private JLabel loadingTextLabel = new JLabel("Processing...");
-    private JProgressBar progress = new JProgressBar(0, 100);
-    private JLabel progressText = new JLabel("");
 
     private static SimpleIntegrationWizard instance;
 
@@ -126,12 +128,22 @@ public class SimpleIntegrationWizard {
         frame.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent we) {
+                int activeJobs = jobQueue.getActiveJobCount();
+                if (activeJobs > 0) {
+                    int n = JOptionPane.showConfirmDialog(frame,
+                            activeJobs + (activeJobs == 1 ? " job is" : " jobs are") + " still running or waiting to run. " +
+                            "Cancel and quit anyway?", "Jobs Still Running", JOptionPane.YES_NO_OPTION);
+                    if (n != JOptionPane.YES_OPTION)
+                        return;
+                }
+                jobQueue.shutdown();
                 saveAuthenticationInfoFromForm();
                 // TODO save open tabs to userPrefs
                 System.exit(0);
             }
         });
 
+        generateJobQueueFrame();
         JMenuBar menuBar = generateMenuBar();
         frame.setJMenuBar(menuBar);
 
@@ -155,10 +167,29 @@ public class SimpleIntegrationWizard {
     }
 
     public static SimpleIntegrationWizard get() {
-        if(instance == null) instance = new SimpleIntegrationWizard();
+        if(instance == null) {
+            instance = new SimpleIntegrationWizard();
+            DeltaImporter2Publisher.setDefaultProgressListener(instance.jobQueue.getProgressListener());
+        }
         return instance;
     }
 
+    private void generateJobQueueFrame() {
+        jobQueueFrame = new JFrame("Job Queue");
+        jobQueueFrame.setSize(JOB_QUEUE_FRAME_WIDTH, JOB_QUEUE_FRAME_HEIGHT);
+        jobQueueFrame.setVisible(false);
+        jobQueue = new JobQueuePanel(new JobCompletionListener());
+        jobQueue.addChangeListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                jobQueueSummaryLabel.setText(jobQueue.getSummary());
+            }
+        });
+        jobQueueFrame.add(jobQueue);
+        // closing the window only hides it; the jobs keep running
+        jobQueueFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    }
+
     private void generatePreferencesFrame() {
         prefsFrame = new JFrame("Preferences");
         prefsFrame.setSize(PREFERENCES_FRAME_WIDTH, PREFERENCES_FRAME_HEIGHT);
@@ -262,55 +293,22 @@ public class SimpleIntegrationWizard {
         public void actionPerformed(ActionEvent e) {
             saveAuthenticationInfoFromForm();
 
-            // run integration job with data from form
+            // queue the job with data from form
             int selectedJobTabIndex = jobTabsPane.getSelectedIndex();
             JobTab selectedJobTab = jobTabs.get(selectedJobTabIndex);
 
-            SwingWorker jobWorker = new RunJobWorker(selectedJobTab);
-            jobWorker.execute();
-        }
-    }
-
-    private class RunJobWorker extends SwingWorker<Void, String> {
-        private JobTab jobTabToRun;
-        private JobStatus jobStatus;
-
-        public RunJobWorker(JobTab jobTabToRun){
-            loadingNoticePanel.setVisible(true);
-            progressPanel.setVisible(true);
-            loadingNoticePanel.add(loadingTextLabel);
-            progressPanel.add(progress);
-            progressPanel.add(progressText);
-            runJobNowButton.setEnabled(false);
-            this.jobTabToRun = jobTabToRun;
-        }
-
-        @Override
-        protected Void doInBackground() {
-            try {
-                jobStatus = jobTabToRun.runJobNow();
-            } catch (OutOfMemoryError err) {
-                jobStatus = JobStatus.PUBLISH_ERROR;
-                jobStatus.setMessage("Error: ran out of memory " +
-                        "(try decreasing the chunking size and/or threshold by going to Edit -> Preferences)");
-            } catch (Exception e) {
-                e.printStackTrace();
-                jobStatus = JobStatus.PUBLISH_ERROR;
-                jobStatus.setMessage("Unexpected error: " + e);
-            } catch (Error e) {
-                e.printStackTrace();
-                throw e;
+            if (!jobQueue.submit(selectedJobTab)) {
+                JOptionPane.showMessageDialog(frame, "This job is already waiting to run or running (see the job queue).");
             }
-            return null;
+            jobQueueFrame.setVisible(true);
         }
+    }
 
-        //Executed on the Event Dispatch Thread after the doInBackground method is finished
-        @Override
-        protected void done() {
-            loadingNoticePanel.setVisible(false);
-            progressPanel.setVisible(false);
-            runJobNowButton.setEnabled(true);
-
+    /**
+     * Shows the status of each job once it has run
+     */
+    private class JobCompletionListener implements JobQueuePanel.CompletionListener {
+        public void jobCompleted(JobTab jobTabToRun, JobStatus jobStatus) {
             // show popup with returned status
             if(jobStatus == null) {
                 System.out.println("null jobStatus?!");
@@ -498,6 +496,8 @@ public class SimpleIntegrationWizard {
         runJobItem.setAccelerator(KeyStroke.getKeyStroke(
             KeyEvent.VK_R, ActionEvent.CTRL_MASK));
         fileMenu.add(runJobItem);
+        JMenuItem jobQueueItem = new JMenuItem("Job Queue");
+        fileMenu.add(jobQueueItem);
       JMenuItem prefsItem = new JMenuItem("Preferences");
       fileMenu.add(prefsItem);
 
@@ -523,6 +523,12 @@ public class SimpleIntegrationWizard {
         openJobItem.addActionListener(new OpenJobListener());
         saveJobItem.addActionListener(new SaveJobListener());
         runJobItem.addActionListener(new RunJobNowListener());
+        jobQueueItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                jobQueueFrame.setVisible(true);
+            }
+        });
         prefsItem.addActionListener(new OpenPreferencesListener());
         gettingStartedGuideItem.addActionListener(new ActionListener() {
             @Override
@@ -594,11 +600,15 @@ public class SimpleIntegrationWizard {
         leftButtonPanel.add(runJobNowButton);
         leftButtonPanel.add(UIUtility.generateHelpBubble(RUN_JOB_NOW_TIP_TEXT));
 
-        JPanel noticesContainer = new JPanel(new GridLayout(2, 1));
-        generateLoadingNotice();
-        noticesContainer.add(loadingNoticePanel);
-        generateProgressBar();
-        noticesContainer.add(progressPanel);
+        JPanel noticesContainer = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        jobQueueSummaryLabel.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        jobQueueSummaryLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                jobQueueFrame.setVisible(true);
+            }
+        });
+        noticesContainer.add(jobQueueSummaryLabel);
 
         JPanel rightButtonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton saveJobButton = new JButton("Save Job");
@@ -629,17 +639,6 @@ public class SimpleIntegrationWizard {
         return mainContainer;
     }
 
-    private void generateLoadingNotice() {
-        loadingNoticePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        loadingNoticePanel.setVisible(false);
-    }
-
-    private void generateProgressBar() {
-        progressPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-
-        progressPanel.setVisible(false);
-    }
-
     private JPanel generatePreferencesPanel() {
         JPanel prefsPanel = new JPanel(new GridLayout(0,2));
 
@@ -940,19 +939,4 @@ public class SimpleIntegrationWizard {
         usernameTextField.setText(userPrefs.getUsername());
         passwordField.setText(userPrefs.getPassword());
     }
-
-    public static void updateStatus(String loadingLabel, int progressPercent, boolean showProgress, String message) {
-        if(instance != null) {
-            instance.loadingTextLabel.setText(loadingLabel);
-            instance.progress.setValue(0);
-            if(showProgress) {
-                instance.progress.setVisible(true);
-                instance.progressText.setText("");
-                instance.progress.setValue(progressPercent);
-            } else {
-                instance.progress.setVisible(false);
-                instance.progressText.setText(message);
-            }
-        }
-    }
 }
@@ -0,0 +1,192 @@
+package com.socrata.datasync.model;
+
+import com.socrata.model.importer.Column;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+public class ColumnMatcherTest {
+
+    private static Column column(String name, String fieldName) {
+        Column column = new Column();
+        column.setName(name);
+        column.setFieldName(fieldName);
+        return column;
+    }
+
+    /**
+     * The pairings in the order the matcher makes them, followed by the unpaired CSV columns as {index, -1}.
+     */
+    private static List<String> match(List<String> headers, List<Column> columns) {
+        List<String> events = new ArrayList<>();
+        boolean[] paired = new boolean[headers.size()];
+        for (int[] pairing : ColumnMatcher.match(headers, columns)) {
+            events.add(Arrays.toString(pairing));
+            paired[pairing[0]] = true;
+        }
+        for (int i = 0; i < paired.length; i++) {
+            if (!paired[i])
+                events.add(Arrays.toString(new int[] {i, -1}));
+        }
+        return events;
+    }
+
+    /**
+     * How the control file model paired up columns before the ColumnMatcher: scoring every pair, then
+     * repeatedly pairing the leftmost CSV column with the least bad choice left.
+     */
+    private static List<String> matchByScoringEverything(List<String> headers, List<Column> columns) {
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        for (int i = 0; i < headers.size(); i++) {
+            PriorityQueue<Guess> preferences = new PriorityQueue<>();
+            for (int j = 0; j < columns.size(); j++) {
+                double badness = Math.min(ControlFileModel.humanNameEditDistance(headers.get(i), columns.get(j).getName()),
+                        ControlFileModel.fieldNameEditDistance(headers.get(i), columns.get(j).getFieldName()));
+                preferences.add(new Guess(j, badness));
+            }
+            candidates.add(new Candidate(i, preferences));
+        }
+
+        List<String> events = new ArrayList<>();
+        Set<String> usedFieldNames = new HashSet<>();
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            Guess guess = candidate.preferences.poll();
+            if (guess == null || guess.badness == Double.POSITIVE_INFINITY) {
+                events.add(Arrays.toString(new int[] {candidate.index, -1}));
+            } else if (usedFieldNames.contains(columns.get(guess.index).getFieldName())) {
+                candidates.add(candidate);
+            } else {
+                events.add(Arrays.toString(new int[] {candidate.index, guess.index}));
+                usedFieldNames.add(columns.get(guess.index).getFieldName());
+            }
+        }
+        return events;
+    }
+
+    private static class Guess implements Comparable<Guess> {
+        final int index;
+        final double badness;
+
+        Guess(int index, double badness) {
+            this.index = index;
+            this.badness = badness;
+        }
+
+        public int compareTo(Guess that) {
+            int badnessOrd = Double.compare(badness, that.badness);
+            return badnessOrd == 0 ? Integer.compare(index, that.index) : badnessOrd;
+        }
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        final int index;
+        final PriorityQueue<Guess> preferences;
+
+        Candidate(int index, PriorityQueue<Guess> preferences) {
+            this.index = index;
+            this.preferences = preferences;
+        }
+
+        private double best() {
+            return preferences.isEmpty() ? Double.POSITIVE_INFINITY : preferences.peek().badness;
+        }
+
+        public int compareTo(Candidate that) {
+            int badnessOrd = Double.compare(best(), that.best());
+            return badnessOrd == 0 ? Integer.compare(index, that.index) : badnessOrd;
+        }
+    }
+
+    @Test
+    public void testMatchesAsScoringEverythingDid() {
+        List<Column> columns = Arrays.asList(
+                column("Case Number", "case_number"),
+                column("Date", "date"),
+                column("Primary Type", "primary_type"),
+                column("Description", "description"),
+                column("Location Description", "location_description"),
+                column("Arrest", "arrest"),
+                column("Beat", "beat"),
+                column("X Coordinate", "x_coordinate"),
+                column("Y Coordinate", "y_coordinate"),
+                column("Updated On", "updated_on"),
+                column("", "blank"));
+        List<String> headers = Arrays.asList("ID", "case number", "Date", "PRIMARY TYPE", "Descriptoin", "Location-Description",
+                "Arrest", "beat", "X-Coordinate", "Y Coordinate", "Y Coordinate", "updated_on", "Community Area", "", "date");
+
+        List<String> expected = matchByScoringEverything(headers, columns);
+        TestCase.assertEquals(expected, match(headers, columns));
+        TestCase.assertTrue(expected.contains("[1, 0]"));
+        TestCase.assertTrue(expected.contains("[2, 1]"));
+        TestCase.assertTrue(expected.contains("[0, -1]"));
+        TestCase.assertTrue(expected.contains("[14, -1]"));
+    }
+
+    @Test
+    public void testMatchesRandomNamesAsScoringEverythingDid() {
+        Random random = new Random(48);
+        String alphabet = "abcde_ -AB1";
+        for (int trial = 0; trial < 200; trial++) {
+            List<Column> columns = new ArrayList<>();
+            int columnCount = random.nextInt(12);
+            for (int j = 0; j < columnCount; j++) {
+                String fieldName = randomName(random, alphabet.substring(0, 6));
+                columns.add(column(random.nextInt(4) == 0 ? fieldName : randomName(random, alphabet), fieldName));
+            }
+            List<String> headers = new ArrayList<>();
+            int headerCount = random.nextInt(12);
+            for (int i = 0; i < headerCount; i++) {
+                if (columnCount > 0 && random.nextBoolean())
+                    headers.add(mutate(random, columns.get(random.nextInt(columnCount)).getName(), alphabet));
+                else
+                    headers.add(randomName(random, alphabet));
+            }
+            TestCase.assertEquals(headers + " " + columns, matchByScoringEverything(headers, columns), match(headers, columns));
+        }
+    }
+
+    @Test
+    public void testMatchesWideDatasetsAsScoringEverythingDid() {
+        // enough columns that the matcher scores them in parallel
+        Random random = new Random(1048);
+        List<Column> columns = new ArrayList<>();
+        List<String> headers = new ArrayList<>();
+        for (int j = 0; j < 150; j++) {
+            String name = randomName(random, "abcdefgh ") + " " + j;
+            columns.add(column(name, name.replace(' ', '_')));
+            headers.add(random.nextBoolean() ? mutate(random, name, "abcdefgh _-") : randomName(random, "abcdefgh "));
+        }
+        TestCase.assertEquals(matchByScoringEverything(headers, columns), match(headers, columns));
+    }
+
+    private static String randomName(Random random, String alphabet) {
+        StringBuilder name = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++)
+            name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return name.toString();
+    }
+
+    private static String mutate(Random random, String name, String alphabet) {
+        StringBuilder mutated = new StringBuilder(name);
+        int edits = random.nextInt(3);
+        for (int e = 0; e < edits; e++) {
+            int at = mutated.length() == 0 ? 0 : random.nextInt(mutated.length());
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            switch (random.nextInt(3)) {
+                case 0: mutated.insert(at, c); break;
+                case 1: if (mutated.length() > 0) mutated.deleteCharAt(at); break;
+                default: if (mutated.length() > 0) mutated.setCharAt(at, c);
+            }
+        }
+        return mutated.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.socrata.datasync.model;
+
+import com.google.common.io.Files;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+public class PagedCSVModelTest {
+
+    private static final int ROWS = 2500;
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private FileTypeControl write(String name) throws IOException {
+        File file = new File(dir, name);
+        OutputStream out = new FileOutputStream(file);
+        try (Writer writer = new OutputStreamWriter(name.endsWith(".gz") ? new GZIPOutputStream(out) : out, "UTF-8")) {
+            writer.write("ID,Notes\n");
+            for (int i = 0; i < ROWS; i++)
+                writer.write(i + "," + (i % 10 == 0 ? "\"line one\nline two, " + i + "\"" : "note " + i) + "\n");
+            writer.write("short");  // no line break after the last row
+        }
+        FileTypeControl fileControl = new FileTypeControl().encoding("utf-8").separator(",").quote("\"").skip(1);
+        fileControl.filePath = file.getPath();
+        fileControl.hasHeaderRow = true;
+        return fileControl;
+    }
+
+    private static PagedCSVModel indexed(FileTypeControl fileControl) throws Exception {
+        PagedCSVModel model = new PagedCSVModel(fileControl);
+        for (int wait = 0; !model.isIndexed() && wait < 500; wait++)
+            Thread.sleep(10);
+        TestCase.assertTrue(model.isIndexed());
+        TestCase.assertNull(model.getIndexFailure());
+        return model;
+    }
+
+    @Test
+    public void testAnyRowCanBeRead() throws Exception {
+        for (String name : new String[] {"notes.csv", "notes.csv.gz"}) {
+            PagedCSVModel model = indexed(write(name));
+            TestCase.assertEquals(2, model.getColumnCount());
+            TestCase.assertEquals("Notes", model.getColumnName(1));
+            TestCase.assertEquals(ROWS + 1, model.getIndexedRowCount());
+            // read the pages looked at below on this thread, rather than waiting for them to be loaded
+            for (int page : new int[] {2, 0, 1})
+                model.getPage(page);
+
+            TestCase.assertEquals("note 2499", model.getValueAt(2499, 1));
+            TestCase.assertEquals("0", model.getValueAt(0, 0));
+            TestCase.assertEquals("line one\nline two, 1230", model.getValueAt(1230, 1));
+            TestCase.assertEquals("short", model.getValueAt(ROWS, 0));
+            TestCase.assertNull(model.getValueAt(ROWS, 1));
+            TestCase.assertEquals(ROWS % PagedCSVModel.PAGE_SIZE + 1, model.getPage(ROWS / PagedCSVModel.PAGE_SIZE).size());
+            model.close();
+        }
+    }
+
+    @Test
+    public void testPagesAreLoadedOffTheEventDispatchThread() throws Exception {
+        for (String name : new String[] {"notes.csv", "notes.csv.gz"}) {
+            final PagedCSVModel model = indexed(write(name));
+            final CountDownLatch loaded = new CountDownLatch(1);
+            final Object[] firstValue = new Object[1];
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    TestCase.assertEquals(ROWS + 1, model.getRowCount());
+                    model.addTableModelListener(new TableModelListener() {
+                        @Override
+                        public void tableChanged(TableModelEvent e) {
+                            if (e.getType() == TableModelEvent.UPDATE && e.getFirstRow() == 2000)
+                                loaded.countDown();
+                        }
+                    });
+                    firstValue[0] = model.getValueAt(2499, 1);
+                }
+            });
+            TestCase.assertNull(firstValue[0]);
+            TestCase.assertTrue(loaded.await(5, TimeUnit.SECONDS));
+            final Object[] value = new Object[1];
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    value[0] = model.getValueAt(2499, 1);
+                }
+            });
+            TestCase.assertEquals("note 2499", value[0]);
+            model.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.Main;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Guards the command-line startup path: it must not load AWT or Swing, and must not wait on
+ * the network (e.g. for the version check) before doing its work.
+ */
+public class StartupBenchmarkTest {
+
+    // generous, so that slow build machines don't fail; a blocking network call would blow well past it
+    private static final long MAX_STARTUP_MS = 10000;
+
+    @Test
+    public void testRunningMissingJobFileIsFastAndHeadless() throws Exception {
+        assertFastAndHeadless("nonexistent-job-file.sij");
+    }
+
+    @Test
+    public void testCommandLineJobStartupIsFastAndHeadless() throws Exception {
+        assertFastAndHeadless("-t", "IntegrationJob", "-c", new File("nonexistent-config.json").getAbsolutePath());
+    }
+
+    private void assertFastAndHeadless(String... args) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList(
+            new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath(),
+            "-verbose:class",
+            "-cp", System.getProperty("java.class.path"),
+            Main.class.getName()));
+        command.addAll(Arrays.asList(args));
+
+        long start = System.currentTimeMillis();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> guiClasses = new ArrayList<>();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.contains(" java.awt.") || line.contains(" javax.swing.") || line.contains(".datasync.ui."))
+                    guiClasses.add(line);
+            }
+        }
+        int exitCode = process.waitFor();
+        long elapsed = System.currentTimeMillis() - start;
+
+        // both runs fail fast on their missing input
+        TestCase.assertEquals(1, exitCode);
+        TestCase.assertTrue("GUI classes were loaded: " + guiClasses, guiClasses.isEmpty());
+        TestCase.assertTrue("startup took " + elapsed + "ms", elapsed < MAX_STARTUP_MS);
+    }
+}